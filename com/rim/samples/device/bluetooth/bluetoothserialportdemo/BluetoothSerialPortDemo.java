@@ -26,9 +26,11 @@
 
 package com.rim.samples.device.bluetoothserialportdemo;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import javax.microedition.io.Connector;
 import javax.microedition.io.StreamConnection;
@@ -38,6 +40,7 @@ import net.rim.device.api.bluetooth.BluetoothSerialPortInfo;
 import net.rim.device.api.command.Command;
 import net.rim.device.api.command.CommandHandler;
 import net.rim.device.api.command.ReadOnlyCommandMetadata;
+import net.rim.device.api.compress.ZLibInputStream;
 import net.rim.device.api.system.Application;
 import net.rim.device.api.system.Clipboard;
 import net.rim.device.api.system.UnsupportedOperationException;
@@ -60,11 +63,22 @@ import net.rim.device.api.util.StringProvider;
 public final class BluetoothSerialPortDemo extends UiApplication {
     // Statics
     // ------------------------------------------------------------------
+    // These constants have to match the constants in the server code
     private static final int INSERT = 1;
     private static final int REMOVE = 2;
-    private static final int JUST_OPEN = 3;
-    private static final int CONTENTS = 4;
-    private static final int NO_CONTENTS = 5;
+    private static final int CHANGE = 3;
+    private static final int JUST_OPEN = 4;
+    private static final int CONTENTS = 5;
+    private static final int NO_CONTENTS = 6;
+    private static final int BATCH = 7;
+    private static final int SNAPSHOT = 8;
+    private static final int CHECKPOINT = 9;
+    private static final int RESYNC = 10;
+    private static final int NO_SEQ = -1;
+    private static final int RESYNC_RETRY = 4;
+    private static final int FLAG_COMPRESSED = 0x01;
+    private static final int ADLER_INIT = 1;
+    private static final int ADLER_MOD = 65521;
     private static final int FIRST = 0;
 
     // Members
@@ -74,6 +88,13 @@ public final class BluetoothSerialPortDemo extends UiApplication {
     private DataInputStream _din;
     private DataOutputStream _dout;
 
+    // Version of the server's document that _infoField holds, and whether a
+    // RESYNC for a missing version has been sent but not yet answered. Only
+    // accessed by the InputThread.
+    private int _seq = NO_SEQ;
+    private boolean _resyncRequested;
+    private int _framesSinceResync;
+
     /**
      * This class represents the main screen for the BluetoothSerialPortDemo
      * application.
@@ -295,6 +316,56 @@ public final class BluetoothSerialPortDemo extends UiApplication {
                         offset = _din.readInt();
                         count = _din.readInt();
                         remove(offset, count);
+                    } else if (type == BATCH) {
+                        // Several coalesced edits sent as a single frame
+                        final int seq = _din.readInt();
+                        final int length = _din.readInt();
+                        final int flags = _din.readByte();
+                        final byte[] payload = new byte[length];
+                        _din.readFully(payload);
+
+                        if (seq == _seq + 1) {
+                            applyBatch(payload, (flags & FLAG_COMPRESSED) != 0);
+                            _seq = seq;
+                            _resyncRequested = false;
+                        } else if (seq > _seq + 1) {
+                            // A batch went missing; ask for everything after
+                            // the last one applied. Older batches are
+                            // duplicates resent by a resync and are ignored.
+                            requestResync(_seq);
+                        }
+                    } else if (type == SNAPSHOT) {
+                        // The whole document at a given version
+                        final int seq = _din.readInt();
+                        final int checksum = _din.readInt();
+                        final byte[] utf8 = new byte[_din.readInt()];
+                        _din.readFully(utf8);
+                        final String contents = new String(utf8, "UTF-8");
+
+                        if (checksum(contents) == checksum) {
+                            synchronized (Application.getEventLock()) {
+                                _infoField.setText(contents);
+                            }
+                            _seq = seq;
+                            _resyncRequested = false;
+                        } else {
+                            _resyncRequested = false;
+                            requestResync(NO_SEQ);
+                        }
+                    } else if (type == CHECKPOINT) {
+                        // Verify that our copy matches the server's version
+                        final int seq = _din.readInt();
+                        final int checksum = _din.readInt();
+
+                        if (seq == _seq) {
+                            final String contents;
+                            synchronized (Application.getEventLock()) {
+                                contents = _infoField.getText();
+                            }
+                            if (checksum(contents) != checksum) {
+                                requestResync(NO_SEQ);
+                            }
+                        }
                     } else if (type == JUST_OPEN) {
                         // Send contents to desktop.
                         value = _infoField.getText();
@@ -360,6 +431,103 @@ public final class BluetoothSerialPortDemo extends UiApplication {
         });
     }
 
+    /**
+     * Asks the server to resend the versions after seq, or the whole document
+     * if seq is NO_SEQ. Only one request is outstanding at a time; if the
+     * answer itself is lost, the request is repeated once RESYNC_RETRY more
+     * frames have arrived out of sequence.
+     * 
+     * @param seq
+     *            The last version applied to the info field
+     * @throws IOException
+     *             If the request could not be written
+     */
+    private void requestResync(final int seq) throws IOException {
+        if (_resyncRequested && ++_framesSinceResync < RESYNC_RETRY) {
+            return;
+        }
+        _resyncRequested = true;
+        _framesSinceResync = 0;
+        _dout.writeInt(RESYNC);
+        _dout.writeInt(seq);
+        _dout.flush();
+    }
+
+    /**
+     * Computes the document checksum used by the server: Adler-32 over the
+     * UTF-16 big-endian encoding of the text.
+     * 
+     * @param text
+     *            The text to compute the checksum of
+     * @return The checksum
+     */
+    private static int checksum(final String text) {
+        int a = ADLER_INIT;
+        int b = 0;
+        for (int i = 0; i < text.length(); ++i) {
+            final char c = text.charAt(i);
+            a = (a + (c >>> 8)) % ADLER_MOD;
+            b = (b + a) % ADLER_MOD;
+            a = (a + (c & 0xff)) % ADLER_MOD;
+            b = (b + a) % ADLER_MOD;
+        }
+        return b << 16 | a;
+    }
+
+    /**
+     * Decodes a BATCH frame payload and applies its edits, in order, in a
+     * single pass while holding the event lock. Applying the edits
+     * synchronously keeps the info field in step with _seq, so that a
+     * following CHECKPOINT is verified against the right version.
+     * 
+     * @param payload
+     *            The payload of the BATCH frame
+     * @param compressed
+     *            True if the payload is zlib compressed
+     * @throws IOException
+     *             If the payload is malformed
+     */
+    private void applyBatch(final byte[] payload, final boolean compressed)
+            throws IOException {
+        InputStream in = new ByteArrayInputStream(payload);
+        if (compressed) {
+            in = new ZLibInputStream(in);
+        }
+        final DataInputStream batch = new DataInputStream(in);
+
+        final int count = batch.readInt();
+        final int[] types = new int[count];
+        final int[] offsets = new int[count];
+        final Object[] values = new Object[count];
+
+        for (int i = 0; i < count; ++i) {
+            types[i] = batch.readByte();
+            offsets[i] = batch.readInt();
+            if (types[i] == INSERT) {
+                final byte[] text = new byte[batch.readInt()];
+                batch.readFully(text);
+                values[i] = new String(text, "UTF-8");
+            } else if (types[i] == REMOVE) {
+                values[i] = new Integer(batch.readInt());
+            } else {
+                throw new IOException("Unknown edit type: " + types[i]);
+            }
+        }
+
+        synchronized (Application.getEventLock()) {
+            for (int i = 0; i < count; ++i) {
+                if (types[i] == INSERT) {
+                    _infoField.setCursorPosition(offsets[i]);
+                    _infoField.insert((String) values[i]);
+                } else {
+                    final int length = ((Integer) values[i]).intValue();
+                    _infoField.setCursorPosition(offsets[i] + length);
+                    _infoField.backspace(length);
+                }
+            }
+        }
+    }
+
     /**
      * Removes a certain amount of characters at a specified position from the
      * information text field displayed on the screen.
@@ -0,0 +1,119 @@
+/*
+ * AccessStatistics.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.evictionlib;
+
+import java.util.Hashtable;
+
+/**
+ * Tracks when the entries of a store were created and used, and how often,
+ * for stores that don't keep that information themselves. The statistics are
+ * kept in memory only: entries loaded from the persistent store count as
+ * created when they are first added to the table.
+ */
+public final class AccessStatistics {
+    private final Hashtable _entries = new Hashtable();
+
+    /**
+     * Starts tracking an entry. Does nothing if the entry is already tracked.
+     *
+     * @param key
+     *            The key of the entry
+     */
+    public synchronized void add(final Object key) {
+        if (!_entries.containsKey(key)) {
+            final long now = System.currentTimeMillis();
+            _entries.put(key, new long[] { now, now, 0 });
+        }
+    }
+
+    /**
+     * Records a use of an entry, starting to track it if necessary
+     *
+     * @param key
+     *            The key of the entry
+     */
+    public synchronized void touch(final Object key) {
+        add(key);
+
+        final long[] entry = (long[]) _entries.get(key);
+        entry[1] = System.currentTimeMillis();
+        ++entry[2];
+    }
+
+    /**
+     * Stops tracking an entry
+     *
+     * @param key
+     *            The key of the entry
+     */
+    public synchronized void remove(final Object key) {
+        _entries.remove(key);
+    }
+
+    /**
+     * Stops tracking all entries
+     */
+    public synchronized void clear() {
+        _entries.clear();
+    }
+
+    /**
+     * Retrieves the time an entry was created
+     *
+     * @param key
+     *            The key of the entry
+     * @return The time the entry was created, or zero if it isn't tracked
+     */
+    public synchronized long getCreated(final Object key) {
+        final long[] entry = (long[]) _entries.get(key);
+        return entry == null ? 0 : entry[0];
+    }
+
+    /**
+     * Retrieves the time an entry was last used
+     *
+     * @param key
+     *            The key of the entry
+     * @return The time the entry was last used, or zero if it isn't tracked
+     */
+    public synchronized long getLastAccessed(final Object key) {
+        final long[] entry = (long[]) _entries.get(key);
+        return entry == null ? 0 : entry[1];
+    }
+
+    /**
+     * Retrieves the number of times an entry was used
+     *
+     * @param key
+     *            The key of the entry
+     * @return The number of uses, or zero if the entry isn't tracked
+     */
+    public synchronized int getAccessCount(final Object key) {
+        final long[] entry = (long[]) _entries.get(key);
+        return entry == null ? 0 : (int) entry[2];
+    }
+}
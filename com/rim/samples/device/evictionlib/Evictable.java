@@ -0,0 +1,68 @@
+/*
+ * Evictable.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.evictionlib;
+
+/**
+ * A store whose data can be given up when the device runs low on memory.
+ * Stores register with the EvictionManager, which asks each of them for the
+ * entries it could evict at the current memory pressure, picks entries across
+ * all stores according to its eviction policy, and evicts them one at a time
+ * until enough memory has been released.
+ */
+public interface Evictable {
+    /**
+     * Adds the entries that may be evicted at a memory pressure level to a
+     * list of candidates. Entries that are expensive to rebuild, or that the
+     * user is likely to miss, should only be offered at higher priorities.
+     *
+     * @param priority
+     *            The LowMemoryListener priority of the memory pressure
+     * @param candidates
+     *            The list to add the candidates to
+     */
+    public void collectCandidates(int priority, EvictionCandidates candidates);
+
+    /**
+     * Evicts an entry offered by collectCandidates()
+     *
+     * @param key
+     *            The key the entry was offered with
+     * @return The approximate number of bytes released, or zero if the entry
+     *         no longer exists
+     */
+    public int evict(Object key);
+
+    /**
+     * Called after a round of evictions in which at least one of this store's
+     * entries was evicted. Stores can commit their changes and update their
+     * user interface here rather than after every eviction.
+     *
+     * @param priority
+     *            The LowMemoryListener priority of the memory pressure
+     */
+    public void evictionFinished(int priority);
+}
@@ -0,0 +1,265 @@
+/*
+ * EvictionCandidates.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.evictionlib;
+
+/**
+ * The entries offered for eviction during one round of evictions, with the
+ * cost and recency information the eviction policies rank them by. The
+ * candidates are held in parallel arrays, so collecting them allocates little
+ * while memory is short.
+ */
+public final class EvictionCandidates {
+    private static final int INITIAL_CAPACITY = 32;
+
+    private Evictable[] _stores = new Evictable[INITIAL_CAPACITY];
+    private Object[] _keys = new Object[INITIAL_CAPACITY];
+    private int[] _costs = new int[INITIAL_CAPACITY];
+    private long[] _lastAccessed = new long[INITIAL_CAPACITY];
+    private int[] _accessCounts = new int[INITIAL_CAPACITY];
+    private long[] _created = new long[INITIAL_CAPACITY];
+    private int[] _order = new int[INITIAL_CAPACITY];
+    private int _size;
+
+    private Evictable _store;
+
+    /**
+     * Creates an empty list of candidates. Only the EvictionManager creates
+     * candidate lists.
+     */
+    EvictionCandidates() {
+    }
+
+    /**
+     * Adds an entry of the store currently being asked for candidates
+     *
+     * @param key
+     *            The key that identifies the entry to the store's evict()
+     *            method
+     * @param cost
+     *            The approximate number of bytes evicting the entry releases
+     * @param lastAccessed
+     *            The time the entry was last used
+     * @param accessCount
+     *            The number of times the entry has been used
+     * @param created
+     *            The time the entry was created
+     */
+    public void add(final Object key, final int cost, final long lastAccessed,
+            final int accessCount, final long created) {
+        if (key == null || cost < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        if (_size == _keys.length) {
+            grow();
+        }
+
+        _stores[_size] = _store;
+        _keys[_size] = key;
+        _costs[_size] = cost;
+        _lastAccessed[_size] = lastAccessed;
+        _accessCounts[_size] = accessCount;
+        _created[_size] = created;
+        ++_size;
+    }
+
+    /**
+     * Adds an entry whose use is tracked by an AccessStatistics table
+     *
+     * @param key
+     *            The key of the entry, in both the store and the table
+     * @param cost
+     *            The approximate number of bytes evicting the entry releases
+     * @param statistics
+     *            The table the entry's use is tracked in
+     */
+    public void add(final Object key, final int cost,
+            final AccessStatistics statistics) {
+        add(key, cost, statistics.getLastAccessed(key), statistics
+                .getAccessCount(key), statistics.getCreated(key));
+    }
+
+    /**
+     * Retrieves the number of candidates
+     *
+     * @return The number of candidates
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Sets the store that subsequently added candidates belong to
+     */
+    void setStore(final Evictable store) {
+        _store = store;
+    }
+
+    /**
+     * Retrieves the store of the candidate at a position in eviction order
+     */
+    Evictable getStore(final int position) {
+        return _stores[_order[position]];
+    }
+
+    /**
+     * Retrieves the key of the candidate at a position in eviction order
+     */
+    Object getKey(final int position) {
+        return _keys[_order[position]];
+    }
+
+    /**
+     * Puts the candidates in the order a policy evicts them in: least recently
+     * used first, least frequently used first (least recently used among
+     * equals), or oldest first. Candidates the policy ranks equally are
+     * evicted most expensive first, to release memory in fewer evictions.
+     *
+     * @param policy
+     *            One of the EvictionManager.POLICY_ constants
+     */
+    void sort(final int policy) {
+        for (int i = 0; i < _size; ++i) {
+            _order[i] = i;
+        }
+
+        // A store can offer thousands of candidates, so use a merge sort
+        final int[] scratch = new int[_size];
+        mergeSort(policy, 0, _size, scratch);
+    }
+
+    /**
+     * Removes all candidates
+     */
+    void clear() {
+        for (int i = 0; i < _size; ++i) {
+            _stores[i] = null;
+            _keys[i] = null;
+        }
+        _size = 0;
+        _store = null;
+    }
+
+    /**
+     * Sorts a range of _order
+     */
+    private void mergeSort(final int policy, final int from, final int to,
+            final int[] scratch) {
+        if (to - from < 2) {
+            return;
+        }
+
+        final int mid = (from + to) >>> 1;
+        mergeSort(policy, from, mid, scratch);
+        mergeSort(policy, mid, to, scratch);
+        if (compare(policy, _order[mid - 1], _order[mid]) <= 0) {
+            return;
+        }
+
+        System.arraycopy(_order, from, scratch, from, to - from);
+        int left = from;
+        int right = mid;
+        for (int i = from; i < to; ++i) {
+            if (right == to
+                    || left < mid
+                    && compare(policy, scratch[left], scratch[right]) <= 0) {
+                _order[i] = scratch[left++];
+            } else {
+                _order[i] = scratch[right++];
+            }
+        }
+    }
+
+    /**
+     * Compares two candidates under a policy
+     *
+     * @return A negative number if the first should be evicted first, a
+     *         positive number if the second should, or zero if it makes no
+     *         difference
+     */
+    private int compare(final int policy, final int a, final int b) {
+        int result;
+        switch (policy) {
+        case EvictionManager.POLICY_LFU:
+            result = compare(_accessCounts[a], _accessCounts[b]);
+            if (result == 0) {
+                result = compare(_lastAccessed[a], _lastAccessed[b]);
+            }
+            break;
+
+        case EvictionManager.POLICY_AGE:
+            result = compare(_created[a], _created[b]);
+            break;
+
+        default:
+            result = compare(_lastAccessed[a], _lastAccessed[b]);
+            break;
+        }
+
+        return result != 0 ? result : compare(_costs[b], _costs[a]);
+    }
+
+    /**
+     * Compares two numbers
+     */
+    private static int compare(final long a, final long b) {
+        return a < b ? -1 : a > b ? 1 : 0;
+    }
+
+    /**
+     * Doubles the capacity of the arrays
+     */
+    private void grow() {
+        final int capacity = _keys.length * 2;
+
+        final Evictable[] stores = new Evictable[capacity];
+        System.arraycopy(_stores, 0, stores, 0, _size);
+        _stores = stores;
+
+        final Object[] keys = new Object[capacity];
+        System.arraycopy(_keys, 0, keys, 0, _size);
+        _keys = keys;
+
+        final int[] costs = new int[capacity];
+        System.arraycopy(_costs, 0, costs, 0, _size);
+        _costs = costs;
+
+        final long[] lastAccessed = new long[capacity];
+        System.arraycopy(_lastAccessed, 0, lastAccessed, 0, _size);
+        _lastAccessed = lastAccessed;
+
+        final int[] accessCounts = new int[capacity];
+        System.arraycopy(_accessCounts, 0, accessCounts, 0, _size);
+        _accessCounts = accessCounts;
+
+        final long[] created = new long[capacity];
+        System.arraycopy(_created, 0, created, 0, _size);
+        _created = created;
+
+        _order = new int[capacity];
+    }
+}
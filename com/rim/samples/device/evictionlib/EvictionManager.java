@@ -0,0 +1,297 @@
+/*
+ * EvictionManager.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.evictionlib;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+import net.rim.device.api.lowmemory.LowMemoryListener;
+import net.rim.device.api.lowmemory.LowMemoryManager;
+
+/**
+ * Answers the Low Memory Manager on behalf of every registered store. Each
+ * memory pressure level is a tier with its own eviction policy and target:
+ * when the Low Memory Manager calls, the stores are asked for the entries they
+ * could give up at that level, the entries are ranked by the tier's policy and
+ * they are evicted in that order until the target number of bytes has been
+ * released or there are no candidates left.
+ * <p>
+ * By default low pressure releases up to 32 KB of the least recently used
+ * entries, medium pressure up to 128 KB of the oldest entries and high
+ * pressure up to 512 KB of the least recently used entries. What a store
+ * offers at each level is up to the store.
+ */
+public final class EvictionManager implements LowMemoryListener {
+    /** Evicts the least recently used entries first */
+    public static final int POLICY_LRU = 0;
+
+    /** Evicts the least frequently used entries first */
+    public static final int POLICY_LFU = 1;
+
+    /** Evicts the oldest entries first */
+    public static final int POLICY_AGE = 2;
+
+    private static final String[] POLICY_NAMES = { "LRU", "LFU", "age" };
+
+    private static EvictionManager _instance;
+
+    private final Vector _stores = new Vector();
+    private final Hashtable _bytesFreedByStore = new Hashtable();
+    private final EvictionCandidates _candidates = new EvictionCandidates();
+
+    private final int[] _policies = { POLICY_LRU, POLICY_AGE, POLICY_LRU };
+    private final int[] _targets = { 32 * 1024, 128 * 1024, 512 * 1024 };
+
+    private long _bytesFreed;
+    private int _evictionCount;
+    private int _lastBytesFreed;
+    private int _lastEvictionCount;
+
+    /**
+     * Retrieves the eviction manager of this application
+     *
+     * @return The eviction manager
+     */
+    public static synchronized EvictionManager getInstance() {
+        if (_instance == null) {
+            _instance = new EvictionManager();
+        }
+
+        return _instance;
+    }
+
+    /**
+     * Creates an eviction manager with the default tiers. Applications use the
+     * shared instance; separate managers are for simulations, which call
+     * evict() directly.
+     */
+    public EvictionManager() {
+    }
+
+    /**
+     * Sets the eviction policy and target of a memory pressure level
+     *
+     * @param priority
+     *            The LowMemoryListener priority of the level
+     * @param policy
+     *            One of the POLICY_ constants
+     * @param targetBytes
+     *            The number of bytes to release at this level
+     */
+    public synchronized void setTier(final int priority, final int policy,
+            final int targetBytes) {
+        if (policy < POLICY_LRU || policy > POLICY_AGE || targetBytes < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        final int tier = getTier(priority);
+        _policies[tier] = policy;
+        _targets[tier] = targetBytes;
+    }
+
+    /**
+     * Registers a store. The manager starts listening to the Low Memory
+     * Manager when the first store is registered.
+     *
+     * @param store
+     *            The store to register
+     */
+    public synchronized void register(final Evictable store) {
+        if (_stores.contains(store)) {
+            return;
+        }
+
+        _stores.addElement(store);
+        if (_stores.size() == 1 && this == _instance) {
+            LowMemoryManager.addLowMemoryListener(this);
+        }
+    }
+
+    /**
+     * Unregisters a store. The manager stops listening to the Low Memory
+     * Manager when the last store is unregistered.
+     *
+     * @param store
+     *            The store to unregister
+     */
+    public synchronized void unregister(final Evictable store) {
+        if (_stores.removeElement(store) && _stores.isEmpty()
+                && this == _instance) {
+            LowMemoryManager.removeLowMemoryListener(this);
+        }
+    }
+
+    /**
+     * @see net.rim.device.api.lowmemory.LowMemoryListener#freeStaleObject(int)
+     */
+    public boolean freeStaleObject(final int priority) {
+        return evict(priority) > 0;
+    }
+
+    /**
+     * Evicts entries according to the tier of a memory pressure level
+     *
+     * @param priority
+     *            The LowMemoryListener priority of the memory pressure
+     * @return The approximate number of bytes released
+     */
+    public synchronized int evict(final int priority) {
+        final int tier = getTier(priority);
+        final EvictionCandidates candidates = _candidates;
+
+        for (int i = 0; i < _stores.size(); ++i) {
+            final Evictable store = (Evictable) _stores.elementAt(i);
+            candidates.setStore(store);
+            store.collectCandidates(priority, candidates);
+        }
+        candidates.sort(_policies[tier]);
+
+        // Evict in policy order until the target is met, remembering which
+        // stores to notify
+        final Vector evictedStores = new Vector();
+        int freed = 0;
+        int count = 0;
+        for (int i = 0; i < candidates.size() && freed < _targets[tier]; ++i) {
+            final Evictable store = candidates.getStore(i);
+            final int bytes = store.evict(candidates.getKey(i));
+            if (bytes <= 0) {
+                continue;
+            }
+
+            freed += bytes;
+            ++count;
+            addBytesFreed(store, bytes);
+            if (!evictedStores.contains(store)) {
+                evictedStores.addElement(store);
+            }
+        }
+        candidates.clear();
+
+        for (int i = 0; i < evictedStores.size(); ++i) {
+            ((Evictable) evictedStores.elementAt(i)).evictionFinished(priority);
+        }
+
+        _bytesFreed += freed;
+        _evictionCount += count;
+        _lastBytesFreed = freed;
+        _lastEvictionCount = count;
+
+        return freed;
+    }
+
+    /**
+     * Retrieves the total number of bytes released since the manager was
+     * created
+     *
+     * @return The number of bytes released
+     */
+    public synchronized long getBytesFreed() {
+        return _bytesFreed;
+    }
+
+    /**
+     * Retrieves the number of bytes evicting a store's entries has released
+     * since the manager was created
+     *
+     * @param store
+     *            The store
+     * @return The number of bytes released
+     */
+    public synchronized long getBytesFreed(final Evictable store) {
+        final long[] bytes = (long[]) _bytesFreedByStore.get(store);
+        return bytes == null ? 0 : bytes[0];
+    }
+
+    /**
+     * Retrieves the total number of entries evicted since the manager was
+     * created
+     *
+     * @return The number of evictions
+     */
+    public synchronized int getEvictionCount() {
+        return _evictionCount;
+    }
+
+    /**
+     * Retrieves the number of bytes released by the last call to evict()
+     *
+     * @return The number of bytes released
+     */
+    public synchronized int getLastBytesFreed() {
+        return _lastBytesFreed;
+    }
+
+    /**
+     * Retrieves the number of entries evicted by the last call to evict()
+     *
+     * @return The number of evictions
+     */
+    public synchronized int getLastEvictionCount() {
+        return _lastEvictionCount;
+    }
+
+    /**
+     * Retrieves the name of an eviction policy
+     *
+     * @param policy
+     *            One of the POLICY_ constants
+     * @return The name of the policy
+     */
+    public static String getPolicyName(final int policy) {
+        return POLICY_NAMES[policy];
+    }
+
+    /**
+     * Adds to the number of bytes released from a store
+     */
+    private void addBytesFreed(final Evictable store, final int bytes) {
+        long[] total = (long[]) _bytesFreedByStore.get(store);
+        if (total == null) {
+            total = new long[1];
+            _bytesFreedByStore.put(store, total);
+        }
+        total[0] += bytes;
+    }
+
+    /**
+     * Retrieves the tier of a memory pressure level
+     *
+     * @return The index of the tier in _policies and _targets
+     */
+    private static int getTier(final int priority) {
+        switch (priority) {
+        case LowMemoryListener.LOW_PRIORITY:
+            return 0;
+        case LowMemoryListener.MEDIUM_PRIORITY:
+            return 1;
+        case LowMemoryListener.HIGH_PRIORITY:
+            return 2;
+        default:
+            throw new IllegalArgumentException("Unknown priority " + priority);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * PressureTrace.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.evictionlib;
+
+import java.util.Vector;
+
+import net.rim.device.api.lowmemory.LowMemoryListener;
+
+/**
+ * A recorded sequence of memory pressure events, which can be replayed
+ * against an eviction manager to see how its tiers and policies behave. A
+ * trace is written one event per line as the time in milliseconds followed by
+ * LOW, MEDIUM or HIGH, for example "1500 MEDIUM". Blank lines and lines
+ * starting with '#' are ignored.
+ * <p>
+ * Events are replayed one after another without waiting; the times only
+ * label the events in the report.
+ */
+public final class PressureTrace {
+    private static final String[] PRIORITY_NAMES = { "LOW", "MEDIUM", "HIGH" };
+    private static final int[] PRIORITIES =
+            { LowMemoryListener.LOW_PRIORITY,
+                    LowMemoryListener.MEDIUM_PRIORITY,
+                    LowMemoryListener.HIGH_PRIORITY };
+
+    private final Vector _events = new Vector(); // long[] { time, priority }
+
+    /**
+     * Adds an event to the end of the trace
+     *
+     * @param time
+     *            The time of the event, in milliseconds
+     * @param priority
+     *            The LowMemoryListener priority of the event
+     */
+    public void add(final long time, final int priority) {
+        getPriorityName(priority); // Checks the priority
+        _events.addElement(new long[] { time, priority });
+    }
+
+    /**
+     * Retrieves the number of events in the trace
+     *
+     * @return The number of events
+     */
+    public int size() {
+        return _events.size();
+    }
+
+    /**
+     * Reads a trace from its text form
+     *
+     * @param text
+     *            The trace, one event per line
+     * @return The trace
+     * @throws IllegalArgumentException
+     *             If a line is not a valid event
+     */
+    public static PressureTrace parse(final String text) {
+        final PressureTrace trace = new PressureTrace();
+
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            }
+
+            final String line = text.substring(start, end).trim();
+            start = end + 1;
+            if (line.length() == 0 || line.charAt(0) == '#') {
+                continue;
+            }
+
+            final int space = line.indexOf(' ');
+            if (space < 0) {
+                throw new IllegalArgumentException("Bad event: " + line);
+            }
+
+            final long time;
+            try {
+                time = Long.parseLong(line.substring(0, space));
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException("Bad time: " + line);
+            }
+            trace.add(time, getPriority(line.substring(space + 1).trim()));
+        }
+
+        return trace;
+    }
+
+    /**
+     * Replays the trace against an eviction manager
+     *
+     * @param manager
+     *            The manager to replay the trace against
+     * @return A report of the bytes released and entries evicted at each
+     *         event, and in total
+     */
+    public String replay(final EvictionManager manager) {
+        final StringBuffer report = new StringBuffer();
+        long totalBytes = 0;
+        int totalEvictions = 0;
+
+        for (int i = 0; i < _events.size(); ++i) {
+            final long[] event = (long[]) _events.elementAt(i);
+            final int priority = (int) event[1];
+            final int bytes = manager.evict(priority);
+            final int evictions = manager.getLastEvictionCount();
+
+            totalBytes += bytes;
+            totalEvictions += evictions;
+            report.append(event[0]).append(" ms ").append(
+                    getPriorityName(priority)).append(": ").append(bytes)
+                    .append(" bytes, ").append(evictions).append(
+                            " evictions\n");
+        }
+
+        report.append("Total: ").append(totalBytes).append(" bytes, ").append(
+                totalEvictions).append(" evictions");
+        return report.toString();
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        final StringBuffer text = new StringBuffer();
+        for (int i = 0; i < _events.size(); ++i) {
+            final long[] event = (long[]) _events.elementAt(i);
+            text.append(event[0]).append(' ').append(
+                    getPriorityName((int) event[1])).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Retrieves the name of a priority
+     */
+    private static String getPriorityName(final int priority) {
+        for (int i = 0; i < PRIORITIES.length; ++i) {
+            if (PRIORITIES[i] == priority) {
+                return PRIORITY_NAMES[i];
+            }
+        }
+        throw new IllegalArgumentException("Unknown priority " + priority);
+    }
+
+    /**
+     * Retrieves the priority with a name
+     */
+    private static int getPriority(final String name) {
+        for (int i = 0; i < PRIORITY_NAMES.length; ++i) {
+            if (PRIORITY_NAMES[i].equals(name)) {
+                return PRIORITIES[i];
+            }
+        }
+        throw new IllegalArgumentException("Unknown priority " + name);
+    }
+}
@@ -26,13 +26,19 @@
 
 package com.rim.samples.device.keywordfilterdemo;
 
+import net.rim.device.api.util.StringUtilities;
+
 /**
- * A class to encapsulate data related to a given country of the world.
+ * A class to encapsulate data related to a given country of the world. The
+ * words of the country's name are worked out once, when the country is
+ * created, so that they don't have to be worked out again every time the
+ * country list is filtered.
  */
 public class Country {
     private final String _countryName;
     private final String _population;
     private final String _capitalCity;
+    private final String[] _keywords; // The words of the country's name
 
     /**
      * Constructs a Country
@@ -49,6 +55,7 @@ public class Country {
         _countryName = countryName;
         _population = population;
         _capitalCity = capitalCity;
+        _keywords = StringUtilities.stringToWords(countryName);
     }
 
     // Accessor methods---------------------------------------------------------
@@ -70,6 +77,15 @@ public class Country {
         return _capitalCity;
     }
 
+    /**
+     * Gets the words of the country's name
+     * 
+     * @return The words of the country's name
+     */
+    String[] getKeywords() {
+        return _keywords;
+    }
+
     /**
      * Gets the country's name
      * 
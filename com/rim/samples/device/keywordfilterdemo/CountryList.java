@@ -31,12 +31,15 @@ import java.util.Vector;
 import net.rim.device.api.collection.util.SortedReadableList;
 import net.rim.device.api.ui.component.KeywordProvider;
 import net.rim.device.api.util.Comparator;
-import net.rim.device.api.util.StringUtilities;
 
 /**
  * Instances of this SortedReadableList class will contain a list of countries
  * derived from a vector of Country objects passed into the constructor. The
  * class is also a KeywordProvider implementation.
+ * <p>
+ * The keywords of each country are worked out when the country is created, so
+ * filtering the list doesn't have to split every country's name into words
+ * again.
  */
 public class CountryList extends SortedReadableList implements KeywordProvider {
     /**
@@ -67,7 +70,7 @@ public class CountryList extends SortedReadableList implements KeywordProvider {
      */
     public String[] getKeywords(final Object element) {
         if (element instanceof Country) {
-            return StringUtilities.stringToWords(element.toString());
+            return ((Country) element).getKeywords();
         }
         return null;
     }
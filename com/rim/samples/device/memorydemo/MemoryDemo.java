@@ -29,6 +29,7 @@ package com.rim.samples.device.memorydemo;
 import java.util.Random;
 
 import net.rim.device.api.ui.UiApplication;
+import net.rim.device.api.ui.component.Dialog;
 
 /**
  * An application that demonstrates the use of best memory practices for
@@ -79,6 +80,20 @@ public final class MemoryDemo extends UiApplication {
         new MemoryDemo().enterEventDispatcher();
     }
 
+    /**
+     * Presents a dialog to the user with a given message
+     * 
+     * @param message
+     *            The text to display
+     */
+    static void errorDialog(final String message) {
+        UiApplication.getUiApplication().invokeLater(new Runnable() {
+            public void run() {
+                Dialog.alert(message);
+            }
+        });
+    }
+
     /**
      * Helper method that creates a random string of text.
      * 
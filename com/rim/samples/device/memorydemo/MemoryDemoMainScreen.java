@@ -26,14 +26,10 @@
 
 package com.rim.samples.device.memorydemo;
 
-import java.util.Calendar;
-import java.util.Date;
-
 import net.rim.device.api.command.Command;
 import net.rim.device.api.command.CommandHandler;
 import net.rim.device.api.command.ReadOnlyCommandMetadata;
 import net.rim.device.api.lowmemory.LowMemoryListener;
-import net.rim.device.api.lowmemory.LowMemoryManager;
 import net.rim.device.api.system.Characters;
 import net.rim.device.api.system.Display;
 import net.rim.device.api.ui.ContextMenu;
@@ -51,18 +47,27 @@ import net.rim.device.api.ui.container.MainScreen;
 import net.rim.device.api.ui.container.PopupScreen;
 import net.rim.device.api.util.StringProvider;
 
+import com.rim.samples.device.evictionlib.EvictionManager;
+import com.rim.samples.device.evictionlib.PressureTrace;
+import com.rim.samples.device.pagedlistlib.PagedListModel;
+
 /**
  * The main screen for the application.
  */
 public final class MemoryDemoMainScreen extends MainScreen implements
-        ListFieldCallback, LowMemoryListener {
+        ListFieldCallback {
     private final OrderList _orderList;
+    private final PagedListModel _rows; // The orders on or near the screen
     private final OrderListField _orderListField;
     private final UiApplication _app;
     private ProgressBarDialog _progressDialog;
 
     private static final int MAX_RECORDS = 1000;
 
+    // A memory pressure trace for the eviction manager to replay
+    private static final String PRESSURE_TRACE =
+            "0 LOW\n1000 MEDIUM\n2000 MEDIUM\n3000 LOW\n4000 HIGH\n";
+
     /**
      * Creates a new MemoryDemoMainScreen object
      */
@@ -73,19 +78,35 @@ public final class MemoryDemoMainScreen extends MainScreen implements
 
         // Get and display the order list.
         _orderList = OrderList.getInstance();
-        _orderListField = new OrderListField(_orderList.getNumOrderRecords());
+        _rows = new PagedListModel(_orderList);
+        _orderListField = new OrderListField(_rows.size());
         _orderListField.setCallback(this);
         add(_orderListField);
 
-        LowMemoryManager.addLowMemoryListener(this);
+        // Let the eviction manager remove stale orders when memory is low
+        _orderList.setEvictionListener(new Runnable() {
+            public void run() {
+                if (UiApplication.isEventDispatchThread()) {
+                    updateSize();
+                } else {
+                    _app.invokeLater(new Runnable() {
+                        public void run() {
+                            updateSize();
+                        }
+                    });
+                }
+            }
+        });
+        EvictionManager.getInstance().register(_orderList);
     }
 
     /**
      * @see net.rim.device.api.ui.Screen#onClose()
      */
     public boolean onClose() {
-        // Remove this screen as a low memory listener
-        LowMemoryManager.removeLowMemoryListener(this);
+        // Stop evicting orders on behalf of this screen
+        EvictionManager.getInstance().unregister(_orderList);
+        _orderList.setEvictionListener(null);
 
         // Commit the order list to persistent store
         _orderList.commit();
@@ -117,20 +138,31 @@ public final class MemoryDemoMainScreen extends MainScreen implements
         return super.keyChar(key, status, time);
     }
 
+    /**
+     * Discards the cached rows and updates the size of the list field to the
+     * number of order records
+     */
+    private void updateSize() {
+        _rows.invalidate();
+        _orderListField.setSize(_rows.size());
+    }
+
     /**
      * Displays selected record in view mode
      */
     private void viewRecord(final int index) {
-        OrderRecord orderRecord =
-                (OrderRecord) /* outer. */get(_orderListField, index);
+        // Edit a copy of its own rather than the cached row
+        OrderRecord orderRecord = _orderList.getOrderRecordAt(index);
         final MemoryDemoOrderScreen screen =
                 new MemoryDemoOrderScreen(orderRecord, false);
         _app.pushModalScreen(screen);
         orderRecord = screen.getUpdatedOrderRecord();
 
         if (orderRecord != null) {
-            _orderList.replaceOrderRecordAt(_orderListField.getSelectedIndex(),
-                    orderRecord);
+            _orderListField.setSelectedIndex(_orderList.replaceOrderRecordAt(
+                    _orderListField.getSelectedIndex(), orderRecord));
+            _rows.invalidate();
+            _orderListField.invalidate();
         }
     }
 
@@ -142,8 +174,7 @@ public final class MemoryDemoMainScreen extends MainScreen implements
      */
     public void drawListRow(final ListField listField, final Graphics graphics,
             final int index, final int y, final int width) {
-        final Object object = get(listField, index);
-        graphics.drawText(object.toString(), 0, y, 0, width);
+        graphics.drawText(_rows.getText(index), 0, y, 0, width);
     }
 
     /**
@@ -158,7 +189,7 @@ public final class MemoryDemoMainScreen extends MainScreen implements
      *      int)
      */
     public Object get(final ListField listField, final int index) {
-        return _orderList.getOrderRecordAt(index);
+        return _rows.get(index);
     }
 
     /**
@@ -170,86 +201,6 @@ public final class MemoryDemoMainScreen extends MainScreen implements
         return -1; // Not implemented.
     }
 
-    // LowMemoryListener methods
-    // -------------------------------------------------------------------
-
-    /**
-     * This method is called when the system is running low on memory.
-     * Applications should mark some objects as recoverable, depending on the
-     * priority, in order to free up some memory.
-     * 
-     * @param priority
-     *            The priority of the memory cleanup.
-     * 
-     * @return True if any objects were marked as recoverable; otherwise false.
-     * 
-     * @see net.rim.device.api.lowmemory.LowMemoryListener#freeStaleObject(int)
-     */
-    public boolean freeStaleObject(final int priority) {
-        boolean freedData = false;
-
-        switch (priority) {
-        case LowMemoryListener.LOW_PRIORITY: {
-            // Low priority; application should consider releasing transitory
-            // variables and
-            // any variables that are currently unnecessary for complete
-            // functionality, such as
-            // cached data. This sample application does not cache any
-            // variables, so no data
-            // is recovered.
-            break;
-        }
-
-        case LowMemoryListener.MEDIUM_PRIORITY: {
-            // Medium priority; application should consider removing stale data,
-            // such as
-            // very old email messages or old calendar appointments. This
-            // application traverses
-            // the list of order records, and removes any that occurred more
-            // than 15 years ago,
-            // i.e., very old (stale) order records.
-            final int numYearsAgo = 15;
-
-            final Calendar calendar = Calendar.getInstance();
-            calendar.setTime(new Date());
-            final int year = calendar.get(Calendar.YEAR);
-            calendar.set(Calendar.YEAR, year - numYearsAgo);
-            freedData =
-                    _orderList.removeStaleOrderRecords(calendar.getTime()
-                            .getTime());
-            _orderListField.setSize(_orderList.getNumOrderRecords());
-
-            break;
-        }
-
-        case LowMemoryListener.HIGH_PRIORITY: {
-            // High priority; application should remove objects on a Least
-            // Recently Used basis.
-            // The application should remove *all* its stale objects to reduce
-            // the amount of
-            // memory consumed on the handheld. This application traverses the
-            // list of customer
-            // records, and removes any that haven't been accessed in the last
-            // 10 years,
-            // i.e., the least recently used customer records.
-            final int numYearsAgo = 10;
-
-            final Calendar calendar = Calendar.getInstance();
-            calendar.setTime(new Date());
-            final int year = calendar.get(Calendar.YEAR);
-            calendar.set(Calendar.YEAR, year - numYearsAgo);
-            freedData =
-                    _orderList.removeStaleOrderRecords(calendar.getTime()
-                            .getTime());
-            _orderListField.setSize(_orderList.getNumOrderRecords());
-
-            break;
-        }
-        }
-
-        return freedData;
-    }
-
     /**
      * List field that has a custom context menu
      */
@@ -279,6 +230,7 @@ public final class MemoryDemoMainScreen extends MainScreen implements
                 contextMenu.addItem(new SimulateLmmLow());
                 contextMenu.addItem(new SimulateLmmMedium());
                 contextMenu.addItem(new SimulateLmmHigh());
+                contextMenu.addItem(new ReplayPressureTrace());
             }
 
             if (getSize() < /* outer. */MAX_RECORDS) {
@@ -328,15 +280,17 @@ public final class MemoryDemoMainScreen extends MainScreen implements
                 public void execute(final ReadOnlyCommandMetadata metadata,
                         final Object context) {
                     OrderRecord orderRecord =
-                            (OrderRecord) /* outer. */get(_orderListField,
-                                    _index);
+                            _orderList.getOrderRecordAt(_index);
                     final MemoryDemoOrderScreen screen =
                             new MemoryDemoOrderScreen(orderRecord, true);
                     _app.pushModalScreen(screen);
                     orderRecord = screen.getUpdatedOrderRecord();
 
                     if (orderRecord != null) {
-                        _orderList.replaceOrderRecordAt(_index, orderRecord);
+                        _orderListField.setSelectedIndex(_orderList
+                                .replaceOrderRecordAt(_index, orderRecord));
+                        _rows.invalidate();
+                        _orderListField.invalidate();
                     }
                 }
             }));
@@ -360,12 +314,8 @@ public final class MemoryDemoMainScreen extends MainScreen implements
                 public void execute(final ReadOnlyCommandMetadata metadata,
                         final Object context) {
                     if (Dialog.ask(Dialog.D_DELETE) == Dialog.DELETE) {
-
-                        final OrderRecord orderRecord =
-                                (OrderRecord) get(_orderListField, _index);
-                        _orderList.deleteOrderRecord(orderRecord);
-                        _orderListField
-                                .setSize(_orderList.getNumOrderRecords());
+                        _orderList.deleteOrderRecordAt(_index);
+                        updateSize();
                     }
                 }
             }));
@@ -387,7 +337,7 @@ public final class MemoryDemoMainScreen extends MainScreen implements
                         final Object context) {
                     if (Dialog.ask(Dialog.D_DELETE) == Dialog.DELETE) {
                         _orderList.deleteAllOrderRecords();
-                        _orderListField.setSize(0);
+                        updateSize();
                     }
                 }
             }));
@@ -419,8 +369,7 @@ public final class MemoryDemoMainScreen extends MainScreen implements
                             UiApplication.getUiApplication().invokeLater(
                                     new Runnable() {
                                         public void run() {
-                                            _orderListField.setSize(_orderList
-                                                    .getNumOrderRecords());
+                                            updateSize();
                                         }
                                     });
                         }
@@ -434,7 +383,7 @@ public final class MemoryDemoMainScreen extends MainScreen implements
      * A clas that creates a popup dialog box containing a gauge field to
      * display the progress as the list is populated.
      */
-    static class ProgressBarDialog implements CountAndSortListener {
+    static class ProgressBarDialog implements PopulateListener {
         private final DialogFieldManager _manager;
         private final PopupScreen _popupScreen;
         private final GaugeField _gaugeField;
@@ -468,7 +417,7 @@ public final class MemoryDemoMainScreen extends MainScreen implements
         }
 
         /**
-         * @see com.rim.samples.device.memorydemo.CountAndSortListener#counterUpdated(int)
+         * @see com.rim.samples.device.memorydemo.PopulateListener#counterUpdated(int)
          */
         public void counterUpdated(final int counter) {
             // Update _gaugeField if at least one percent of the records have
@@ -488,24 +437,9 @@ public final class MemoryDemoMainScreen extends MainScreen implements
         }
 
         /**
-         * @see com.rim.samples.device.memorydemo.CountAndSortListener#sortingStarted()
+         * @see com.rim.samples.device.memorydemo.PopulateListener#populateFinished()
          */
-        public void sortingStarted() {
-            // Remove _gaugeField and change the text displayed on _popupScreen
-            // to
-            // "Sorting records..." .
-            UiApplication.getUiApplication().invokeLater(new Runnable() {
-                public void run() {
-                    _manager.deleteCustomField(_gaugeField);
-                    _lbfield.setText("Sorting records...");
-                }
-            });
-        }
-
-        /**
-         * @see com.rim.samples.device.memorydemo.CountAndSortListener#sortingStarted()
-         */
-        public void sortingFinished() {
+        public void populateFinished() {
             // Remove _popupScreen from the stack
             UiApplication.getUiApplication().invokeLater(new Runnable() {
                 public void run() {
@@ -532,7 +466,8 @@ public final class MemoryDemoMainScreen extends MainScreen implements
                  */
                 public void execute(final ReadOnlyCommandMetadata metadata,
                         final Object context) {
-                    freeStaleObject(LowMemoryListener.LOW_PRIORITY);
+                    EvictionManager.getInstance().freeStaleObject(
+                            LowMemoryListener.LOW_PRIORITY);
                 }
             }));
         }
@@ -555,7 +490,8 @@ public final class MemoryDemoMainScreen extends MainScreen implements
                  */
                 public void execute(final ReadOnlyCommandMetadata metadata,
                         final Object context) {
-                    freeStaleObject(LowMemoryListener.MEDIUM_PRIORITY);
+                    EvictionManager.getInstance().freeStaleObject(
+                            LowMemoryListener.MEDIUM_PRIORITY);
                 }
             }));
         }
@@ -578,7 +514,33 @@ public final class MemoryDemoMainScreen extends MainScreen implements
                  */
                 public void execute(final ReadOnlyCommandMetadata metadata,
                         final Object context) {
-                    freeStaleObject(LowMemoryListener.HIGH_PRIORITY);
+                    EvictionManager.getInstance().freeStaleObject(
+                            LowMemoryListener.HIGH_PRIORITY);
+                }
+            }));
+        }
+    }
+
+    /**
+     * A menu item to replay a sequence of low memory events against the
+     * eviction manager and show how much memory each one released.
+     */
+    private final class ReplayPressureTrace extends MenuItem {
+        /**
+         * Creates a new ReplayPressureTrace object
+         */
+        private ReplayPressureTrace() {
+            super(new StringProvider("Replay Pressure Trace"), 0x330030, 8);
+            this.setCommand(new Command(new CommandHandler() {
+                /**
+                 * @see net.rim.device.api.command.CommandHandler#execute(ReadOnlyCommandMetadata,
+                 *      Object)
+                 */
+                public void execute(final ReadOnlyCommandMetadata metadata,
+                        final Object context) {
+                    final PressureTrace trace =
+                            PressureTrace.parse(PRESSURE_TRACE);
+                    Dialog.inform(trace.replay(EvictionManager.getInstance()));
                 }
             }));
         }
@@ -586,10 +548,9 @@ public final class MemoryDemoMainScreen extends MainScreen implements
 }
 
 /**
- * Listener for when a count is updated, when sorting has started and when
- * sorting had finished.
+ * Listener for when a count is updated and when populating has finished.
  */
-interface CountAndSortListener {
+interface PopulateListener {
     /**
      * Called when the counter is updated
      * 
@@ -599,12 +560,7 @@ interface CountAndSortListener {
     public void counterUpdated(int counter);
 
     /**
-     * Called when sorting is started
-     */
-    public void sortingStarted();
-
-    /**
-     * Called when sorting is finished
+     * Called when all the records have been added
      */
-    public void sortingFinished();
+    public void populateFinished();
 }
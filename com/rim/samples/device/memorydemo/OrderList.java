@@ -26,24 +26,39 @@
 
 package com.rim.samples.device.memorydemo;
 
+import java.io.IOException;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.Vector;
 
+import net.rim.device.api.lowmemory.LowMemoryListener;
 import net.rim.device.api.lowmemory.LowMemoryManager;
-import net.rim.device.api.system.ObjectGroup;
 import net.rim.device.api.system.PersistentObject;
 import net.rim.device.api.system.PersistentStore;
-import net.rim.device.api.util.Comparator;
-import net.rim.device.api.util.SimpleSortingVector;
+
+import com.rim.samples.device.evictionlib.Evictable;
+import com.rim.samples.device.evictionlib.EvictionCandidates;
+import com.rim.samples.device.pagedlistlib.PagedListSource;
 
 /**
- * Represents a list of order records for a fictional business.
+ * Represents a list of order records for a fictional business. The records
+ * are held column by column in an OrderStore, in chronological order, and a
+ * snapshot of the store is kept in the persistent store. However many records
+ * there are, they only take a single persistent object handle.
+ * <p>
+ * Under medium memory pressure, orders more than 15 years old may be evicted,
+ * and under high pressure orders more than 10 years old. They are offered to
+ * the eviction manager in 30 day periods.
+ * <p>
+ * The list is also the source of the main screen's PagedListModel, so only
+ * the orders on screen are copied out of the store.
  */
-public final class OrderList {
+public final class OrderList implements Evictable, PagedListSource {
     // Members
     // -------------------------------------------------------------------------------------
     private final PersistentObject _persist;
-    private Vector _orderRecords;
+    private OrderStore _orderStore;
+    private Runnable _evictionListener; // Told when orders have been evicted.
 
     // Statics
     // -------------------------------------------------------------------------------------
@@ -53,19 +68,46 @@ public final class OrderList {
     // -----------------------------------------------------------------------------------
     private static final long PERSIST = 0x53fd5dae400aaccL; // com.rim.samples.device.memorydemo
     private static final int MAX_NUM_ORDERED = 100;
+    private static final long EVICTION_PERIOD = 30L * 24 * 60 * 60 * 1000;
+    private static final int ORDER_BYTES = 20; // Approximate size of an order.
+    private static final int MEDIUM_PRIORITY_YEARS = 15;
+    private static final int HIGH_PRIORITY_YEARS = 10;
 
     /**
-     * This constructor ensures that a persistent object is in place to store
-     * order records.
+     * This constructor loads the order records from the persistent store.
+     * Records saved by earlier versions of this application as a Vector of
+     * OrderRecord objects are moved into an order store.
      */
     public OrderList() {
         _persist = PersistentStore.getPersistentObject(PERSIST);
-        _orderRecords = (Vector) _persist.getContents();
+        final Object contents = _persist.getContents();
+
+        if (contents instanceof byte[]) {
+            try {
+                _orderStore = OrderStore.fromByteArray((byte[]) contents);
+            } catch (final IOException e) {
+                MemoryDemo.errorDialog("Could not read the order records: "
+                        + e.toString());
+            }
+        } else if (contents instanceof Vector) {
+            final Vector orderRecords = (Vector) contents;
+            _orderStore = new OrderStore();
+
+            for (int i = 0; i < orderRecords.size(); ++i) {
+                final OrderRecord orderRecord =
+                        (OrderRecord) orderRecords.elementAt(i);
+                _orderStore.add(orderRecord.getDate(), orderRecord
+                        .getCompany(), orderRecord.getProduct(), orderRecord
+                        .getNumOrdered());
+            }
 
-        if (_orderRecords == null) {
-            _orderRecords = new Vector();
-            _persist.setContents(_orderRecords);
-            _persist.commit();
+            commit();
+            LowMemoryManager.markAsRecoverable(orderRecords);
+        }
+
+        if (_orderStore == null) {
+            _orderStore = new OrderStore();
+            commit();
         }
     }
 
@@ -87,220 +129,233 @@ public final class OrderList {
      * 
      * @return The number of order records.
      */
-    int getNumOrderRecords() {
-        return _orderRecords.size();
+    synchronized int getNumOrderRecords() {
+        return _orderStore.size();
     }
 
     /**
-     * Retrieves the order record at the specified index.
+     * Retrieves the order record at the specified index. The record is a copy;
+     * changes to it are saved with replaceOrderRecordAt().
      * 
      * @param index
      *            The index of the order record to retrieve.
      * @return The retrieved order record.
      */
-    OrderRecord getOrderRecordAt(final int index) {
-        return (OrderRecord) _orderRecords.elementAt(index);
+    synchronized OrderRecord getOrderRecordAt(final int index) {
+        final OrderStore store = _orderStore;
+        return new OrderRecord(store.getDate(index), store.getCompany(index),
+                store.getProduct(index), store.getNumOrdered(index));
     }
 
     /**
      * Deletes an order record from the list.
      * 
-     * @param orderRecord
-     *            The order record to delete.
+     * @param index
+     *            The index of the order record to delete.
      */
-    synchronized void deleteOrderRecord(final OrderRecord orderRecord) {
-        _orderRecords.removeElement(orderRecord);
+    synchronized void deleteOrderRecordAt(final int index) {
+        _orderStore.remove(index);
     }
 
     /**
      * Deletes all order records from the list.
      */
     synchronized void deleteAllOrderRecords() {
-        _orderRecords = new Vector();
-        _persist.setContents(_orderRecords);
+        _orderStore.clear();
     }
 
     /**
      * Replaces an order record at a specified index with a new order record.
-     * The new order record is first encoded into an object group so that it
-     * only occupies one persistent object handle, no matter how many objects it
-     * actually refers to.
+     * The list is kept in chronological order, so the new record moves if its
+     * date is different.
      * 
      * @param index
      *            The index of the order record to replace.
      * @param newOrderRecord
      *            The new order record.
+     * @return The index of the new order record.
      */
-    synchronized void replaceOrderRecordAt(final int index,
+    synchronized int replaceOrderRecordAt(final int index,
             final OrderRecord newOrderRecord) {
-        ObjectGroup.createGroup(newOrderRecord);
-        _orderRecords.setElementAt(newOrderRecord, index);
+        _orderStore.remove(index);
+        _orderStore.add(newOrderRecord.getDate(), newOrderRecord.getCompany(),
+                newOrderRecord.getProduct(), newOrderRecord.getNumOrdered());
+        return _orderStore.indexAfter(newOrderRecord.getDate()) - 1;
     }
 
     /**
-     * Removes all orders that occurred before 'before', and notifies the low
-     * memory manager that their storage can be reclaimed.
+     * Sets the object to run after orders have been evicted because memory is
+     * low. It may be run on any thread.
      * 
-     * @param before
-     *            The cutoff date for deleting order records.
-     * @return True if any records are deleted; false otherwise.
+     * @param listener
+     *            The object to run, or null.
      */
-    synchronized boolean removeStaleOrderRecords(final long before) {
-        if (_orderRecords.size() == 0) {
-            return false;
-        }
-
-        // Sort the order records
-        _orderRecords = sortVector(_orderRecords); // Make sure records are in
-                                                   // order by date.
+    synchronized void setEvictionListener(final Runnable listener) {
+        _evictionListener = listener;
+    }
 
-        boolean freedData = false;
+    // PagedListSource methods
+    // -------------------------------------------------------------------
 
-        final Vector orderRecords = _orderRecords;
+    /**
+     * @see com.rim.samples.device.pagedlistlib.PagedListSource#size()
+     */
+    public synchronized int size() {
+        return _orderStore.size();
+    }
 
-        int i = 0;
-        while (((OrderRecord) orderRecords.elementAt(i)).getDate() < before) // Skip
-                                                                             // over
-                                                                             // all
-                                                                             // stale
-                                                                             // records.
-        {
-            ++i;
+    /**
+     * @see com.rim.samples.device.pagedlistlib.PagedListSource#load(int,
+     *      Object[], int)
+     */
+    public synchronized void load(final int start, final Object[] rows,
+            final int count) {
+        for (int i = 0; i < count; ++i) {
+            rows[i] = getOrderRecordAt(start + i);
         }
+    }
 
-        if (i > 0) {
-            final int numRecordsKept = orderRecords.size() - i;
-            _orderRecords = new Vector();
-
-            _persist.setContents(_orderRecords);
-
-            for (int j = 0; j < numRecordsKept; ++j) {
-                _orderRecords.addElement(orderRecords.elementAt(j + i));
-            }
-
-            LowMemoryManager.markAsRecoverable(orderRecords);
+    /**
+     * @see com.rim.samples.device.pagedlistlib.PagedListSource#format(Object)
+     */
+    public String format(final Object row) {
+        return row.toString();
+    }
 
-            freedData = true;
+    // Evictable methods
+    // -------------------------------------------------------------------
 
-            commit();
+    /**
+     * Offers the orders placed before the cutoff date for the priority, one
+     * candidate for each 30 day period. The candidate's key is the range of
+     * dates it covers.
+     * 
+     * @see com.rim.samples.device.evictionlib.Evictable#collectCandidates(int,
+     *      EvictionCandidates)
+     */
+    public synchronized void collectCandidates(final int priority,
+            final EvictionCandidates candidates) {
+        final int numYearsAgo;
+        switch (priority) {
+        case LowMemoryListener.MEDIUM_PRIORITY:
+            numYearsAgo = MEDIUM_PRIORITY_YEARS;
+            break;
+        case LowMemoryListener.HIGH_PRIORITY:
+            numYearsAgo = HIGH_PRIORITY_YEARS;
+            break;
+        default:
+            // The orders are all this application has; they are not given up
+            // at low priority.
+            return;
         }
 
-        return freedData;
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTime(new Date());
+        calendar.set(Calendar.YEAR, calendar.get(Calendar.YEAR) - numYearsAgo);
+        final long cutoff = calendar.getTime().getTime();
+
+        final OrderStore store = _orderStore;
+        final int end = store.indexAfter(cutoff - 1);
+        int index = 0;
+        while (index < end) {
+            final long date = store.getDate(index);
+            final long from = date - (date % EVICTION_PERIOD + EVICTION_PERIOD)
+                    % EVICTION_PERIOD;
+            final long to = Math.min(from + EVICTION_PERIOD, cutoff);
+            final int next = store.indexAfter(to - 1);
+
+            // Orders aren't tracked as they are viewed, so the date of the
+            // newest order in the period stands in for the last access
+            candidates.add(new long[] { from, to }, (next - index)
+                    * ORDER_BYTES, store.getDate(next - 1), 0, date);
+            index = next;
+        }
     }
 
     /**
-     * Sorts a Vector of order records.
+     * Removes the orders placed in a range of dates
      * 
-     * @param records
-     *            The Vector to be sorted.
-     * @return The sorted Vector.
+     * @see com.rim.samples.device.evictionlib.Evictable#evict(Object)
      */
-    private Vector sortVector(final Vector records) {
-        final SortableVector sortableVector = new SortableVector();
-
-        for (int i = 0; i < records.size(); ++i) {
-            sortableVector.addElement(records.elementAt(i));
+    public synchronized int evict(final Object key) {
+        final long[] range = (long[]) key;
+        final OrderStore store = _orderStore;
+        final int from = store.indexAfter(range[0] - 1);
+        final int count = store.indexAfter(range[1] - 1) - from;
+
+        if (from == 0) {
+            store.removeBefore(range[1]);
+        } else {
+            for (int i = 0; i < count; ++i) {
+                store.remove(from);
+            }
         }
 
-        sortableVector.reSort(); // Make sure records are in order by date.
+        return count * ORDER_BYTES;
+    }
 
-        for (int i = 0; i < sortableVector.size(); ++i) {
-            records.setElementAt(sortableVector.elementAt(i), i);
+    /**
+     * Commits the remaining orders and notifies the low memory manager that
+     * the previous snapshot can be reclaimed.
+     * 
+     * @see com.rim.samples.device.evictionlib.Evictable#evictionFinished(int)
+     */
+    public synchronized void evictionFinished(final int priority) {
+        // The previous snapshot is replaced by commit()
+        final Object snapshot = _persist.getContents();
+        commit();
+        LowMemoryManager.markAsRecoverable(snapshot);
+
+        if (_evictionListener != null) {
+            _evictionListener.run();
         }
-
-        return records;
     }
 
     /**
      * Commits the order records to the persistent store.
      */
     synchronized void commit() {
+        _persist.setContents(_orderStore.toByteArray());
         _persist.commit();
     }
 
     /**
      * Populates this order list with order records, each consisting of a random
-     * company, product, and number of products ordered.
+     * company, product, and number of products ordered. Each record is
+     * inserted at its chronological position as it is created, so the list
+     * is in order throughout and there is no separate sorting step.
      * 
      * @param totalRecords
      *            The number of records that should be in the list upon
      *            completion of this method.
      * @param listener
-     *            Object that listens for counting and sorting updates.
+     *            Object that listens for progress updates.
      */
     synchronized void populate(final int totalRecords,
-            final CountAndSortListener listener) {
-        final int numRecordsToAdd = totalRecords - _orderRecords.size();
+            final PopulateListener listener) {
+        final int numRecordsToAdd = totalRecords - _orderStore.size();
+        final long today = new Date().getTime();
 
         for (int i = 0; i < numRecordsToAdd; ++i) {
             listener.counterUpdated(i);
 
-            final long today = new Date().getTime();
             final long date = MemoryDemo.randomLongBetween(0, today);
             final String company = MemoryDemo.randomString();
             final String product = MemoryDemo.randomString();
             final int numOrdered =
                     MemoryDemo.randomIntBetween(1, MAX_NUM_ORDERED);
 
-            final OrderRecord orderRecord =
-                    new OrderRecord(date, company, product, numOrdered);
-            addOrderRecord(orderRecord);
+            _orderStore.add(date, company, product, numOrdered);
         }
 
-        listener.sortingStarted();
-
-        _orderRecords = sortVector(_orderRecords);
-
-        // Vector sorting is done.
-        listener.sortingFinished();
+        listener.populateFinished();
     }
 
     /**
      * Retrieves the number of records to be added to the order list.
      * 
      */
-    int getNumRecordsToAdd(final int totalRecords) {
-        return totalRecords - _orderRecords.size();
-    }
-
-    /**
-     * Helper method to add a new order record to the list. The order record is
-     * first encoded into an object group so that it only occupies one
-     * persistent object handle, no matter how many objects it actually refers
-     * to.
-     * 
-     * @param orderRecord
-     *            The order record to add.
-     */
-    private void addOrderRecord(final OrderRecord orderRecord) {
-        ObjectGroup.createGroup(orderRecord);
-        _orderRecords.addElement(orderRecord);
-    }
-
-    /**
-     * Implements a sortable vector which sorts based on chronological order.
-     */
-    final static class SortableVector extends SimpleSortingVector {
-        /**
-         * Creates a new SortableVector object
-         */
-        public SortableVector() {
-            setSortComparator(new Comparator() {
-                public int compare(final Object o1, final Object o2) {
-                    final OrderRecord r1 = (OrderRecord) o1;
-                    final OrderRecord r2 = (OrderRecord) o2;
-
-                    if (r1.getDate() < r2.getDate()) {
-                        return -1;
-                    }
-
-                    if (r1.getDate() > r2.getDate()) {
-                        return 1;
-                    }
-
-                    return 0;
-                }
-            });
-        }
+    synchronized int getNumRecordsToAdd(final int totalRecords) {
+        return totalRecords - _orderStore.size();
     }
 }
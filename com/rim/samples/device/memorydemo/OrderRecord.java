@@ -26,11 +26,10 @@
 
 package com.rim.samples.device.memorydemo;
 
-import java.util.Calendar;
-import java.util.Date;
-
 import net.rim.device.api.util.Persistable;
 
+import com.rim.samples.device.pagedlistlib.DateStrings;
+
 /**
  * Represents an order record for a fictional business.
  */
@@ -144,18 +143,11 @@ public final class OrderRecord implements Persistable {
      * @return The string representation.
      */
     public String toString() {
-        final Calendar calendar = Calendar.getInstance();
-        calendar.setTime(new Date(_date));
-
-        final int day = calendar.get(Calendar.DAY_OF_MONTH);
-        final int month = calendar.get(Calendar.MONTH) + 1;
-        final int year = calendar.get(Calendar.YEAR);
-
-        final StringBuffer buffer = new StringBuffer();
+        final StringBuffer buffer = new StringBuffer(64);
 
-        buffer.append(day).append('/').append(month).append('/').append(year)
-                .append(": ").append(_numOrdered).append(" ").append(_product)
-                .append("s from ").append(_company);
+        buffer.append(DateStrings.format(_date)).append(": ").append(
+                _numOrdered).append(" ").append(_product).append("s from ")
+                .append(_company);
 
         return buffer.toString();
     }
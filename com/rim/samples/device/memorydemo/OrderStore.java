@@ -0,0 +1,788 @@
+/*
+ * OrderStore.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.memorydemo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Hashtable;
+
+/**
+ * Stores order records column by column: the dates in long arrays, the
+ * companies and products as indices into a dictionary of distinct strings,
+ * and the numbers ordered in int arrays. A record costs about twenty bytes and
+ * no objects of its own, where an OrderRecord costs an object, two strings and
+ * an object handle.
+ * <p>
+ * The records are always in chronological order. They are split into chunks
+ * of up to CHUNK_CAPACITY records, so adding a record only moves records
+ * within one chunk: the chunk is found with a binary search on the chunks'
+ * last dates and the position within it with another. A full chunk is split
+ * in two. Removing the records before a date drops whole chunks and trims
+ * the chunk the date falls in, so it costs no more than the number of records
+ * removed.
+ * <p>
+ * The store can be written to a compact snapshot, which is what gets saved to
+ * the persistent store. It doesn't use any device APIs, so it can also be
+ * exercised off the device.
+ */
+final class OrderStore {
+    // Constants
+    // -----------------------------------------------------------------------------------
+    private static final int MAGIC = 0x4f524453; // "ORDS"
+    private static final int VERSION = 2; // Version 1 had unsigned quantities
+    private static final int CHUNK_CAPACITY = 256;
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Members
+    // -------------------------------------------------------------------------------------
+    private Chunk[] _chunks = new Chunk[INITIAL_CAPACITY];
+    private int _chunkCount; // Number of chunks in use.
+    private int[] _chunkStarts = new int[INITIAL_CAPACITY]; // First index in each chunk.
+    private int _validStarts; // Up-to-date _chunkStarts entries.
+    private int _size; // Number of orders in the store.
+
+    private String[] _strings = new String[INITIAL_CAPACITY]; // Dictionary.
+    private int[] _stringRefs = new int[INITIAL_CAPACITY]; // Uses of each string.
+    private int _stringCount; // Number of dictionary slots in use or freed.
+    private int[] _freeStrings = new int[INITIAL_CAPACITY]; // Freed slots.
+    private int _freeCount; // Number of freed dictionary slots.
+    private Hashtable _stringIndex = new Hashtable(); // String to Integer.
+
+    /**
+     * Retrieves the number of orders in the store
+     *
+     * @return The number of orders
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Retrieves the date of an order
+     *
+     * @param index
+     *            The index of the order
+     * @return The date the order was placed on
+     */
+    long getDate(final int index) {
+        final int c = chunkOf(index);
+        return _chunks[c].dates[index - _chunkStarts[c]];
+    }
+
+    /**
+     * Retrieves the company of an order
+     *
+     * @param index
+     *            The index of the order
+     * @return The company the order was placed with
+     */
+    String getCompany(final int index) {
+        final int c = chunkOf(index);
+        return _strings[_chunks[c].companies[index - _chunkStarts[c]]];
+    }
+
+    /**
+     * Retrieves the product of an order
+     *
+     * @param index
+     *            The index of the order
+     * @return The product that was ordered
+     */
+    String getProduct(final int index) {
+        final int c = chunkOf(index);
+        return _strings[_chunks[c].products[index - _chunkStarts[c]]];
+    }
+
+    /**
+     * Retrieves the number of units of an order
+     *
+     * @param index
+     *            The index of the order
+     * @return The number of units ordered
+     */
+    int getNumOrdered(final int index) {
+        final int c = chunkOf(index);
+        return _chunks[c].numOrdered[index - _chunkStarts[c]];
+    }
+
+    /**
+     * Adds an order at its chronological position, after any orders placed
+     * on the same date
+     *
+     * @param date
+     *            The date the order was placed on
+     * @param company
+     *            The company the order was placed with
+     * @param product
+     *            The product that was ordered
+     * @param numOrdered
+     *            The number of units ordered
+     */
+    void add(final long date, final String company, final String product,
+            final int numOrdered) {
+        add(date, intern(company), intern(product), numOrdered);
+    }
+
+    /**
+     * Adds an order whose strings are already in the dictionary
+     */
+    private void add(final long date, final int company, final int product,
+            final int numOrdered) {
+        if (_chunkCount == 0) {
+            insertChunk(0, new Chunk());
+        }
+
+        // Find the first chunk ending after the date; later dates go on the
+        // end of the last chunk
+        int c = 0;
+        int high = _chunkCount - 1;
+        while (c < high) {
+            final int mid = (c + high) >>> 1;
+            if (_chunks[mid].lastDate() <= date) {
+                c = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        Chunk chunk = _chunks[c];
+        int position = upperBound(chunk.dates, chunk.size, date);
+
+        if (chunk.size == CHUNK_CAPACITY) {
+            if (position == CHUNK_CAPACITY && c == _chunkCount - 1) {
+                // Orders added in sequence fill a fresh chunk rather than
+                // leaving a trail of half-full ones
+                chunk = new Chunk();
+                insertChunk(++c, chunk);
+                position = 0;
+            } else {
+                final Chunk upper = chunk.split();
+                insertChunk(c + 1, upper);
+                if (position > chunk.size) {
+                    position -= chunk.size;
+                    chunk = upper;
+                    ++c;
+                }
+            }
+        }
+
+        chunk.insert(position, date, company, product, numOrdered);
+        ++_size;
+        invalidateStarts(c + 1);
+    }
+
+    /**
+     * Removes an order
+     *
+     * @param index
+     *            The index of the order to remove
+     */
+    void remove(final int index) {
+        final int c = chunkOf(index);
+        final Chunk chunk = _chunks[c];
+        final int position = index - _chunkStarts[c];
+
+        release(chunk.companies[position]);
+        release(chunk.products[position]);
+        chunk.remove(position);
+        --_size;
+
+        if (chunk.size == 0) {
+            removeChunks(c, 1);
+        }
+        invalidateStarts(c + 1);
+    }
+
+    /**
+     * Removes every order
+     */
+    void clear() {
+        _chunks = new Chunk[INITIAL_CAPACITY];
+        _chunkCount = 0;
+        _chunkStarts = new int[INITIAL_CAPACITY];
+        _validStarts = 0;
+        _size = 0;
+
+        _strings = new String[INITIAL_CAPACITY];
+        _stringRefs = new int[INITIAL_CAPACITY];
+        _stringCount = 0;
+        _freeCount = 0;
+        _stringIndex = new Hashtable();
+    }
+
+    /**
+     * Removes all orders placed before a date. Every chunk ending before the
+     * date is dropped whole, and the chunk the date falls in loses the orders
+     * before it. Strings only used by the removed orders are dropped from the
+     * dictionary.
+     *
+     * @param before
+     *            The cutoff date
+     * @return The number of orders removed
+     */
+    int removeBefore(final long before) {
+        // Find the first chunk ending on or after the cutoff
+        int c = 0;
+        int high = _chunkCount;
+        while (c < high) {
+            final int mid = (c + high) >>> 1;
+            if (_chunks[mid].lastDate() < before) {
+                c = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        int removed = 0;
+        for (int i = 0; i < c; ++i) {
+            removed += releaseAll(_chunks[i], _chunks[i].size);
+        }
+        removeChunks(0, c);
+
+        if (_chunkCount > 0) {
+            final Chunk chunk = _chunks[0];
+            final int count = lowerBound(chunk.dates, chunk.size, before);
+            removed += releaseAll(chunk, count);
+            chunk.removeFirst(count);
+        }
+
+        _size -= removed;
+        invalidateStarts(0);
+        return removed;
+    }
+
+    /**
+     * Retrieves the index of the first order placed after a date. An order
+     * just added with add() is at the index before this.
+     *
+     * @param date
+     *            The date to search for
+     * @return The index of the first order placed after the date, or size()
+     *         if there is none
+     */
+    int indexAfter(final long date) {
+        ensureStarts(_chunkCount);
+
+        int c = 0;
+        int high = _chunkCount;
+        while (c < high) {
+            final int mid = (c + high) >>> 1;
+            if (_chunks[mid].lastDate() <= date) {
+                c = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        if (c == _chunkCount) {
+            return _size;
+        }
+        return _chunkStarts[c]
+                + upperBound(_chunks[c].dates, _chunks[c].size, date);
+    }
+
+    /**
+     * Writes the store to a byte array in the snapshot format: the dictionary
+     * followed by each column. After the first date, dates are written as the
+     * difference from the previous date, and every number is written with as
+     * few bytes as it needs, so apart from the dictionary a snapshot takes
+     * around ten bytes per order. The quantities ordered can be entered as
+     * negative numbers, so they are written zigzag encoded.
+     *
+     * @return The snapshot
+     */
+    byte[] toByteArray() {
+        final ByteArrayOutputStream bytes =
+                new ByteArrayOutputStream(64 + _size * 10);
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+
+            // Freed slots are written as empty strings, which nothing refers
+            // to
+            writeNumber(out, _stringCount);
+            for (int i = 0; i < _stringCount; ++i) {
+                out.writeUTF(_stringRefs[i] == 0 ? "" : _strings[i]);
+            }
+
+            writeNumber(out, _size);
+            long previous = _size > 0 ? _chunks[0].dates[0] : 0;
+            out.writeLong(previous);
+            for (int c = 0; c < _chunkCount; ++c) {
+                final Chunk chunk = _chunks[c];
+                for (int i = 0; i < chunk.size; ++i) {
+                    writeNumber(out, chunk.dates[i] - previous);
+                    previous = chunk.dates[i];
+                }
+            }
+            for (int c = 0; c < _chunkCount; ++c) {
+                final Chunk chunk = _chunks[c];
+                for (int i = 0; i < chunk.size; ++i) {
+                    writeNumber(out, chunk.companies[i]);
+                }
+            }
+            for (int c = 0; c < _chunkCount; ++c) {
+                final Chunk chunk = _chunks[c];
+                for (int i = 0; i < chunk.size; ++i) {
+                    writeNumber(out, chunk.products[i]);
+                }
+            }
+            for (int c = 0; c < _chunkCount; ++c) {
+                final Chunk chunk = _chunks[c];
+                for (int i = 0; i < chunk.size; ++i) {
+                    writeSignedNumber(out, chunk.numOrdered[i]);
+                }
+            }
+            out.flush();
+        } catch (final IOException e) {
+            // Writing to a byte array doesn't fail
+            throw new RuntimeException(e.toString());
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a store from a snapshot written by toByteArray()
+     *
+     * @param snapshot
+     *            The snapshot
+     * @return The store
+     * @throws IOException
+     *             If the snapshot is not valid
+     */
+    static OrderStore fromByteArray(final byte[] snapshot) throws IOException {
+        final DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(snapshot));
+
+        final int magic = in.readInt();
+        final byte version = in.readByte();
+        if (magic != MAGIC || version < 1 || version > VERSION) {
+            throw new IOException("Not an order store snapshot");
+        }
+
+        final OrderStore store = new OrderStore();
+        final int stringCount = (int) readNumber(in);
+        store._strings = new String[Math.max(1, stringCount)];
+        store._stringRefs = new int[store._strings.length];
+        for (int i = 0; i < stringCount; ++i) {
+            store._strings[i] = in.readUTF();
+        }
+        store._stringCount = stringCount;
+
+        // Read each column into a run of full chunks
+        final int size = (int) readNumber(in);
+        final int chunkCount = (size + CHUNK_CAPACITY - 1) / CHUNK_CAPACITY;
+        for (int c = 0; c < chunkCount; ++c) {
+            final Chunk chunk = new Chunk();
+            chunk.size = Math.min(CHUNK_CAPACITY, size - c * CHUNK_CAPACITY);
+            store.insertChunk(c, chunk);
+        }
+
+        long date = in.readLong();
+        for (int c = 0; c < chunkCount; ++c) {
+            final Chunk chunk = store._chunks[c];
+            for (int i = 0; i < chunk.size; ++i) {
+                date += readNumber(in);
+                chunk.dates[i] = date;
+            }
+        }
+        for (int c = 0; c < chunkCount; ++c) {
+            final Chunk chunk = store._chunks[c];
+            for (int i = 0; i < chunk.size; ++i) {
+                chunk.companies[i] = readIndex(in, stringCount);
+                ++store._stringRefs[chunk.companies[i]];
+            }
+        }
+        for (int c = 0; c < chunkCount; ++c) {
+            final Chunk chunk = store._chunks[c];
+            for (int i = 0; i < chunk.size; ++i) {
+                chunk.products[i] = readIndex(in, stringCount);
+                ++store._stringRefs[chunk.products[i]];
+            }
+        }
+        for (int c = 0; c < chunkCount; ++c) {
+            final Chunk chunk = store._chunks[c];
+            for (int i = 0; i < chunk.size; ++i) {
+                chunk.numOrdered[i] =
+                        version == 1 ? (int) readNumber(in)
+                                : readSignedNumber(in);
+            }
+        }
+        store._size = size;
+
+        // Index the strings in use and free the rest
+        for (int i = 0; i < stringCount; ++i) {
+            if (store._stringRefs[i] > 0) {
+                store._stringIndex.put(store._strings[i], new Integer(i));
+            } else {
+                store._strings[i] = null;
+                store.freeString(i);
+            }
+        }
+
+        return store;
+    }
+
+    /**
+     * Writes a non-negative number seven bits at a time, low bits first, with
+     * the top bit of each byte set if more bytes follow
+     */
+    private static void writeNumber(final DataOutputStream out, long value)
+            throws IOException {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+
+        while (value > 0x7f) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Reads a number written by writeNumber()
+     */
+    private static long readNumber(final DataInputStream in)
+            throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed number");
+    }
+
+    /**
+     * Writes a number that may be negative, zigzag encoded so that numbers
+     * close to zero take few bytes whatever their sign
+     */
+    private static void writeSignedNumber(final DataOutputStream out,
+            final int value) throws IOException {
+        writeNumber(out, (value << 1 ^ value >> 31) & 0xffffffffL);
+    }
+
+    /**
+     * Reads a number written by writeSignedNumber()
+     */
+    private static int readSignedNumber(final DataInputStream in)
+            throws IOException {
+        final int value = (int) readNumber(in);
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    /**
+     * Reads a dictionary index, checking that it refers to a string
+     */
+    private static int readIndex(final DataInputStream in,
+            final int stringCount) throws IOException {
+        final long index = readNumber(in);
+        if (index >= stringCount) {
+            throw new IOException("Bad string index " + index);
+        }
+        return (int) index;
+    }
+
+    /**
+     * Retrieves the dictionary index of a string, adding the string to the
+     * dictionary if it isn't there yet, and counts a new reference to it
+     */
+    private int intern(final String string) {
+        final Integer existing = (Integer) _stringIndex.get(string);
+        if (existing != null) {
+            ++_stringRefs[existing.intValue()];
+            return existing.intValue();
+        }
+
+        final int index;
+        if (_freeCount > 0) {
+            index = _freeStrings[--_freeCount];
+        } else {
+            if (_stringCount == _strings.length) {
+                final String[] strings = new String[_stringCount * 2];
+                System.arraycopy(_strings, 0, strings, 0, _stringCount);
+                _strings = strings;
+
+                final int[] refs = new int[_stringCount * 2];
+                System.arraycopy(_stringRefs, 0, refs, 0, _stringCount);
+                _stringRefs = refs;
+            }
+            index = _stringCount++;
+        }
+
+        _strings[index] = string;
+        _stringRefs[index] = 1;
+        _stringIndex.put(string, new Integer(index));
+        return index;
+    }
+
+    /**
+     * Drops a reference to a string, removing the string from the dictionary
+     * once nothing refers to it
+     */
+    private void release(final int index) {
+        if (--_stringRefs[index] == 0) {
+            _stringIndex.remove(_strings[index]);
+            _strings[index] = null;
+            freeString(index);
+        }
+    }
+
+    /**
+     * Drops the string references of the first orders of a chunk
+     *
+     * @return The number of orders
+     */
+    private int releaseAll(final Chunk chunk, final int count) {
+        for (int i = 0; i < count; ++i) {
+            release(chunk.companies[i]);
+            release(chunk.products[i]);
+        }
+        return count;
+    }
+
+    /**
+     * Makes a dictionary slot available for reuse
+     */
+    private void freeString(final int index) {
+        if (_freeCount == _freeStrings.length) {
+            final int[] free = new int[_freeCount * 2];
+            System.arraycopy(_freeStrings, 0, free, 0, _freeCount);
+            _freeStrings = free;
+        }
+        _freeStrings[_freeCount++] = index;
+    }
+
+    /**
+     * Retrieves the chunk holding an order
+     *
+     * @return The position of the chunk in _chunks
+     */
+    private int chunkOf(final int index) {
+        if (index < 0 || index >= _size) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        ensureStarts(_chunkCount);
+
+        int low = 0;
+        int high = _chunkCount - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (_chunkStarts[mid] <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Brings the first records of the chunks up to date. They are worked out
+     * lazily, so adding many orders in a row doesn't recount them every time.
+     */
+    private void ensureStarts(final int count) {
+        for (int c = _validStarts; c < count; ++c) {
+            _chunkStarts[c] =
+                    c == 0 ? 0 : _chunkStarts[c - 1] + _chunks[c - 1].size;
+        }
+        if (count > _validStarts) {
+            _validStarts = count;
+        }
+    }
+
+    /**
+     * Marks the first records of the chunks from the given one on as out of
+     * date
+     */
+    private void invalidateStarts(final int chunk) {
+        if (chunk < _validStarts) {
+            _validStarts = chunk;
+        }
+    }
+
+    /**
+     * Inserts a chunk into the chunk list
+     */
+    private void insertChunk(final int position, final Chunk chunk) {
+        if (_chunkCount == _chunks.length) {
+            final Chunk[] chunks = new Chunk[_chunkCount * 2];
+            System.arraycopy(_chunks, 0, chunks, 0, _chunkCount);
+            _chunks = chunks;
+            _chunkStarts = new int[_chunkCount * 2];
+            _validStarts = 0;
+        }
+
+        System.arraycopy(_chunks, position, _chunks, position + 1, _chunkCount
+                - position);
+        _chunks[position] = chunk;
+        ++_chunkCount;
+        invalidateStarts(position);
+    }
+
+    /**
+     * Removes a run of chunks from the chunk list
+     */
+    private void removeChunks(final int position, final int count) {
+        System.arraycopy(_chunks, position + count, _chunks, position,
+                _chunkCount - position - count);
+        for (int i = _chunkCount - count; i < _chunkCount; ++i) {
+            _chunks[i] = null;
+        }
+        _chunkCount -= count;
+        invalidateStarts(position);
+    }
+
+    /**
+     * Retrieves the position of the first date in a sorted run that is not
+     * before a date
+     */
+    private static int lowerBound(final long[] dates, final int size,
+            final long date) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (dates[mid] < date) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Retrieves the position of the first date in a sorted run that is after
+     * a date
+     */
+    private static int upperBound(final long[] dates, final int size,
+            final long date) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (dates[mid] <= date) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * A run of up to CHUNK_CAPACITY orders in chronological order
+     */
+    private static final class Chunk {
+        final long[] dates = new long[CHUNK_CAPACITY];
+        final int[] companies = new int[CHUNK_CAPACITY];
+        final int[] products = new int[CHUNK_CAPACITY];
+        final int[] numOrdered = new int[CHUNK_CAPACITY];
+        int size;
+
+        /**
+         * Retrieves the date of the last order in the chunk, which is the
+         * latest date in the chunk
+         */
+        long lastDate() {
+            return size == 0 ? Long.MIN_VALUE : dates[size - 1];
+        }
+
+        /**
+         * Inserts an order at a position, moving the orders after it along
+         */
+        void insert(final int position, final long date, final int company,
+                final int product, final int count) {
+            final int moved = size - position;
+            System.arraycopy(dates, position, dates, position + 1, moved);
+            System.arraycopy(companies, position, companies, position + 1,
+                    moved);
+            System.arraycopy(products, position, products, position + 1, moved);
+            System.arraycopy(numOrdered, position, numOrdered, position + 1,
+                    moved);
+
+            dates[position] = date;
+            companies[position] = company;
+            products[position] = product;
+            numOrdered[position] = count;
+            ++size;
+        }
+
+        /**
+         * Removes the order at a position
+         */
+        void remove(final int position) {
+            final int moved = size - position - 1;
+            System.arraycopy(dates, position + 1, dates, position, moved);
+            System.arraycopy(companies, position + 1, companies, position,
+                    moved);
+            System.arraycopy(products, position + 1, products, position, moved);
+            System.arraycopy(numOrdered, position + 1, numOrdered, position,
+                    moved);
+            --size;
+        }
+
+        /**
+         * Removes the first orders of the chunk
+         */
+        void removeFirst(final int count) {
+            final int moved = size - count;
+            System.arraycopy(dates, count, dates, 0, moved);
+            System.arraycopy(companies, count, companies, 0, moved);
+            System.arraycopy(products, count, products, 0, moved);
+            System.arraycopy(numOrdered, count, numOrdered, 0, moved);
+            size = moved;
+        }
+
+        /**
+         * Moves the upper half of the chunk's orders into a new chunk
+         *
+         * @return The new chunk
+         */
+        Chunk split() {
+            final Chunk upper = new Chunk();
+            final int keep = size / 2;
+            upper.size = size - keep;
+            System.arraycopy(dates, keep, upper.dates, 0, upper.size);
+            System.arraycopy(companies, keep, upper.companies, 0, upper.size);
+            System.arraycopy(products, keep, upper.products, 0, upper.size);
+            System.arraycopy(numOrdered, keep, upper.numOrdered, 0, upper.size);
+            size = keep;
+            return upper;
+        }
+    }
+}
@@ -183,12 +183,43 @@ public final class DemoMessage implements ApplicationMessage {
      * Sets the preview picture for this message
      * 
      * @param image
-     *            The desired preview picture of this message
+     *            The desired preview picture of this message, or null to
+     *            remove the picture
      */
     void setPreviewPicture(final EncodedImage image) {
         _previewPicture = image;
     }
 
+    /**
+     * Estimates the memory taken by this message's preview picture
+     * 
+     * @return The size of the encoded picture in bytes, or zero if there is
+     *         none
+     */
+    int getPreviewPictureSize() {
+        return _previewPicture == null ? 0 : _previewPicture.getLength();
+    }
+
+    /**
+     * Estimates the memory taken by this message: its strings at two bytes a
+     * character, its preview picture and the objects themselves
+     * 
+     * @return The approximate size of this message in bytes
+     */
+    int getSize() {
+        final int characters =
+                length(_sender) + length(_subject) + length(_message)
+                        + length(_replyMessage);
+        return 96 + 2 * characters + getPreviewPictureSize();
+    }
+
+    /**
+     * Retrieves the length of a string that may be null
+     */
+    private static int length(final String string) {
+        return string == null ? 0 : string.length();
+    }
+
     // Implementation of ApplicationMessage ------------------------------------
     /**
      * @see net.rim.blackberry.api.messagelist.ApplicationMessage#getContact()
@@ -421,6 +421,8 @@ public final class MessageListDemoDaemon extends Application implements
                     changeIndicator(-1);
                 }
 
+                MessageListDemoStore.getInstance().messageOpened(message);
+
                 // Show message
                 final DemoMessageScreen previewScreen =
                         new DemoMessageScreen(message);
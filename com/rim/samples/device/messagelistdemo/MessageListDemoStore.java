@@ -32,15 +32,32 @@ import net.rim.blackberry.api.messagelist.ApplicationIndicator;
 import net.rim.blackberry.api.messagelist.ApplicationIndicatorRegistry;
 import net.rim.blackberry.api.messagelist.ApplicationMessageFolder;
 import net.rim.device.api.collection.ReadableList;
+import net.rim.device.api.lowmemory.LowMemoryListener;
+import net.rim.device.api.system.Application;
 import net.rim.device.api.system.RuntimeStore;
 
+import com.rim.samples.device.evictionlib.AccessStatistics;
+import com.rim.samples.device.evictionlib.Evictable;
+import com.rim.samples.device.evictionlib.EvictionCandidates;
+import com.rim.samples.device.evictionlib.EvictionManager;
+
 /**
  * This class is used to facilitate the storage of messages. For the sake of
  * simplicitly, we are saving messages in the device runtime store. In a real
  * world situation, messages would be saved in device persistent store and/or on
  * a mail server.
+ * <p>
+ * When memory is low, the preview pictures of messages that have been read
+ * may be evicted. Under medium or high memory pressure, messages in the
+ * deleted folder may be evicted as well.
+ * <p>
+ * The store is shared by the simulator thread, the folder listeners and the
+ * low memory manager's thread, so its methods are synchronized on the store.
+ * Callers that read the message lists and then act on them lock the store
+ * for the whole operation. Folder notifications for evicted messages are
+ * posted to the event thread of the application that created the store.
  */
-public final class MessageListDemoStore {
+public final class MessageListDemoStore implements Evictable {
     // com.rim.samples.device.messagelistdemo.MessageListDemoStore
     private static final long MSG_KEY = 0xcf2b552e0e98a715L;
 
@@ -51,6 +68,8 @@ public final class MessageListDemoStore {
     private ApplicationMessageFolder _mainFolder;
     private ApplicationMessageFolder _deletedFolder;
     private final ApplicationIndicator _indicator;
+    private final AccessStatistics _statistics;
+    private final Application _application;
 
     /**
      * Creates a new MessageListDemoStore object
@@ -61,6 +80,10 @@ public final class MessageListDemoStore {
         _indicator =
                 ApplicationIndicatorRegistry.getInstance()
                         .getApplicationIndicator();
+        _statistics = new AccessStatistics();
+        _application = Application.getApplication();
+
+        EvictionManager.getInstance().register(this);
     }
 
     /**
@@ -94,7 +117,7 @@ public final class MessageListDemoStore {
      * @param deletedFolder
      *            The deleted folder to use
      */
-    void setFolders(final ApplicationMessageFolder mainFolder,
+    synchronized void setFolders(final ApplicationMessageFolder mainFolder,
             final ApplicationMessageFolder deletedFolder) {
         _mainFolder = mainFolder;
         _deletedFolder = deletedFolder;
@@ -105,7 +128,7 @@ public final class MessageListDemoStore {
      * 
      * @return The inbox folder
      */
-    ApplicationMessageFolder getInboxFolder() {
+    synchronized ApplicationMessageFolder getInboxFolder() {
         return _mainFolder;
     }
 
@@ -114,7 +137,7 @@ public final class MessageListDemoStore {
      * 
      * @return The deleted folder
      */
-    ApplicationMessageFolder getDeletedFolder() {
+    synchronized ApplicationMessageFolder getDeletedFolder() {
         return _deletedFolder;
     }
 
@@ -124,7 +147,7 @@ public final class MessageListDemoStore {
      * @param message
      *            The message to move to the deleted folder
      */
-    void deleteInboxMessage(final DemoMessage message) {
+    synchronized void deleteInboxMessage(final DemoMessage message) {
         if (message.isNew()) {
             // Update indicator
             _indicator.setValue(_indicator.getValue() - 1);
@@ -156,8 +179,9 @@ public final class MessageListDemoStore {
      * @param message
      *            The message to add to the inbox
      */
-    void addInboxMessage(final DemoMessage message) {
+    synchronized void addInboxMessage(final DemoMessage message) {
         _inboxMessages.addMessage(message);
+        _statistics.add(message);
 
         if (message.isNew()) {
             // Update indicator
@@ -175,8 +199,20 @@ public final class MessageListDemoStore {
      * @param message
      *            The message to delete from the message store
      */
-    void deleteMessageCompletely(final DemoMessage message) {
+    synchronized void deleteMessageCompletely(final DemoMessage message) {
         _deletedMessages.removeMessage(message);
+        _statistics.remove(message);
+    }
+
+    /**
+     * Records that a message has been opened, so that the messages used least
+     * can be evicted first when memory is low
+     * 
+     * @param message
+     *            The message that was opened
+     */
+    synchronized void messageOpened(final DemoMessage message) {
+        _statistics.touch(message);
     }
 
     /**
@@ -197,6 +233,100 @@ public final class MessageListDemoStore {
         return _deletedMessages;
     }
 
+    // Evictable methods
+    // -------------------------------------------------------------------
+
+    /**
+     * Offers the preview pictures of read inbox messages, and above low
+     * priority the messages in the deleted folder. Both are keyed by the
+     * message.
+     * 
+     * @see com.rim.samples.device.evictionlib.Evictable#collectCandidates(int,
+     *      EvictionCandidates)
+     */
+    public synchronized void collectCandidates(final int priority,
+            final EvictionCandidates candidates) {
+        for (int i = _inboxMessages.size() - 1; i >= 0; --i) {
+            final DemoMessage message =
+                    (DemoMessage) _inboxMessages.getAt(i);
+            final int size = message.getPreviewPictureSize();
+            if (size > 0 && !message.isNew()) {
+                candidates.add(message, size, _statistics);
+            }
+        }
+
+        if (priority != LowMemoryListener.LOW_PRIORITY) {
+            for (int i = _deletedMessages.size() - 1; i >= 0; --i) {
+                final DemoMessage message =
+                        (DemoMessage) _deletedMessages.getAt(i);
+                candidates.add(message, message.getSize(), _statistics);
+            }
+        }
+    }
+
+    /**
+     * Removes a message from the deleted folder, or the preview picture of a
+     * message in the inbox. The folder is notified on the event thread.
+     * 
+     * @see com.rim.samples.device.evictionlib.Evictable#evict(Object)
+     */
+    public synchronized int evict(final Object key) {
+        final DemoMessage message = (DemoMessage) key;
+
+        if (_deletedMessages.getIndex(message) != -1) {
+            final int size = message.getSize();
+            deleteMessageCompletely(message);
+            if (_deletedFolder != null) {
+                fireLater(_deletedFolder, message, true);
+            }
+            return size;
+        }
+
+        final int size = message.getPreviewPictureSize();
+        if (size > 0 && _inboxMessages.getIndex(message) != -1) {
+            message.setPreviewPicture(null);
+            if (_mainFolder != null) {
+                fireLater(_mainFolder, message, false);
+            }
+            return size;
+        }
+
+        return 0;
+    }
+
+    /**
+     * @see com.rim.samples.device.evictionlib.Evictable#evictionFinished(int)
+     */
+    public synchronized void evictionFinished(final int priority) {
+        // Messages are only kept in the runtime store, so there is nothing to
+        // commit.
+    }
+
+    /**
+     * Notifies a folder that a message was removed or updated. Eviction runs
+     * on the low memory manager's thread, while the message list expects to
+     * be notified on the event thread.
+     * 
+     * @param folder
+     *            The folder holding the message
+     * @param message
+     *            The message that changed
+     * @param removed
+     *            True if the message was removed, false if it was updated
+     */
+    private void fireLater(final ApplicationMessageFolder folder,
+            final DemoMessage message, final boolean removed) {
+        _application.invokeLater(new Runnable() {
+            public void run() {
+                if (removed) {
+                    folder.fireElementRemoved(message);
+                } else {
+                    folder.fireElementUpdated(message, message);
+                }
+            }
+        });
+    }
+
     /**
      * This is an implementation of the ReadableList interface which stores the
      * list of messages using a Vector.
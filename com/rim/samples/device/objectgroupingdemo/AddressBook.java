@@ -33,12 +33,32 @@ import net.rim.device.api.system.PersistentObject;
 import net.rim.device.api.system.PersistentStore;
 import net.rim.device.api.system.RuntimeStore;
 
+import com.rim.samples.device.evictionlib.AccessStatistics;
+import com.rim.samples.device.evictionlib.Evictable;
+import com.rim.samples.device.evictionlib.EvictionCandidates;
+import com.rim.samples.device.evictionlib.EvictionManager;
+
 /**
  * This class represents the AddressBook implementation where one can add,
  * remove, update and traverse the different address book records stored in the
  * address book.
+ * <p>
+ * Each change is committed to the persistent store straight away unless it is
+ * made inside a batch. Between beginBatch() and endBatch(), changed records are
+ * left ungrouped and uncommitted; they are grouped and committed together when
+ * the batch ends, or every few hundred changes if the batch is a long one, so
+ * an import of many records costs a handful of commits instead of one each.
+ * <p>
+ * Records changed in a batch take an object handle for each of their strings
+ * until they are grouped. When memory runs low, these records are offered for
+ * eviction, least recently used first; evicting one groups it straight away
+ * rather than at the next flush. The records themselves are never given up,
+ * and nothing is committed until the batch ends as usual.
+ * <p>
+ * The low memory manager calls into the address book on its own thread, so
+ * the address book's methods are synchronized.
  */
-public class AddressBook {
+public class AddressBook implements Evictable {
     private static final long PERSIST = 0x72ea07b090aac4a0L; // com.rim.samples.device.objectgroupingdemo
     private static final long ADDRESS_BOOK = 0xdc33b15c18be898fL; // com.rim.samples.device.objectgroupingdemo.AddressBook.ADDRESS_BOOK
 
@@ -47,6 +67,16 @@ public class AddressBook {
                                              // book
     private Vector _records; // The Vector of address book records that make up
                              // the address book
+    private final AccessStatistics _statistics; // When each record was used
+    private final Vector _ungrouped = new Vector(); // Records changed since the
+                                                    // last flush
+    private int _batchDepth; // Number of unfinished beginBatch() calls
+    private int _pendingChanges; // Changes since the last flush
+    private int _autoFlushInterval = DEFAULT_AUTO_FLUSH_INTERVAL;
+
+    private static final int GROUPING_SAVING = 64; // Bytes saved by grouping
+                                                   // a record and its strings
+    private static final int DEFAULT_AUTO_FLUSH_INTERVAL = 500;
 
     /**
      * Simple constructor for the class that will initialize the _records Vector
@@ -62,6 +92,13 @@ public class AddressBook {
             _records = new Vector();
             _persist.setContents(_records);
         }
+
+        _statistics = new AccessStatistics();
+        for (int i = 0; i < _records.size(); ++i) {
+            _statistics.add(_records.elementAt(i));
+        }
+
+        EvictionManager.getInstance().register(this);
     }
 
     /**
@@ -91,15 +128,16 @@ public class AddressBook {
      *            The address book record to add Note: This method does not
      *            perform any duplicate detection.
      */
-    void add(final AddressBookRecord record) {
+    synchronized void add(final AddressBookRecord record) {
         if (record == null) {
             throw new IllegalArgumentException();
         }
 
-        // Be sure to group the record before adding it to the address book
-        ObjectGroup.createGroup(record);
+        // The record is grouped when the changes are flushed
         _records.addElement(record);
-        _persist.commit();
+        _statistics.add(record);
+        _ungrouped.addElement(record);
+        changed();
     }
 
     /**
@@ -111,7 +149,7 @@ public class AddressBook {
      * @param newRecord
      *            The record to use for the data to update the oldRecord
      */
-    void update(final AddressBookRecord oldRecord,
+    synchronized void update(final AddressBookRecord oldRecord,
             final AddressBookRecord newRecord) {
         if (oldRecord == null || newRecord == null) {
             throw new IllegalArgumentException();
@@ -124,18 +162,27 @@ public class AddressBook {
             throw new IllegalArgumentException();
         }
 
-        // Ungroup the old record
-        final AddressBookRecord ungroupedRecord =
-                (AddressBookRecord) ObjectGroup.expandGroup(_records
-                        .elementAt(index));
+        // Ungroup the old record, unless it was changed earlier in this batch
+        // and hasn't been grouped yet
+        final Object oldElement = _records.elementAt(index);
+        final boolean grouped = ObjectGroup.isInGroup(oldElement);
+        AddressBookRecord ungroupedRecord = (AddressBookRecord) oldElement;
+        if (grouped) {
+            ungroupedRecord =
+                    (AddressBookRecord) ObjectGroup.expandGroup(oldElement);
+        }
 
         ungroupedRecord.setTitle(newRecord.getTitle());
         ungroupedRecord.setFirstName(newRecord.getFirstName());
         ungroupedRecord.setLastName(newRecord.getLastName());
 
-        ObjectGroup.createGroup(ungroupedRecord);
+        _statistics.remove(oldElement);
         _records.setElementAt(ungroupedRecord, index);
-        _persist.commit();
+        _statistics.touch(ungroupedRecord);
+        if (grouped) {
+            _ungrouped.addElement(ungroupedRecord);
+        }
+        changed();
     }
 
     /**
@@ -144,23 +191,112 @@ public class AddressBook {
      * @param record
      *            The record to remove
      */
-    void remove(final AddressBookRecord record) {
+    synchronized void remove(final AddressBookRecord record) {
         if (record == null) {
             throw new IllegalArgumentException();
         }
 
-        _records.removeElement(record);
-        _persist.commit();
+        final int index = _records.indexOf(record);
+        if (index != -1) {
+            final Object element = _records.elementAt(index);
+            _statistics.remove(element);
+            _records.removeElementAt(index);
+            removeUngrouped(element);
+        }
+        changed();
     }
 
     /**
      * Removes all records from the address book
      */
-    void removeAll() {
+    synchronized void removeAll() {
         _records.removeAllElements();
+        _statistics.clear();
+        _ungrouped.removeAllElements();
+        changed();
+    }
+
+    /**
+     * Starts a batch of changes. Changes made until the matching call to
+     * endBatch() are committed together. Batches may be nested, in which case
+     * the changes are committed when the outermost batch ends.
+     */
+    synchronized void beginBatch() {
+        ++_batchDepth;
+    }
+
+    /**
+     * Ends a batch of changes, grouping and committing the changed records if
+     * this is the outermost batch
+     * 
+     * @throws IllegalStateException
+     *             Thrown if no batch has been started
+     */
+    synchronized void endBatch() {
+        if (_batchDepth == 0) {
+            throw new IllegalStateException();
+        }
+
+        if (--_batchDepth == 0) {
+            flush();
+        }
+    }
+
+    /**
+     * Sets how many changes a batch may make before they are grouped and
+     * committed without waiting for the batch to end. This bounds the number
+     * of ungrouped objects, and so of object handles, a long import uses.
+     * 
+     * @param changes
+     *            The number of changes between commits, or zero to commit
+     *            only when the batch ends
+     */
+    synchronized void setAutoFlushInterval(final int changes) {
+        if (changes < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        _autoFlushInterval = changes;
+    }
+
+    /**
+     * Groups the records changed since the last flush and commits the address
+     * book to the persistent store
+     */
+    synchronized void flush() {
+        for (int i = 0; i < _ungrouped.size(); ++i) {
+            ObjectGroup.createGroup(_ungrouped.elementAt(i));
+        }
+        _ungrouped.removeAllElements();
+        _pendingChanges = 0;
         _persist.commit();
     }
 
+    /**
+     * Flushes a change straight away outside a batch, or once enough changes
+     * have built up inside one
+     */
+    private void changed() {
+        ++_pendingChanges;
+        if (_batchDepth == 0 || _autoFlushInterval > 0
+                && _pendingChanges >= _autoFlushInterval) {
+            flush();
+        }
+    }
+
+    /**
+     * Stops tracking a record that is no longer in the address book. Records
+     * are compared by content, so this looks for this very record.
+     */
+    private void removeUngrouped(final Object record) {
+        for (int i = 0; i < _ungrouped.size(); ++i) {
+            if (_ungrouped.elementAt(i) == record) {
+                _ungrouped.removeElementAt(i);
+                return;
+            }
+        }
+    }
+
     /**
      * Returns the address book record specified by the index
      * 
@@ -171,12 +307,14 @@ public class AddressBook {
      * @throws IllegalArgumentException
      *             Thrown if the index is invalid
      */
-    AddressBookRecord getRecord(final int index) {
+    synchronized AddressBookRecord getRecord(final int index) {
         if (index < 0 || index >= _records.size()) {
             throw new IllegalArgumentException();
         }
 
-        return (AddressBookRecord) _records.elementAt(index);
+        final Object record = _records.elementAt(index);
+        _statistics.touch(record);
+        return (AddressBookRecord) record;
     }
 
     /**
@@ -184,7 +322,48 @@ public class AddressBook {
      * 
      * @return The number of records currently stored in the address book
      */
-    int size() {
+    synchronized int size() {
         return _records.size();
     }
+
+    /**
+     * Offers the records changed in the current batch that haven't been
+     * grouped yet
+     * 
+     * @see com.rim.samples.device.evictionlib.Evictable#collectCandidates(int,
+     *      EvictionCandidates)
+     */
+    public synchronized void collectCandidates(final int priority,
+            final EvictionCandidates candidates) {
+        for (int i = 0; i < _ungrouped.size(); ++i) {
+            candidates.add(_ungrouped.elementAt(i), GROUPING_SAVING,
+                    _statistics);
+        }
+    }
+
+    /**
+     * Groups a record that hasn't been grouped yet. The record stays in the
+     * address book and is committed when the batch ends.
+     * 
+     * @see com.rim.samples.device.evictionlib.Evictable#evict(Object)
+     */
+    public synchronized int evict(final Object key) {
+        // Records are compared by content, so look for this very record
+        for (int i = 0; i < _ungrouped.size(); ++i) {
+            if (_ungrouped.elementAt(i) == key) {
+                ObjectGroup.createGroup(key);
+                _ungrouped.removeElementAt(i);
+                return GROUPING_SAVING;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @see com.rim.samples.device.evictionlib.Evictable#evictionFinished(int)
+     */
+    public void evictionFinished(final int priority) {
+        // Nothing to do: the records grouped early are committed along with
+        // the rest of the batch when it ends
+    }
 }
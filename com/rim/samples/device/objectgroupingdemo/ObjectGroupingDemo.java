@@ -32,7 +32,8 @@ import net.rim.device.api.system.ObjectGroupReadOnlyException;
 /**
  * This class contains the starting point for this demo and shows how grouping
  * and ungrouping should work. As well, it shows how an exception is thrown if
- * an object is grouped and the application attempts to modify it.
+ * an object is grouped and the application attempts to modify it, and how a
+ * batch of changes is grouped and committed in one go.
  */
 public class ObjectGroupingDemo {
     /**
@@ -85,5 +86,21 @@ public class ObjectGroupingDemo {
 
         // Clear up the address book to remove remaining entries
         addressBook.remove(myRecord);
+
+        // Import a batch of records. They are grouped and committed together
+        // when the batch ends rather than one at a time.
+        addressBook.beginBatch();
+        try {
+            for (int i = 0; i < 100; ++i) {
+                addressBook.add(new AddressBookRecord("", "First" + i, "Last"
+                        + i));
+            }
+        } finally {
+            addressBook.endBatch();
+        }
+        System.out.println("Imported " + addressBook.size()
+                + " records in one batch");
+
+        addressBook.removeAll();
     }
 }
@@ -0,0 +1,317 @@
+/*
+ * CompiledLevel.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.openglspritegamedemo;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a level compiled by LevelCompiler. The file holds the same objects
+ * as the level XML, already split into numbers, with the tiles grouped into
+ * chunks of CHUNK_WIDTH columns and sorted from left to right. The character,
+ * goal and enemies are read when the level is opened; tile chunks are read
+ * one at a time, so a large level can be streamed in as the character moves
+ * through it.
+ * <p>
+ * All positions are in level units, as in the XML. The file layout is:
+ *
+ * <pre>
+ * int    MAGIC
+ * short  VERSION
+ * short  texture count, followed by each texture name (UTF)
+ * float  level width, level height
+ * float  min tile x, min tile y, max tile x, max tile y, max tile scale
+ * object character, object goal
+ * short  enemy count, followed by each enemy:
+ *        object enemy
+ *        byte   animation count, followed by each animation:
+ *               byte type, byte curve, int repeat, long duration,
+ *               short frames, float[frames] times,
+ *               float[frames * values per frame] values
+ * int    tile count
+ * int    chunk count, followed by each chunk's min x (float) and tile count (int)
+ * object[tile count] tiles, in chunk order
+ *
+ * where object is: short texture, float x, float y, float scale
+ * </pre>
+ */
+final class CompiledLevel {
+    /** Identifies a compiled level file ("SGLV") */
+    static final int MAGIC = 0x53474C56;
+
+    /** Holds the version of the file format */
+    static final short VERSION = 1;
+
+    /** Holds the file extension of compiled levels */
+    static final String EXTENSION = ".lvl";
+
+    /** Holds the width, in level units, of a tile chunk */
+    static final int CHUNK_WIDTH = 16;
+
+    /** Animation types */
+    static final int ANIMATION_TRANSLATE = 0;
+    static final int ANIMATION_ROTATE = 1;
+    static final int ANIMATION_SCALE = 2;
+
+    /** Animation curves */
+    static final int CURVE_LINEAR = 0;
+
+    /**
+     * Receives the objects read from a compiled level
+     */
+    static interface Handler {
+        /**
+         * Called for the level's character
+         */
+        void character(String texture, float x, float y, float scale);
+
+        /**
+         * Called for the level's goal
+         */
+        void goal(String texture, float x, float y, float scale);
+
+        /**
+         * Called for each enemy, before the enemy's animations
+         */
+        void enemy(String texture, float x, float y, float scale);
+
+        /**
+         * Called for each animation of the most recent enemy
+         *
+         * @param values
+         *            The key values, two per frame for translations and one
+         *            per frame otherwise
+         */
+        void animation(int type, int keyframes, float[] keyTimes,
+                float[] values, long duration, int curve, int repeat);
+
+        /**
+         * Called for each tile as its chunk is read
+         */
+        void tile(String texture, float x, float y, float scale);
+    }
+
+    private final DataInputStream _in;
+    private final Handler _handler;
+    private final String[] _textures;
+
+    private final float _levelWidth;
+    private final float _levelHeight;
+    private final float _minTileX;
+    private final float _minTileY;
+    private final float _maxTileX;
+    private final float _maxTileY;
+    private final float _maxTileScale;
+
+    private final int _tileCount;
+    private final float[] _chunkX;
+    private final int[] _chunkSizes;
+    private int _chunksRead;
+
+    /**
+     * Opens a compiled level, reading everything except the tiles
+     *
+     * @param in
+     *            The level file
+     * @param handler
+     *            Receives the level's objects now and its tiles as chunks are
+     *            read
+     * @throws IOException
+     *             if the file can't be read or isn't a compiled level
+     */
+    CompiledLevel(final InputStream in, final Handler handler)
+            throws IOException {
+        _in = new DataInputStream(in);
+        _handler = handler;
+
+        if (_in.readInt() != MAGIC || _in.readShort() != VERSION) {
+            throw new IOException("Not a compiled level");
+        }
+
+        _textures = new String[_in.readShort()];
+        for (int i = 0; i < _textures.length; i++) {
+            _textures[i] = _in.readUTF();
+        }
+
+        _levelWidth = _in.readFloat();
+        _levelHeight = _in.readFloat();
+        _minTileX = _in.readFloat();
+        _minTileY = _in.readFloat();
+        _maxTileX = _in.readFloat();
+        _maxTileY = _in.readFloat();
+        _maxTileScale = _in.readFloat();
+
+        _handler.character(_textures[_in.readShort()], _in.readFloat(), _in
+                .readFloat(), _in.readFloat());
+        _handler.goal(_textures[_in.readShort()], _in.readFloat(), _in
+                .readFloat(), _in.readFloat());
+
+        final int enemyCount = _in.readShort();
+        for (int i = 0; i < enemyCount; i++) {
+            _handler.enemy(_textures[_in.readShort()], _in.readFloat(), _in
+                    .readFloat(), _in.readFloat());
+
+            final int animationCount = _in.readByte();
+            for (int j = 0; j < animationCount; j++) {
+                readAnimation();
+            }
+        }
+
+        _tileCount = _in.readInt();
+        final int chunkCount = _in.readInt();
+        _chunkX = new float[chunkCount];
+        _chunkSizes = new int[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            _chunkX[i] = _in.readFloat();
+            _chunkSizes[i] = _in.readInt();
+        }
+    }
+
+    /**
+     * Reads an animation and passes it to the handler
+     */
+    private void readAnimation() throws IOException {
+        final int type = _in.readByte();
+        final int curve = _in.readByte();
+        final int repeat = _in.readInt();
+        final long duration = _in.readLong();
+        final int keyframes = _in.readShort();
+
+        final float[] keyTimes = new float[keyframes];
+        for (int i = 0; i < keyframes; i++) {
+            keyTimes[i] = _in.readFloat();
+        }
+
+        final float[] values =
+                new float[keyframes * (type == ANIMATION_TRANSLATE ? 2 : 1)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = _in.readFloat();
+        }
+
+        _handler.animation(type, keyframes, keyTimes, values, duration, curve,
+                repeat);
+    }
+
+    /**
+     * Reads the next chunk of tiles, passing each tile to the handler
+     *
+     * @return False if every chunk had already been read
+     * @throws IOException
+     *             if the file can't be read
+     */
+    boolean readChunk() throws IOException {
+        if (_chunksRead == _chunkX.length) {
+            return false;
+        }
+
+        final int count = _chunkSizes[_chunksRead++];
+        for (int i = 0; i < count; i++) {
+            _handler.tile(_textures[_in.readShort()], _in.readFloat(), _in
+                    .readFloat(), _in.readFloat());
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves the position of the next chunk to be read
+     *
+     * @return The smallest tile x position in the next chunk, or
+     *         Float.MAX_VALUE if every chunk has been read
+     */
+    float getNextChunkX() {
+        return _chunksRead == _chunkX.length ? Float.MAX_VALUE
+                : _chunkX[_chunksRead];
+    }
+
+    /**
+     * Closes the level file
+     */
+    void close() {
+        try {
+            _in.close();
+        } catch (final IOException e) {
+            // Nothing left to read
+        }
+    }
+
+    /**
+     * @return The number of tiles in the level
+     */
+    int getTileCount() {
+        return _tileCount;
+    }
+
+    /**
+     * @return The level width, as computed when loading the XML
+     */
+    float getLevelWidth() {
+        return _levelWidth;
+    }
+
+    /**
+     * @return The level height, as computed when loading the XML
+     */
+    float getLevelHeight() {
+        return _levelHeight;
+    }
+
+    /**
+     * @return The smallest tile x position
+     */
+    float getMinTileX() {
+        return _minTileX;
+    }
+
+    /**
+     * @return The smallest tile y position
+     */
+    float getMinTileY() {
+        return _minTileY;
+    }
+
+    /**
+     * @return The largest tile x position
+     */
+    float getMaxTileX() {
+        return _maxTileX;
+    }
+
+    /**
+     * @return The largest tile y position
+     */
+    float getMaxTileY() {
+        return _maxTileY;
+    }
+
+    /**
+     * @return The largest tile scale
+     */
+    float getMaxTileScale() {
+        return _maxTileScale;
+    }
+}
@@ -0,0 +1,600 @@
+/*
+ * GameSimulation.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.openglspritegamedemo;
+
+import net.rim.device.api.animation.AbstractAnimation;
+import net.rim.device.api.animation.Animation;
+import net.rim.device.api.animation.AnimationListener;
+import net.rim.device.api.animation.Animator;
+import net.rim.device.api.math.Transform3D;
+import net.rim.device.api.math.Vector3f;
+import net.rim.device.api.util.TimeSource;
+
+/**
+ * Runs the game logic (input, character movement, collision detection and
+ * animations) in fixed time steps on its own thread, independently of the
+ * frame rate.
+ * <p>
+ * After every step the state the renderer needs is published as a
+ * SimulationSnapshot. Three snapshots are used: the one the renderer is
+ * reading, the latest published one and the one being written. A snapshot is
+ * handed over by a volatile reference, so neither thread ever waits for the
+ * other.
+ * <p>
+ * The simulation is deterministic: all animations run off a clock that only
+ * advances with the steps, so replaying an InputRecording reproduces a game
+ * exactly. replay() does so without a display, for performance regression
+ * tests.
+ */
+final class GameSimulation implements Runnable, AnimationListener {
+    /** Holds the length of a simulation step in milliseconds */
+    static final long STEP = 16L;
+
+    /** Input flags, see setHeldInput() and queueInput() */
+    static final int INPUT_LEFT = 0x01;
+    static final int INPUT_RIGHT = 0x02;
+    static final int INPUT_JUMP = 0x04;
+    static final int INPUT_SHRINK = 0x08;
+
+    /**
+     * Holds the most steps run at once to catch up. If the simulation falls
+     * further behind than this, the missed time is dropped rather than
+     * slowing down every following frame.
+     */
+    private static final int MAX_CATCH_UP_STEPS = 5;
+
+    /** Holds how far the character moves per step while a move key is held */
+    private static final float STEP_MOVE = STEP * 60 / 1000.0f;
+
+    /** Holds the list of levels */
+    private static final String[] LEVEL_NAMES = { "/levelone.lvl",
+            "/leveltwo.lvl" };
+
+    /**
+     * A time source that only advances with the simulation steps
+     */
+    private static final class SimulationClock extends TimeSource {
+        private long _time;
+
+        /**
+         * @see net.rim.device.api.util.TimeSource#getTime()
+         */
+        public long getTime() {
+            return _time;
+        }
+
+        /**
+         * Moves the clock forward
+         *
+         * @param time
+         *            The time to advance by, in milliseconds
+         */
+        void advance(final long time) {
+            _time += time;
+        }
+    }
+
+    /** Holds the clock driving the animator */
+    private final SimulationClock _clock = new SimulationClock();
+
+    /** Holds the animator used to update the game's animations */
+    private final Animator _animator;
+
+    /** Holds the win sprite */
+    private final Sprite _win;
+
+    /** Holds the win animation */
+    private final Animation _winAnimation;
+
+    /** Holds whether or not the win sprite should be rendered */
+    private boolean _renderWin = false;
+
+    /** Holds the lose sprite */
+    private final Sprite _lose;
+
+    /** Holds the lose animation */
+    private final Animation _loseAnimation;
+
+    /** Holds whether or not the lose sprite should be rendered */
+    private boolean _renderLose = false;
+
+    /** Holds the game's current level */
+    private SpriteGameLevel _level;
+
+    /** Holds the name of the current level */
+    private String _levelName;
+
+    /** Holds the index of the next level to load */
+    private int _nextLevel = 0;
+
+    /** Holds the moving sprites of the current level, in snapshot order */
+    private Sprite[] _sprites;
+
+    /** Holds the level _sprites was built for */
+    private SpriteGameLevel _spritesLevel;
+
+    /** Holds the number of steps run */
+    private int _step;
+
+    /** Holds the held input flags, set by the UI thread */
+    private volatile int _heldInput;
+
+    /** Holds the one-shot input flags queued since the last step */
+    private int _queuedInput;
+
+    /** Holds the trackpad movement queued since the last step */
+    private int _queuedMove;
+
+    /** Holds the recording being made, or the recording being replayed */
+    private InputRecording _recording;
+
+    /** Holds whether input comes from _recording */
+    private boolean _isReplaying;
+
+    /** Holds the snapshots; see the class description */
+    private final SimulationSnapshot[] _snapshots = { new SimulationSnapshot(),
+            new SimulationSnapshot(), new SimulationSnapshot() };
+
+    /** Holds the latest published snapshot */
+    private volatile SimulationSnapshot _published;
+
+    /** Holds the snapshot the renderer is reading */
+    private volatile SimulationSnapshot _inUse;
+
+    /** Holds the thread running the simulation */
+    private Thread _thread;
+
+    /** Holds whether the simulation thread should keep running */
+    private volatile boolean _isRunning;
+
+    /** Holds the time taken by the steps */
+    private final TimingStats _stepStats = new TimingStats();
+
+    /** Holds the number of steps dropped because the simulation fell behind */
+    private int _droppedSteps;
+
+    /**
+     * Creates a new GameSimulation object and loads the first level
+     */
+    GameSimulation() {
+        _animator = new Animator(0, _clock);
+
+        final Vector3f translation = new Vector3f(-40.0f, -4.0f, 0.0f);
+
+        // Set up the win sprite
+        _win = new Sprite("win.png");
+        _win._transform.setScale(new Vector3f(5.0f, 5.0f, 5.0f));
+        _win._transform.setTranslation(translation);
+
+        // Set up the lose sprite
+        _lose = new Sprite("lose.png");
+        _lose._transform.setScale(new Vector3f(5.0f, 5.0f, 5.0f));
+        _lose._transform.setTranslation(translation);
+
+        // Set up the win animation
+        _winAnimation =
+                _animator.addAnimation(_win._transform,
+                        Transform3D.ANIMATION_PROPERTY_TRANSLATE, 4,
+                        new float[] { 0.0f, 0.2f, 0.8f, 1.0f }, 0, new float[] {
+                                -40.0f, -4.0f, 0.0f, 0.0f, -4.0f, 0.0f, 0.0f,
+                                -4.0f, 0.0f, 20.0f, -4.0f, 0.0f }, 0,
+                        Animation.EASINGCURVE_LINEAR, 1750L);
+        _winAnimation.setRepeatCount(1);
+        _winAnimation.setListener(this);
+
+        // set up the lose animation
+        _loseAnimation =
+                _animator.addAnimation(_lose._transform,
+                        Transform3D.ANIMATION_PROPERTY_TRANSLATE, 4,
+                        new float[] { 0.0f, 0.2f, 0.8f, 1.0f }, 0, new float[] {
+                                -40.0f, -4.0f, 0.0f, 0.0f, -4.0f, 0.0f, 0.0f,
+                                -4.0f, 0.0f, 20.0f, -4.0f, 0.0f }, 0,
+                        Animation.EASINGCURVE_LINEAR, 1750L);
+        _loseAnimation.setRepeatCount(1);
+        _loseAnimation.setListener(this);
+
+        loadLevel();
+        publish(System.currentTimeMillis());
+    }
+
+    /**
+     * Starts the simulation thread
+     */
+    synchronized void start() {
+        if (_thread == null) {
+            _isRunning = true;
+            _thread = new Thread(this);
+            _thread.start();
+        }
+    }
+
+    /**
+     * Stops the simulation thread and waits for it to finish
+     */
+    void stop() {
+        final Thread thread;
+        synchronized (this) {
+            thread = _thread;
+            _thread = null;
+            _isRunning = false;
+        }
+
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                // The thread will finish on its own
+            }
+        }
+    }
+
+    /**
+     * @see java.lang.Runnable#run()
+     */
+    public void run() {
+        long next = System.currentTimeMillis();
+
+        while (_isRunning) {
+            final long now = System.currentTimeMillis();
+
+            if (now < next) {
+                try {
+                    Thread.sleep(next - now);
+                } catch (final InterruptedException e) {
+                    // Check whether to keep running
+                }
+                continue;
+            }
+
+            // Run the steps that are due, publishing each one so that the
+            // renderer always interpolates between consecutive steps
+            int steps = 0;
+            while (next <= now && steps < MAX_CATCH_UP_STEPS) {
+                step();
+                publish(next);
+                next += STEP;
+                steps++;
+            }
+            _stepStats.add(System.currentTimeMillis() - now, steps);
+
+            if (next <= now) {
+                _droppedSteps += (int) ((now - next) / STEP) + 1;
+                next = now + STEP;
+            }
+        }
+    }
+
+    /**
+     * Runs a recording as fast as possible, without publishing snapshots
+     *
+     * @param recording
+     *            The input to replay
+     * @return The time taken, in milliseconds
+     */
+    long replay(final InputRecording recording) {
+        _recording = recording;
+        _isReplaying = true;
+
+        final int steps = recording.getStepCount();
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < steps; i++) {
+            step();
+        }
+
+        final long time = System.currentTimeMillis() - start;
+        _stepStats.add(time, steps);
+        return time;
+    }
+
+    /**
+     * Runs one simulation step
+     */
+    private void step() {
+        final int input;
+        final int move;
+
+        if (_isReplaying) {
+            input = _recording.getInput(_step);
+            move = _recording.getMove(_step);
+        } else {
+            synchronized (this) {
+                input = _heldInput | _queuedInput;
+                move = _queuedMove;
+                _queuedInput = 0;
+                _queuedMove = 0;
+
+                if (_recording != null) {
+                    _recording.record(_step, input, move);
+                }
+            }
+        }
+        _step++;
+
+        _clock.advance(STEP);
+        _animator.update();
+
+        // Process input
+        final SpriteGameCharacter character = _level.getCharacter();
+        if ((input & INPUT_LEFT) != 0) {
+            character.move(-STEP_MOVE);
+        }
+        if ((input & INPUT_RIGHT) != 0) {
+            character.move(STEP_MOVE);
+        }
+        if (move != 0) {
+            character.move(move);
+        }
+        if ((input & INPUT_JUMP) != 0) {
+            character.jump();
+        }
+        if ((input & INPUT_SHRINK) != 0) {
+            character.shrink();
+        }
+
+        int result = 0;
+
+        // Update the level
+        if (!_renderWin || !_renderLose) {
+            result = _level.update();
+        }
+
+        // The level has been won, so begin the win animation
+        if (result == SpriteGameLevel.LEVEL_WIN && !_renderWin) {
+            _winAnimation.begin(0L);
+        }
+
+        // The level has been lost, so begin the lose animation
+        else if (result == SpriteGameLevel.LEVEL_LOSE) {
+            // A streamed level can't scroll back to its start once tiles
+            // have been evicted, so it is reloaded instead
+            if (_level.hasEvictedTiles()) {
+                startLevel(_levelName);
+            } else {
+                character.reset();
+            }
+            _loseAnimation.begin(0L);
+        }
+    }
+
+    /**
+     * Publishes the state after the latest step
+     *
+     * @param time
+     *            The time the step is due to be shown
+     */
+    private void publish(final long time) {
+        if (_spritesLevel != _level) {
+            // The character, goal and enemies, then the win and lose sprites
+            final int enemyCount = _level.getEnemyCount();
+            _sprites = new Sprite[enemyCount + 4];
+            _sprites[0] = _level.getCharacter();
+            _sprites[1] = _level.getLevelGoal();
+            for (int i = 0; i < enemyCount; i++) {
+                _sprites[i + 2] = _level.getEnemy(i);
+            }
+            _sprites[enemyCount + 2] = _win;
+            _sprites[enemyCount + 3] = _lose;
+            _spritesLevel = _level;
+        }
+
+        // Write to the snapshot that is neither published nor being read
+        final SimulationSnapshot published = _published;
+        final SimulationSnapshot inUse = _inUse;
+        SimulationSnapshot snapshot = null;
+        for (int i = 0; snapshot == null; i++) {
+            if (_snapshots[i] != published && _snapshots[i] != inUse) {
+                snapshot = _snapshots[i];
+            }
+        }
+
+        _level.publishTiles();
+        snapshot.write(_level, _sprites, published, _step, time, _renderWin,
+                _renderLose);
+        _published = snapshot;
+    }
+
+    /**
+     * Retrieves the latest snapshot for rendering. The snapshot stays valid
+     * until the next call.
+     *
+     * @return The latest snapshot
+     */
+    SimulationSnapshot acquireSnapshot() {
+        SimulationSnapshot snapshot;
+
+        // Once _inUse is set the simulation won't write to the snapshot. If
+        // a newer one was published in the meantime, take that one instead.
+        do {
+            snapshot = _published;
+            _inUse = snapshot;
+        } while (snapshot != _published);
+
+        return snapshot;
+    }
+
+    /**
+     * Sets the input that applies to every step while it is held
+     *
+     * @param input
+     *            INPUT_LEFT and/or INPUT_RIGHT
+     */
+    void setHeldInput(final int input) {
+        _heldInput = input;
+    }
+
+    /**
+     * Queues input for the next step
+     *
+     * @param input
+     *            INPUT_JUMP and/or INPUT_SHRINK
+     */
+    synchronized void queueInput(final int input) {
+        _queuedInput |= input;
+    }
+
+    /**
+     * Queues trackpad movement for the next step
+     *
+     * @param move
+     *            The direction and magnitude of movement
+     */
+    synchronized void queueMove(final int move) {
+        _queuedMove += move;
+    }
+
+    /**
+     * Records the player's input from the next step on
+     *
+     * @param recording
+     *            The recording to add to
+     */
+    synchronized void setRecording(final InputRecording recording) {
+        _recording = recording;
+    }
+
+    /**
+     * @return The win sprite
+     */
+    Sprite getWinSprite() {
+        return _win;
+    }
+
+    /**
+     * @return The lose sprite
+     */
+    Sprite getLoseSprite() {
+        return _lose;
+    }
+
+    /**
+     * @return The time taken by the steps
+     */
+    TimingStats getStepStats() {
+        return _stepStats;
+    }
+
+    /**
+     * @return The number of steps dropped because the simulation fell behind
+     */
+    int getDroppedSteps() {
+        return _droppedSteps;
+    }
+
+    /**
+     * Computes a checksum of the character's and enemies' transformations,
+     * used to check that a replay is deterministic
+     *
+     * @return The checksum
+     */
+    int getChecksum() {
+        int checksum = _step;
+        final Vector3f v = new Vector3f();
+        final int count = _level.getEnemyCount();
+
+        for (int i = -1; i < count; i++) {
+            final Sprite sprite =
+                    i < 0 ? _level.getCharacter() : _level.getEnemy(i);
+            sprite._transform.getTranslation(v);
+            checksum = checksum * 31 + Float.floatToIntBits(v.x);
+            checksum = checksum * 31 + Float.floatToIntBits(v.y);
+            sprite._transform.getScale(v);
+            checksum = checksum * 31 + Float.floatToIntBits(v.x);
+        }
+        return checksum;
+    }
+
+    /**
+     * Loads the next level and starts its animations
+     */
+    private void loadLevel() {
+        startLevel(LEVEL_NAMES[_nextLevel]);
+
+        _nextLevel++;
+
+        if (_nextLevel >= LEVEL_NAMES.length) {
+            _nextLevel = 0;
+        }
+    }
+
+    /**
+     * Loads a level from the start and starts its animations
+     * 
+     * @param name
+     *            The name of the level
+     */
+    private void startLevel(final String name) {
+        _level = new SpriteGameLevel(name, _animator);
+        _level.startAnimations();
+        _levelName = name;
+    }
+
+    /**
+     * @see net.rim.device.api.animation.AnimationListener#animationBegin(AbstractAnimation)
+     */
+    public void animationBegin(final AbstractAnimation animation) {
+        if (animation == _winAnimation) {
+            _renderWin = true;
+        } else if (animation == _loseAnimation) {
+            _renderLose = true;
+        }
+    }
+
+    /**
+     * @see net.rim.device.api.animation.AnimationListener#animationEnd(AbstractAnimation)
+     */
+    public void animationEnd(final AbstractAnimation animation) {
+        if (animation == _winAnimation) {
+            _renderWin = false;
+            loadLevel();
+        } else if (animation == _loseAnimation) {
+            _renderLose = false;
+        }
+    }
+
+    /**
+     * Replays a scripted benchmark twice, headless, and reports the time
+     * taken and whether both runs ended in the same state
+     *
+     * @param steps
+     *            The number of steps to replay
+     * @return The report
+     */
+    static String runBenchmark(final int steps) {
+        final InputRecording recording = InputRecording.createBenchmark(steps);
+
+        final GameSimulation first = new GameSimulation();
+        final long time = first.replay(recording);
+
+        final GameSimulation second = new GameSimulation();
+        second.replay(recording);
+
+        return "Replayed " + steps + " steps in " + time + " ms ("
+                + time * 1000L / Math.max(1, steps) + " us/step), checksum "
+                + Integer.toHexString(first.getChecksum()) + ", deterministic: "
+                + (first.getChecksum() == second.getChecksum());
+    }
+}
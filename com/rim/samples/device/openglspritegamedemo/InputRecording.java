@@ -0,0 +1,204 @@
+/*
+ * InputRecording.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.openglspritegamedemo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The player input of a game, recorded per simulation step. Since the
+ * simulation advances by a fixed step, replaying a recording reproduces the
+ * game exactly, without a display or a render thread. Only steps with some
+ * input are stored.
+ */
+final class InputRecording {
+    /** Identifies a recording stream ("SGIR") */
+    private static final int MAGIC = 0x53474952;
+
+    /** Holds the step, input flags and move amount of each recorded step */
+    private int[] _entries = new int[48];
+
+    /** Holds the number of recorded steps */
+    private int _entryCount;
+
+    /** Holds the total number of steps, including those with no input */
+    private int _stepCount;
+
+    /** Holds the entry looked up last, which makes sequential lookups cheap */
+    private int _cursor;
+
+    /**
+     * Records the input of a step. Steps must be recorded in order.
+     *
+     * @param step
+     *            The step number
+     * @param input
+     *            The GameSimulation.INPUT_ flags
+     * @param move
+     *            The amount of extra movement, from the trackpad
+     */
+    void record(final int step, final int input, final int move) {
+        _stepCount = step + 1;
+        if (input == 0 && move == 0) {
+            return;
+        }
+
+        if (_entryCount * 3 == _entries.length) {
+            final int[] entries = new int[_entries.length * 2];
+            System.arraycopy(_entries, 0, entries, 0, _entries.length);
+            _entries = entries;
+        }
+
+        final int i = _entryCount++ * 3;
+        _entries[i] = step;
+        _entries[i + 1] = input;
+        _entries[i + 2] = move;
+    }
+
+    /**
+     * @return The number of steps covered by the recording
+     */
+    int getStepCount() {
+        return _stepCount;
+    }
+
+    /**
+     * Retrieves the input flags of a step
+     *
+     * @param step
+     *            The step number
+     * @return The GameSimulation.INPUT_ flags
+     */
+    int getInput(final int step) {
+        final int i = find(step);
+        return i < 0 ? 0 : _entries[i + 1];
+    }
+
+    /**
+     * Retrieves the extra movement of a step
+     *
+     * @param step
+     *            The step number
+     * @return The amount of extra movement
+     */
+    int getMove(final int step) {
+        final int i = find(step);
+        return i < 0 ? 0 : _entries[i + 2];
+    }
+
+    /**
+     * Finds the entry for a step
+     *
+     * @return The position of the entry in _entries, or -1 if the step had no
+     *         input
+     */
+    private int find(final int step) {
+        if (_cursor >= _entryCount || _entries[_cursor * 3] > step) {
+            _cursor = 0;
+        }
+        while (_cursor < _entryCount && _entries[_cursor * 3] < step) {
+            _cursor++;
+        }
+        if (_cursor < _entryCount && _entries[_cursor * 3] == step) {
+            return _cursor * 3;
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the recording to a stream
+     *
+     * @param out
+     *            The stream to write to
+     * @throws IOException
+     *             if the stream can't be written
+     */
+    void write(final OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(_stepCount);
+        data.writeInt(_entryCount);
+        for (int i = 0; i < _entryCount * 3; i++) {
+            data.writeInt(_entries[i]);
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a recording written by write()
+     *
+     * @param in
+     *            The stream to read from
+     * @return The recording
+     * @throws IOException
+     *             if the stream can't be read or doesn't hold a recording
+     */
+    static InputRecording read(final InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not an input recording");
+        }
+
+        final InputRecording recording = new InputRecording();
+        final int stepCount = data.readInt();
+        final int entryCount = data.readInt();
+        recording._entries = new int[Math.max(3, entryCount * 3)];
+        for (int i = 0; i < entryCount * 3; i++) {
+            recording._entries[i] = data.readInt();
+        }
+        recording._entryCount = entryCount;
+        recording._stepCount = stepCount;
+        return recording;
+    }
+
+    /**
+     * Creates a scripted recording that exercises the game: the character
+     * runs right through the levels, jumping regularly and occasionally
+     * shrinking.
+     *
+     * @param steps
+     *            The number of steps to script
+     * @return The recording
+     */
+    static InputRecording createBenchmark(final int steps) {
+        final InputRecording recording = new InputRecording();
+        for (int step = 0; step < steps; step++) {
+            int input = GameSimulation.INPUT_RIGHT;
+            if (step % 40 == 20) {
+                input |= GameSimulation.INPUT_JUMP;
+            }
+            if (step % 500 == 250) {
+                input |= GameSimulation.INPUT_SHRINK;
+            }
+            recording.record(step, input, 0);
+        }
+        return recording;
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * LevelCompiler.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.openglspritegamedemo;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Vector;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Desktop tool that compiles a level XML file into the format read by
+ * CompiledLevel. It runs on a PC as part of building the sample and is not
+ * included in the device project.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * java com.rim.samples.device.openglspritegamedemo.LevelCompiler levelone.xml levelone.lvl
+ * </pre>
+ */
+public final class LevelCompiler extends DefaultHandler {
+    /**
+     * A level object as written in the XML
+     */
+    private static final class LevelObject {
+        final String texture;
+        final float x;
+        final float y;
+        final float scale;
+        final Vector animations = new Vector();
+
+        LevelObject(final String texture, final float x, final float y,
+                final float scale) {
+            this.texture = texture;
+            this.x = x;
+            this.y = y;
+            this.scale = scale;
+        }
+    }
+
+    /**
+     * An enemy animation as written in the XML
+     */
+    private static final class LevelAnimation {
+        int type;
+        int curve;
+        int repeat;
+        long duration;
+        float[] times;
+        float[] values;
+    }
+
+    private final Vector _textures = new Vector();
+    private final Vector _tiles = new Vector();
+    private final Vector _enemies = new Vector();
+    private LevelObject _character;
+    private LevelObject _goal;
+    private float _levelWidth;
+    private float _levelHeight;
+
+    /**
+     * Compiles a level
+     *
+     * @param args
+     *            The level XML file and the file to write
+     */
+    public static void main(final String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err
+                    .println("Usage: java com.rim.samples.device.openglspritegamedemo.LevelCompiler <level.xml> <level"
+                            + CompiledLevel.EXTENSION + ">");
+            System.exit(2);
+        }
+
+        final LevelCompiler compiler = new LevelCompiler();
+        SAXParserFactory.newInstance().newSAXParser().parse(new File(args[0]),
+                compiler);
+
+        final DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(args[1])));
+        try {
+            compiler.write(out);
+        } finally {
+            out.close();
+        }
+        System.out.println(args[0] + ": " + compiler._tiles.size() + " tiles, "
+                + compiler._enemies.size() + " enemies");
+    }
+
+    /**
+     * @see org.xml.sax.helpers.DefaultHandler#startElement(String, String,
+     *      String, Attributes)
+     */
+    public void startElement(final String uri, final String localName,
+            final String qName, final Attributes attributes) {
+        if (qName.equalsIgnoreCase("tile")) {
+            final LevelObject tile = parseObject(attributes);
+            final int repeat = Integer.parseInt(attributes.getValue("repeat"));
+
+            // Same extents as SpriteGameLevel computes when parsing the XML
+            _levelWidth = Math.max(_levelWidth, tile.x + repeat);
+            _levelHeight = Math.max(_levelHeight, tile.y);
+
+            for (int i = 0; i < repeat; i++) {
+                _tiles.addElement(new LevelObject(tile.texture, tile.x + i,
+                        tile.y, tile.scale));
+            }
+        } else if (qName.equalsIgnoreCase("enemy")) {
+            _enemies.addElement(parseObject(attributes));
+        } else if (qName.equalsIgnoreCase("character")) {
+            _character = parseObject(attributes);
+        } else if (qName.equalsIgnoreCase("goal")) {
+            _goal = parseObject(attributes);
+        } else if (qName.equalsIgnoreCase("animation")) {
+            ((LevelObject) _enemies.lastElement()).animations
+                    .addElement(parseAnimation(attributes));
+        }
+    }
+
+    /**
+     * Parses the attributes shared by every level object
+     */
+    private LevelObject parseObject(final Attributes attributes) {
+        final String[] pos = split(attributes.getValue("position"), ',');
+        final String scale = attributes.getValue("scale");
+        final String texture = attributes.getValue("texture");
+
+        if (!_textures.contains(texture)) {
+            _textures.addElement(texture);
+        }
+        return new LevelObject(texture, Float.parseFloat(pos[0]), Float
+                .parseFloat(pos[1]), scale == null ? 1.0f : Float
+                .parseFloat(scale));
+    }
+
+    /**
+     * Parses an animation
+     */
+    private static LevelAnimation parseAnimation(final Attributes attributes) {
+        final LevelAnimation animation = new LevelAnimation();
+        final String type = attributes.getValue("type");
+        final int frames = Integer.parseInt(attributes.getValue("frames"));
+
+        if (type.equalsIgnoreCase("translate")) {
+            animation.type = CompiledLevel.ANIMATION_TRANSLATE;
+        } else if (type.equalsIgnoreCase("rotate")) {
+            animation.type = CompiledLevel.ANIMATION_ROTATE;
+        } else if (type.equalsIgnoreCase("scale")) {
+            animation.type = CompiledLevel.ANIMATION_SCALE;
+        } else {
+            throw new IllegalArgumentException("Unknown animation type: "
+                    + type);
+        }
+
+        animation.curve = CompiledLevel.CURVE_LINEAR;
+        animation.repeat = Integer.parseInt(attributes.getValue("repeat"));
+        animation.duration = Long.parseLong(attributes.getValue("duration"));
+        animation.times = parseFloats(attributes.getValue("times"), ';');
+
+        // Translations hold an x,y pair per frame
+        final String[] frameValues = split(attributes.getValue("values"), ';');
+        final int perFrame =
+                animation.type == CompiledLevel.ANIMATION_TRANSLATE ? 2 : 1;
+        animation.values = new float[frames * perFrame];
+        for (int i = 0; i < frames; i++) {
+            final float[] values = parseFloats(frameValues[i], ',');
+            System.arraycopy(values, 0, animation.values, i * perFrame,
+                    perFrame);
+        }
+        if (animation.times.length != frames) {
+            throw new IllegalArgumentException("Expected " + frames
+                    + " key times");
+        }
+        return animation;
+    }
+
+    /**
+     * Writes the compiled level, grouping the tiles into chunks of
+     * CompiledLevel.CHUNK_WIDTH columns. Tiles keep their XML order within a
+     * chunk.
+     */
+    private void write(final DataOutputStream out) throws IOException {
+        if (_character == null || _goal == null) {
+            throw new IOException("The level needs a character and a goal");
+        }
+
+        out.writeInt(CompiledLevel.MAGIC);
+        out.writeShort(CompiledLevel.VERSION);
+
+        out.writeShort(_textures.size());
+        for (int i = 0; i < _textures.size(); i++) {
+            out.writeUTF((String) _textures.elementAt(i));
+        }
+
+        // SpriteGameLevel adds one to both dimensions at the end of the XML
+        out.writeFloat(_levelWidth + 1.0f);
+        out.writeFloat(_levelHeight + 1.0f);
+
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        float maxScale = 1.0f;
+        final int tileCount = _tiles.size();
+
+        for (int i = 0; i < tileCount; i++) {
+            final LevelObject tile = (LevelObject) _tiles.elementAt(i);
+            minX = Math.min(minX, tile.x);
+            minY = Math.min(minY, tile.y);
+            maxX = Math.max(maxX, tile.x);
+            maxY = Math.max(maxY, tile.y);
+            maxScale = Math.max(maxScale, tile.scale);
+        }
+        if (tileCount == 0) {
+            minX = minY = maxX = maxY = 0.0f;
+        }
+        out.writeFloat(minX);
+        out.writeFloat(minY);
+        out.writeFloat(maxX);
+        out.writeFloat(maxY);
+        out.writeFloat(maxScale);
+
+        writeObject(out, _character);
+        writeObject(out, _goal);
+
+        out.writeShort(_enemies.size());
+        for (int i = 0; i < _enemies.size(); i++) {
+            final LevelObject enemy = (LevelObject) _enemies.elementAt(i);
+            writeObject(out, enemy);
+
+            out.writeByte(enemy.animations.size());
+            for (int j = 0; j < enemy.animations.size(); j++) {
+                final LevelAnimation animation =
+                        (LevelAnimation) enemy.animations.elementAt(j);
+                out.writeByte(animation.type);
+                out.writeByte(animation.curve);
+                out.writeInt(animation.repeat);
+                out.writeLong(animation.duration);
+                out.writeShort(animation.times.length);
+                for (int k = 0; k < animation.times.length; k++) {
+                    out.writeFloat(animation.times[k]);
+                }
+                for (int k = 0; k < animation.values.length; k++) {
+                    out.writeFloat(animation.values[k]);
+                }
+            }
+        }
+
+        // Bucket the tiles by chunk
+        final int firstChunk = chunkOf(minX);
+        final Vector[] chunks = new Vector[chunkOf(maxX) - firstChunk + 1];
+        for (int i = 0; i < tileCount; i++) {
+            final LevelObject tile = (LevelObject) _tiles.elementAt(i);
+            final int chunk = chunkOf(tile.x) - firstChunk;
+            if (chunks[chunk] == null) {
+                chunks[chunk] = new Vector();
+            }
+            chunks[chunk].addElement(tile);
+        }
+
+        int chunkCount = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] != null) {
+                chunkCount++;
+            }
+        }
+
+        out.writeInt(tileCount);
+        out.writeInt(chunkCount);
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] != null) {
+                float chunkX = Float.MAX_VALUE;
+                for (int j = 0; j < chunks[i].size(); j++) {
+                    chunkX =
+                            Math.min(chunkX, ((LevelObject) chunks[i]
+                                    .elementAt(j)).x);
+                }
+                out.writeFloat(chunkX);
+                out.writeInt(chunks[i].size());
+            }
+        }
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] != null) {
+                for (int j = 0; j < chunks[i].size(); j++) {
+                    writeObject(out, (LevelObject) chunks[i].elementAt(j));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the fields shared by every level object
+     */
+    private void writeObject(final DataOutputStream out,
+            final LevelObject object) throws IOException {
+        out.writeShort(_textures.indexOf(object.texture));
+        out.writeFloat(object.x);
+        out.writeFloat(object.y);
+        out.writeFloat(object.scale);
+    }
+
+    /**
+     * Retrieves the chunk holding a tile position
+     */
+    private static int chunkOf(final float x) {
+        return (int) Math.floor(x / CompiledLevel.CHUNK_WIDTH);
+    }
+
+    /**
+     * Parses a delimited list of floats
+     */
+    private static float[] parseFloats(final String src, final char delim) {
+        final String[] tokens = split(src, delim);
+        final float[] values = new float[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            values[i] = Float.parseFloat(tokens[i].trim());
+        }
+        return values;
+    }
+
+    /**
+     * Splits a string on a delimiter
+     */
+    private static String[] split(final String src, final char delim) {
+        final Vector tokens = new Vector();
+        int start = 0;
+        int end;
+        while ((end = src.indexOf(delim, start)) != -1) {
+            tokens.addElement(src.substring(start, end));
+            start = end + 1;
+        }
+        tokens.addElement(src.substring(start));
+
+        final String[] array = new String[tokens.size()];
+        tokens.copyInto(array);
+        return array;
+    }
+}
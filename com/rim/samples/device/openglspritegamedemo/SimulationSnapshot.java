@@ -0,0 +1,159 @@
+/*
+ * SimulationSnapshot.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.openglspritegamedemo;
+
+/**
+ * The state the renderer needs from one simulation step: the transformation
+ * of every moving sprite at this step and at the step before it, so that the
+ * renderer can interpolate between the two.
+ * <p>
+ * A snapshot is filled in by the simulation thread and then published. Once
+ * published it is not modified until GameSimulation has seen that the
+ * renderer has moved on to a newer snapshot, so the renderer can read it
+ * without locking.
+ */
+final class SimulationSnapshot {
+    /** Holds the level the snapshot was taken from */
+    private SpriteGameLevel _level;
+
+    /** Holds the sprites whose transformations are stored */
+    private Sprite[] _sprites;
+
+    /** Holds the matrices of the previous step, 16 values per sprite */
+    private float[] _previous = new float[0];
+
+    /** Holds the matrices of this step, 16 values per sprite */
+    private float[] _current = new float[0];
+
+    /** Holds the number of the step */
+    private int _step;
+
+    /** Holds the time, in milliseconds, this step was due to be shown */
+    private long _time;
+
+    /** Holds whether the win sprite should be rendered */
+    private boolean _renderWin;
+
+    /** Holds whether the lose sprite should be rendered */
+    private boolean _renderLose;
+
+    /**
+     * Fills in the snapshot. Called on the simulation thread before the
+     * snapshot is published.
+     *
+     * @param level
+     *            The current level
+     * @param sprites
+     *            The sprites to store the transformations of
+     * @param previous
+     *            The snapshot of the previous step, or null if there is none
+     * @param step
+     *            The step number
+     * @param time
+     *            The time this step is due to be shown
+     * @param renderWin
+     *            Whether the win sprite should be rendered
+     * @param renderLose
+     *            Whether the lose sprite should be rendered
+     */
+    void write(final SpriteGameLevel level, final Sprite[] sprites,
+            final SimulationSnapshot previous, final int step,
+            final long time, final boolean renderWin, final boolean renderLose) {
+        final int size = sprites.length * 16;
+        if (_current.length != size) {
+            _current = new float[size];
+            _previous = new float[size];
+        }
+
+        _level = level;
+        _sprites = sprites;
+        _step = step;
+        _time = time;
+        _renderWin = renderWin;
+        _renderLose = renderLose;
+
+        for (int i = 0; i < sprites.length; i++) {
+            System.arraycopy(sprites[i]._transform.getMatrix().getArray(), 0,
+                    _current, i * 16, 16);
+        }
+
+        // Nothing to interpolate from when the level has just changed
+        if (previous != null && previous._sprites == sprites) {
+            System.arraycopy(previous._current, 0, _previous, 0, size);
+        } else {
+            System.arraycopy(_current, 0, _previous, 0, size);
+        }
+    }
+
+    /**
+     * Sets the render transformation of every sprite, interpolated for the
+     * given time. Called on the render thread.
+     *
+     * @param time
+     *            The time the frame will be shown
+     */
+    void interpolate(final long time) {
+        float alpha = (float) (time - _time) / GameSimulation.STEP;
+        if (alpha < 0.0f) {
+            alpha = 0.0f;
+        } else if (alpha > 1.0f) {
+            alpha = 1.0f;
+        }
+
+        for (int i = 0; i < _sprites.length; i++) {
+            _sprites[i].setRenderTransform(_previous, _current, i * 16, alpha);
+        }
+    }
+
+    /**
+     * @return The level the snapshot was taken from
+     */
+    SpriteGameLevel getLevel() {
+        return _level;
+    }
+
+    /**
+     * @return The number of the step
+     */
+    int getStep() {
+        return _step;
+    }
+
+    /**
+     * @return Whether the win sprite should be rendered
+     */
+    boolean isRenderWin() {
+        return _renderWin;
+    }
+
+    /**
+     * @return Whether the lose sprite should be rendered
+     */
+    boolean isRenderLose() {
+        return _renderLose;
+    }
+}
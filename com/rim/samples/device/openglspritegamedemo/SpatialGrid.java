@@ -0,0 +1,320 @@
+/*
+ * SpatialGrid.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.openglspritegamedemo;
+
+/**
+ * A uniform grid used as a collision broadphase. Items are axis aligned
+ * rectangles identified by the index they were inserted with, and each item
+ * is referenced from every cell it overlaps. A query only visits the cells
+ * covered by the query rectangle, so its cost depends on the size of the
+ * query and not on the number of items in the grid.
+ * <p>
+ * Rectangles extending past the edge of the grid are clamped to the edge
+ * cells, which keeps queries conservative for items that leave the area the
+ * grid was created for.
+ */
+final class SpatialGrid {
+    /** The initial capacity of a cell */
+    private static final int CELL_CAPACITY = 4;
+
+    /** Holds the world position of the grid's left edge */
+    private final float _originX;
+
+    /** Holds the world position of the grid's bottom edge */
+    private final float _originY;
+
+    /** Holds the reciprocal of the cell size */
+    private final float _invCellSize;
+
+    /** Holds the number of columns */
+    private final int _columns;
+
+    /** Holds the number of rows */
+    private final int _rows;
+
+    /** Holds the item indices of each cell, allocated on first use */
+    private final int[][] _cells;
+
+    /** Holds the number of items in each cell */
+    private final int[] _cellCounts;
+
+    /**
+     * Holds the cell range (first column, first row, last column, last row)
+     * each item currently occupies
+     */
+    private int[] _itemCells;
+
+    /** Holds the query stamp each item was last reported for */
+    private int[] _itemStamps;
+
+    /** Holds the number of items */
+    private int _itemCount;
+
+    /** Holds the current query stamp */
+    private int _stamp;
+
+    /** Holds the item indices found by the last query */
+    private int[] _results = new int[16];
+
+    /**
+     * Creates a new SpatialGrid object
+     *
+     * @param minX
+     *            The left edge of the area covered by the grid
+     * @param minY
+     *            The bottom edge of the area covered by the grid
+     * @param maxX
+     *            The right edge of the area covered by the grid
+     * @param maxY
+     *            The top edge of the area covered by the grid
+     * @param cellSize
+     *            The width and height of a cell
+     * @param capacity
+     *            The expected number of items
+     */
+    SpatialGrid(final float minX, final float minY, final float maxX,
+            final float maxY, final float cellSize, final int capacity) {
+        _originX = minX;
+        _originY = minY;
+        _invCellSize = 1.0f / cellSize;
+        _columns = Math.max(1, (int) Math.ceil((maxX - minX) * _invCellSize));
+        _rows = Math.max(1, (int) Math.ceil((maxY - minY) * _invCellSize));
+        _cells = new int[_columns * _rows][];
+        _cellCounts = new int[_columns * _rows];
+        _itemCells = new int[Math.max(1, capacity) * 4];
+        _itemStamps = new int[Math.max(1, capacity)];
+    }
+
+    /**
+     * Adds an item to the grid
+     *
+     * @return The index of the item, which is the number of items previously
+     *         inserted
+     */
+    int insert(final float minX, final float minY, final float maxX,
+            final float maxY) {
+        if (_itemCount == _itemStamps.length) {
+            final int[] stamps = new int[_itemCount * 2];
+            System.arraycopy(_itemStamps, 0, stamps, 0, _itemCount);
+            _itemStamps = stamps;
+
+            final int[] cells = new int[_itemCount * 8];
+            System.arraycopy(_itemCells, 0, cells, 0, _itemCount * 4);
+            _itemCells = cells;
+        }
+
+        final int item = _itemCount++;
+        final int i = item * 4;
+        _itemCells[i] = column(minX);
+        _itemCells[i + 1] = row(minY);
+        _itemCells[i + 2] = column(maxX);
+        _itemCells[i + 3] = row(maxY);
+        _itemStamps[item] = _stamp;
+        addToCells(item);
+        return item;
+    }
+
+    /**
+     * Moves an item. The cells are only touched if the item's cell range
+     * changed, so items moving within a cell cost almost nothing.
+     *
+     * @param item
+     *            The index returned by insert()
+     */
+    void update(final int item, final float minX, final float minY,
+            final float maxX, final float maxY) {
+        final int i = item * 4;
+        final int c0 = column(minX);
+        final int r0 = row(minY);
+        final int c1 = column(maxX);
+        final int r1 = row(maxY);
+
+        if (c0 != _itemCells[i] || r0 != _itemCells[i + 1]
+                || c1 != _itemCells[i + 2] || r1 != _itemCells[i + 3]) {
+            removeFromCells(item);
+            _itemCells[i] = c0;
+            _itemCells[i + 1] = r0;
+            _itemCells[i + 2] = c1;
+            _itemCells[i + 3] = r1;
+            addToCells(item);
+        }
+    }
+
+    /**
+     * Removes an item. Its index isn't reused, and it is never reported by a
+     * query again.
+     *
+     * @param item
+     *            The index returned by insert()
+     */
+    void remove(final int item) {
+        removeFromCells(item);
+
+        // An empty cell range, so the item is in no cells
+        final int i = item * 4;
+        _itemCells[i] = 0;
+        _itemCells[i + 1] = 0;
+        _itemCells[i + 2] = -1;
+        _itemCells[i + 3] = -1;
+    }
+
+    /**
+     * Finds the items whose cells overlap a rectangle. Candidates are
+     * reported once each, in ascending index order, and still need an exact
+     * intersection test.
+     *
+     * @return The number of candidates, which are retrieved with getResult()
+     */
+    int query(final float minX, final float minY, final float maxX,
+            final float maxY) {
+        final int c0 = column(minX);
+        final int r0 = row(minY);
+        final int c1 = column(maxX);
+        final int r1 = row(maxY);
+
+        // A new stamp marks every item as not yet reported
+        if (++_stamp == 0) {
+            for (int i = 0; i < _itemCount; i++) {
+                _itemStamps[i] = 0;
+            }
+            _stamp = 1;
+        }
+
+        int count = 0;
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                final int cell = r * _columns + c;
+                final int[] items = _cells[cell];
+                final int cellCount = _cellCounts[cell];
+
+                for (int j = 0; j < cellCount; j++) {
+                    final int item = items[j];
+                    if (_itemStamps[item] != _stamp) {
+                        _itemStamps[item] = _stamp;
+                        if (count == _results.length) {
+                            final int[] results = new int[count * 2];
+                            System.arraycopy(_results, 0, results, 0, count);
+                            _results = results;
+                        }
+                        count = insertSorted(count, item);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Retrieves a candidate found by the last query
+     *
+     * @param index
+     *            The position of the candidate, less than the count returned
+     *            by query()
+     * @return The index of the item
+     */
+    int getResult(final int index) {
+        return _results[index];
+    }
+
+    /**
+     * Adds an item to the results keeping them sorted. Queries only return a
+     * handful of candidates, so an insertion sort is the cheapest option.
+     */
+    private int insertSorted(final int count, final int item) {
+        int i = count;
+        while (i > 0 && _results[i - 1] > item) {
+            _results[i] = _results[i - 1];
+            i--;
+        }
+        _results[i] = item;
+        return count + 1;
+    }
+
+    /**
+     * Adds an item to each cell of its current cell range
+     */
+    private void addToCells(final int item) {
+        final int i = item * 4;
+        for (int r = _itemCells[i + 1]; r <= _itemCells[i + 3]; r++) {
+            for (int c = _itemCells[i]; c <= _itemCells[i + 2]; c++) {
+                final int cell = r * _columns + c;
+                int[] items = _cells[cell];
+                final int count = _cellCounts[cell];
+
+                if (items == null) {
+                    items = new int[CELL_CAPACITY];
+                    _cells[cell] = items;
+                } else if (count == items.length) {
+                    items = new int[count * 2];
+                    System.arraycopy(_cells[cell], 0, items, 0, count);
+                    _cells[cell] = items;
+                }
+                items[count] = item;
+                _cellCounts[cell] = count + 1;
+            }
+        }
+    }
+
+    /**
+     * Removes an item from each cell of its current cell range
+     */
+    private void removeFromCells(final int item) {
+        final int i = item * 4;
+        for (int r = _itemCells[i + 1]; r <= _itemCells[i + 3]; r++) {
+            for (int c = _itemCells[i]; c <= _itemCells[i + 2]; c++) {
+                final int cell = r * _columns + c;
+                final int[] items = _cells[cell];
+                final int last = _cellCounts[cell] - 1;
+
+                for (int j = 0; j <= last; j++) {
+                    if (items[j] == item) {
+                        // Order within a cell doesn't matter
+                        items[j] = items[last];
+                        _cellCounts[cell] = last;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the column containing an x coordinate, clamped to the grid
+     */
+    private int column(final float x) {
+        final int c = (int) ((x - _originX) * _invCellSize);
+        return c < 0 ? 0 : c >= _columns ? _columns - 1 : c;
+    }
+
+    /**
+     * Retrieves the row containing a y coordinate, clamped to the grid
+     */
+    private int row(final float y) {
+        final int r = (int) ((y - _originY) * _invCellSize);
+        return r < 0 ? 0 : r >= _rows ? _rows - 1 : r;
+    }
+}
@@ -28,7 +28,6 @@ package com.rim.samples.device.openglspritegamedemo;
 
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
-import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Vector;
 
@@ -77,6 +76,36 @@ public class Sprite {
     protected static final int TEXCOORDS_OFFSET =
             (VERTICES.length + NORMALS.length) * 4;
 
+    /**
+     * Holds the number of models drawn by one instanced draw call. Each
+     * instance takes a modelview matrix from the shader's uniform array, so
+     * this is kept well within the 128 uniform vectors every OpenGL ES 2.0
+     * implementation provides.
+     */
+    static final int MAX_INSTANCES = 16;
+
+    /** The offset of the vertex positions within the instance vertex data */
+    private static final int INSTANCE_POSITIONS_OFFSET = 0;
+
+    /** The offset of the vertex normals within the instance vertex data */
+    private static final int INSTANCE_NORMALS_OFFSET =
+            MAX_INSTANCES * VERTICES.length * 4;
+
+    /**
+     * The offset of the vertex texture coordinates within the instance vertex
+     * data
+     */
+    private static final int INSTANCE_TEXCOORDS_OFFSET =
+            INSTANCE_NORMALS_OFFSET + MAX_INSTANCES * NORMALS.length * 4;
+
+    /** The offset of the instance numbers within the instance vertex data */
+    private static final int INSTANCE_IDS_OFFSET =
+            INSTANCE_TEXCOORDS_OFFSET + MAX_INSTANCES * TEXCOORDS.length * 4;
+
+    /** Holds the size of the instance vertex data in bytes */
+    private static final int INSTANCE_DATA_SIZE =
+            INSTANCE_IDS_OFFSET + MAX_INSTANCES * VERTICES.length / 3 * 4;
+
     /**
      * Holds all of the OpenGL texture handles (used so that textures are only
      * loaded once).
@@ -107,16 +136,32 @@ public class Sprite {
     /** Holds the model's local transformation */
     protected Transform3D _transform;
 
+    /**
+     * Holds the local transformation used for rendering. It is set from the
+     * simulation's snapshots on the render thread, so rendering never reads
+     * _transform while the simulation thread is changing it.
+     */
+    private final Matrix4f _renderMatrix = new Matrix4f();
+
+    /** Scratch matrix values used while interpolating the render matrix */
+    private static final float[] _renderValues = new float[16];
+
     /** Holds the model's original bounds */
     protected Bounds _originalBounds;
 
     /** Holds the model's current bounds */
     protected Bounds _bounds;
 
+    /** Holds the radius around the origin that contains the original bounds */
+    private float _boundingRadius = -1.0f;
+
     /** Holds the shader program used to render */
     private static int _program;
 
-    /** Holds the location of the modelview matrix uniform variable */
+    /**
+     * Holds the location of the modelview matrix uniform array. Everything
+     * other than an instanced draw uses only its first element.
+     */
     private static int _mLoc;
 
     /** Holds the location of the projection matrix uniform variable */
@@ -140,6 +185,26 @@ public class Sprite {
     /** Holds the matrix used to transform vertex normals. */
     private static Matrix3f _normalMatrix;
 
+    /** Scratch vertex data used while adding sprites to a batch */
+    private static final float[] _batchVertices = new float[VERTICES.length];
+
+    /** Scratch vector used while adding sprites to a batch */
+    private static final Vector3f _batchVertex = new Vector3f();
+
+    /**
+     * Holds handles to the vertex (_instanceBuffers[0]) and index
+     * (_instanceBuffers[1]) buffers holding MAX_INSTANCES copies of the quad,
+     * or null if they haven't been created for the current GL yet
+     */
+    private static int[] _instanceBuffers;
+
+    /** Scratch modelview matrices for an instanced draw, 16 per instance */
+    private static final float[] _instanceMatrices =
+            new float[MAX_INSTANCES * 16];
+
+    /** Scratch matrix used while building the instance modelview matrices */
+    private static final Matrix4f _instanceMatrix = new Matrix4f();
+
     /** Holds the translation vector representing the sprite's initial position */
     Vector3f _initialPosition;
 
@@ -235,7 +300,6 @@ public class Sprite {
      */
     public void initialize(final GL11 gl) {
         _texture = getTexture(gl);
-        startAnimations();
     }
 
     /**
@@ -246,7 +310,6 @@ public class Sprite {
      */
     public void initialize(final GL20 gl) {
         _texture = getTexture(gl);
-        startAnimations();
     }
 
     /**
@@ -260,6 +323,103 @@ public class Sprite {
         _transform.setTranslation(position);
     }
 
+    /**
+     * Sets the transformation used to render this model by interpolating
+     * between two simulation steps. Only the translation is interpolated;
+     * rotation and scale are taken from the later step.
+     * 
+     * @param previous
+     *            The matrices of the earlier step
+     * @param current
+     *            The matrices of the later step
+     * @param offset
+     *            The position of this model's matrix in both arrays
+     * @param alpha
+     *            How far between the two steps to render, from 0 to 1
+     */
+    void setRenderTransform(final float[] previous, final float[] current,
+            final int offset, final float alpha) {
+        System.arraycopy(current, offset, _renderValues, 0, 16);
+        for (int i = 12; i < 15; i++) {
+            final float from = previous[offset + i];
+            _renderValues[i] = from + (current[offset + i] - from) * alpha;
+        }
+        _renderMatrix.set(_renderValues);
+    }
+
+    /**
+     * Retrieves the translation this model is rendered at
+     * 
+     * @param translation
+     *            The vector to receive the translation
+     */
+    void getRenderTranslation(final Vector3f translation) {
+        final float[] m = _renderMatrix.getArray();
+        translation.set(m[12], m[13], m[14]);
+    }
+
+    /**
+     * Determines whether this model, at the transformation it is rendered at,
+     * may overlap the given rectangle. The test uses the same conservative
+     * extent as the collision broadphase, so a model that is reported as not
+     * visible is certainly off screen.
+     *
+     * @param minX
+     *            The left edge of the rectangle
+     * @param minY
+     *            The bottom edge of the rectangle
+     * @param maxX
+     *            The right edge of the rectangle
+     * @param maxY
+     *            The top edge of the rectangle
+     * @return True if the model may overlap the rectangle; false otherwise
+     */
+    boolean isRenderVisible(final float minX, final float minY,
+            final float maxX, final float maxY) {
+        final float[] m = _renderMatrix.getArray();
+        final float scale =
+                (float) Math.sqrt(Math.max(m[0] * m[0] + m[1] * m[1], m[4]
+                        * m[4] + m[5] * m[5]));
+        final float extent = getBoundingRadius() * scale;
+
+        return m[12] + extent >= minX && m[12] - extent <= maxX
+                && m[13] + extent >= minY && m[13] - extent <= maxY;
+    }
+
+    /**
+     * Checks that culling keeps a model whose bounds are not centred on its
+     * origin for as long as any part of it may be on screen. The box runs
+     * from (-4, 0) to (1, 3), so its farthest corner, (-4, 3), is 5 units
+     * from the origin; the model is rotated so that this corner points along
+     * the x axis and reaches x = 5.
+     * 
+     * @return The report
+     */
+    static String runCullingCheck() {
+        final Vector3f[] corners =
+                { new Vector3f(-4.0f, 0.0f, 0.0f),
+                        new Vector3f(1.0f, 3.0f, 0.0f) };
+        final Sprite sprite =
+                new Sprite(null, new BoundingBox(corners), new Vector3f());
+
+        // Rotation about the z axis by -143.13 degrees
+        final float[] m = new float[16];
+        m[0] = -0.8f;
+        m[1] = -0.6f;
+        m[4] = 0.6f;
+        m[5] = -0.8f;
+        m[10] = 1.0f;
+        m[15] = 1.0f;
+        sprite.setRenderTransform(m, m, 0, 1.0f);
+
+        final boolean kept = sprite.isRenderVisible(4.5f, -1.0f, 10.0f, 1.0f);
+        final boolean culled =
+                !sprite.isRenderVisible(5.5f, -1.0f, 10.0f, 1.0f);
+
+        return "Culling check: corner on screen kept: " + kept
+                + ", off screen culled: " + culled;
+    }
+
     /**
      * Gets this model's updated bounds
      * 
@@ -271,6 +431,41 @@ public class Sprite {
         return _bounds;
     }
 
+    /**
+     * Gets the radius of a circle around the model's origin that contains its
+     * untransformed bounds in any rotation. For a box this is the distance to
+     * its farthest corner, which mixes the min and max coordinates when the
+     * box is not centred on the origin. Multiplied by the model's largest
+     * scale it gives a conservative extent that is much cheaper to compute
+     * than the transformed bounds.
+     * 
+     * @return The bounding radius
+     */
+    public float getBoundingRadius() {
+        if (_boundingRadius < 0.0f) {
+            final Vector3f v = new Vector3f();
+
+            if (_originalBounds instanceof BoundingBox) {
+                final BoundingBox box = (BoundingBox) _originalBounds;
+                box.getMin(v);
+                final float minX = v.x * v.x;
+                final float minY = v.y * v.y;
+                final float minZ = v.z * v.z;
+                box.getMax(v);
+                _boundingRadius =
+                        (float) Math.sqrt(Math.max(minX, v.x * v.x)
+                                + Math.max(minY, v.y * v.y)
+                                + Math.max(minZ, v.z * v.z));
+            } else {
+                final BoundingSphere sphere = (BoundingSphere) _originalBounds;
+                sphere.getCenter(v);
+                _boundingRadius = v.length() + sphere.getRadius();
+            }
+        }
+
+        return _boundingRadius;
+    }
+
     /**
      * Sets whether this model is batched or not
      * 
@@ -282,9 +477,10 @@ public class Sprite {
     public void setIsBatched(final GL11 gl, final boolean isBatched) {
         _isBatchedRender = isBatched;
         if (_isBatchedRender && _batch == null) {
-            // Pre-transform the vertices before adding them to the batch
-            final Vector3f v = new Vector3f();
-            final float[] vertexFloatData = new float[VERTICES.length];
+            // Pre-transform the vertices before adding them to the batch;
+            // the batch copies them, so the scratch array can be reused
+            final Vector3f v = _batchVertex;
+            final float[] vertexFloatData = _batchVertices;
             for (int i = 0; i < VERTICES.length / 3; i++) {
                 v.set(VERTICES[i * 3], VERTICES[i * 3 + 1], VERTICES[i * 3 + 2]);
                 _transform.transformPoint(v);
@@ -309,9 +505,10 @@ public class Sprite {
     public void setIsBatched(final GL20 gl, final boolean isBatched) {
         _isBatchedRender = isBatched;
         if (_isBatchedRender && _batch == null) {
-            // Pre-transform the vertices before adding them to the batch
-            final Vector3f v = new Vector3f();
-            final float[] vertexFloatData = new float[VERTICES.length];
+            // Pre-transform the vertices before adding them to the batch;
+            // the batch copies them, so the scratch array can be reused
+            final Vector3f v = _batchVertex;
+            final float[] vertexFloatData = _batchVertices;
             for (int i = 0; i < VERTICES.length / 3; i++) {
                 v.set(VERTICES[i * 3], VERTICES[i * 3 + 1], VERTICES[i * 3 + 2]);
                 _transform.transformPoint(v);
@@ -371,7 +568,7 @@ public class Sprite {
             gl.glPushMatrix();
 
             // Apply the local transformation
-            gl.glMultMatrixf(_transform.getMatrix().getArray(), 0);
+            gl.glMultMatrixf(_renderMatrix.getArray(), 0);
 
             // Bind the vertex and index buffers
             gl.glBindBuffer(GL11.GL_ARRAY_BUFFER, _buffers[0]);
@@ -445,7 +642,7 @@ public class Sprite {
             final Matrix4f m = new Matrix4f(modelview);
 
             // Apply the local transformation
-            m.multiply(_transform.getMatrix());
+            m.multiply(_renderMatrix);
 
             // Bind the vertex and index buffers
             gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, _buffers[0]);
@@ -478,6 +675,244 @@ public class Sprite {
         }
     }
 
+    /**
+     * Renders a list of models using OpenGL v1.1. The list is sorted by
+     * texture so each texture is bound once, and every model is drawn from a
+     * single shared quad. The fixed function pipeline has no way to draw
+     * several models with different transformations in one call, so each
+     * model is still a draw call of its own. The models must not be batched
+     * and must use the default texture coordinates.
+     *
+     * @param gl
+     *            The reference to the OpenGL v1.1 object used for rendering
+     * @param sprites
+     *            The models to render, which are reordered by texture
+     * @param count
+     *            The number of models in the list
+     * @return The number of draw calls made
+     */
+    static int renderInstances(final GL11 gl, final Sprite[] sprites,
+            final int count) {
+        if (count == 0) {
+            return 0;
+        }
+        sortByTexture(sprites, count);
+
+        if (_instanceBuffers == null) {
+            _instanceBuffers = new int[2];
+            gl.glGenBuffers(2, _instanceBuffers, 0);
+
+            gl.glBindBuffer(GL11.GL_ARRAY_BUFFER, _instanceBuffers[0]);
+            gl.glBufferData(GL11.GL_ARRAY_BUFFER, INSTANCE_DATA_SIZE,
+                    createInstanceVertices(), GL11.GL_STATIC_DRAW);
+
+            gl.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, _instanceBuffers[1]);
+            gl.glBufferData(GL11.GL_ELEMENT_ARRAY_BUFFER, MAX_INSTANCES
+                    * INDICES.length, createInstanceIndices(),
+                    GL11.GL_STATIC_DRAW);
+        }
+
+        // Bind the vertex and index buffers
+        gl.glBindBuffer(GL11.GL_ARRAY_BUFFER, _instanceBuffers[0]);
+        gl.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, _instanceBuffers[1]);
+
+        // Enable the arrays for the VBO
+        gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
+        gl.glEnableClientState(GL10.GL_NORMAL_ARRAY);
+        gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+
+        // Set the pointers for the first quad in the buffer
+        gl.glVertexPointer(3, GL10.GL_FLOAT, 0, INSTANCE_POSITIONS_OFFSET);
+        gl.glNormalPointer(GL10.GL_FLOAT, 0, INSTANCE_NORMALS_OFFSET);
+        gl.glTexCoordPointer(2, GL10.GL_FLOAT, 0, INSTANCE_TEXCOORDS_OFFSET);
+
+        int texture = -1;
+        for (int i = 0; i < count; i++) {
+            final Sprite sprite = sprites[i];
+            if (sprite._texture != texture) {
+                texture = sprite._texture;
+                gl.glBindTexture(GL10.GL_TEXTURE_2D, texture);
+            }
+
+            gl.glPushMatrix();
+            gl.glMultMatrixf(sprite._renderMatrix.getArray(), 0);
+            gl.glDrawElements(GL10.GL_TRIANGLES, INDICES.length,
+                    GL10.GL_UNSIGNED_BYTE, 0);
+            gl.glPopMatrix();
+        }
+
+        return count;
+    }
+
+    /**
+     * Renders a list of models using OpenGL v2.0. The list is sorted by
+     * texture, and up to MAX_INSTANCES models sharing a texture are drawn
+     * with a single draw call: the instance buffer holds MAX_INSTANCES copies
+     * of the quad, each tagged with its instance number, and the shader picks
+     * the modelview matrix for each copy out of a uniform array. The models
+     * must not be batched and must use the default texture coordinates.
+     *
+     * @param gl
+     *            The reference to the OpenGL v2.0 object used for rendering
+     * @param modelview
+     *            The modelview matrix
+     * @param sprites
+     *            The models to render, which are reordered by texture
+     * @param count
+     *            The number of models in the list
+     * @return The number of draw calls made
+     */
+    static int renderInstances(final GL20 gl, final Matrix4f modelview,
+            final Sprite[] sprites, final int count) {
+        if (count == 0) {
+            return 0;
+        }
+        sortByTexture(sprites, count);
+
+        if (_instanceBuffers == null) {
+            _instanceBuffers = new int[2];
+            gl.glGenBuffers(2, _instanceBuffers, 0);
+
+            gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, _instanceBuffers[0]);
+            gl.glBufferData(GL20.GL_ARRAY_BUFFER, INSTANCE_DATA_SIZE,
+                    createInstanceVertices(), GL20.GL_STATIC_DRAW);
+
+            gl.glBindBuffer(GL20.GL_ELEMENT_ARRAY_BUFFER, _instanceBuffers[1]);
+            gl.glBufferData(GL20.GL_ELEMENT_ARRAY_BUFFER, MAX_INSTANCES
+                    * INDICES.length, createInstanceIndices(),
+                    GL20.GL_STATIC_DRAW);
+        }
+
+        // Bind the vertex and index buffers
+        gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, _instanceBuffers[0]);
+        gl.glBindBuffer(GL20.GL_ELEMENT_ARRAY_BUFFER, _instanceBuffers[1]);
+
+        // Set the pointers for the vertex buffer data
+        gl.glVertexAttribPointer(0, 3, GL20.GL_FLOAT, false, 0,
+                INSTANCE_POSITIONS_OFFSET);
+        gl.glVertexAttribPointer(1, 3, GL20.GL_FLOAT, false, 0,
+                INSTANCE_NORMALS_OFFSET);
+        gl.glVertexAttribPointer(2, 2, GL20.GL_FLOAT, false, 0,
+                INSTANCE_TEXCOORDS_OFFSET);
+        gl.glVertexAttribPointer(3, 1, GL20.GL_FLOAT, false, 0,
+                INSTANCE_IDS_OFFSET);
+
+        // Enable the generic vertex attribute arrays
+        gl.glEnableVertexAttribArray(0);
+        gl.glEnableVertexAttribArray(1);
+        gl.glEnableVertexAttribArray(2);
+        gl.glEnableVertexAttribArray(3);
+
+        // The quads all face the viewer and are only rotated about the z
+        // axis, so the one normal matrix serves every instance
+        gl.glUniformMatrix3fv(_nLoc, 1, false, getNormalMatrix(modelview), 0);
+        gl.glUniform1i(_tLoc, 0);
+
+        int drawCalls = 0;
+        int texture = -1;
+        int i = 0;
+        while (i < count) {
+            // Gather the modelview matrices of the next run of models
+            // sharing a texture
+            final int runTexture = sprites[i]._texture;
+            int instances = 0;
+            while (i < count && instances < MAX_INSTANCES
+                    && sprites[i]._texture == runTexture) {
+                _instanceMatrix.set(modelview);
+                _instanceMatrix.multiply(sprites[i]._renderMatrix);
+                System.arraycopy(_instanceMatrix.getArray(), 0,
+                        _instanceMatrices, instances * 16, 16);
+                instances++;
+                i++;
+            }
+
+            if (runTexture != texture) {
+                texture = runTexture;
+                gl.glBindTexture(GL20.GL_TEXTURE_2D, texture);
+            }
+
+            gl.glUniformMatrix4fv(_mLoc, instances, false, _instanceMatrices,
+                    0);
+            gl.glDrawElements(GL20.GL_TRIANGLES, instances * INDICES.length,
+                    GL20.GL_UNSIGNED_BYTE, 0);
+            drawCalls++;
+        }
+
+        // Every other draw uses the first modelview matrix
+        gl.glDisableVertexAttribArray(3);
+
+        return drawCalls;
+    }
+
+    /**
+     * Sorts a list of models by texture, keeping the order of models that
+     * share a texture. The lists are short and mostly sorted from one frame
+     * to the next, so an insertion sort is the cheapest option.
+     */
+    private static void sortByTexture(final Sprite[] sprites,
+            final int count) {
+        for (int i = 1; i < count; i++) {
+            final Sprite sprite = sprites[i];
+            int j = i;
+            while (j > 0 && sprites[j - 1]._texture > sprite._texture) {
+                sprites[j] = sprites[j - 1];
+                j--;
+            }
+            sprites[j] = sprite;
+        }
+    }
+
+    /**
+     * Creates the vertex data for the instance buffer: MAX_INSTANCES copies
+     * of the quad, where every vertex of copy i has the instance number i
+     *
+     * @return The vertex data
+     */
+    private static FloatBuffer createInstanceVertices() {
+        final FloatBuffer vertexData =
+                ByteBuffer.allocateDirect(INSTANCE_DATA_SIZE).asFloatBuffer();
+        final int vertexCount = VERTICES.length / 3;
+
+        for (int i = 0; i < MAX_INSTANCES; i++) {
+            vertexData.position(INSTANCE_POSITIONS_OFFSET / 4 + i
+                    * VERTICES.length);
+            vertexData.put(VERTICES);
+            vertexData.position(INSTANCE_NORMALS_OFFSET / 4 + i
+                    * NORMALS.length);
+            vertexData.put(NORMALS);
+            vertexData.position(INSTANCE_TEXCOORDS_OFFSET / 4 + i
+                    * TEXCOORDS.length);
+            vertexData.put(TEXCOORDS);
+            for (int j = 0; j < vertexCount; j++) {
+                vertexData.put(INSTANCE_IDS_OFFSET / 4 + i * vertexCount + j,
+                        i);
+            }
+        }
+        vertexData.rewind();
+
+        return vertexData;
+    }
+
+    /**
+     * Creates the index data for the instance buffer
+     *
+     * @return The index data
+     */
+    private static ByteBuffer createInstanceIndices() {
+        final ByteBuffer indices =
+                ByteBuffer.allocateDirect(MAX_INSTANCES * INDICES.length);
+        final int vertexCount = VERTICES.length / 3;
+
+        for (int i = 0; i < MAX_INSTANCES; i++) {
+            for (int j = 0; j < INDICES.length; j++) {
+                indices.put((byte) (INDICES[j] + i * vertexCount));
+            }
+        }
+        indices.rewind();
+
+        return indices;
+    }
+
     /**
      * Resets the model to its initial state for starting the level
      */
@@ -594,19 +1029,20 @@ public class Sprite {
     static void loadShader(final GL20 gl) {
         final StringBuffer vShaderStr = new StringBuffer();
         vShaderStr.append("uniform mat3 normalMatrix;\n");
-        vShaderStr.append("uniform mat4 modelview;\n");
+        vShaderStr.append("uniform mat4 modelview[" + MAX_INSTANCES + "];\n");
         vShaderStr.append("uniform mat4 projection;\n");
         vShaderStr.append("attribute vec4 position;\n");
         vShaderStr.append("attribute vec3 normal;\n");
         vShaderStr.append("attribute vec2 texcoord;\n");
+        vShaderStr.append("attribute float instance;\n");
         vShaderStr.append("varying vec3 lightDir, vnormal;\n");
         vShaderStr.append("varying vec2 vtexcoord;\n");
         vShaderStr.append("void main()\n");
         vShaderStr.append("{\n");
         vShaderStr.append("    lightDir = normalize(vec3(1.0, 0.0, 1.0));\n");
         vShaderStr.append("    vnormal = normalMatrix * normal;\n");
-        vShaderStr
-                .append("    gl_Position = projection * modelview * position;\n");
+        vShaderStr.append("    gl_Position = projection"
+                + " * modelview[int(instance)] * position;\n");
         vShaderStr.append("    vtexcoord = texcoord;\n");
         vShaderStr.append("}\n");
 
@@ -654,6 +1090,7 @@ public class Sprite {
         gl.glBindAttribLocation(_program, 0, "position");
         gl.glBindAttribLocation(_program, 1, "normal");
         gl.glBindAttribLocation(_program, 2, "texcoord");
+        gl.glBindAttribLocation(_program, 3, "instance");
 
         // Link the program
         gl.glLinkProgram(_program);
@@ -712,71 +1149,66 @@ public class Sprite {
     }
 
     /**
-     * Represents a render batch that uses a single texture
-     * 
+     * Represents a render batch that uses a single texture. Mesh data is
+     * appended straight into direct buffers sized for a full batch, so adding
+     * a mesh allocates nothing. The part of each buffer that changed since the
+     * last upload is tracked and sent to the GL with glBufferSubData().
+     * <p>
+     * The vertex buffer holds every position, then every normal, then every
+     * texture coordinate, each in a region sized for MAX_VERTICES vertices.
+     * Appending a mesh therefore never moves data already in the buffer.
      */
     public static final class Batch {
         /**
-         * Encapsulates a float array
+         * Holds the maximum number of vertices in a batch. Indices are unsigned
+         * bytes, so a batch can't address more than 256 vertices.
          */
-        private static final class FloatArray {
-            public float[] array;
+        private static final int MAX_VERTICES = 256;
 
-            public FloatArray(final float[] array) {
-                this.array = new float[array.length];
-                System.arraycopy(array, 0, this.array, 0, array.length);
-            }
-        }
+        /** Holds the maximum number of indices in a batch */
+        private static final int MAX_INDICES = MAX_VERTICES * 3;
 
-        /**
-         * Encapsulates a byte array
-         */
-        private static final class ByteArray {
-            public ByteArray(final byte[] array) {
-                this.array = new byte[array.length];
-                System.arraycopy(array, 0, this.array, 0, array.length);
-            }
+        /** The offset of the vertex positions within the vertex data */
+        private static final int POSITIONS_OFFSET = 0;
 
-            public byte[] array;
-        }
+        /** The offset of the vertex normals within the vertex data */
+        private static final int NORMALS_OFFSET = MAX_VERTICES * 3 * 4;
 
-        /** Holds the render batches */
-        private static Hashtable _batches = new Hashtable();
+        /** The offset of the texture coordinates within the vertex data */
+        private static final int TEXCOORDS_OFFSET = MAX_VERTICES * 6 * 4;
 
-        /** Holds the vertex positions */
-        private final Vector _positions = new Vector();
+        /** Holds the size of the vertex data in bytes */
+        private static final int VERTEX_DATA_SIZE = MAX_VERTICES * 8 * 4;
 
-        /** Holds the vertex normals */
-        private final Vector _normals = new Vector();
+        /** Holds the render batches for each texture */
+        private static Hashtable _batches = new Hashtable();
 
-        /** Holds the vertex texture coordinates */
-        private final Vector _texcoords = new Vector();
+        /** Holds every batch sorted by texture */
+        private static Batch[] _drawOrder = new Batch[0];
 
-        /** Holds the indices into the vertex data */
-        private final Vector _indices = new Vector();
+        /** Holds the vertex data used by the GL */
+        private final FloatBuffer _vertexData;
 
-        /** Holds the actual vertex data used by the GL */
-        private FloatBuffer _vertexData = null;
+        /** Holds the index data used by the GL */
+        private final ByteBuffer _indexData;
 
-        /** Holds the actual index data used by the GL */
-        private ByteBuffer _indexData = null;
+        /** Holds the number of vertices in the batch */
+        private int _vertexCount;
 
-        /**
-         * Holds the offset into the vertex data where new data can be appended
-         */
-        private int _vertexDataOffset;
+        /** Holds the number of indices in the batch */
+        private int _indexCount;
 
-        /** Holds the offset into the index data where new data can be appended */
-        private int _indexDataOffset;
+        /** Holds the first vertex not yet uploaded to the GL */
+        private int _dirtyVertex;
 
-        /** The offset of the vertex positions within the vertex data */
-        private int _positionsOffset;
+        /** Holds the first index not yet uploaded to the GL */
+        private int _dirtyIndex;
 
-        /** The offset of the vertex normals within the vertex data */
-        private int _normalsOffset;
+        /** Holds whether the GL buffers have been allocated */
+        private boolean _isAllocated;
 
-        /** The offset of the texture coordinates within the vertex data */
-        private int _texcoordsOffset;
+        /** Holds whether meshes may no longer be added to the batch */
+        private boolean _isSealed;
 
         /**
          * Holds handles to the vertex (_buffers[0]) and index (_buffers[1])
@@ -797,6 +1229,18 @@ public class Sprite {
          */
         private int _meshRenderIndex = 0;
 
+        /** Holds the bounds of the batch's meshes, in world units */
+        private float _minX = Float.MAX_VALUE;
+        private float _minY = Float.MAX_VALUE;
+        private float _maxX = -Float.MAX_VALUE;
+        private float _maxY = -Float.MAX_VALUE;
+
+        /**
+         * Holds the batch's item in the grid SpriteGameLevel culls batches
+         * with, or -1 if the batch hasn't been added to the grid
+         */
+        int _cullItem = -1;
+
         /**
          * Constructs a render batch that using the given texture
          * 
@@ -806,16 +1250,10 @@ public class Sprite {
          *            The texture's OpenGL handle
          */
         public Batch(final GL11 gl, final int texture) {
-            // Store the texture handle
-            _texture = texture;
+            this(texture);
 
             // Create the vertex and index buffers
             gl.glGenBuffers(2, _buffers, 0);
-            _vertexDataOffset = 0;
-            _indexDataOffset = 0;
-            _positionsOffset = 0;
-            _normalsOffset = 0;
-            _texcoordsOffset = 0;
         }
 
         /**
@@ -827,16 +1265,23 @@ public class Sprite {
          *            The texture's OpenGL handle
          */
         public Batch(final GL20 gl, final int texture) {
-            // Store the texture handle
-            _texture = texture;
+            this(texture);
 
             // Create the vertex and index buffers
             gl.glGenBuffers(2, _buffers, 0);
-            _vertexDataOffset = 0;
-            _indexDataOffset = 0;
-            _positionsOffset = 0;
-            _normalsOffset = 0;
-            _texcoordsOffset = 0;
+        }
+
+        /**
+         * Allocates the batch's direct buffers
+         * 
+         * @param texture
+         *            The texture's OpenGL handle
+         */
+        private Batch(final int texture) {
+            _texture = texture;
+            _vertexData =
+                    ByteBuffer.allocateDirect(VERTEX_DATA_SIZE).asFloatBuffer();
+            _indexData = ByteBuffer.allocateDirect(MAX_INDICES);
         }
 
         /**
@@ -846,16 +1291,13 @@ public class Sprite {
          *            The reference to the OpenGL v1.1 object
          */
         public static void clearBatch(final GL11 gl) {
-            final Enumeration e = _batches.elements();
-            int[] buffers;
-
-            // Go through everything in the batch and remove it
-            while (e.hasMoreElements()) {
-                buffers = ((Batch[]) e.nextElement())[0]._buffers;
-                gl.glDeleteBuffers(2, buffers, 0);
+            // Go through every batch and delete its buffers
+            for (int i = 0; i < _drawOrder.length; i++) {
+                gl.glDeleteBuffers(2, _drawOrder[i]._buffers, 0);
             }
 
             _batches.clear();
+            _drawOrder = new Batch[0];
         }
 
         /**
@@ -865,95 +1307,202 @@ public class Sprite {
          *            The reference to the OpenGL v2.0 object
          */
         public static void clearBatch(final GL20 gl) {
-            final Enumeration e = _batches.elements();
-            int[] buffers;
-
-            // Go through everything in the batch and remove it
-            while (e.hasMoreElements()) {
-                buffers = ((Batch[]) e.nextElement())[0]._buffers;
-                gl.glDeleteBuffers(2, buffers, 0);
+            // Go through every batch and delete its buffers
+            for (int i = 0; i < _drawOrder.length; i++) {
+                gl.glDeleteBuffers(2, _drawOrder[i]._buffers, 0);
             }
 
             _batches.clear();
+            _drawOrder = new Batch[0];
         }
 
         /**
-         * Renders the batch using OpenGL v1.1
+         * Stops meshes being added to the existing batches, so that the
+         * meshes added from now on go into new batches. SpriteGameLevel seals
+         * the batches at the start of each chunk of tiles, so that a chunk's
+         * batches can be deleted when the chunk is evicted.
+         */
+        static void sealAll() {
+            for (int i = 0; i < _drawOrder.length; i++) {
+                _drawOrder[i]._isSealed = true;
+            }
+        }
+
+        /**
+         * Deletes a batch's buffers and removes it from the batches rendered
+         * by renderAll()
          * 
          * @param gl
-         *            The reference to the OpenGl v1.1 object
+         *            The reference to the OpenGL v1.1 object
+         * @param batch
+         *            The batch to delete
          */
-        public void render(final GL11 gl) {
-            // Check if all the batched meshes have called render()
-            // (meaning we should actually draw them all now).
-            if (_meshRenderIndex == _meshCount - 1) {
-                if (_vertexData == null) {
-                    // Update the direct byte buffers
-                    _vertexData =
-                            ByteBuffer.allocateDirect(_vertexDataOffset)
-                                    .asFloatBuffer();
-
-                    for (int i = 0; i < _positions.size(); i++) {
-                        _vertexData
-                                .put(((FloatArray) _positions.elementAt(i)).array);
-                    }
+        static void deleteBatch(final GL11 gl, final Batch batch) {
+            gl.glDeleteBuffers(2, batch._buffers, 0);
+            removeBatch(batch);
+        }
 
-                    for (int i = 0; i < _normals.size(); i++) {
-                        _vertexData
-                                .put(((FloatArray) _normals.elementAt(i)).array);
-                    }
+        /**
+         * Deletes a batch's buffers and removes it from the batches rendered
+         * by renderAll()
+         * 
+         * @param gl
+         *            The reference to the OpenGL v2.0 object
+         * @param batch
+         *            The batch to delete
+         */
+        static void deleteBatch(final GL20 gl, final Batch batch) {
+            gl.glDeleteBuffers(2, batch._buffers, 0);
+            removeBatch(batch);
+        }
 
-                    for (int i = 0; i < _texcoords.size(); i++) {
-                        _vertexData
-                                .put(((FloatArray) _texcoords.elementAt(i)).array);
-                    }
+        /**
+         * Renders every batch using OpenGL v1.1. Batches are drawn in texture
+         * order so each texture is bound once, and the client state is set up
+         * once for all of them.
+         * 
+         * @param gl
+         *            The reference to the OpenGL v1.1 object
+         */
+        public static void renderAll(final GL11 gl) {
+            renderAll(gl, _drawOrder, _drawOrder.length);
+        }
 
-                    _vertexData.rewind();
+        /**
+         * Renders a list of batches using OpenGL v1.1. The list is sorted by
+         * texture so each texture is bound once.
+         * 
+         * @param gl
+         *            The reference to the OpenGL v1.1 object
+         * @param batches
+         *            The batches to render, which are reordered by texture
+         * @param count
+         *            The number of batches in the list
+         * @return The number of draw calls made
+         */
+        static int renderAll(final GL11 gl, final Batch[] batches,
+                final int count) {
+            sortByTexture(batches, count);
 
-                    _indexData = ByteBuffer.allocateDirect(_indexDataOffset);
+            // Enable the arrays for the VBO
+            gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
+            gl.glEnableClientState(GL10.GL_NORMAL_ARRAY);
+            gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
 
-                    for (int i = 0; i < _indices.size(); i++) {
-                        _indexData
-                                .put(((ByteArray) _indices.elementAt(i)).array);
-                    }
-                    _indexData.rewind();
+            int texture = -1;
+            for (int i = 0; i < count; i++) {
+                final Batch batch = batches[i];
+                batch.draw(gl, batch._texture != texture);
+                texture = batch._texture;
+            }
+            return count;
+        }
 
-                    // Update the buffers in the GL
-                    gl.glBindBuffer(GL11.GL_ARRAY_BUFFER, _buffers[0]);
-                    gl.glBufferData(GL11.GL_ARRAY_BUFFER, _vertexDataOffset,
-                            _vertexData, GL11.GL_STATIC_DRAW);
+        /**
+         * Renders every batch using OpenGL v2.0. Batches are drawn in texture
+         * order so each texture is bound once, and the uniforms are loaded
+         * once for all of them.
+         * 
+         * @param gl
+         *            The reference to the OpenGL v2.0 object
+         * @param modelview
+         *            The modelview matrix
+         */
+        public static void renderAll(final GL20 gl, final Matrix4f modelview) {
+            renderAll(gl, modelview, _drawOrder, _drawOrder.length);
+        }
 
-                    gl.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, _buffers[1]);
-                    gl.glBufferData(GL11.GL_ELEMENT_ARRAY_BUFFER,
-                            _indexDataOffset, _indexData, GL11.GL_STATIC_DRAW);
+        /**
+         * Renders a list of batches using OpenGL v2.0. The list is sorted by
+         * texture so each texture is bound once.
+         * 
+         * @param gl
+         *            The reference to the OpenGL v2.0 object
+         * @param modelview
+         *            The modelview matrix
+         * @param batches
+         *            The batches to render, which are reordered by texture
+         * @param count
+         *            The number of batches in the list
+         * @return The number of draw calls made
+         */
+        static int renderAll(final GL20 gl, final Matrix4f modelview,
+                final Batch[] batches, final int count) {
+            sortByTexture(batches, count);
+
+            // Enable the generic vertex attribute arrays
+            gl.glEnableVertexAttribArray(0);
+            gl.glEnableVertexAttribArray(1);
+            gl.glEnableVertexAttribArray(2);
+
+            // Load the modelview and normal matrices used for rendering
+            gl.glUniformMatrix4fv(_mLoc, 1, false, modelview.getArray(), 0);
+            gl.glUniformMatrix3fv(_nLoc, 1, false, Sprite
+                    .getNormalMatrix(modelview), 0);
+            gl.glUniform1i(_tLoc, 0);
+
+            int texture = -1;
+            for (int i = 0; i < count; i++) {
+                final Batch batch = batches[i];
+                batch.draw(gl, batch._texture != texture);
+                texture = batch._texture;
+            }
+            return count;
+        }
+
+        /**
+         * Sorts a list of batches by texture, keeping the order of batches
+         * that share a texture
+         */
+        private static void sortByTexture(final Batch[] batches,
+                final int count) {
+            for (int i = 1; i < count; i++) {
+                final Batch batch = batches[i];
+                int j = i;
+                while (j > 0 && batches[j - 1]._texture > batch._texture) {
+                    batches[j] = batches[j - 1];
+                    j--;
                 }
+                batches[j] = batch;
+            }
+        }
 
-                // Save the old model view matrix and clear the current matrix
-                gl.glPushMatrix();
+        /**
+         * Retrieves the bounds of the meshes added to the batch
+         * 
+         * @param min
+         *            The vector to receive the minimum corner
+         * @param max
+         *            The vector to receive the maximum corner
+         */
+        void getBounds(final Vector3f min, final Vector3f max) {
+            min.set(_minX, _minY, 0.0f);
+            max.set(_maxX, _maxY, 0.0f);
+        }
 
-                // Bind the vertex and index buffers
-                gl.glBindBuffer(GL11.GL_ARRAY_BUFFER, _buffers[0]);
-                gl.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, _buffers[1]);
+        /**
+         * @return The number of meshes added to the batch
+         */
+        int getMeshCount() {
+            return _meshCount;
+        }
 
+        /**
+         * Renders the batch using OpenGL v1.1
+         * 
+         * @param gl
+         *            The reference to the OpenGl v1.1 object
+         */
+        public void render(final GL11 gl) {
+            // Check if all the batched meshes have called render()
+            // (meaning we should actually draw them all now).
+            if (_meshRenderIndex == _meshCount - 1) {
                 // Enable the arrays for the VBO
                 gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
                 gl.glEnableClientState(GL10.GL_NORMAL_ARRAY);
                 gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
 
-                // Set the pointers for the vertex buffer data
-                gl.glVertexPointer(3, GL10.GL_FLOAT, 0, _positionsOffset);
-                gl.glNormalPointer(GL10.GL_FLOAT, 0, _normalsOffset);
-                gl.glTexCoordPointer(2, GL10.GL_FLOAT, 0, _texcoordsOffset);
-
-                // Bind the mesh's texture
-                gl.glBindTexture(GL10.GL_TEXTURE_2D, _texture);
-
-                // Draw the batch's geometry
-                gl.glDrawElements(GL10.GL_TRIANGLES, _indexDataOffset,
-                        GL10.GL_UNSIGNED_BYTE, 0);
-
-                // Restore the old model view matrix
-                gl.glPopMatrix();
+                draw(gl, true);
 
                 // Reset the render index
                 _meshRenderIndex = 0;
@@ -975,60 +1524,6 @@ public class Sprite {
             // Check if all the batched meshes have called render()
             // (meaning we should actually draw them all now).
             if (_meshRenderIndex == _meshCount - 1) {
-                if (_vertexData == null) {
-                    // Update the direct byte buffers
-                    _vertexData =
-                            ByteBuffer.allocateDirect(_vertexDataOffset)
-                                    .asFloatBuffer();
-
-                    for (int i = 0; i < _positions.size(); i++) {
-                        _vertexData
-                                .put(((FloatArray) _positions.elementAt(i)).array);
-                    }
-
-                    for (int i = 0; i < _normals.size(); i++) {
-                        _vertexData
-                                .put(((FloatArray) _normals.elementAt(i)).array);
-                    }
-
-                    for (int i = 0; i < _texcoords.size(); i++) {
-                        _vertexData
-                                .put(((FloatArray) _texcoords.elementAt(i)).array);
-                    }
-
-                    _vertexData.rewind();
-
-                    _indexData = ByteBuffer.allocateDirect(_indexDataOffset);
-
-                    for (int i = 0; i < _indices.size(); i++) {
-                        _indexData
-                                .put(((ByteArray) _indices.elementAt(i)).array);
-                    }
-
-                    _indexData.rewind();
-
-                    // Update the buffers in the GL
-                    gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, _buffers[0]);
-                    gl.glBufferData(GL20.GL_ARRAY_BUFFER, _vertexDataOffset,
-                            _vertexData, GL20.GL_STATIC_DRAW);
-
-                    gl.glBindBuffer(GL20.GL_ELEMENT_ARRAY_BUFFER, _buffers[1]);
-                    gl.glBufferData(GL20.GL_ELEMENT_ARRAY_BUFFER,
-                            _indexDataOffset, _indexData, GL20.GL_STATIC_DRAW);
-                }
-
-                // Bind the vertex and index buffers
-                gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, _buffers[0]);
-                gl.glBindBuffer(GL20.GL_ELEMENT_ARRAY_BUFFER, _buffers[1]);
-
-                // Set the pointers for the vertex buffer data
-                gl.glVertexAttribPointer(0, 3, GL20.GL_FLOAT, false, 0,
-                        _positionsOffset);
-                gl.glVertexAttribPointer(1, 3, GL20.GL_FLOAT, false, 0,
-                        _normalsOffset);
-                gl.glVertexAttribPointer(2, 2, GL20.GL_FLOAT, false, 0,
-                        _texcoordsOffset);
-
                 // Enable the generic vertex attribute arrays
                 gl.glEnableVertexAttribArray(0);
                 gl.glEnableVertexAttribArray(1);
@@ -1038,14 +1533,9 @@ public class Sprite {
                 gl.glUniformMatrix4fv(_mLoc, 1, false, modelview.getArray(), 0);
                 gl.glUniformMatrix3fv(_nLoc, 1, false, Sprite
                         .getNormalMatrix(modelview), 0);
-
-                // Set up the mesh's texture for rendering
-                gl.glBindTexture(GL20.GL_TEXTURE_2D, _texture);
                 gl.glUniform1i(_tLoc, 0);
 
-                // Draw the batch's geometry
-                gl.glDrawElements(GL20.GL_TRIANGLES, _indexDataOffset,
-                        GL20.GL_UNSIGNED_BYTE, 0);
+                draw(gl, true);
 
                 // Reset the render index
                 _meshRenderIndex = 0;
@@ -1055,6 +1545,130 @@ public class Sprite {
             }
         }
 
+        /**
+         * Draws the batch's geometry using OpenGL v1.1, uploading any data
+         * added since the last draw. The client state must already be enabled.
+         * 
+         * @param gl
+         *            The reference to the OpenGL v1.1 object
+         * @param bindTexture
+         *            Whether the batch's texture needs to be bound
+         */
+        private void draw(final GL11 gl, final boolean bindTexture) {
+            // Bind the vertex and index buffers
+            gl.glBindBuffer(GL11.GL_ARRAY_BUFFER, _buffers[0]);
+            gl.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, _buffers[1]);
+
+            // Update the buffers in the GL
+            if (!_isAllocated) {
+                _vertexData.position(0);
+                gl.glBufferData(GL11.GL_ARRAY_BUFFER, VERTEX_DATA_SIZE,
+                        _vertexData, GL11.GL_STATIC_DRAW);
+                _indexData.position(0);
+                gl.glBufferData(GL11.GL_ELEMENT_ARRAY_BUFFER, MAX_INDICES,
+                        _indexData, GL11.GL_STATIC_DRAW);
+                _isAllocated = true;
+            } else {
+                if (_dirtyVertex < _vertexCount) {
+                    final int count = _vertexCount - _dirtyVertex;
+                    _vertexData.position(POSITIONS_OFFSET / 4 + _dirtyVertex * 3);
+                    gl.glBufferSubData(GL11.GL_ARRAY_BUFFER, POSITIONS_OFFSET
+                            + _dirtyVertex * 12, count * 12, _vertexData);
+                    _vertexData.position(NORMALS_OFFSET / 4 + _dirtyVertex * 3);
+                    gl.glBufferSubData(GL11.GL_ARRAY_BUFFER, NORMALS_OFFSET
+                            + _dirtyVertex * 12, count * 12, _vertexData);
+                    _vertexData.position(TEXCOORDS_OFFSET / 4 + _dirtyVertex * 2);
+                    gl.glBufferSubData(GL11.GL_ARRAY_BUFFER, TEXCOORDS_OFFSET
+                            + _dirtyVertex * 8, count * 8, _vertexData);
+                }
+                if (_dirtyIndex < _indexCount) {
+                    _indexData.position(_dirtyIndex);
+                    gl.glBufferSubData(GL11.GL_ELEMENT_ARRAY_BUFFER,
+                            _dirtyIndex, _indexCount - _dirtyIndex, _indexData);
+                }
+            }
+            _dirtyVertex = _vertexCount;
+            _dirtyIndex = _indexCount;
+
+            // Set the pointers for the vertex buffer data
+            gl.glVertexPointer(3, GL10.GL_FLOAT, 0, POSITIONS_OFFSET);
+            gl.glNormalPointer(GL10.GL_FLOAT, 0, NORMALS_OFFSET);
+            gl.glTexCoordPointer(2, GL10.GL_FLOAT, 0, TEXCOORDS_OFFSET);
+
+            // Bind the batch's texture
+            if (bindTexture) {
+                gl.glBindTexture(GL10.GL_TEXTURE_2D, _texture);
+            }
+
+            // Draw the batch's geometry
+            gl.glDrawElements(GL10.GL_TRIANGLES, _indexCount,
+                    GL10.GL_UNSIGNED_BYTE, 0);
+        }
+
+        /**
+         * Draws the batch's geometry using OpenGL v2.0, uploading any data
+         * added since the last draw. The attribute arrays and uniforms must
+         * already be set up.
+         * 
+         * @param gl
+         *            The reference to the OpenGL v2.0 object
+         * @param bindTexture
+         *            Whether the batch's texture needs to be bound
+         */
+        private void draw(final GL20 gl, final boolean bindTexture) {
+            // Bind the vertex and index buffers
+            gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, _buffers[0]);
+            gl.glBindBuffer(GL20.GL_ELEMENT_ARRAY_BUFFER, _buffers[1]);
+
+            // Update the buffers in the GL
+            if (!_isAllocated) {
+                _vertexData.position(0);
+                gl.glBufferData(GL20.GL_ARRAY_BUFFER, VERTEX_DATA_SIZE,
+                        _vertexData, GL20.GL_STATIC_DRAW);
+                _indexData.position(0);
+                gl.glBufferData(GL20.GL_ELEMENT_ARRAY_BUFFER, MAX_INDICES,
+                        _indexData, GL20.GL_STATIC_DRAW);
+                _isAllocated = true;
+            } else {
+                if (_dirtyVertex < _vertexCount) {
+                    final int count = _vertexCount - _dirtyVertex;
+                    _vertexData.position(POSITIONS_OFFSET / 4 + _dirtyVertex * 3);
+                    gl.glBufferSubData(GL20.GL_ARRAY_BUFFER, POSITIONS_OFFSET
+                            + _dirtyVertex * 12, count * 12, _vertexData);
+                    _vertexData.position(NORMALS_OFFSET / 4 + _dirtyVertex * 3);
+                    gl.glBufferSubData(GL20.GL_ARRAY_BUFFER, NORMALS_OFFSET
+                            + _dirtyVertex * 12, count * 12, _vertexData);
+                    _vertexData.position(TEXCOORDS_OFFSET / 4 + _dirtyVertex * 2);
+                    gl.glBufferSubData(GL20.GL_ARRAY_BUFFER, TEXCOORDS_OFFSET
+                            + _dirtyVertex * 8, count * 8, _vertexData);
+                }
+                if (_dirtyIndex < _indexCount) {
+                    _indexData.position(_dirtyIndex);
+                    gl.glBufferSubData(GL20.GL_ELEMENT_ARRAY_BUFFER,
+                            _dirtyIndex, _indexCount - _dirtyIndex, _indexData);
+                }
+            }
+            _dirtyVertex = _vertexCount;
+            _dirtyIndex = _indexCount;
+
+            // Set the pointers for the vertex buffer data
+            gl.glVertexAttribPointer(0, 3, GL20.GL_FLOAT, false, 0,
+                    POSITIONS_OFFSET);
+            gl.glVertexAttribPointer(1, 3, GL20.GL_FLOAT, false, 0,
+                    NORMALS_OFFSET);
+            gl.glVertexAttribPointer(2, 2, GL20.GL_FLOAT, false, 0,
+                    TEXCOORDS_OFFSET);
+
+            // Set up the batch's texture for rendering
+            if (bindTexture) {
+                gl.glBindTexture(GL20.GL_TEXTURE_2D, _texture);
+            }
+
+            // Draw the batch's geometry
+            gl.glDrawElements(GL20.GL_TRIANGLES, _indexCount,
+                    GL20.GL_UNSIGNED_BYTE, 0);
+        }
+
         /**
          * Gets the first available batch that corresponds to the given texture
          * and can hold the given mesh data, adding the mesh data to the batch
@@ -1077,38 +1691,17 @@ public class Sprite {
         public static Batch getBatch(final GL11 gl, final float[] vertices,
                 final float[] normals, final float[] texcoords,
                 final byte[] indices, final int texture) {
-            final Integer key = new Integer(texture);
-
-            // If a render batch corresponding to the given
-            // texture does not exist, create it.
-            if (!_batches.containsKey(key)) {
-                final Batch[] batches = new Batch[1];
-                batches[0] = new Batch(gl, texture);
-                batches[0].addMesh(gl, vertices, normals, texcoords, indices);
-                _batches.put(key, batches);
-                return batches[0];
-            } else {
-                // Find a batch that can hold the requested vertices
-                final Batch[] batches = (Batch[]) _batches.get(key);
+            Batch batch = findBatch(texture, vertices.length / 3, indices.length);
 
-                for (int i = 0; i < batches.length; i++) {
-                    if (!batches[i].isFull(vertices.length)) {
-                        batches[i].addMesh(gl, vertices, normals, texcoords,
-                                indices);
-                        return batches[i];
-                    }
-                }
-
-                // All the batches (for the given texture)
-                // are full, so add a new batch.
-                final Batch[] newBatches = new Batch[batches.length + 1];
-                System.arraycopy(batches, 0, newBatches, 0, batches.length);
-                newBatches[batches.length] = new Batch(gl, texture);
-                newBatches[batches.length].addMesh(gl, vertices, normals,
-                        texcoords, indices);
-                _batches.put(key, newBatches);
-                return newBatches[batches.length];
+            // All the batches (for the given texture)
+            // are full, so add a new batch.
+            if (batch == null) {
+                batch = new Batch(gl, texture);
+                addBatch(batch);
             }
+
+            batch.addMesh(vertices, normals, texcoords, indices);
+            return batch;
         }
 
         /**
@@ -1133,113 +1726,134 @@ public class Sprite {
         public static Batch getBatch(final GL20 gl, final float[] vertices,
                 final float[] normals, final float[] texcoords,
                 final byte[] indices, final int texture) {
-            final Integer key = new Integer(texture);
-
-            // If a render batch corresponding to the given
-            // texture does not exist, create it.
-            if (!_batches.containsKey(key)) {
-                final Batch[] batches = new Batch[1];
-                batches[0] = new Batch(gl, texture);
-                batches[0].addMesh(gl, vertices, normals, texcoords, indices);
-                _batches.put(key, batches);
-                return batches[0];
-            } else {
-                // Find a batch that can hold the requested vertices
-                final Batch[] batches = (Batch[]) _batches.get(key);
+            Batch batch = findBatch(texture, vertices.length / 3, indices.length);
+
+            // All the batches (for the given texture) are full, so add a
+            // new batch
+            if (batch == null) {
+                batch = new Batch(gl, texture);
+                addBatch(batch);
+            }
 
+            batch.addMesh(vertices, normals, texcoords, indices);
+            return batch;
+        }
+
+        /**
+         * Finds a batch for the given texture that can hold a mesh
+         * 
+         * @param texture
+         *            The OpenGL handle of the texture
+         * @param vertexCount
+         *            The number of vertices in the mesh
+         * @param indexCount
+         *            The number of indices in the mesh
+         * @return The batch, or null if every batch for the texture is full
+         */
+        private static Batch findBatch(final int texture,
+                final int vertexCount, final int indexCount) {
+            final Batch[] batches = (Batch[]) _batches.get(new Integer(texture));
+
+            if (batches != null) {
                 for (int i = 0; i < batches.length; i++) {
-                    if (!batches[i].isFull(vertices.length)) {
-                        batches[i].addMesh(gl, vertices, normals, texcoords,
-                                indices);
+                    if (!batches[i].isFull(vertexCount, indexCount)) {
                         return batches[i];
                     }
                 }
+            }
+            return null;
+        }
+
+        /**
+         * Adds a new batch to the batches for its texture and to the draw
+         * order, keeping the draw order sorted by texture
+         * 
+         * @param batch
+         *            The batch to add
+         */
+        private static void addBatch(final Batch batch) {
+            final Integer key = new Integer(batch._texture);
+            final Batch[] batches = (Batch[]) _batches.get(key);
 
-                // All the batches (for the given texture) are full, so add a
-                // new batch
+            if (batches == null) {
+                _batches.put(key, new Batch[] { batch });
+            } else {
                 final Batch[] newBatches = new Batch[batches.length + 1];
                 System.arraycopy(batches, 0, newBatches, 0, batches.length);
-                newBatches[batches.length] = new Batch(gl, texture);
-                newBatches[batches.length].addMesh(gl, vertices, normals,
-                        texcoords, indices);
+                newBatches[batches.length] = batch;
                 _batches.put(key, newBatches);
-                return newBatches[batches.length];
             }
+
+            int i = _drawOrder.length;
+            final Batch[] drawOrder = new Batch[i + 1];
+            while (i > 0 && _drawOrder[i - 1]._texture > batch._texture) {
+                drawOrder[i] = _drawOrder[i - 1];
+                i--;
+            }
+            drawOrder[i] = batch;
+            System.arraycopy(_drawOrder, 0, drawOrder, 0, i);
+            _drawOrder = drawOrder;
         }
 
         /**
-         * Retrieves a boolean indicating whether the batch is full or not
+         * Removes a batch from the batches for its texture and from the draw
+         * order
          * 
-         * @param vertexCount
-         *            The number of vertices to be added to the batch
-         * @return <code>true</code> if the batch is full; <code>false</code>
-         *         otherwise
+         * @param batch
+         *            The batch to remove
          */
-        protected boolean isFull(final int vertexCount) {
-            return _vertexDataOffset + vertexCount * 32 > 8192;
+        private static void removeBatch(final Batch batch) {
+            final Integer key = new Integer(batch._texture);
+            final Batch[] batches = (Batch[]) _batches.get(key);
+
+            if (batches != null) {
+                final Batch[] newBatches = remove(batches, batch);
+                if (newBatches.length == 0) {
+                    _batches.remove(key);
+                } else {
+                    _batches.put(key, newBatches);
+                }
+            }
+            _drawOrder = remove(_drawOrder, batch);
         }
 
         /**
-         * Adds the given mesh to the batch
+         * Copies an array of batches, leaving one out
          * 
-         * @param gl
-         *            The reference to the OpenGL v1.1 object
-         * @param vertices
-         *            The mesh's vertices
-         * @param normals
-         *            The mesh's vertice normals
-         * @param texcoords
-         *            The mesh's vertice texture coordinates
-         * @param indices
-         *            The mesh's indices
+         * @return The copy, or the array itself if it doesn't hold the batch
          */
-        private void addMesh(final GL11 gl, final float[] vertices,
-                final float[] normals, final float[] texcoords,
-                final byte[] indices) {
-            // Add the vertex data to the batch's internal data
-            _positions.addElement(new FloatArray(vertices));
-            _normals.addElement(new FloatArray(normals));
-            _texcoords.addElement(new FloatArray(texcoords));
-
-            // Add the index data to the batch's internal data after offsetting
-            // it correctly.
-            // The offset is calculated as follows:
-            // VertexDataOffset / ((3 + 3 + 2) * 4) = VertexDataOffset / 32
-            // (3 floats(position) + 3 floats(normal) + 2 floats(texture
-            // coordinate)) * 4 bytes per float
-            final int indexOffset = _vertexDataOffset / 32;
-            final ByteArray newIndices = new ByteArray(indices);
-            for (int i = 0; i < newIndices.array.length; i++) {
-                newIndices.array[i] += indexOffset;
-            }
-            _indices.addElement(newIndices);
-
-            // Update the offsets
-            _vertexDataOffset +=
-                    (vertices.length + normals.length + texcoords.length) * 4;
-            _indexDataOffset += indices.length;
-
-            // Update the vertex array offsets used for drawing
-            _positionsOffset = 0;
-            _normalsOffset = 0;
-            for (int i = 0; i < _positions.size(); i++) {
-                _normalsOffset +=
-                        ((FloatArray) _positions.elementAt(i)).array.length * 4;
-            }
-            _texcoordsOffset = _normalsOffset;
-            for (int i = 0; i < _normals.size(); i++) {
-                _texcoordsOffset +=
-                        ((FloatArray) _normals.elementAt(i)).array.length * 4;
+        private static Batch[] remove(final Batch[] batches, final Batch batch) {
+            for (int i = 0; i < batches.length; i++) {
+                if (batches[i] == batch) {
+                    final Batch[] newBatches = new Batch[batches.length - 1];
+                    System.arraycopy(batches, 0, newBatches, 0, i);
+                    System.arraycopy(batches, i + 1, newBatches, i,
+                            newBatches.length - i);
+                    return newBatches;
+                }
             }
+            return batches;
+        }
 
-            _meshCount++;
+        /**
+         * Retrieves a boolean indicating whether the batch is full or not. A
+         * sealed batch is always full.
+         * 
+         * @param vertexCount
+         *            The number of vertices to be added to the batch
+         * @param indexCount
+         *            The number of indices to be added to the batch
+         * @return <code>true</code> if the batch is full; <code>false</code>
+         *         otherwise
+         */
+        protected boolean isFull(final int vertexCount, final int indexCount) {
+            return _isSealed || _vertexCount + vertexCount > MAX_VERTICES
+                    || _indexCount + indexCount > MAX_INDICES;
         }
 
         /**
-         * Adds the given mesh to the batch.
+         * Adds the given mesh to the batch
          * 
-         * @param gl
-         *            The reference to the OpenGL v2.0 object
          * @param vertices
          *            The mesh's vertices
          * @param normals
@@ -1249,45 +1863,39 @@ public class Sprite {
          * @param indices
          *            The mesh's indices
          */
-        private void addMesh(final GL20 gl, final float[] vertices,
-                final float[] normals, final float[] texcoords,
-                final byte[] indices) {
-            // Add the vertex data to the batch's internal data
-            _positions.addElement(new FloatArray(vertices));
-            _normals.addElement(new FloatArray(normals));
-            _texcoords.addElement(new FloatArray(texcoords));
-
-            // Add the index data to the batch's internal data after offsetting
-            // it correctly.
-            // The offset is calculated as follows:
-            // VertexDataOffset / ((3 + 3 + 2) * 4) = VertexDataOffset / 32
-            // (3 floats(position) + 3 floats(normal) + 2 floats(texture
-            // coordinate)) * 4 bytes per float
-            final int indexOffset = _vertexDataOffset / 32;
-            final ByteArray newIndices = new ByteArray(indices);
-            for (int i = 0; i < newIndices.array.length; i++) {
-                newIndices.array[i] += indexOffset;
+        private void addMesh(final float[] vertices, final float[] normals,
+                final float[] texcoords, final byte[] indices) {
+            final int vertexCount = vertices.length / 3;
+            if (isFull(vertexCount, indices.length)) {
+                throw new IllegalArgumentException("Mesh is too large to batch");
             }
-            _indices.addElement(newIndices);
-
-            // Update the offsets
-            _vertexDataOffset +=
-                    (vertices.length + normals.length + texcoords.length) * 4;
-            _indexDataOffset += indices.length;
-
-            // Update the vertex array offsets used for drawing
-            _positionsOffset = 0;
-            _normalsOffset = 0;
-            for (int i = 0; i < _positions.size(); i++) {
-                _normalsOffset +=
-                        ((FloatArray) _positions.elementAt(i)).array.length * 4;
+
+            // Append the vertex data to each region of the vertex buffer
+            _vertexData.position(POSITIONS_OFFSET / 4 + _vertexCount * 3);
+            _vertexData.put(vertices);
+            _vertexData.position(NORMALS_OFFSET / 4 + _vertexCount * 3);
+            _vertexData.put(normals);
+            _vertexData.position(TEXCOORDS_OFFSET / 4 + _vertexCount * 2);
+            _vertexData.put(texcoords);
+
+            // Append the index data after offsetting it past the vertices
+            // already in the batch
+            for (int i = 0; i < indices.length; i++) {
+                _indexData.put(_indexCount + i,
+                        (byte) (indices[i] + _vertexCount));
             }
-            _texcoordsOffset = _normalsOffset;
-            for (int i = 0; i < _normals.size(); i++) {
-                _texcoordsOffset +=
-                        ((FloatArray) _normals.elementAt(i)).array.length * 4;
+
+            // Grow the bounds to take in the mesh
+            for (int i = 0; i < vertices.length; i += 3) {
+                _minX = Math.min(_minX, vertices[i]);
+                _minY = Math.min(_minY, vertices[i + 1]);
+                _maxX = Math.max(_maxX, vertices[i]);
+                _maxY = Math.max(_maxY, vertices[i + 1]);
             }
 
+            // Update the counts
+            _vertexCount += vertexCount;
+            _indexCount += indices.length;
             _meshCount++;
         }
     }
@@ -1299,5 +1907,6 @@ public class Sprite {
         // Wipe out the table of texture handles so they'll be reloaded
         // the next time the game is initialized.
         _textureHandles = new Hashtable();
+        _instanceBuffers = null;
     }
 }
@@ -38,10 +38,23 @@ public class SpriteGame extends UiApplication {
     final static int OPENGLES11 = 0;
     final static int OPENGLES20 = 1;
 
+    /** Command line argument that runs the headless replay benchmark */
+    private static final String REPLAY = "replay";
+
+    /** Holds the number of steps the replay benchmark runs, a minute of play */
+    private static final int REPLAY_STEPS = 3750;
+
     /**
      * Creates a new SpriteGame object
+     * 
+     * @param isHeadless
+     *            True to run without any screens
      */
-    SpriteGame() {
+    SpriteGame(final boolean isHeadless) {
+        if (isHeadless) {
+            return;
+        }
+
         // Make sure that the device supports OpenGL ES.
         // If it doesn't, display a dialog and exit the application.
         if (!GLUtils.isSupported()) {
@@ -62,11 +75,26 @@ public class SpriteGame extends UiApplication {
      * Entry point for the application
      * 
      * @param args
-     *            Command line arguments (not used)
+     *            Command line arguments. "replay" checks sprite culling, then
+     *            replays a scripted game without a display and prints how
+     *            long the simulation took.
      */
     public static void main(final String[] args) {
-        final SpriteGame app = new SpriteGame();
-        app.enterEventDispatcher();
+        if (args != null && args.length > 0 && REPLAY.equals(args[0])) {
+            final SpriteGame app = new SpriteGame(true);
+            new Thread() {
+                public void run() {
+                    System.out.println(Sprite.runCullingCheck());
+                    System.out.println(GameSimulation
+                            .runBenchmark(REPLAY_STEPS));
+                    System.exit(0);
+                }
+            }.start();
+            app.enterEventDispatcher();
+        } else {
+            final SpriteGame app = new SpriteGame(false);
+            app.enterEventDispatcher();
+        }
     }
 
     /**
@@ -30,13 +30,7 @@ import javax.microedition.khronos.opengles.GL;
 import javax.microedition.khronos.opengles.GL10;
 import javax.microedition.khronos.opengles.GL11;
 
-import net.rim.device.api.animation.AbstractAnimation;
-import net.rim.device.api.animation.Animation;
-import net.rim.device.api.animation.AnimationListener;
-import net.rim.device.api.animation.Animator;
 import net.rim.device.api.math.Matrix4f;
-import net.rim.device.api.math.Transform3D;
-import net.rim.device.api.math.Vector3f;
 import net.rim.device.api.opengles.GL20;
 import net.rim.device.api.opengles.GLField;
 import net.rim.device.api.system.Characters;
@@ -44,33 +38,21 @@ import net.rim.device.api.system.Display;
 import net.rim.device.api.ui.Keypad;
 import net.rim.device.api.ui.TouchEvent;
 import net.rim.device.api.ui.TouchGesture;
-import net.rim.device.api.util.TimeSource;
 
 /**
- * The GLField which renders the current level and handles the animations and
- * any keyboard or touch events.
+ * The GLField which renders the current level and handles any keyboard or
+ * touch events. The game itself runs on a GameSimulation thread; this field
+ * forwards input to it and renders the latest snapshot it published.
  */
-public class SpriteGameGLField extends GLField implements AnimationListener {
-    /** Holds the game's current level */
-    private SpriteGameLevel _level;
+public class SpriteGameGLField extends GLField {
+    /** Holds how often the frame and simulation timings are logged, in ms */
+    private static final long REPORT_INTERVAL = 10000L;
 
-    /** Holds the win sprite */
-    private final Sprite _win;
+    /** Holds the game simulation */
+    private final GameSimulation _simulation;
 
-    /** Holds the win animation */
-    private final Animation _winAnimation;
-
-    /** Holds whether or not the win sprite should be rendered */
-    private boolean _renderWin = false;
-
-    /** Holds the lose sprite */
-    private final Sprite _lose;
-
-    /** Holds the lose animation */
-    private final Animation _loseAnimation;
-
-    /** Holds whether or not the lose sprite should be rendered */
-    private boolean _renderLose = false;
+    /** Holds the snapshot being rendered */
+    private SimulationSnapshot _snapshot;
 
     /** Holds the modelview matrix. Specific to GL20 version */
     private Matrix4f _modelview;
@@ -78,32 +60,32 @@ public class SpriteGameGLField extends GLField implements AnimationListener {
     /** Holds the projection matrix. Specific to GL20 version */
     private Matrix4f _projection;
 
-    /** Holds the current level */
-    private int _currentLevel = 0;
-
     /** Holds the version of GL being used */
     private final int _glVersion;
 
-    /** A translation vector */
-    Vector3f _t = new Vector3f();
-
-    /** Holds the animator used to update the obstacle animations */
-    private final Animator _animator;
-
     /** Holds whether the sprite should be moving left */
     private boolean _moveLeft;
 
     /** Holds whether the sprite should be moving right */
     private boolean _moveRight;
 
-    /** Holds the list of levels */
-    private final String[] _levelNames = { "/levelone.xml", "/leveltwo.xml" };
+    /** Holds the time the previous frame was updated */
+    private long _prevTime;
 
-    /** Time source used for animator and to calculate elapsed time */
-    private final TimeSource _timeSource;
+    /** Holds the time the timings were last logged */
+    private long _lastReport;
 
-    /** Time value used in calculating elapsed time between updates */
-    private long _prevTime;
+    /** Holds the time between frames */
+    private final TimingStats _frameStats = new TimingStats();
+
+    /** Holds the number of frames rendered since the last report */
+    private int _renderedFrames;
+
+    /** Holds the number of draw calls made since the last report */
+    private long _drawCalls;
+
+    /** Holds the number of objects culled since the last report */
+    private long _culledObjects;
 
     /**
      * Constructor for the SpriteGameGLField
@@ -115,46 +97,24 @@ public class SpriteGameGLField extends GLField implements AnimationListener {
         super(glVersion);
 
         _glVersion = glVersion;
+        _simulation = new GameSimulation();
+        _snapshot = _simulation.acquireSnapshot();
+    }
+
+    /**
+     * @see net.rim.device.api.ui.Field#onDisplay()
+     */
+    protected void onDisplay() {
+        super.onDisplay();
+        _simulation.start();
+    }
 
-        final Vector3f translation = new Vector3f(-40.0f, -4.0f, 0.0f);
-
-        // Set up the win sprite
-        _win = new Sprite("win.png");
-        _win._transform.setScale(new Vector3f(5.0f, 5.0f, 5.0f));
-        _win._transform.setTranslation(translation);
-
-        // Set up the lose sprite
-        _lose = new Sprite("lose.png");
-        _lose._transform.setScale(new Vector3f(5.0f, 5.0f, 5.0f));
-        _lose._transform.setTranslation(translation);
-
-        _timeSource = new TimeSource();
-        _timeSource.start();
-        _animator = new Animator(0, _timeSource);
-
-        // Set up the win animation
-        _winAnimation =
-                _animator.addAnimation(_win._transform,
-                        Transform3D.ANIMATION_PROPERTY_TRANSLATE, 4,
-                        new float[] { 0.0f, 0.2f, 0.8f, 1.0f }, 0, new float[] {
-                                -40.0f, -4.0f, 0.0f, 0.0f, -4.0f, 0.0f, 0.0f,
-                                -4.0f, 0.0f, 20.0f, -4.0f, 0.0f }, 0,
-                        Animation.EASINGCURVE_LINEAR, 1750L);
-        _winAnimation.setRepeatCount(1);
-        _winAnimation.setListener(this);
-
-        // set up the lose animation
-        _loseAnimation =
-                _animator.addAnimation(_lose._transform,
-                        Transform3D.ANIMATION_PROPERTY_TRANSLATE, 4,
-                        new float[] { 0.0f, 0.2f, 0.8f, 1.0f }, 0, new float[] {
-                                -40.0f, -4.0f, 0.0f, 0.0f, -4.0f, 0.0f, 0.0f,
-                                -4.0f, 0.0f, 20.0f, -4.0f, 0.0f }, 0,
-                        Animation.EASINGCURVE_LINEAR, 1750L);
-        _loseAnimation.setRepeatCount(1);
-        _loseAnimation.setListener(this);
-
-        loadLevel();
+    /**
+     * @see net.rim.device.api.ui.Field#onUndisplay()
+     */
+    protected void onUndisplay() {
+        _simulation.stop();
+        super.onUndisplay();
     }
 
     /**
@@ -201,11 +161,12 @@ public class SpriteGameGLField extends GLField implements AnimationListener {
         // Set up the orthographic (2D) projection matrix
         gl.glMatrixMode(GL10.GL_PROJECTION);
         gl.glLoadIdentity();
-        gl.glOrthof(-12.0f, 12.0f, -10.0f, 20.0f * Display.getHeight()
-                / Display.getWidth() - 10.0f, -1.0f, 1.0f);
+        gl.glOrthof(-SpriteGameLevel.VIEW_HALF_WIDTH,
+                SpriteGameLevel.VIEW_HALF_WIDTH, SpriteGameLevel.VIEW_BOTTOM,
+                SpriteGameLevel.getViewTop(), -1.0f, 1.0f);
 
-        _win.initialize(gl);
-        _lose.initialize(gl);
+        _simulation.getWinSprite().initialize(gl);
+        _simulation.getLoseSprite().initialize(gl);
     }
 
     /**
@@ -229,50 +190,47 @@ public class SpriteGameGLField extends GLField implements AnimationListener {
         Sprite.loadShader(gl);
 
         // Set up the orthographic (2D) projection matrix
-        Matrix4f.createOrthographic(-12.0f, 12.0f, -10.0f, 20.0f
-                * Display.getHeight() / Display.getWidth() - 10.0f, -1.0f,
-                10.0f, _projection);
+        Matrix4f.createOrthographic(-SpriteGameLevel.VIEW_HALF_WIDTH,
+                SpriteGameLevel.VIEW_HALF_WIDTH, SpriteGameLevel.VIEW_BOTTOM,
+                SpriteGameLevel.getViewTop(), -1.0f, 10.0f, _projection);
 
-        _win.initialize(gl);
-        _lose.initialize(gl);
+        _simulation.getWinSprite().initialize(gl);
+        _simulation.getLoseSprite().initialize(gl);
     }
 
     /**
      * @see GLField#update()
      */
     protected void update() {
-        _animator.update();
-
-        // Get amount of time last frame took, in seconds
-        final float elapsedTime = (_timeSource.getTime() - _prevTime) / 1000.0f;
-        _prevTime = _timeSource.getTime();
+        final long time = System.currentTimeMillis();
 
-        // Process input (Note: touch events are also set up to add
-        // these keys to the array).
-        if (_moveLeft) {
-            _level.getCharacter().move(-elapsedTime * 60);
+        if (_prevTime != 0L) {
+            _frameStats.add(time - _prevTime, 1);
         }
-
-        if (_moveRight) {
-            _level.getCharacter().move(elapsedTime * 60);
-        }
-
-        int result = 0;
-
-        // Update the level
-        if (!_renderWin || !_renderLose) {
-            result = _level.update();
-        }
-
-        // The level has been won, so begin the win animation
-        if (result == SpriteGameLevel.LEVEL_WIN && !_renderWin) {
-            _winAnimation.begin(0L);
-        }
-
-        // The level has been lost, so begin the lose animation
-        else if (result == SpriteGameLevel.LEVEL_LOSE) {
-            _level.getCharacter().reset();
-            _loseAnimation.begin(0L);
+        _prevTime = time;
+
+        // Pick up the latest simulation state and interpolate the sprites to
+        // where they are at this frame
+        _snapshot = _simulation.acquireSnapshot();
+        _snapshot.interpolate(time);
+
+        if (time - _lastReport >= REPORT_INTERVAL) {
+            if (_lastReport != 0L) {
+                final TimingStats stepStats = _simulation.getStepStats();
+                final int frames = Math.max(1, _renderedFrames);
+                System.out.println("SpriteGame frames: " + _frameStats
+                        + "; steps: " + stepStats + ", "
+                        + _simulation.getDroppedSteps() + " dropped"
+                        + "; per frame: " + _drawCalls / frames
+                        + " draw calls, " + _culledObjects / frames
+                        + " culled");
+                _frameStats.reset();
+                stepStats.reset();
+                _renderedFrames = 0;
+                _drawCalls = 0L;
+                _culledObjects = 0L;
+            }
+            _lastReport = time;
         }
     }
 
@@ -296,12 +254,13 @@ public class SpriteGameGLField extends GLField implements AnimationListener {
      *            The OpenGL v1.1 object that will be used to render
      */
     private void render(final GL11 gl) {
-        if (!_level.isLevelLoaded()) {
+        final SpriteGameLevel level = _snapshot.getLevel();
+        if (!level.isLevelLoaded()) {
             return;
         }
 
-        if (!_level.isLevelInitialized()) {
-            _level.initialize(gl);
+        if (!level.isLevelInitialized()) {
+            level.initialize(gl);
         }
 
         // Clear the color and depth buffers
@@ -315,16 +274,17 @@ public class SpriteGameGLField extends GLField implements AnimationListener {
         gl.glTranslatef(0.0f, 0.0f, -1.0f);
 
         // Render the level.
-        _level.render(gl);
+        level.render(gl);
+        countFrame(level);
 
         // If the win or lose animations are running, render the corresponding
         // sprite
-        if (_renderWin) {
-            _win.render(gl);
+        if (_snapshot.isRenderWin()) {
+            _simulation.getWinSprite().render(gl);
         }
 
-        if (_renderLose) {
-            _lose.render(gl);
+        if (_snapshot.isRenderLose()) {
+            _simulation.getLoseSprite().render(gl);
         }
     }
 
@@ -335,12 +295,13 @@ public class SpriteGameGLField extends GLField implements AnimationListener {
      *            The OpenGL 2.0 object that will be used to render
      */
     private void render(final GL20 gl) {
-        if (!_level.isLevelLoaded()) {
+        final SpriteGameLevel level = _snapshot.getLevel();
+        if (!level.isLevelLoaded()) {
             return;
         }
 
-        if (!_level.isLevelInitialized()) {
-            _level.initialize(gl);
+        if (!level.isLevelInitialized()) {
+            level.initialize(gl);
         }
 
         // Clear the color and depth buffers
@@ -354,53 +315,39 @@ public class SpriteGameGLField extends GLField implements AnimationListener {
                 _projection.getArray(), 0);
 
         // Render the level
-        _level.render(gl, _modelview);
+        level.render(gl, _modelview);
+        countFrame(level);
 
         // If the win or lose animations are running, render the corresponding
         // sprite
-        if (_renderWin) {
-            _win.render(gl, _modelview);
+        if (_snapshot.isRenderWin()) {
+            _simulation.getWinSprite().render(gl, _modelview);
         }
 
-        if (_renderLose) {
-            _lose.render(gl, _modelview);
+        if (_snapshot.isRenderLose()) {
+            _simulation.getLoseSprite().render(gl, _modelview);
         }
     }
 
     /**
-     * Loads the current level
-     */
-    private void loadLevel() {
-        _level = new SpriteGameLevel(_levelNames[_currentLevel], _animator);
-
-        _currentLevel++;
-
-        if (_currentLevel >= _levelNames.length) {
-            _currentLevel = 0;
-        }
-    }
-
-    /**
-     * @see net.rim.device.api.animation.AnimationListener#animationBegin(AbstractAnimation)
+     * Adds the draw calls and culled objects of the frame just rendered to
+     * the counts for the next report
+     * 
+     * @param level
+     *            The level that was rendered
      */
-    public void animationBegin(final AbstractAnimation animation) {
-        if (animation == _winAnimation) {
-            _renderWin = true;
-        } else if (animation == _loseAnimation) {
-            _renderLose = true;
-        }
+    private void countFrame(final SpriteGameLevel level) {
+        _renderedFrames++;
+        _drawCalls += level.getDrawCallCount();
+        _culledObjects += level.getCulledCount();
     }
 
     /**
-     * @see net.rim.device.api.animation.AnimationListener#animationEnd(AbstractAnimation)
+     * Passes the held movement keys on to the simulation
      */
-    public void animationEnd(final AbstractAnimation animation) {
-        if (animation == _winAnimation) {
-            _renderWin = false;
-            loadLevel();
-        } else if (animation == _loseAnimation) {
-            _renderLose = false;
-        }
+    private void updateHeldInput() {
+        _simulation.setHeldInput((_moveLeft ? GameSimulation.INPUT_LEFT : 0)
+                | (_moveRight ? GameSimulation.INPUT_RIGHT : 0));
     }
 
     /**
@@ -421,6 +368,7 @@ public class SpriteGameGLField extends GLField implements AnimationListener {
             _moveRight = true;
         }
 
+        updateHeldInput();
         return false;
     }
 
@@ -441,6 +389,7 @@ public class SpriteGameGLField extends GLField implements AnimationListener {
             _moveRight = false;
         }
 
+        updateHeldInput();
         return false;
     }
 
@@ -450,10 +399,10 @@ public class SpriteGameGLField extends GLField implements AnimationListener {
     protected boolean keyChar(final char c, final int status, final int time) {
         switch (c) {
         case Characters.SPACE:
-            _level.getCharacter().jump();
+            _simulation.queueInput(GameSimulation.INPUT_JUMP);
             return true;
         case Characters.LATIN_SMALL_LETTER_S:
-            _level.getCharacter().shrink();
+            _simulation.queueInput(GameSimulation.INPUT_SHRINK);
             return true;
         case Characters.ESCAPE:
         default:
@@ -465,7 +414,7 @@ public class SpriteGameGLField extends GLField implements AnimationListener {
      * @see net.rim.device.api.ui.Field#navigationClick(int, int)
      */
     protected boolean navigationClick(final int status, final int time) {
-        _level.getCharacter().jump();
+        _simulation.queueInput(GameSimulation.INPUT_JUMP);
         return true;
     }
 
@@ -474,7 +423,7 @@ public class SpriteGameGLField extends GLField implements AnimationListener {
      */
     protected boolean navigationMovement(final int dx, final int dy,
             final int status, final int time) {
-        _level.getCharacter().move(dx * 4);
+        _simulation.queueMove(dx * 4);
         return true;
     }
 
@@ -497,7 +446,7 @@ public class SpriteGameGLField extends GLField implements AnimationListener {
                 if (direction == TouchGesture.SWIPE_NORTH
                         || direction == TouchGesture.SWIPE_SOUTH) {
                     // Swipe up or down to shrink or grow
-                    _level.getCharacter().shrink();
+                    _simulation.queueInput(GameSimulation.INPUT_SHRINK);
                 }
             }
 
@@ -510,7 +459,7 @@ public class SpriteGameGLField extends GLField implements AnimationListener {
             // Touch with two fingers to jump. Note: can tap the screen
             // while moving in a direction to jump while moving.
             if (x2 != -1) {
-                _level.getCharacter().jump();
+                _simulation.queueInput(GameSimulation.INPUT_JUMP);
             } else {
                 final int displayWidth = Display.getWidth();
 
@@ -539,13 +488,14 @@ public class SpriteGameGLField extends GLField implements AnimationListener {
 
             // Jump if the middle of the screen was tapped
             if (tappedCenter) {
-                _level.getCharacter().jump();
+                _simulation.queueInput(GameSimulation.INPUT_JUMP);
             }
 
             break;
         }
         }
 
+        updateHeldInput();
         return true;
     }
 }
@@ -42,6 +42,7 @@ import net.rim.device.api.math.Transform3D;
 import net.rim.device.api.math.Vector3f;
 import net.rim.device.api.opengles.GL20;
 import net.rim.device.api.system.Application;
+import net.rim.device.api.system.Display;
 import net.rim.device.api.xml.parsers.ParserConfigurationException;
 import net.rim.device.api.xml.parsers.SAXParser;
 import net.rim.device.api.xml.parsers.SAXParserFactory;
@@ -54,11 +55,34 @@ import org.xml.sax.helpers.DefaultHandler;
  * Represents the current level in the game. This class is responsible for
  * initializing, rendering, and updating the different game objects such as the
  * enemies, tiles, character, etc. There is also logic for collision detection.
+ * <p>
+ * The level is loaded and updated on the GameSimulation thread and rendered on
+ * the GLField's render thread. Rendering only reads the sprites' render
+ * transforms and the tiles published with publishTiles().
+ * <p>
+ * Only what is on screen is drawn. The tile batches are culled with a grid of
+ * their own, which belongs to the render thread just as the collision grids
+ * belong to the simulation, and the enemies and goal are tested against the
+ * view one by one. What remains is drawn a texture at a time.
+ * <p>
+ * The tiles of a compiled level are streamed. Chunks are paged in ahead of
+ * the character and evicted once they are PAGE_BEHIND behind it. Eviction
+ * drops the chunk's tiles and their collision grid entries, and the render
+ * thread then deletes the chunk's batches. The level file is only read
+ * forwards, so scrolling is one-way. The character can't go back past the
+ * evicted chunks. A level that has evicted chunks is reloaded rather than
+ * reset when the character dies.
  */
 public class SpriteGameLevel {
     /** Represents the margin of error allowed during collision detection */
     private static final float EPSILON = 0.0005f;
 
+    /** Holds the distance from the camera to the left and right of the view */
+    static final float VIEW_HALF_WIDTH = 12.0f;
+
+    /** Holds the distance from the camera to the bottom of the view */
+    static final float VIEW_BOTTOM = -10.0f;
+
     /** Holds the LOSE state of the level */
     public static final int LEVEL_LOSE = -1;
 
@@ -77,7 +101,7 @@ public class SpriteGameLevel {
     /** Holds the level's obstacles */
     private final Vector _enemies = new Vector();
 
-    /** Holds the hero's translation during render */
+    /** Holds the camera position during render */
     private final Vector3f _t = new Vector3f();
 
     /** Hold's the level's good guy character */
@@ -95,6 +119,137 @@ public class SpriteGameLevel {
     /** Holds the level height */
     private float _levelHeight;
 
+    /** Holds the size of a cell in the tile grid, the width of one tile */
+    private static final float TILE_CELL_SIZE = 2.0f;
+
+    /** Holds the size of a cell in the enemy grid */
+    private static final float ENEMY_CELL_SIZE = 4.0f;
+
+    /** Holds the broadphase for the level's tiles, built once per level */
+    private SpatialGrid _tileGrid;
+
+    /** Holds the broadphase for the level's enemies, updated every frame */
+    private SpatialGrid _enemyGrid;
+
+    /**
+     * Holds the bounds of every tile as min x, min y, max x, max y. Tiles
+     * never move, so their bounds are computed once when the level is loaded.
+     */
+    private float[] _tileBounds = new float[0];
+
+    /**
+     * Holds how far ahead of the character, in level units, the tiles of a
+     * compiled level are paged in. This is wider than the screen.
+     */
+    private static final float PAGE_AHEAD = 24.0f;
+
+    /**
+     * Holds how far behind the character, in level units, the tile chunks of
+     * a compiled level are kept before they are evicted. This is wider than
+     * half the screen.
+     */
+    private static final float PAGE_BEHIND = 24.0f;
+
+    /**
+     * Holds the index in _tiles of the first tile of each chunk read, as
+     * Integers. Like _tiles, it is read by the render thread.
+     */
+    private final Vector _chunkStarts = new Vector();
+
+    /** Holds the right edge, in level units, of each chunk read */
+    private float[] _chunkEnds = new float[0];
+
+    /** Holds the number of chunks read */
+    private int _chunkCount;
+
+    /**
+     * Holds the number of chunks evicted. Chunks are evicted from left to
+     * right, and the tiles of an evicted chunk are set to null in _tiles.
+     */
+    private int _evictedChunks;
+
+    /** Holds the number of evicted chunks the render thread may release */
+    private volatile int _publishedEvictions;
+
+    /**
+     * Holds the position, in world units, that the character can't move left
+     * of, which keeps the evicted chunks out of view
+     */
+    private float _wallX = -Float.MAX_VALUE;
+
+    /**
+     * Holds the compiled level whose tile chunks are still being paged in, or
+     * null once every chunk has been read
+     */
+    private CompiledLevel _compiledLevel;
+
+    /** Holds the number of tiles that have been initialized with the GL */
+    private int _initializedTiles;
+
+    /** Holds the number of tiles the render thread may initialize */
+    private volatile int _publishedTiles;
+
+    /** Holds the area covered by the collision grids */
+    private float _gridMinX;
+    private float _gridMinY;
+    private float _gridMaxX;
+    private float _gridMaxY;
+
+    /** Holds the size of a cell in the batch grid */
+    private static final float BATCH_CELL_SIZE = 8.0f;
+
+    /**
+     * Holds the grid used to cull the tile batches. It is only used on the
+     * render thread.
+     */
+    private SpatialGrid _batchGrid;
+
+    /** Holds the batches in the batch grid, by grid item */
+    private final Vector _gridBatches = new Vector();
+
+    /**
+     * Holds a Vector of the batches of each chunk batched by the render
+     * thread, or null once the chunk's batches have been deleted
+     */
+    private final Vector _chunkBatches = new Vector();
+
+    /** Holds the number of chunks whose batches have been deleted */
+    private int _releasedChunks;
+
+    /** Holds the number of tiles in the batches in the batch grid */
+    private int _batchedTiles;
+
+    /** Holds the batches found to be visible by the last cull */
+    private Sprite.Batch[] _visibleBatches = new Sprite.Batch[16];
+
+    /** Holds the number of visible batches */
+    private int _visibleBatchCount;
+
+    /** Holds the enemies and goal found to be visible by the last cull */
+    private Sprite[] _visibleSprites = new Sprite[16];
+
+    /** Holds the number of visible enemies and goals */
+    private int _visibleSpriteCount;
+
+    /** Holds the top of the view, relative to the camera */
+    private float _viewTop;
+
+    /** Holds the number of draw calls made by the last render */
+    private int _drawCallCount;
+
+    /** Holds the number of objects culled by the last render */
+    private int _culledCount;
+
+    /** Scratch vectors used while culling */
+    private final Vector3f _cullMin = new Vector3f();
+    private final Vector3f _cullMax = new Vector3f();
+
+    /** Scratch vectors used during collision detection */
+    private final Vector3f _min = new Vector3f();
+    private final Vector3f _max = new Vector3f();
+    private final Vector3f _s = new Vector3f();
+    private final Vector3f _v = new Vector3f();
+
     /**
      * Creates a new SpriteGameLevel object
      * 
@@ -116,19 +271,14 @@ public class SpriteGameLevel {
      */
     public void initialize(final GL11 gl) {
         Sprite.Batch.clearBatch(gl);
+        createBatchGrid();
 
         // Initialize all the tiles in the level
-        int count = _tiles.size();
-        Sprite tile;
-
-        for (int i = 0; i < count; i++) {
-            tile = (Sprite) _tiles.elementAt(i);
-            tile.initialize(gl);
-            tile.setIsBatched(gl, true);
-        }
+        _initializedTiles = 0;
+        initializeTiles(gl);
 
         // Initialize all the enemies in the level
-        count = _enemies.size();
+        final int count = _enemies.size();
 
         for (int i = 0; i < count; i++) {
             ((Sprite) _enemies.elementAt(i)).initialize(gl);
@@ -149,19 +299,14 @@ public class SpriteGameLevel {
      */
     public void initialize(final GL20 gl) {
         Sprite.Batch.clearBatch(gl);
+        createBatchGrid();
 
         // Initialize all the tiles in the level
-        int count = _tiles.size();
-        Sprite tile;
-
-        for (int i = 0; i < count; i++) {
-            tile = (Sprite) _tiles.elementAt(i);
-            tile.initialize(gl);
-            tile.setIsBatched(gl, true);
-        }
+        _initializedTiles = 0;
+        initializeTiles(gl);
 
         // Initialize all the enemies in the level
-        count = _enemies.size();
+        final int count = _enemies.size();
 
         for (int i = 0; i < count; i++) {
             ((Sprite) _enemies.elementAt(i)).initialize(gl);
@@ -173,6 +318,207 @@ public class SpriteGameLevel {
         _isLevelInitialized = true;
     }
 
+    /**
+     * Initializes and batches the tiles added since the last call, including
+     * those paged in from a compiled level, then deletes the batches of the
+     * chunks evicted since the last call
+     * 
+     * @param gl
+     *            The OpenGL v1.1 object that will be used to render graphics on
+     *            the display
+     */
+    private void initializeTiles(final GL11 gl) {
+        // Read the evictions before the tiles; see publishTiles()
+        final int evicted = _publishedEvictions;
+        final int count = _publishedTiles;
+        Sprite tile;
+
+        for (int i = _initializedTiles; i < count; i++) {
+            startChunks(i);
+            tile = (Sprite) _tiles.elementAt(i);
+
+            // Skip tiles that were evicted before they were drawn
+            if (tile != null) {
+                tile.initialize(gl);
+                tile.setIsBatched(gl, true);
+                addToBatchGrid(tile._batch);
+                _batchedTiles++;
+            }
+        }
+        _initializedTiles = count;
+
+        for (; _releasedChunks < evicted; _releasedChunks++) {
+            final Vector batches = releaseChunk(_releasedChunks);
+            for (int i = 0; i < batches.size(); i++) {
+                Sprite.Batch.deleteBatch(gl, (Sprite.Batch) batches
+                        .elementAt(i));
+            }
+        }
+    }
+
+    /**
+     * Initializes and batches the tiles added since the last call, including
+     * those paged in from a compiled level, then deletes the batches of the
+     * chunks evicted since the last call
+     * 
+     * @param gl
+     *            The OpenGL v2.0 object that will be used to render graphics on
+     *            the display
+     */
+    private void initializeTiles(final GL20 gl) {
+        // Read the evictions before the tiles; see publishTiles()
+        final int evicted = _publishedEvictions;
+        final int count = _publishedTiles;
+        Sprite tile;
+
+        for (int i = _initializedTiles; i < count; i++) {
+            startChunks(i);
+            tile = (Sprite) _tiles.elementAt(i);
+
+            // Skip tiles that were evicted before they were drawn
+            if (tile != null) {
+                tile.initialize(gl);
+                tile.setIsBatched(gl, true);
+                addToBatchGrid(tile._batch);
+                _batchedTiles++;
+            }
+        }
+        _initializedTiles = count;
+
+        for (; _releasedChunks < evicted; _releasedChunks++) {
+            final Vector batches = releaseChunk(_releasedChunks);
+            for (int i = 0; i < batches.size(); i++) {
+                Sprite.Batch.deleteBatch(gl, (Sprite.Batch) batches
+                        .elementAt(i));
+            }
+        }
+    }
+
+    /**
+     * Starts new batches for each chunk that begins at a tile, so that every
+     * batch only holds the tiles of one chunk and can be deleted with it
+     * 
+     * @param tile
+     *            The index of the tile about to be batched
+     */
+    private void startChunks(final int tile) {
+        int chunk = _chunkBatches.size();
+        while (chunk < _chunkStarts.size()) {
+            final Integer start = (Integer) _chunkStarts.elementAt(chunk);
+            if (start.intValue() != tile) {
+                break;
+            }
+            Sprite.Batch.sealAll();
+            _chunkBatches.addElement(new Vector());
+            chunk++;
+        }
+    }
+
+    /**
+     * Removes the batches of an evicted chunk from the batch grid
+     * 
+     * @param chunk
+     *            The index of the chunk
+     * @return The chunk's batches, for the caller to delete
+     */
+    private Vector releaseChunk(final int chunk) {
+        // A chunk without tiles may never have been started
+        if (chunk >= _chunkBatches.size()) {
+            return new Vector();
+        }
+
+        final Vector batches = (Vector) _chunkBatches.elementAt(chunk);
+        _chunkBatches.setElementAt(null, chunk);
+        for (int i = 0; i < batches.size(); i++) {
+            final Sprite.Batch batch = (Sprite.Batch) batches.elementAt(i);
+            _batchGrid.remove(batch._cullItem);
+            _gridBatches.setElementAt(null, batch._cullItem);
+            _batchedTiles -= batch.getMeshCount();
+        }
+        return batches;
+    }
+
+    /**
+     * Creates an empty batch grid covering the same area as the collision
+     * grids and works out the extent of the view
+     */
+    private void createBatchGrid() {
+        _batchGrid =
+                new SpatialGrid(_gridMinX, _gridMinY, _gridMaxX, _gridMaxY,
+                        BATCH_CELL_SIZE, 16);
+        _gridBatches.removeAllElements();
+        _chunkBatches.removeAllElements();
+        _releasedChunks = 0;
+        _batchedTiles = 0;
+        _viewTop = getViewTop();
+    }
+
+    /**
+     * Adds a batch to the batch grid and to the chunk being batched, or moves
+     * it to cover the meshes added to it since it was added
+     * 
+     * @param batch
+     *            The batch to add
+     */
+    private void addToBatchGrid(final Sprite.Batch batch) {
+        batch.getBounds(_cullMin, _cullMax);
+
+        if (batch._cullItem < 0) {
+            batch._cullItem =
+                    _batchGrid.insert(_cullMin.x, _cullMin.y, _cullMax.x,
+                            _cullMax.y);
+            _gridBatches.addElement(batch);
+            if (!_chunkBatches.isEmpty()) {
+                ((Vector) _chunkBatches.lastElement()).addElement(batch);
+            }
+        } else {
+            _batchGrid.update(batch._cullItem, _cullMin.x, _cullMin.y,
+                    _cullMax.x, _cullMax.y);
+        }
+    }
+
+    /**
+     * Retrieves the top of the view, relative to the camera. The view is 24
+     * units wide and its height follows the display's aspect ratio.
+     * 
+     * @return The top of the view
+     */
+    static float getViewTop() {
+        return VIEW_HALF_WIDTH * 2.0f * Display.getHeight()
+                / Display.getWidth() + VIEW_BOTTOM;
+    }
+
+    /**
+     * Makes the tiles loaded and the chunks evicted so far available to the
+     * render thread. The evictions are published after the tiles, so the
+     * render thread reads them first: every tile of an evicted chunk it sees
+     * has then been published too.
+     */
+    void publishTiles() {
+        _publishedTiles = _tiles.size();
+        _publishedEvictions = _evictedChunks;
+    }
+
+    /**
+     * Determines whether any of the level's tiles have been evicted, in which
+     * case the level must be reloaded to go back to its start
+     * 
+     * @return True if tiles have been evicted
+     */
+    boolean hasEvictedTiles() {
+        return _evictedChunks > 0;
+    }
+
+    /**
+     * Starts the enemies' animations
+     */
+    void startAnimations() {
+        final int count = _enemies.size();
+        for (int i = 0; i < count; i++) {
+            ((Sprite) _enemies.elementAt(i)).startAnimations();
+        }
+    }
+
     /**
      * Updates the level
      * 
@@ -184,6 +530,17 @@ public class SpriteGameLevel {
         // Update the obstacle animations
         _character.update();
 
+        // Page in the tiles ahead of the character and evict those well
+        // behind it
+        if (_chunkCount > 0) {
+            _character._transform.getTranslation(_v);
+            final float x = toLevelUnits(_v.x);
+            if (_compiledLevel != null) {
+                pageIn(x + PAGE_AHEAD);
+            }
+            evictBefore(x - PAGE_BEHIND);
+        }
+
         // Calculate the character's movement restrictions and whether
         // the level has been lost or won using collision detection.
         return detectCollisions();
@@ -196,41 +553,30 @@ public class SpriteGameLevel {
      *            The reference to the OpenGL v1.1 object.
      */
     public void render(final GL11 gl) {
+        // Batch any tiles that were paged in since the last frame
+        initializeTiles(gl);
+
         // Save current matrix.
         gl.glPushMatrix();
 
         // Load the identity matrix
         gl.glLoadIdentity();
 
-        _character._transform.getTranslation(_t);
-
-        // Determine which horizontal section of the level to render
-        if (_t.x > 0.0f) {
-            gl.glTranslatef(-_t.x, 0.0f, 0.0f);
-        }
-
-        // Determine which vertical section of the level to render
-        if (_t.y > 0.0f && _t.y <= _levelHeight) {
-            gl.glTranslatef(0.0f, -_t.y, 0.0f);
-        } else if (_t.y > _levelHeight) {
-            gl.glTranslatef(0.0f, -_levelHeight, 0.0f);
-        }
-
-        // Render the level's tiles
-        int count = _tiles.size();
-        for (int i = 0; i < count; i++) {
-            ((Sprite) _tiles.elementAt(i)).render(gl);
-        }
+        // Move to the section of the level around the character and find
+        // what can be seen there
+        cull();
+        gl.glTranslatef(-_t.x, -_t.y, 0.0f);
 
-        // Render the level's enemies
-        count = _enemies.size();
-        for (int i = 0; i < count; i++) {
-            ((Sprite) _enemies.elementAt(i)).render(gl);
-        }
+        // Render the visible tiles, enemies and goal a texture at a time
+        _drawCallCount =
+                Sprite.Batch.renderAll(gl, _visibleBatches, _visibleBatchCount);
+        _drawCallCount +=
+                Sprite.renderInstances(gl, _visibleSprites,
+                        _visibleSpriteCount);
 
-        // Render the level's goal and the character
-        _levelGoal.render(gl);
+        // Render the character
         _character.render(gl);
+        _drawCallCount++;
         gl.glPopMatrix();
     }
 
@@ -241,36 +587,121 @@ public class SpriteGameLevel {
      *            The reference to the OpenGL v2.0 object
      */
     public void render(final GL20 gl, final Matrix4f modelview) {
+        // Batch any tiles that were paged in since the last frame
+        initializeTiles(gl);
+
+        // Move to the section of the level around the character and find
+        // what can be seen there
+        cull();
         final Matrix4f m = new Matrix4f(modelview);
-        _character._transform.getTranslation(_t);
+        m.translate(-_t.x, -_t.y, 0.0f);
+
+        // Render the visible tiles, then draw the visible enemies and goal
+        // as instances, a texture at a time
+        _drawCallCount =
+                Sprite.Batch.renderAll(gl, m, _visibleBatches,
+                        _visibleBatchCount);
+        _drawCallCount +=
+                Sprite.renderInstances(gl, m, _visibleSprites,
+                        _visibleSpriteCount);
+
+        // Render the character
+        _character.render(gl, m);
+        _drawCallCount++;
+    }
+
+    /**
+     * Positions the camera and finds the tile batches, enemies and goal that
+     * overlap the view. The camera follows the character, but stays within
+     * the level. On return _t holds the camera position.
+     */
+    private void cull() {
+        _character.getRenderTranslation(_t);
 
         // Determine which horizontal section of the level to render
-        if (_t.x > 0.0f) {
-            m.translate(-_t.x, 0.0f, 0.0f);
+        if (_t.x < 0.0f) {
+            _t.x = 0.0f;
         }
 
         // Determine which vertical section of the level to render
-        if (_t.y > 0.0f && _t.y <= _levelHeight) {
-            m.translate(0.0f, -_t.y, 0.0f);
+        if (_t.y < 0.0f) {
+            _t.y = 0.0f;
         } else if (_t.y > _levelHeight) {
-            m.translate(0.0f, -_levelHeight, 0.0f);
+            _t.y = _levelHeight;
         }
 
-        // Render the level's tiles
-        int count = _tiles.size();
+        final float minX = _t.x - VIEW_HALF_WIDTH;
+        final float minY = _t.y + VIEW_BOTTOM;
+        final float maxX = _t.x + VIEW_HALF_WIDTH;
+        final float maxY = _t.y + _viewTop;
+
+        // Find the batches holding tiles in view. The grid only returns
+        // candidates, so check each batch's bounds as well.
+        int count = _batchGrid.query(minX, minY, maxX, maxY);
+        if (_visibleBatches.length < count) {
+            _visibleBatches = new Sprite.Batch[count * 2];
+        }
+
+        int visibleTiles = 0;
+        _visibleBatchCount = 0;
         for (int i = 0; i < count; i++) {
-            ((Sprite) _tiles.elementAt(i)).render(gl, m);
+            final Sprite.Batch batch =
+                    (Sprite.Batch) _gridBatches.elementAt(_batchGrid
+                            .getResult(i));
+            batch.getBounds(_cullMin, _cullMax);
+
+            if (_cullMax.x >= minX && _cullMin.x <= maxX && _cullMax.y >= minY
+                    && _cullMin.y <= maxY) {
+                _visibleBatches[_visibleBatchCount++] = batch;
+                visibleTiles += batch.getMeshCount();
+            }
         }
+        int culled = _batchedTiles - visibleTiles;
 
-        // Render the level's enemies
+        // Test the enemies and the goal individually; there are few of them
+        // and they move
         count = _enemies.size();
+        if (_visibleSprites.length < count + 1) {
+            _visibleSprites = new Sprite[count + 1];
+        }
+
+        _visibleSpriteCount = 0;
         for (int i = 0; i < count; i++) {
-            ((Sprite) _enemies.elementAt(i)).render(gl, m);
+            final Sprite enemy = (Sprite) _enemies.elementAt(i);
+
+            if (enemy.isRenderVisible(minX, minY, maxX, maxY)) {
+                _visibleSprites[_visibleSpriteCount++] = enemy;
+            } else {
+                culled++;
+            }
         }
 
-        // Render the level's goal and the character
-        _levelGoal.render(gl, m);
-        _character.render(gl, m);
+        if (_levelGoal.isRenderVisible(minX, minY, maxX, maxY)) {
+            _visibleSprites[_visibleSpriteCount++] = _levelGoal;
+        } else {
+            culled++;
+        }
+
+        _culledCount = culled;
+    }
+
+    /**
+     * Retrieves the number of draw calls made by the last render
+     * 
+     * @return The number of draw calls
+     */
+    int getDrawCallCount() {
+        return _drawCallCount;
+    }
+
+    /**
+     * Retrieves the number of tiles, enemies and goals the last render left
+     * out because they were off screen
+     * 
+     * @return The number of culled objects
+     */
+    int getCulledCount() {
+        return _culledCount;
     }
 
     /**
@@ -302,7 +733,38 @@ public class SpriteGameLevel {
     }
 
     /**
-     * Detects collisions and whether the level has been won or lost
+     * Retrieves the level's goal
+     * 
+     * @return The level's goal
+     */
+    Sprite getLevelGoal() {
+        return _levelGoal;
+    }
+
+    /**
+     * Retrieves the number of enemies in the level
+     * 
+     * @return The number of enemies
+     */
+    int getEnemyCount() {
+        return _enemies.size();
+    }
+
+    /**
+     * Retrieves an enemy
+     * 
+     * @param index
+     *            The index of the enemy
+     * @return The enemy
+     */
+    Sprite getEnemy(final int index) {
+        return (Sprite) _enemies.elementAt(index);
+    }
+
+    /**
+     * Detects collisions and whether the level has been won or lost. The tile
+     * and enemy grids limit the exact tests to the objects near the
+     * character, so the cost doesn't grow with the size of the level.
      * 
      * @return 0 if the level is still active, -1 if the level has been lost and
      *         1 if the level has been won.
@@ -313,31 +775,24 @@ public class SpriteGameLevel {
         final BoundingBox bounds = (BoundingBox) _character.getBounds();
         final BoundingBox prevBounds = (BoundingBox) _character.getPrevBounds();
 
-        // Get the character's corners
-        final Vector3f[] corners = new Vector3f[8];
+        // Get the character's edges
+        bounds.getMin(_min);
+        bounds.getMax(_max);
 
-        for (int i = 0; i < corners.length; i++) {
-            corners[i] = new Vector3f();
-        }
-        bounds.getCorners(corners, 0);
+        final float charTop = _max.y;
+        final float charBottom = _min.y;
+        final float charLeft = _min.x;
+        final float charRight = _max.x;
 
-        final float charTop = corners[0].y;
-        final float charBottom = corners[1].y;
-        final float charLeft = corners[0].x;
-        final float charRight = corners[2].x;
-
-        prevBounds.getCorners(corners, 0);
-        final float prevCharTop = corners[0].y;
-        final float prevCharBottom = corners[1].y;
-        final float prevCharLeft = corners[0].x;
-        final float prevCharRight = corners[2].x;
-
-        final Vector3f characterCenter =
-                new Vector3f((charLeft + charRight) / 2.0f,
-                        (charTop + charBottom) / 2.0f, 0.0f);
+        prevBounds.getMin(_min);
+        prevBounds.getMax(_max);
+        final float prevCharTop = _max.y;
+        final float prevCharBottom = _min.y;
+        final float prevCharLeft = _min.x;
+        final float prevCharRight = _max.x;
 
         // Die if you fell off the level
-        if (characterCenter.y < -20.0f) {
+        if ((charTop + charBottom) / 2.0f < -20.0f) {
             return -1;
         }
 
@@ -351,11 +806,15 @@ public class SpriteGameLevel {
             return 1;
         }
 
-        // Detect collisions with obstacles
-        int count = _enemies.size();
+        // Detect collisions with the obstacles near the character
+        updateEnemyGrid();
+        int count =
+                _enemyGrid.query(charLeft, charBottom, charRight, charTop);
 
         for (int i = 0; i < count; i++) {
-            boundsLevel = ((Sprite) _enemies.elementAt(i)).getBounds();
+            boundsLevel =
+                    ((Sprite) _enemies.elementAt(_enemyGrid.getResult(i)))
+                            .getBounds();
             if (bounds.intersects(boundsLevel)) {
                 _character.addMovementRestriction(SpriteGameCharacter.MOVE_DOWN
                         | SpriteGameCharacter.MOVE_UP
@@ -367,98 +826,98 @@ public class SpriteGameLevel {
 
         _character.clearMovementRestrictions();
 
-        // Detect collisions with blocks and calculate the character's movement
-        // restrictions
-        BoundingBox tileBounds;
-        count = _tiles.size();
-        Sprite tile;
+        // Get character scale
+        final Vector3f s = _s;
+        _character._transform.getScale(s);
+        final Vector3f v = _v;
+
+        // Keep the character out of the chunks that have been evicted
+        if (charLeft < _wallX) {
+            _character._transform.getTranslation(v);
+            v.x = _wallX + s.x;
+            _character._transform.setTranslation(v);
+            _character.addMovementRestriction(SpriteGameCharacter.MOVE_LEFT);
+        }
+
+        // Detect collisions with the blocks near the character and calculate
+        // the character's movement restrictions. Candidates are visited in
+        // level order so that overlapping corrections resolve as before.
+        count = _tileGrid.query(charLeft, charBottom, charRight, charTop);
 
         for (int i = 0; i < count; i++) {
-            tile = (Sprite) _tiles.elementAt(i);
-            tileBounds = (BoundingBox) tile.getBounds();
-            if (bounds.intersects(tileBounds)) {
-                // Calculate the center point of the block's bounding box
-                final Vector3f min = new Vector3f();
-                final Vector3f max = new Vector3f();
-                tileBounds.getMin(min);
-                tileBounds.getMax(max);
-                final Vector3f blockCenter = new Vector3f(min);
-                blockCenter.add(max);
-                blockCenter.scale(0.5f);
-
-                // Get character scale
-                final Vector3f s = new Vector3f();
-                _character._transform.getScale(s);
-
-                // Determine which way(s) the character's
-                // movement should be restricted. We also set the character's
-                // translation vector
-                // so that it does not visibly intersect the blocks.
-                final float tileTop = max.y;
-                final float tileBottom = min.y;
-                final float tileLeft = min.x;
-                final float tileRight = max.x;
-
-                final float tileMidX = (tileLeft + tileRight) / 2.0f;
-                final float tileMidY = (tileBottom + tileTop) / 2.0f;
-
-                final Vector3f v = new Vector3f();
-
-                // If character's top or bottom is between tile's
-                // top and bottom, restrict horizontally
-                if (charTop < tileTop - 0.1f && charTop > tileBottom + 0.1f
-                        || charBottom > tileBottom + 0.1f
-                        && charBottom < tileTop - 0.1f) {
-                    // If left edge of character is against right
-                    // edge of block, cannot move left.
-                    if (prevCharLeft > tileRight - 0.1f && charLeft < tileRight
-                            && charLeft > tileMidX) {
-                        _character._transform.getTranslation(v);
-                        v.x = tileRight + s.x - EPSILON;
-                        _character._transform.setTranslation(v);
-                        _character
-                                .addMovementRestriction(SpriteGameCharacter.MOVE_LEFT);
-                    }
-
-                    // Right edge of character is against left
-                    // edge of block -> cannot move right.
-                    if (prevCharRight < tileLeft + 0.1f && charRight > tileLeft
-                            && charRight < tileMidX) {
-                        _character._transform.getTranslation(v);
-                        v.x = tileLeft - s.x + EPSILON;
-                        _character._transform.setTranslation(v);
-                        _character
-                                .addMovementRestriction(SpriteGameCharacter.MOVE_RIGHT);
-                    }
+            final int index = _tileGrid.getResult(i) * 4;
+
+            // Determine which way(s) the character's
+            // movement should be restricted. We also set the character's
+            // translation vector
+            // so that it does not visibly intersect the blocks.
+            final float tileLeft = _tileBounds[index];
+            final float tileBottom = _tileBounds[index + 1];
+            final float tileRight = _tileBounds[index + 2];
+            final float tileTop = _tileBounds[index + 3];
+
+            if (charRight < tileLeft || charLeft > tileRight
+                    || charTop < tileBottom || charBottom > tileTop) {
+                continue;
+            }
+
+            final float tileMidX = (tileLeft + tileRight) / 2.0f;
+            final float tileMidY = (tileBottom + tileTop) / 2.0f;
+
+            // If character's top or bottom is between tile's
+            // top and bottom, restrict horizontally
+            if (charTop < tileTop - 0.1f && charTop > tileBottom + 0.1f
+                    || charBottom > tileBottom + 0.1f
+                    && charBottom < tileTop - 0.1f) {
+                // If left edge of character is against right
+                // edge of block, cannot move left.
+                if (prevCharLeft > tileRight - 0.1f && charLeft < tileRight
+                        && charLeft > tileMidX) {
+                    _character._transform.getTranslation(v);
+                    v.x = tileRight + s.x - EPSILON;
+                    _character._transform.setTranslation(v);
+                    _character
+                            .addMovementRestriction(SpriteGameCharacter.MOVE_LEFT);
+                }
+
+                // Right edge of character is against left
+                // edge of block -> cannot move right.
+                if (prevCharRight < tileLeft + 0.1f && charRight > tileLeft
+                        && charRight < tileMidX) {
+                    _character._transform.getTranslation(v);
+                    v.x = tileLeft - s.x + EPSILON;
+                    _character._transform.setTranslation(v);
+                    _character
+                            .addMovementRestriction(SpriteGameCharacter.MOVE_RIGHT);
+                }
+            }
+
+            // If character's left or right edge is between tile's left
+            // and right edges, restrict vertically.
+            if (charLeft > tileLeft + 0.1f && charLeft < tileRight - 0.1f
+                    || charRight < tileRight - 0.1f
+                    && charRight > tileLeft + 0.1f) {
+                // Bottom edge of character is against top
+                // edge of block -> cannot move down.
+                if (prevCharBottom > tileTop - 0.1f && charBottom < tileTop
+                        && charBottom > tileMidY) {
+                    _character._transform.getTranslation(v);
+                    v.y = tileTop + s.y - EPSILON;
+                    _character._transform.setTranslation(v);
+                    _character.setTy(v.y);
+                    _character
+                            .addMovementRestriction(SpriteGameCharacter.MOVE_DOWN);
                 }
 
-                // If character's left or right edge is between tile's left
-                // and right edges, restrict vertically.
-                if (charLeft > tileLeft + 0.1f && charLeft < tileRight - 0.1f
-                        || charRight < tileRight - 0.1f
-                        && charRight > tileLeft + 0.1f) {
-                    // Bottom edge of character is against top
-                    // edge of block -> cannot move down.
-                    if (prevCharBottom > tileTop - 0.1f && charBottom < tileTop
-                            && charBottom > tileMidY) {
-                        _character._transform.getTranslation(v);
-                        v.y = tileTop + s.y - EPSILON;
-                        _character._transform.setTranslation(v);
-                        _character.setTy(v.y);
-                        _character
-                                .addMovementRestriction(SpriteGameCharacter.MOVE_DOWN);
-                    }
-
-                    // Top edge of character is against bottom
-                    // edge of block -> cannot move up.
-                    if (prevCharTop < tileBottom + 0.1f && charTop > tileBottom
-                            && charTop < tileMidY) {
-                        _character._transform.getTranslation(v);
-                        v.y = tileBottom - s.y + EPSILON;
-                        _character._transform.setTranslation(v);
-                        _character
-                                .addMovementRestriction(SpriteGameCharacter.MOVE_UP);
-                    }
+                // Top edge of character is against bottom
+                // edge of block -> cannot move up.
+                if (prevCharTop < tileBottom + 0.1f && charTop > tileBottom
+                        && charTop < tileMidY) {
+                    _character._transform.getTranslation(v);
+                    v.y = tileBottom - s.y + EPSILON;
+                    _character._transform.setTranslation(v);
+                    _character
+                            .addMovementRestriction(SpriteGameCharacter.MOVE_UP);
                 }
             }
         }
@@ -467,7 +926,120 @@ public class SpriteGameLevel {
     }
 
     /**
-     * Loads from the given material XML file into the given model's material
+     * Builds the collision grids for a newly loaded level. The tile bounds
+     * are cached and the tiles are inserted into a static grid; the enemies
+     * go into a grid of larger cells that is updated as they move.
+     */
+    private void buildCollisionGrids() {
+        final int tileCount = _tiles.size();
+
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+
+        for (int i = 0; i < tileCount; i++) {
+            final BoundingBox tileBounds =
+                    (BoundingBox) ((Sprite) _tiles.elementAt(i)).getBounds();
+            tileBounds.getMin(_min);
+            tileBounds.getMax(_max);
+
+            minX = Math.min(minX, _min.x);
+            minY = Math.min(minY, _min.y);
+            maxX = Math.max(maxX, _max.x);
+            maxY = Math.max(maxY, _max.y);
+        }
+
+        if (tileCount == 0) {
+            minX = minY = maxX = maxY = 0.0f;
+        }
+
+        createCollisionGrids(minX, minY, maxX, maxY, tileCount);
+        for (int i = 0; i < tileCount; i++) {
+            addToTileGrid((Sprite) _tiles.elementAt(i));
+        }
+    }
+
+    /**
+     * Creates empty collision grids covering the given world area and adds
+     * the enemies to the enemy grid. Tiles are added with addToTileGrid().
+     * 
+     * @param capacity
+     *            The number of tiles the level holds
+     */
+    private void createCollisionGrids(final float minX, final float minY,
+            final float maxX, final float maxY, final int capacity) {
+        _gridMinX = minX;
+        _gridMinY = minY;
+        _gridMaxX = maxX;
+        _gridMaxY = maxY;
+
+        _tileBounds = new float[capacity * 4];
+        _tileGrid =
+                new SpatialGrid(minX, minY, maxX, maxY, TILE_CELL_SIZE,
+                        capacity);
+
+        final int enemyCount = _enemies.size();
+        _enemyGrid =
+                new SpatialGrid(minX, minY, maxX, maxY, ENEMY_CELL_SIZE,
+                        enemyCount);
+        for (int i = 0; i < enemyCount; i++) {
+            _enemyGrid.insert(0.0f, 0.0f, 0.0f, 0.0f);
+        }
+        updateEnemyGrid();
+    }
+
+    /**
+     * Caches a tile's bounds and inserts it into the tile grid. Tiles must be
+     * added in the same order as they appear in _tiles.
+     * 
+     * @param tile
+     *            The tile to add
+     */
+    private void addToTileGrid(final Sprite tile) {
+        final BoundingBox tileBounds = (BoundingBox) tile.getBounds();
+        tileBounds.getMin(_min);
+        tileBounds.getMax(_max);
+
+        final int i = _tileGrid.insert(_min.x, _min.y, _max.x, _max.y) * 4;
+        if (i == _tileBounds.length) {
+            final float[] bounds = new float[Math.max(4, i * 2)];
+            System.arraycopy(_tileBounds, 0, bounds, 0, i);
+            _tileBounds = bounds;
+        }
+        _tileBounds[i] = _min.x;
+        _tileBounds[i + 1] = _min.y;
+        _tileBounds[i + 2] = _max.x;
+        _tileBounds[i + 3] = _max.y;
+    }
+
+    /**
+     * Moves each enemy to the grid cells covering its current position. A
+     * conservative extent built from the enemy's translation, scale and
+     * bounding radius is used, which avoids transforming every enemy's
+     * bounds each frame.
+     */
+    private void updateEnemyGrid() {
+        final int count = _enemies.size();
+
+        for (int i = 0; i < count; i++) {
+            final Sprite enemy = (Sprite) _enemies.elementAt(i);
+            enemy._transform.getTranslation(_v);
+            enemy._transform.getScale(_s);
+
+            final float extent =
+                    enemy.getBoundingRadius()
+                            * Math.max(Math.abs(_s.x), Math.abs(_s.y));
+            _enemyGrid.update(i, _v.x - extent, _v.y - extent, _v.x + extent,
+                    _v.y + extent);
+        }
+    }
+
+    /**
+     * Loads from the given material XML file into the given model's material.
+     * Levels compiled by LevelCompiler (see CompiledLevel.EXTENSION) are
+     * read without parsing any XML, and their tiles are paged in as the
+     * character moves through the level.
      * 
      * @param levelPath
      *            Path to the material file
@@ -481,16 +1053,32 @@ public class SpriteGameLevel {
 
             _tiles.removeAllElements();
             _enemies.removeAllElements();
+            _chunkStarts.removeAllElements();
+            _chunkCount = 0;
+            _evictedChunks = 0;
+            _wallX = -Float.MAX_VALUE;
+
+            if (_compiledLevel != null) {
+                _compiledLevel.close();
+                _compiledLevel = null;
+            }
+
+            final InputStream stream =
+                    Application.getApplication().getClass()
+                            .getResourceAsStream(levelPath);
+
+            if (levelPath.endsWith(CompiledLevel.EXTENSION)) {
+                loadCompiledLevel(stream, animator);
+                return;
+            }
 
             // Set up the SAXParser that will parse the XML file
             final SAXParser parser =
                     SAXParserFactory.newInstance().newSAXParser();
-            InputStream stream;
-            stream =
-                    Application.getApplication().getClass()
-                            .getResourceAsStream(levelPath);
             final DefaultHandler dh = new LevelSaxHandler(animator);
             parser.parse(stream, dh);
+
+            buildCollisionGrids();
         } catch (final ParserConfigurationException e) {
             SpriteGame.errorDialog(e.toString());
         } catch (final SAXException e) {
@@ -500,6 +1088,383 @@ public class SpriteGameLevel {
         }
     }
 
+    /**
+     * Opens a compiled level and reads the tiles around the character's
+     * starting position. The remaining tiles are read by pageIn().
+     * 
+     * @param stream
+     *            The compiled level file
+     * @param animator
+     *            The animator that the level entities can use
+     * @throws IOException
+     *             if the level can't be read
+     */
+    private void loadCompiledLevel(final InputStream stream,
+            final Animator animator) throws IOException {
+        final CompiledLevel level =
+                new CompiledLevel(stream, new CompiledLevelHandler(animator));
+        _levelWidth = level.getLevelWidth();
+        _levelHeight = level.getLevelHeight();
+
+        // The tile extents are known up front, so the grids are created
+        // before any tiles are read and the tiles are added as they arrive.
+        final float margin = level.getMaxTileScale();
+        createCollisionGrids(toWorldUnits(level.getMinTileX()) - margin,
+                toWorldUnits(level.getMinTileY()) - margin, toWorldUnits(level
+                        .getMaxTileX())
+                        + margin, toWorldUnits(level.getMaxTileY()) + margin,
+                level.getTileCount());
+
+        _compiledLevel = level;
+        _character._transform.getTranslation(_v);
+        pageIn(toLevelUnits(_v.x) + PAGE_AHEAD);
+
+        _isLevelLoaded = true;
+    }
+
+    /**
+     * Reads the chunks of the compiled level that start at or before the
+     * given position
+     * 
+     * @param x
+     *            The position, in level units, to read up to
+     */
+    private void pageIn(final float x) {
+        try {
+            boolean more = true;
+            while (more && _compiledLevel.getNextChunkX() <= x) {
+                addChunk(_compiledLevel.getNextChunkX());
+                more = _compiledLevel.readChunk();
+            }
+            if (_compiledLevel.getNextChunkX() == Float.MAX_VALUE) {
+                _compiledLevel.close();
+                _compiledLevel = null;
+            }
+        } catch (final IOException e) {
+            _compiledLevel.close();
+            _compiledLevel = null;
+            SpriteGame.errorDialog(e.toString());
+        }
+    }
+
+    /**
+     * Records where the chunk about to be read starts in _tiles and where it
+     * ends in the level
+     * 
+     * @param x
+     *            The smallest tile x position in the chunk, in level units
+     */
+    private void addChunk(final float x) {
+        if (_chunkCount == _chunkEnds.length) {
+            final float[] ends = new float[Math.max(4, _chunkCount * 2)];
+            System.arraycopy(_chunkEnds, 0, ends, 0, _chunkCount);
+            _chunkEnds = ends;
+        }
+
+        // Chunks are CHUNK_WIDTH columns wide, aligned to multiples of it
+        final int width = CompiledLevel.CHUNK_WIDTH;
+        _chunkStarts.addElement(new Integer(_tiles.size()));
+        _chunkEnds[_chunkCount] = ((float) Math.floor(x / width) + 1) * width;
+        _chunkCount++;
+    }
+
+    /**
+     * Evicts the chunks that end at or before the given position. Their tiles
+     * are set to null and taken out of the tile grid; the render thread
+     * deletes their batches once the eviction is published. The tile indices
+     * of the remaining chunks don't change.
+     * 
+     * @param x
+     *            The position, in level units, to evict up to
+     */
+    private void evictBefore(final float x) {
+        while (_evictedChunks < _chunkCount
+                && _chunkEnds[_evictedChunks] <= x) {
+            final int chunk = _evictedChunks++;
+            final int start =
+                    ((Integer) _chunkStarts.elementAt(chunk)).intValue();
+            final int end =
+                    chunk + 1 < _chunkCount ? ((Integer) _chunkStarts
+                            .elementAt(chunk + 1)).intValue() : _tiles.size();
+
+            for (int i = start; i < end; i++) {
+                _tileGrid.remove(i);
+                _tiles.setElementAt(null, i);
+            }
+            _wallX = toWorldUnits(_chunkEnds[chunk]) + VIEW_HALF_WIDTH;
+        }
+    }
+
+    /**
+     * Converts a level position to a world position
+     */
+    private static float toWorldUnits(final float position) {
+        return -11.0f + position * 2.0f;
+    }
+
+    /**
+     * Converts a world position to a level position
+     */
+    private static float toLevelUnits(final float position) {
+        return (position + 11.0f) / 2.0f;
+    }
+
+    /**
+     * Creates a tile and adds it to the level
+     * 
+     * @param texture
+     *            The tile's texture
+     * @param x
+     *            The tile's x position in level units
+     * @param y
+     *            The tile's y position in level units
+     * @param scale
+     *            The tile's scale
+     */
+    private void addTile(final String texture, final float x, final float y,
+            final float scale) {
+        final Sprite tile =
+                new Sprite(texture, new Vector3f(toWorldUnits(x),
+                        toWorldUnits(y), 0.0f));
+        tile._transform.scale(scale);
+        _tiles.addElement(tile);
+
+        // Tiles paged in after the grids were created go straight in
+        if (_tileGrid != null && _compiledLevel != null) {
+            addToTileGrid(tile);
+        }
+    }
+
+    /**
+     * Creates an enemy and adds it to the level
+     * 
+     * @param texture
+     *            The enemy's texture
+     * @param x
+     *            The enemy's x position in level units
+     * @param y
+     *            The enemy's y position in level units
+     * @param scale
+     *            The enemy's scale
+     */
+    private void addEnemy(final String texture, final float x, final float y,
+            final float scale) {
+        Bounds bounds = null;
+
+        if (texture.equals("obstacle_ball.png")) {
+            bounds =
+                    new BoundingBox(new Vector3f(-0.9f, -0.9f, 0.0f),
+                            new Vector3f(0.9f, 0.9f, 0.0f));
+        } else if (texture.equals("obstacle_spikewheel.png")) {
+            bounds = new BoundingSphere(new Vector3f(), 0.75f);
+        }
+
+        final Sprite enemy =
+                new Sprite(texture, bounds, new Vector3f(toWorldUnits(x),
+                        toWorldUnits(y), 0.0f));
+        enemy._transform.scale(scale);
+        _enemies.addElement(enemy);
+    }
+
+    /**
+     * Creates the level's character
+     * 
+     * @param texture
+     *            The character's texture
+     * @param animator
+     *            The animator that the character can use
+     * @param x
+     *            The character's x position in level units
+     * @param y
+     *            The character's y position in level units
+     * @param scale
+     *            The character's scale
+     */
+    private void createCharacter(final String texture,
+            final Animator animator, final float x, final float y,
+            final float scale) {
+        _character =
+                new SpriteGameCharacter(texture, animator, new Vector3f(
+                        toWorldUnits(x), toWorldUnits(y), 0.0f));
+        _character._transform.scale(scale);
+    }
+
+    /**
+     * Creates the level's goal
+     * 
+     * @param texture
+     *            The goal's texture
+     * @param x
+     *            The goal's x position in level units
+     * @param y
+     *            The goal's y position in level units
+     * @param scale
+     *            The goal's scale
+     */
+    private void createGoal(final String texture, final float x,
+            final float y, final float scale) {
+        _levelGoal =
+                new Sprite(texture, new Vector3f(toWorldUnits(x),
+                        toWorldUnits(y), 0.0f));
+        _levelGoal._transform.scale(scale);
+    }
+
+    /**
+     * Adds an animation to an enemy
+     * 
+     * @param enemy
+     *            Enemy to add the animation to
+     * @param animator
+     *            The animator that runs the animation
+     * @param type
+     *            One of the CompiledLevel.ANIMATION_ constants
+     * @param keyframes
+     *            The animations key frames
+     * @param keyTimes
+     *            The animations key times
+     * @param values
+     *            The key values as written in the level: an x,y offset in
+     *            level units per frame for translations, an angle per frame
+     *            for rotations and a scale per frame for scales
+     * @param duration
+     *            The duration of the animation
+     * @param curve
+     *            The curve at which the animation will travel
+     * @param repeatCount
+     *            The number of times to repeat, or -1 to repeat indefinitely
+     */
+    private static void addAnimation(final Sprite enemy,
+            final Animator animator, final int type, final int keyframes,
+            final float[] keyTimes, final float[] values, final long duration,
+            final int curve, final int repeatCount) {
+        final Animation animation;
+
+        if (type == CompiledLevel.ANIMATION_TRANSLATE) {
+            final Vector3f t = new Vector3f();
+            enemy._transform.getTranslation(t);
+
+            // Convert the coords
+            final float[] keyValues = new float[keyframes * 3];
+            for (int i = 0; i < keyframes; i++) {
+                keyValues[i * 3] = values[i * 2] * 2 + t.x;
+                keyValues[i * 3 + 1] = values[i * 2 + 1] * 2 + t.y;
+                keyValues[i * 3 + 2] = t.z;
+            }
+
+            animation =
+                    animator.addAnimation(enemy._transform,
+                            Transform3D.ANIMATION_PROPERTY_TRANSLATE,
+                            keyframes, keyTimes, 0, keyValues, 0, curve,
+                            duration);
+        } else if (type == CompiledLevel.ANIMATION_ROTATE) {
+            final int size = keyframes * 4;
+            final float[] keyValues = new float[size];
+            int j = 0;
+
+            // Convert the degrees into radians
+            for (int i = 0; i < size; i++) {
+                if (i % 4 == 3) {
+                    keyValues[i] = (float) (values[j++] * 180 / Math.PI);
+                } else if (i % 4 == 2) {
+                    keyValues[i] = 1.0f;
+                } else {
+                    keyValues[i] = 0.0f;
+                }
+            }
+
+            animation =
+                    animator.addAnimation(enemy._transform,
+                            Transform3D.ANIMATION_PROPERTY_ROTATE, keyframes,
+                            keyTimes, 0, keyValues, 0, curve, duration);
+        } else if (type == CompiledLevel.ANIMATION_SCALE) {
+            final float[] keyValues = new float[keyframes * 3];
+
+            for (int i = 0; i < keyframes; i++) {
+                keyValues[i * 3] = values[i];
+                keyValues[i * 3 + 1] = values[i];
+                keyValues[i * 3 + 2] = 1.0f;
+            }
+
+            animation =
+                    animator.addAnimation(enemy._transform,
+                            Transform3D.ANIMATION_PROPERTY_SCALE, keyframes,
+                            keyTimes, 0, keyValues, 0, curve, duration);
+        } else {
+            return;
+        }
+
+        // Add the animation to the enemy
+        enemy.addAnimation(animation);
+
+        if (repeatCount == -1) {
+            animation.setRepeatCount(Animation.REPEAT_COUNT_INDEFINITE);
+        } else {
+            animation.setRepeatCount(repeatCount);
+        }
+    }
+
+    /**
+     * Creates the level objects read from a compiled level
+     */
+    private class CompiledLevelHandler implements CompiledLevel.Handler {
+        private final Animator _animator;
+
+        /**
+         * Creates a new CompiledLevelHandler object
+         * 
+         * @param animator
+         *            The animator that the different level entities can use
+         */
+        CompiledLevelHandler(final Animator animator) {
+            _animator = animator;
+        }
+
+        /**
+         * @see CompiledLevel.Handler#character(String, float, float, float)
+         */
+        public void character(final String texture, final float x,
+                final float y, final float scale) {
+            createCharacter(texture, _animator, x, y, scale);
+        }
+
+        /**
+         * @see CompiledLevel.Handler#goal(String, float, float, float)
+         */
+        public void goal(final String texture, final float x, final float y,
+                final float scale) {
+            createGoal(texture, x, y, scale);
+        }
+
+        /**
+         * @see CompiledLevel.Handler#enemy(String, float, float, float)
+         */
+        public void enemy(final String texture, final float x, final float y,
+                final float scale) {
+            addEnemy(texture, x, y, scale);
+        }
+
+        /**
+         * @see CompiledLevel.Handler#animation(int, int, float[], float[],
+         *      long, int, int)
+         */
+        public void animation(final int type, final int keyframes,
+                final float[] keyTimes, final float[] values,
+                final long duration, final int curve, final int repeat) {
+            // Linear is the only curve a level can specify
+            addAnimation((Sprite) _enemies.lastElement(), _animator, type,
+                    keyframes, keyTimes, values, duration,
+                    Animation.EASINGCURVE_LINEAR, repeat);
+        }
+
+        /**
+         * @see CompiledLevel.Handler#tile(String, float, float, float)
+         */
+        public void tile(final String texture, final float x, final float y,
+                final float scale) {
+            addTile(texture, x, y, scale);
+        }
+    }
+
     /**
      * This class parses the level file and creates the different level objects
      * (tile, enemy, character, etc) with their specific attributes.
@@ -609,11 +1574,7 @@ public class SpriteGameLevel {
             // Add tiles for the amount of times that the tile should be
             // repeated
             for (int i = 0; i < repeat; i++) {
-                final Sprite tile =
-                        new Sprite(texture, new Vector3f(-11.0f + (pos[0] + i)
-                                * 2.0f, -11.0f + pos[1] * 2.0f, 0.0f));
-                tile._transform.scale(scale);
-                _tiles.addElement(tile);
+                addTile(texture, pos[0] + i, pos[1], scale);
             }
         }
 
@@ -636,22 +1597,7 @@ public class SpriteGameLevel {
             }
 
             // Create the enemy
-            Sprite enemy;
-            Bounds bounds = null;
-
-            if (texture.equals("obstacle_ball.png")) {
-                bounds =
-                        new BoundingBox(new Vector3f(-0.9f, -0.9f, 0.0f),
-                                new Vector3f(0.9f, 0.9f, 0.0f));
-            } else if (texture.equals("obstacle_spikewheel.png")) {
-                bounds = new BoundingSphere(new Vector3f(), 0.75f);
-            }
-
-            enemy =
-                    new Sprite(texture, bounds, new Vector3f(-11.0f + pos[0]
-                            * 2.0f, -11.0f + pos[1] * 2.0f, 0.0f));
-            enemy._transform.scale(scale);
-            _enemies.addElement(enemy);
+            addEnemy(texture, pos[0], pos[1], scale);
         }
 
         /**
@@ -673,11 +1619,7 @@ public class SpriteGameLevel {
             }
 
             // Create the character
-            _character =
-                    new SpriteGameCharacter(texture, _animator, new Vector3f(
-                            -11.0f + pos[0] * 2.0f, -11.0f + pos[1] * 2.0f,
-                            0.0f));
-            _character._transform.scale(scale);
+            createCharacter(texture, _animator, pos[0], pos[1], scale);
         }
 
         /**
@@ -699,10 +1641,7 @@ public class SpriteGameLevel {
             }
 
             // Create the level goal object
-            _levelGoal =
-                    new Sprite(texture, new Vector3f(-11.0f + pos[0] * 2.0f,
-                            -11.0f + pos[1] * 2.0f, 0.0f));
-            _levelGoal._transform.scale(scale);
+            createGoal(texture, pos[0], pos[1], scale);
         }
 
         /**
@@ -729,186 +1668,33 @@ public class SpriteGameLevel {
                 curve = Animation.EASINGCURVE_LINEAR;
             }
 
-            Animation animation = null;
-
-            // Check if the animation is a TRANSLATE
-            if (attributes.getValue(TYPE).equalsIgnoreCase(TRANSLATE)) {
-                animation =
-                        parseTranslationAnimation(enemy, keyframes, keyTimes,
-                                duration, curve, attributes);
-            }
-
-            // Check if the animation is a ROTATE
-            else if (attributes.getValue(TYPE).equalsIgnoreCase(ROTATE)) {
-                animation =
-                        parseRotationAnimation(enemy, keyframes, keyTimes,
-                                duration, curve, attributes);
-            }
-
-            // Check if the animation is a SCALE
-            else if (attributes.getValue(TYPE).equalsIgnoreCase(SCALE)) {
-                animation =
-                        parseScaleAnimation(enemy, keyframes, keyTimes,
-                                duration, curve, attributes);
-            }
-
-            // Add the animation to the enemy
-            if (animation != null) {
-                enemy.addAnimation(animation);
-
-                final int repeatCount =
-                        Integer.parseInt(attributes.getValue(REPEAT));
-                if (repeatCount == -1) {
-                    animation.setRepeatCount(Animation.REPEAT_COUNT_INDEFINITE);
-                } else {
-                    animation.setRepeatCount(repeatCount);
-                }
-            }
-        }
-
-        /**
-         * Parses a translation animation
-         * 
-         * @param enemy
-         *            Enemy to add the animation to
-         * @param keyframes
-         *            The animations key frames
-         * @param keyTimes
-         *            The animations key times
-         * @param duration
-         *            The duration of the animation
-         * @param curve
-         *            The curve at which the animation will travel
-         * @param attributes
-         *            The attributes of the animation
-         * @return True if adding the animation was a success; false if adding
-         *         the animation failed
-         */
-        private Animation parseTranslationAnimation(final Sprite enemy,
-                final int keyframes, final float[] keyTimes,
-                final long duration, final int curve,
-                final Attributes attributes) {
-            final Vector3f t = new Vector3f();
-            enemy._transform.getTranslation(t);
-
-            // Get the key values
-            final String[] strs = parseString(attributes.getValue(VALUES), ';');
-
-            // Get key values out as floats
-            final float[] values = new float[keyframes * 3];
-
-            for (int i = 0; i < keyframes; i++) {
-                // Parse the string
-                parseString(strs[i], ',', values, i * 3);
-
-                // Convert the coords
-                values[i * 3] = values[i * 3] * 2 + t.x;
-                values[i * 3 + 1] = values[i * 3 + 1] * 2 + t.y;
-                values[i * 3 + 2] = t.z;
-            }
-
-            // Create the animation
-            return _animator.addAnimation(enemy._transform,
-                    Transform3D.ANIMATION_PROPERTY_TRANSLATE, keyframes,
-                    keyTimes, 0, values, 0, curve, duration);
-
-        }
-
-        /**
-         * Parses a rotation animation
-         * 
-         * @param enemy
-         *            Enemy to add the animation to
-         * @param keyframes
-         *            The animations key frames
-         * @param keyTimes
-         *            The animations key times
-         * @param duration
-         *            The duration of the animation
-         * @param curve
-         *            The curve at which the animation will travel
-         * @param attributes
-         *            The attributes of the animation
-         * @return True if adding the animation was a success; false if adding
-         *         the animation failed
-         */
-        private Animation parseRotationAnimation(final Sprite enemy,
-                final int keyframes, final float[] keyTimes,
-                final long duration, final int curve,
-                final Attributes attributes) {
-            final float[] values = new float[keyframes];
-
-            // Get the key values
-            parseString(attributes.getValue(VALUES), ';', values, 0);
-
-            final int size = keyframes * 4;
-
-            // Get the key values out as floats
-            final float[] keyValues = new float[size];
-            int j = 0;
-
-            // Convert the degrees into radians
-            for (int i = 0; i < size; i++) {
-                if (i % 4 == 3) {
-                    keyValues[i] = (float) (values[j++] * 180 / Math.PI);
-                } else if (i % 4 == 2) {
-                    keyValues[i] = 1.0f;
-                } else {
-                    keyValues[i] = 0.0f;
-                }
-            }
-
-            // Create the animation
-            return _animator.addAnimation(enemy._transform,
-                    Transform3D.ANIMATION_PROPERTY_ROTATE, keyframes, keyTimes,
-                    0, keyValues, 0, curve, duration);
-        }
-
-        /**
-         * Parses a scale animation
-         * 
-         * @param enemy
-         *            Enemy to add the animation to
-         * @param keyframes
-         *            The animations key frames
-         * @param keyTimes
-         *            The animations key times
-         * @param duration
-         *            The duration of the animation
-         * @param curve
-         *            The curve at which the animation will travel
-         * @param attributes
-         *            The attributes of the animation
-         * @return True if adding the animation was a success; false if adding
-         *         the animation failed
-         */
-        private Animation parseScaleAnimation(final Sprite enemy,
-                final int keyframes, final float[] keyTimes,
-                final long duration, final int curve,
-                final Attributes attributes) {
-            final float[] values = new float[keyframes];
-
-            // Get the key values
-            parseString(attributes.getValue(VALUES), ';', values, 0);
-
-            final int size = keyframes * 3;
-
-            // Get the key values out as floats
-            final float[] keyvalues = new float[size];
-            int j = 0;
-
-            for (int i = 0; i < size; i++) {
-                if (i % 3 == 2) {
-                    keyvalues[i] = 1.0f;
-                    j++;
-                } else {
-                    keyvalues[i] = values[j];
+            // Get the key values, an x,y pair per frame for translations
+            final String type = attributes.getValue(TYPE);
+            final int animationType;
+            final float[] values;
+
+            if (type.equalsIgnoreCase(TRANSLATE)) {
+                animationType = CompiledLevel.ANIMATION_TRANSLATE;
+                final String[] strs =
+                        parseString(attributes.getValue(VALUES), ';');
+                values = new float[keyframes * 2];
+                for (int i = 0; i < keyframes; i++) {
+                    parseString(strs[i], ',', values, i * 2);
                 }
+            } else if (type.equalsIgnoreCase(ROTATE)
+                    || type.equalsIgnoreCase(SCALE)) {
+                animationType =
+                        type.equalsIgnoreCase(ROTATE) ? CompiledLevel.ANIMATION_ROTATE
+                                : CompiledLevel.ANIMATION_SCALE;
+                values = new float[keyframes];
+                parseString(attributes.getValue(VALUES), ';', values, 0);
+            } else {
+                return;
             }
 
-            return _animator.addAnimation(enemy._transform,
-                    Transform3D.ANIMATION_PROPERTY_SCALE, keyframes, keyTimes,
-                    0, keyvalues, 0, curve, duration);
+            addAnimation(enemy, _animator, animationType, keyframes, keyTimes,
+                    values, duration, curve, Integer.parseInt(attributes
+                            .getValue(REPEAT)));
         }
 
         /**
@@ -0,0 +1,91 @@
+/*
+ * TimingStats.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.openglspritegamedemo;
+
+/**
+ * Accumulates timing measurements, such as frame intervals or simulation
+ * steps. Samples may be added on one thread and reported on another.
+ */
+final class TimingStats {
+    /** Holds the number of items measured */
+    private int _count;
+
+    /** Holds the total time measured, in milliseconds */
+    private long _total;
+
+    /** Holds the longest single measurement, in milliseconds */
+    private long _max;
+
+    /**
+     * Adds a measurement
+     *
+     * @param time
+     *            The time taken, in milliseconds
+     * @param count
+     *            The number of items measured, which is more than one when
+     *            several items are too quick to time individually
+     */
+    synchronized void add(final long time, final int count) {
+        _count += count;
+        _total += time;
+        if (time > _max) {
+            _max = time;
+        }
+    }
+
+    /**
+     * @return The number of items measured
+     */
+    synchronized int getCount() {
+        return _count;
+    }
+
+    /**
+     * @return The total time measured, in milliseconds
+     */
+    synchronized long getTotal() {
+        return _total;
+    }
+
+    /**
+     * Clears all measurements
+     */
+    synchronized void reset() {
+        _count = 0;
+        _total = 0L;
+        _max = 0L;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public synchronized String toString() {
+        final long average = _count == 0 ? 0L : _total * 1000L / _count;
+        return _count + " in " + _total + " ms (avg " + average / 1000L + "."
+                + average % 1000L / 100L + " ms, max " + _max + " ms)";
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * ChangeLog.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.otabackuprestoredemo;
+
+import java.util.Vector;
+
+import net.rim.device.api.util.Persistable;
+
+/**
+ * A log of the changes made to the contacts on the device that the sync
+ * engine hasn't dealt with yet, so that a backup only has to send what has
+ * changed. Every change is given the next sequence number, which is recorded
+ * both in the log and in the contact itself. A log entry is only current
+ * while the contact's sequence number still matches it; once the contact
+ * changes again, or is no longer needed, its sequence number is set to zero
+ * and the entry is left for compaction to remove.
+ * <p>
+ * A changed contact stays dirty until the sync engine clears it after backing
+ * it up. A deleted contact is reported to the sync engine through its
+ * collection listener, so it only stays in the log if there is no listener to
+ * tell, until one is added. The log therefore stays in proportion to the
+ * number of changes waiting to be backed up rather than the number of
+ * contacts.
+ */
+final class ChangeLog implements Persistable {
+    private static final int MIN_COMPACT = 64; // Entries worth compacting
+    private static final int MIN_CAPACITY = 16;
+
+    private int _sequence; // The sequence number of the last change
+    private int _count;
+    private int _live; // Entries that are still current
+    private int[] _sequences = new int[MIN_CAPACITY]; // Ascending
+    private Object[] _contacts = new Object[MIN_CAPACITY];
+    private boolean[] _deleted = new boolean[MIN_CAPACITY];
+
+    /**
+     * Records that a contact has been added or changed
+     *
+     * @param contact
+     *            The contact
+     */
+    void changed(final OTAContactData contact) {
+        append(contact, false);
+    }
+
+    /**
+     * Records that a contact has been deleted
+     *
+     * @param contact
+     *            The contact
+     * @param delivered
+     *            True if the deletion has been reported to a collection
+     *            listener already, in which case it doesn't need to be kept
+     */
+    void deleted(final OTAContactData contact, final boolean delivered) {
+        if (delivered) {
+            forget(contact);
+        } else {
+            append(contact, true);
+        }
+    }
+
+    /**
+     * Forgets the change to a contact, either because it has been backed up
+     * or because the contact is no longer in the collection
+     *
+     * @param contact
+     *            The contact
+     */
+    void forget(final OTAContactData contact) {
+        if (contact.getSequence() != 0) {
+            contact.setSequence(0);
+            --_live;
+            if (_count >= MIN_COMPACT && _live * 2 <= _count) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Collects the contacts that have been added or changed and not backed up
+     * yet, in the order they were changed
+     *
+     * @param changed
+     *            A vector to add the changed contacts to
+     */
+    void getChanged(final Vector changed) {
+        for (int i = 0; i < _count; ++i) {
+            final OTAContactData contact = (OTAContactData) _contacts[i];
+            if (!_deleted[i] && contact.getSequence() == _sequences[i]) {
+                changed.addElement(contact);
+            }
+        }
+    }
+
+    /**
+     * Counts the contacts getChanged() collects
+     *
+     * @return The number of changed contacts
+     */
+    int getChangedCount() {
+        int count = 0;
+        for (int i = 0; i < _count; ++i) {
+            final OTAContactData contact = (OTAContactData) _contacts[i];
+            if (!_deleted[i] && contact.getSequence() == _sequences[i]) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Collects the deletions that haven't been reported to a collection
+     * listener
+     *
+     * @param deleted
+     *            A vector to add the deleted contacts to
+     */
+    void getUndelivered(final Vector deleted) {
+        for (int i = 0; i < _count; ++i) {
+            final OTAContactData contact = (OTAContactData) _contacts[i];
+            if (_deleted[i] && contact.getSequence() == _sequences[i]) {
+                deleted.addElement(contact);
+            }
+        }
+    }
+
+    /**
+     * Records that the deletions collected by getUndelivered() have been
+     * reported to a collection listener
+     *
+     * @param deleted
+     *            The deleted contacts
+     */
+    void delivered(final Vector deleted) {
+        for (int i = 0; i < deleted.size(); ++i) {
+            forget((OTAContactData) deleted.elementAt(i));
+        }
+    }
+
+    /**
+     * Appends an entry, giving the contact the next sequence number
+     */
+    private void append(final OTAContactData contact, final boolean deleted) {
+        // Make room by compacting first, so that a contact that is changed
+        // over and over again doesn't make the log grow
+        if (_count == _sequences.length) {
+            compact();
+            if (_count * 2 > _sequences.length) {
+                resize(_sequences.length * 2);
+            }
+        }
+
+        if (contact.getSequence() == 0) {
+            ++_live; // Otherwise the contact's earlier entry is replaced
+        }
+        contact.setSequence(++_sequence);
+        _sequences[_count] = _sequence;
+        _contacts[_count] = contact;
+        _deleted[_count] = deleted;
+        ++_count;
+    }
+
+    /**
+     * Discards the entries that are no longer current
+     */
+    private void compact() {
+        int count = 0;
+        for (int i = 0; i < _count; ++i) {
+            final OTAContactData contact = (OTAContactData) _contacts[i];
+            if (contact.getSequence() == _sequences[i]) {
+                _sequences[count] = _sequences[i];
+                _contacts[count] = contact;
+                _deleted[count] = _deleted[i];
+                ++count;
+            }
+        }
+        for (int i = count; i < _count; ++i) {
+            _contacts[i] = null;
+        }
+        _count = count;
+
+        // Give back the memory used by a large backlog, such as the one
+        // recorded before the first backup
+        if (_count * 4 < _sequences.length
+                && _sequences.length > MIN_CAPACITY) {
+            resize(Math.max(_count * 2, MIN_CAPACITY));
+        }
+    }
+
+    /**
+     * Moves the entries to arrays of a new capacity
+     */
+    private void resize(final int capacity) {
+        final int[] sequences = new int[capacity];
+        final Object[] contacts = new Object[capacity];
+        final boolean[] deleted = new boolean[capacity];
+        System.arraycopy(_sequences, 0, sequences, 0, _count);
+        System.arraycopy(_contacts, 0, contacts, 0, _count);
+        System.arraycopy(_deleted, 0, deleted, 0, _count);
+        _sequences = sequences;
+        _contacts = contacts;
+        _deleted = deleted;
+    }
+}
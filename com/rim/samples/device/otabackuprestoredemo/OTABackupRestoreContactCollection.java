@@ -46,9 +46,25 @@ import net.rim.device.api.util.CloneableVector;
 import net.rim.device.api.util.DataBuffer;
 import net.rim.device.api.util.ListenerUtilities;
 
+import com.rim.samples.device.synclib.SyncFieldCodec;
+import com.rim.samples.device.synclib.SyncObjectList;
+
 /**
  * A collection enabled for OTA backup/restore. Basically a serially syncable
  * collection with few added interfaces.
+ * <p>
+ * Changes made on the device are recorded in a ChangeLog, so that a backup
+ * only has to send the contacts that were added or changed since they were
+ * last backed up: getSyncObjects() returns just those contacts. A changed
+ * contact is dirty until the sync engine clears it; a deletion is reported to
+ * the sync engine's collection listener, and is kept in the log only until
+ * there is a listener to report it to. Contacts written by the sync engine
+ * during a restore are already on the server and aren't recorded.
+ * <p>
+ * The contacts are indexed by UID, so that the sync engine can look up each
+ * contact it restores without searching the list, and the list is committed
+ * once at the end of a restore rather than after every contact. Restoring N
+ * contacts therefore takes O(N) time.
  */
 public class OTABackupRestoreContactCollection implements SyncConverter,
         SyncCollection, OTASyncCapable, CollectionEventSource {
@@ -56,13 +72,21 @@ public class OTABackupRestoreContactCollection implements SyncConverter,
     private PersistentObject _persist; // The persistable object for the
                                        // contacts
     private Vector _contacts; // The actual contacts
+    private SyncObjectList _index; // Looks up the contacts by UID
+    private PersistentObject _logPersist; // The persistable object for the
+                                          // change log
+    private ChangeLog _log; // The changes since the last backup
+    private boolean _inTransaction; // True while the sync engine is restoring
     private Vector _listeners; // Listeners to generate events when contacts are
                                // added
     private final SyncCollectionSchema _schema; // Lets us know about the data
                                                 // we are backing up
+    private final SyncFieldCodec _codec; // Converts contacts to and from
+                                         // the desktop sync format
 
     private static final long PERSISTENT_KEY = 0x266babf899b20b56L; // com.rim.samples.device.otabackuprestoredemo.OTABackupRestoreContactCollection._persist
     private static final long AR_KEY = 0xef780e08b3a7cf07L; // com.rim.samples.device.otabackuprestoredemo.OTABackupRestoreContactCollection
+    private static final long LOG_KEY = 0x37c937b5b3d2ef7aL; // com.rim.samples.device.otabackuprestoredemo.OTABackupRestoreContactCollection._log
 
     private static final int FIELDTAG_FIRST_NAME = 1;
     private static final int FIELDTAG_LAST_NAME = 2;
@@ -86,6 +110,16 @@ public class OTABackupRestoreContactCollection implements SyncConverter,
             _persist.setContents(_contacts);
             _persist.commit();
         }
+        _index = new SyncObjectList(_contacts);
+
+        _logPersist = PersistentStore.getPersistentObject(LOG_KEY);
+        _log = (ChangeLog) _logPersist.getContents();
+
+        if (_log == null) {
+            _log = new ChangeLog();
+            _logPersist.setContents(_log);
+            _logPersist.commit();
+        }
 
         _listeners = new CloneableVector();
 
@@ -93,6 +127,8 @@ public class OTABackupRestoreContactCollection implements SyncConverter,
         _schema = new SyncCollectionSchema();
         _schema.setDefaultRecordType(DEFAULT_RECORD_TYPE);
         _schema.setKeyFieldIds(DEFAULT_RECORD_TYPE, KEY_FIELD_IDS);
+
+        _codec = new SyncFieldCodec();
     }
 
     /**
@@ -126,23 +162,17 @@ public class OTABackupRestoreContactCollection implements SyncConverter,
             final int version) {
         if (version == getSyncVersion()) {
             if (object instanceof OTAContactData) {
-                final String first = ((OTAContactData) object).getFirst();
-                final String last = ((OTAContactData) object).getLast();
-                final String email = ((OTAContactData) object).getEmail();
+                final OTAContactData contact = (OTAContactData) object;
 
                 // In compliance with desktop sync format
-                buffer.writeShort(first.length() + 1);
-                buffer.writeByte(FIELDTAG_FIRST_NAME);
-                buffer.write(first.getBytes());
-                buffer.writeByte(0);
-                buffer.writeShort(last.length() + 1);
-                buffer.writeByte(FIELDTAG_LAST_NAME);
-                buffer.write(last.getBytes());
-                buffer.writeByte(0);
-                buffer.writeShort(email.length() + 1);
-                buffer.writeByte(FIELDTAG_EMAIL_ADDRESS);
-                buffer.write(email.getBytes());
-                buffer.writeByte(0);
+                synchronized (_codec) {
+                    _codec.writeString(buffer, FIELDTAG_FIRST_NAME, contact
+                            .getFirst());
+                    _codec.writeString(buffer, FIELDTAG_LAST_NAME, contact
+                            .getLast());
+                    _codec.writeString(buffer, FIELDTAG_EMAIL_ADDRESS, contact
+                            .getEmail());
+                }
 
                 return true;
             }
@@ -159,32 +189,26 @@ public class OTABackupRestoreContactCollection implements SyncConverter,
         try {
             final OTAContactData contact = new OTAContactData(UID);
 
-            while (data.available() > 0) {
-                final int length = data.readShort();
-                final byte[] bytes = new byte[length];
-
-                switch (data.readByte()) {
-                case FIELDTAG_FIRST_NAME:
-                    data.readFully(bytes);
-
-                    // Trim null-terminator.
-                    contact.setFirst(new String(bytes).trim());
-                    break;
-
-                case FIELDTAG_LAST_NAME:
-                    data.readFully(bytes);
-                    contact.setLast(new String(bytes).trim());
-                    break;
-
-                case FIELDTAG_EMAIL_ADDRESS:
-                    data.readFully(bytes);
-                    contact.setEmail(new String(bytes).trim());
-                    break;
-
-                default:
-                    data.readFully(bytes);
-                    // other fields not supported
-                    break;
+            synchronized (_codec) {
+                while (data.available() > 0) {
+                    switch (_codec.readTag(data)) {
+                    case FIELDTAG_FIRST_NAME:
+                        contact.setFirst(_codec.readString(data, version));
+                        break;
+
+                    case FIELDTAG_LAST_NAME:
+                        contact.setLast(_codec.readString(data, version));
+                        break;
+
+                    case FIELDTAG_EMAIL_ADDRESS:
+                        contact.setEmail(_codec.readString(data, version));
+                        break;
+
+                    default:
+                        // other fields not supported
+                        _codec.skipValue(data);
+                        break;
+                    }
                 }
             }
 
@@ -207,8 +231,9 @@ public class OTABackupRestoreContactCollection implements SyncConverter,
      */
     public boolean addSyncObject(final SyncObject object) {
         // Add a contact to the persistent store
-        _contacts.addElement(object);
-        PersistentObject.commit(_contacts);
+        _index.add(object);
+        commitContacts();
+        logChange(object, false);
 
         // Use the CollectionListeners to let the server know the add was
         // successful
@@ -231,8 +256,9 @@ public class OTABackupRestoreContactCollection implements SyncConverter,
      */
     public boolean insertSyncObjectAt(final int index, final SyncObject object) {
         // Add a contact to the persistent store
-        _contacts.insertElementAt(object, index);
-        PersistentObject.commit(_contacts);
+        _index.insert(index, object);
+        commitContacts();
+        logChange(object, false);
 
         // Use the CollectionListeners to let the server know the add was
         // successful
@@ -252,9 +278,12 @@ public class OTABackupRestoreContactCollection implements SyncConverter,
     public boolean updateSyncObject(final SyncObject oldObject,
             final SyncObject newObject) {
         // Update a contact in the store
-        if (_contacts.contains(oldObject)) {
-            _contacts.setElementAt(newObject, _contacts.indexOf(oldObject));
-            PersistentObject.commit(_contacts);
+        final int index = _index.indexOf(oldObject);
+        if (index >= 0) {
+            _index.set(index, newObject);
+            commitContacts();
+            forgetChange(oldObject);
+            logChange(newObject, false);
         }
 
         // Use the CollectionListeners to let the server know the update was
@@ -272,16 +301,45 @@ public class OTABackupRestoreContactCollection implements SyncConverter,
      * @see net.rim.device.api.synchronization.SyncCollection#removeSyncObject(SyncObject)
      */
     public boolean removeSyncObject(final SyncObject object) {
+        // Remove a contact from the persistent store. The last contact takes
+        // its place, so the contacts after it don't have to be moved along.
+        if (_index.remove(object)) {
+            commitContacts();
+            logChange(object, true);
+        }
+
+        // Use the CollectionListeners to let the server know the remove was
+        // successful
+        for (int i = 0; i < _listeners.size(); i++) {
+            final CollectionListener cl =
+                    (CollectionListener) _listeners.elementAt(i);
+            cl.elementRemoved(this, object);
+        }
+
+        return true;
+    }
+
+    /**
+     * Remove the SyncObject at the specified index, keeping the order of the
+     * rest of the contacts
+     * 
+     * @param index
+     *            The index of the SyncObject to remove
+     */
+    public boolean removeSyncObjectAt(final int index) {
+        final SyncObject object = _index.elementAt(index);
+
         // Remove a contact from the persistent store
-        _contacts.removeElement(object);
-        PersistentObject.commit(_contacts);
+        _index.removeAt(index);
+        commitContacts();
+        logChange(object, true);
 
         // Use the CollectionListeners to let the server know the remove was
         // successful
         for (int i = 0; i < _listeners.size(); i++) {
             final CollectionListener cl =
                     (CollectionListener) _listeners.elementAt(i);
-            cl.elementAdded(this, object);
+            cl.elementRemoved(this, object);
         }
 
         return true;
@@ -292,15 +350,21 @@ public class OTABackupRestoreContactCollection implements SyncConverter,
     }
 
     /**
+     * Returns the contacts that have changed since they were last backed up.
+     * Deleted contacts aren't returned, as the sync engine would back them up
+     * again; their deletion is reported to its collection listener instead.
+     * 
      * @see net.rim.device.api.synchronization.SyncCollection#getSyncObjects()
      */
     public SyncObject[] getSyncObjects() {
-        final SyncObject[] contactArray = new SyncObject[_contacts.size()];
-
-        for (int i = _contacts.size() - 1; i >= 0; --i) {
-            contactArray[i] = (SyncObject) _contacts.elementAt(i);
+        final Vector changed = new Vector();
+        synchronized (_log) {
+            _log.getChanged(changed);
         }
 
+        final SyncObject[] contactArray = new SyncObject[changed.size()];
+        changed.copyInto(contactArray);
+
         return contactArray;
     }
 
@@ -308,15 +372,7 @@ public class OTABackupRestoreContactCollection implements SyncConverter,
      * @see net.rim.device.api.synchronization.SyncCollection#getSyncObjects()
      */
     public SyncObject getSyncObject(final int uid) {
-        for (int i = _contacts.size() - 1; i >= 0; --i) {
-            final SyncObject so = (SyncObject) _contacts.elementAt(i);
-
-            if (so.getUID() == uid) {
-                return so;
-            }
-        }
-
-        return null;
+        return _index.get(uid);
     }
 
     /**
@@ -327,45 +383,56 @@ public class OTABackupRestoreContactCollection implements SyncConverter,
      * @return The requested SyncObject
      */
     public SyncObject getSyncObjectAt(final int index) {
-        return (SyncObject) _contacts.elementAt(index);
+        return _index.elementAt(index);
     }
 
     /**
+     * A contact is dirty if it has changed since the sync engine last backed
+     * it up
+     * 
      * @see net.rim.device.api.synchronization.SyncCollection#isSyncObjectDirty(SyncObject)
      */
     public boolean isSyncObjectDirty(final SyncObject object) {
-        return false; // NA
+        synchronized (_log) {
+            return ((OTAContactData) object).getSequence() != 0;
+        }
     }
 
     /**
      * @see net.rim.device.api.synchronization.SyncCollection#setSyncObjectDirty(SyncObject)
      */
     public void setSyncObjectDirty(final SyncObject object) {
-        // NA
+        synchronized (_log) {
+            _log.changed((OTAContactData) object);
+            PersistentObject.commit(_log);
+        }
     }
 
     /**
      * @see net.rim.device.api.synchronization.SyncCollection#clearSyncObjectDirty(SyncObject)
      */
     public void clearSyncObjectDirty(final SyncObject object) {
-        // NA
+        forgetChange(object);
     }
 
     /**
+     * Returns the number of contacts getSyncObjects() returns
+     * 
      * @see net.rim.device.api.synchronization.SyncCollection#getSyncObjectCount()
      */
     public int getSyncObjectCount() {
-        _persist = PersistentStore.getPersistentObject(PERSISTENT_KEY);
-        _contacts = (Vector) _persist.getContents();
+        loadContacts();
 
-        return _contacts.size();
+        synchronized (_log) {
+            return _log.getChangedCount();
+        }
     }
 
     /**
      * @see net.rim.device.api.synchronization.SyncCollection#getSyncVersion()
      */
     public int getSyncVersion() {
-        return 1;
+        return SyncFieldCodec.VERSION;
     }
 
     /**
@@ -393,14 +460,15 @@ public class OTABackupRestoreContactCollection implements SyncConverter,
      * @see net.rim.device.api.synchronization.SyncCollection#beginTransaction()
      */
     public void beginTransaction() {
-        _persist = PersistentStore.getPersistentObject(PERSISTENT_KEY);
-        _contacts = (Vector) _persist.getContents();
+        loadContacts();
+        _inTransaction = true;
     }
 
     /**
      * @see net.rim.device.api.synchronization.SyncCollection#endTransaction()
      */
     public void endTransaction() {
+        _inTransaction = false;
         _persist.setContents(_contacts);
         _persist.commit();
     }
@@ -422,6 +490,22 @@ public class OTABackupRestoreContactCollection implements SyncConverter,
      */
     public void addCollectionListener(final Object listener) {
         _listeners = ListenerUtilities.fastAddListener(_listeners, listener);
+
+        // Report the deletions made while there was no listener to tell
+        synchronized (_log) {
+            final Vector deleted = new Vector();
+            _log.getUndelivered(deleted);
+            if (deleted.isEmpty()) {
+                return;
+            }
+
+            for (int i = 0; i < deleted.size(); ++i) {
+                ((CollectionListener) listener).elementRemoved(this, deleted
+                        .elementAt(i));
+            }
+            _log.delivered(deleted);
+            PersistentObject.commit(_log);
+        }
     }
 
     /**
@@ -431,6 +515,73 @@ public class OTABackupRestoreContactCollection implements SyncConverter,
         _listeners = ListenerUtilities.removeListener(_listeners, listener);
     }
 
+    /**
+     * Loads the most recent contact list from the persistent store, indexing
+     * it again if it isn't the list that is already indexed
+     */
+    private void loadContacts() {
+        _persist = PersistentStore.getPersistentObject(PERSISTENT_KEY);
+        _contacts = (Vector) _persist.getContents();
+        if (_index.getVector() != _contacts) {
+            _index = new SyncObjectList(_contacts);
+        }
+    }
+
+    /**
+     * Commits the contact list, unless the sync engine is restoring contacts,
+     * in which case endTransaction() commits them all together
+     */
+    private void commitContacts() {
+        if (!_inTransaction) {
+            PersistentObject.commit(_contacts);
+        }
+    }
+
+    /**
+     * Records a change made on the device in the change log
+     * 
+     * @param object
+     *            The contact that was changed
+     * @param deleted
+     *            True if the contact was deleted
+     */
+    private void logChange(final SyncObject object, final boolean deleted) {
+        if (_inTransaction) {
+            // The sync engine is restoring contacts from the server, so a
+            // deleted contact doesn't need to be backed up either
+            if (deleted) {
+                forgetChange(object);
+            }
+            return;
+        }
+
+        synchronized (_log) {
+            if (deleted) {
+                // The listeners are told about the deletion straight after
+                _log.deleted((OTAContactData) object, !_listeners.isEmpty());
+            } else {
+                _log.changed((OTAContactData) object);
+            }
+            PersistentObject.commit(object);
+            PersistentObject.commit(_log);
+        }
+    }
+
+    /**
+     * Forgets the change to a contact that has been backed up or is no
+     * longer in the collection
+     * 
+     * @param object
+     *            The contact
+     */
+    private void forgetChange(final SyncObject object) {
+        synchronized (_log) {
+            _log.forget((OTAContactData) object);
+            PersistentObject.commit(object);
+            PersistentObject.commit(_log);
+        }
+    }
+
     /**
      * Gets the size of the contact list.
      * 
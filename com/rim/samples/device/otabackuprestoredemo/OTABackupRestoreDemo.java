@@ -309,7 +309,7 @@ public class OTABackupRestoreDemo extends UiApplication {
          * @see net.rim.device.api.ui.component.table.TableModelAdapter#doRemoveRowAt(int)
          */
         protected boolean doRemoveRowAt(final int index) {
-            return _collection.removeSyncObject((SyncObject) getRow(index));
+            return _collection.removeSyncObjectAt(index);
         }
 
         /**
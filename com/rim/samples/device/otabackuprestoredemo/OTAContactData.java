@@ -38,6 +38,7 @@ import net.rim.device.api.util.Persistable;
 public class OTAContactData implements SyncObject, Persistable {
     private int _uid;
     private String _first, _last, _email;
+    private int _sequence; // The contact's last change, 0 once backed up
 
     /**
      * Default constructor
@@ -72,6 +73,25 @@ public class OTAContactData implements SyncObject, Persistable {
         return _uid;
     }
 
+    /**
+     * Sets the sequence number of the last change to this contact
+     * 
+     * @param sequence
+     *            The sequence number, or 0 if the contact has been backed up
+     */
+    void setSequence(final int sequence) {
+        _sequence = sequence;
+    }
+
+    /**
+     * Retrieves the sequence number of the last change to this contact
+     * 
+     * @return The sequence number, or 0 if the contact has been backed up
+     */
+    int getSequence() {
+        return _sequence;
+    }
+
     /**
      * Sets the first name of this contact
      * 
@@ -0,0 +1,139 @@
+/*
+ * DateStrings.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.pagedlistlib;
+
+import java.util.TimeZone;
+
+/**
+ * Formats dates as "d/m/yyyy" in the default time zone. The text of recently
+ * formatted days is kept in a table indexed by day number, so the dates in a
+ * list, which usually fall on a handful of days, are formatted without
+ * creating a Calendar or any other objects.
+ */
+public final class DateStrings {
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+    private static final int TABLE_SIZE = 256; // Must be a power of two
+
+    private static final long[] _days = new long[TABLE_SIZE];
+    private static final String[] _text = new String[TABLE_SIZE];
+    private static final int[] _years = new int[TABLE_SIZE];
+    private static final int[] _months = new int[TABLE_SIZE]; // 1 to 12
+    private static final int[] _daysOfMonth = new int[TABLE_SIZE];
+    private static TimeZone _timeZone;
+
+    /**
+     * Prevents instantiation
+     */
+    private DateStrings() {
+    }
+
+    /**
+     * Formats a date
+     *
+     * @param date
+     *            The date, in milliseconds since the epoch
+     * @return The date as "d/m/yyyy"
+     */
+    public static synchronized String format(final long date) {
+        if (_timeZone == null) {
+            _timeZone = TimeZone.getDefault();
+        }
+
+        // Find the day using the standard offset, then check whether daylight
+        // saving time moves the date onto a neighbouring day
+        final int rawOffset = _timeZone.getRawOffset();
+        int slot = lookup(floorDiv(date + rawOffset, MILLIS_PER_DAY));
+        if (_timeZone.useDaylightTime()) {
+            final long day = _days[slot];
+            final int millisInDay =
+                    (int) (date + rawOffset - day * MILLIS_PER_DAY);
+            final int offset =
+                    _timeZone.getOffset(1, _years[slot], _months[slot] - 1,
+                            _daysOfMonth[slot], getDayOfWeek(day), millisInDay);
+            if (offset != rawOffset) {
+                slot = lookup(floorDiv(date + offset, MILLIS_PER_DAY));
+            }
+        }
+
+        return _text[slot];
+    }
+
+    /**
+     * Finds or fills in the table entry for a day
+     *
+     * @param day
+     *            The number of days since 1 January 1970
+     * @return The position of the day in the table
+     */
+    private static int lookup(final long day) {
+        final int slot = (int) day & TABLE_SIZE - 1;
+        if (_text[slot] != null && _days[slot] == day) {
+            return slot;
+        }
+
+        // Convert the day number to a date in the proleptic Gregorian
+        // calendar, counting years from 1 March so leap days come last
+        final long shifted = day + 719468;
+        final long era = floorDiv(shifted, 146097);
+        final int dayOfEra = (int) (shifted - era * 146097);
+        final int yearOfEra =
+                (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra
+                        / 146096) / 365;
+        final int dayOfYear =
+                dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final int monthIndex = (5 * dayOfYear + 2) / 153;
+        final int dayOfMonth = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+        final int month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+        final int year =
+                (int) (era * 400) + yearOfEra + (month <= 2 ? 1 : 0);
+
+        _days[slot] = day;
+        _years[slot] = year;
+        _months[slot] = month;
+        _daysOfMonth[slot] = dayOfMonth;
+        _text[slot] =
+                new StringBuffer(10).append(dayOfMonth).append('/').append(
+                        month).append('/').append(year).toString();
+        return slot;
+    }
+
+    /**
+     * Retrieves the Calendar day of the week of a day number
+     */
+    private static int getDayOfWeek(final long day) {
+        // 1 January 1970 was a Thursday; Calendar.SUNDAY is 1
+        return (int) (day + 4 - floorDiv(day + 4, 7) * 7) + 1;
+    }
+
+    /**
+     * Divides, rounding towards negative infinity
+     */
+    private static long floorDiv(final long dividend, final long divisor) {
+        final long quotient = dividend / divisor;
+        return dividend % divisor < 0 ? quotient - 1 : quotient;
+    }
+}
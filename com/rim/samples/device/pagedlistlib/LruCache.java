@@ -0,0 +1,279 @@
+/*
+ * LruCache.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.pagedlistlib;
+
+/**
+ * A cache of a bounded number of values with int keys. When the cache is full,
+ * adding a value discards the least recently used one. The entries are kept in
+ * preallocated arrays, so looking values up and replacing them doesn't
+ * allocate.
+ */
+public final class LruCache {
+    private static final int EMPTY = -1;
+
+    private final int[] _keys;
+    private final Object[] _values;
+    private final int[] _newer; // Next more recently used entry, or EMPTY
+    private final int[] _older; // Next less recently used entry, or EMPTY
+    private final int[] _table; // Open addressed hash table of entry numbers
+    private int _newest = EMPTY;
+    private int _oldest = EMPTY;
+    private int _size;
+
+    /**
+     * Creates an empty cache
+     *
+     * @param capacity
+     *            The maximum number of values in the cache
+     */
+    public LruCache(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        _keys = new int[capacity];
+        _values = new Object[capacity];
+        _newer = new int[capacity];
+        _older = new int[capacity];
+
+        // Keep the table at most half full so probe sequences stay short
+        int tableSize = 2;
+        while (tableSize < capacity * 2) {
+            tableSize <<= 1;
+        }
+        _table = new int[tableSize];
+        clear();
+    }
+
+    /**
+     * Retrieves a value and marks it as the most recently used
+     *
+     * @param key
+     *            The key of the value
+     * @return The value, or null if it isn't in the cache
+     */
+    public Object get(final int key) {
+        final int entry = _table[find(key)];
+        if (entry == EMPTY) {
+            return null;
+        }
+
+        moveToNewest(entry);
+        return _values[entry];
+    }
+
+    /**
+     * Adds a value, replacing any value with the same key. If the cache is
+     * full, the least recently used value is discarded.
+     *
+     * @param key
+     *            The key of the value
+     * @param value
+     *            The value, which may not be null
+     */
+    public void put(final int key, final Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException();
+        }
+
+        int slot = find(key);
+        int entry = _table[slot];
+        if (entry != EMPTY) {
+            _values[entry] = value;
+            moveToNewest(entry);
+            return;
+        }
+
+        if (_size == _keys.length) {
+            // Reuse the least recently used entry
+            entry = _oldest;
+            removeFromTable(_keys[entry]);
+            unlink(entry);
+            slot = find(key);
+        } else {
+            entry = _size++;
+        }
+
+        _keys[entry] = key;
+        _values[entry] = value;
+        _table[slot] = entry;
+        link(entry);
+    }
+
+    /**
+     * Removes a value
+     *
+     * @param key
+     *            The key of the value
+     */
+    public void remove(final int key) {
+        final int entry = _table[find(key)];
+        if (entry == EMPTY) {
+            return;
+        }
+
+        removeFromTable(key);
+        unlink(entry);
+        _values[entry] = null;
+
+        // Keep entries 0 to _size - 1 in use by moving the last one down
+        final int last = --_size;
+        if (entry != last) {
+            final boolean wasNewest = _newest == last;
+            final boolean wasOldest = _oldest == last;
+            _keys[entry] = _keys[last];
+            _values[entry] = _values[last];
+            _newer[entry] = _newer[last];
+            _older[entry] = _older[last];
+            _values[last] = null;
+
+            if (_newer[entry] != EMPTY) {
+                _older[_newer[entry]] = entry;
+            }
+            if (_older[entry] != EMPTY) {
+                _newer[_older[entry]] = entry;
+            }
+            if (wasNewest) {
+                _newest = entry;
+            }
+            if (wasOldest) {
+                _oldest = entry;
+            }
+            _table[find(_keys[entry])] = entry;
+        }
+    }
+
+    /**
+     * Removes all values
+     */
+    public void clear() {
+        for (int i = 0; i < _table.length; ++i) {
+            _table[i] = EMPTY;
+        }
+        for (int i = 0; i < _size; ++i) {
+            _values[i] = null;
+        }
+        _newest = EMPTY;
+        _oldest = EMPTY;
+        _size = 0;
+    }
+
+    /**
+     * Retrieves the number of values in the cache
+     *
+     * @return The number of values
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Finds the table slot holding a key, or the empty slot where it would go
+     */
+    private int find(final int key) {
+        final int mask = _table.length - 1;
+        int slot = hash(key) & mask;
+        while (_table[slot] != EMPTY && _keys[_table[slot]] != key) {
+            slot = slot + 1 & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Removes a key from the table, moving back any entries that were probed
+     * past it so that they can still be found
+     */
+    private void removeFromTable(final int key) {
+        final int mask = _table.length - 1;
+        int hole = find(key);
+        _table[hole] = EMPTY;
+
+        int slot = hole + 1 & mask;
+        while (_table[slot] != EMPTY) {
+            final int home = hash(_keys[_table[slot]]) & mask;
+
+            // Move the entry into the hole unless its home lies cyclically
+            // between the hole and its current slot
+            if ((slot - home & mask) >= (slot - hole & mask)) {
+                _table[hole] = _table[slot];
+                _table[slot] = EMPTY;
+                hole = slot;
+            }
+            slot = slot + 1 & mask;
+        }
+    }
+
+    /**
+     * Spreads the bits of a key, since keys are often consecutive
+     */
+    private static int hash(final int key) {
+        final int h = key * 0x9e3779b9;
+        return h ^ h >>> 16;
+    }
+
+    /**
+     * Makes an entry the most recently used
+     */
+    private void moveToNewest(final int entry) {
+        if (entry != _newest) {
+            unlink(entry);
+            link(entry);
+        }
+    }
+
+    /**
+     * Adds an entry to the recency list as the most recently used
+     */
+    private void link(final int entry) {
+        _newer[entry] = EMPTY;
+        _older[entry] = _newest;
+        if (_newest != EMPTY) {
+            _newer[_newest] = entry;
+        }
+        _newest = entry;
+        if (_oldest == EMPTY) {
+            _oldest = entry;
+        }
+    }
+
+    /**
+     * Removes an entry from the recency list
+     */
+    private void unlink(final int entry) {
+        if (_newer[entry] != EMPTY) {
+            _older[_newer[entry]] = _older[entry];
+        } else {
+            _newest = _older[entry];
+        }
+
+        if (_older[entry] != EMPTY) {
+            _newer[_older[entry]] = _newer[entry];
+        } else {
+            _oldest = _newer[entry];
+        }
+    }
+}
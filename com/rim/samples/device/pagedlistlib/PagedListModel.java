@@ -0,0 +1,226 @@
+/*
+ * PagedListModel.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.pagedlistlib;
+
+import net.rim.device.api.system.Application;
+
+/**
+ * The rows of a long list, loaded from a PagedListSource a page at a time as
+ * they are needed. Only a few pages are kept in memory, so a list can be
+ * scrolled through from end to end without ever holding all of its rows at
+ * once. When a page has to be loaded, the page after it in the direction the
+ * list is being scrolled is loaded too, on a background thread, and added to
+ * the cache on the event thread. Scrolling then doesn't stall at every page
+ * boundary, and painting never waits for a page that isn't on screen yet.
+ * <p>
+ * The text of recently displayed rows is cached as well, so that painting a
+ * row again doesn't format it again. Call invalidate() whenever the rows in
+ * the source change.
+ */
+public final class PagedListModel {
+    private static final int DEFAULT_PAGE_SIZE = 32;
+    private static final int DEFAULT_PAGE_COUNT = 4;
+    private static final int DEFAULT_TEXT_COUNT = 64;
+
+    private final PagedListSource _source;
+    private final int _pageSize;
+    private final LruCache _pages; // Page number -> Object[] rows
+    private final LruCache _text; // Row index -> String
+    private int _size = -1; // -1 until read from the source
+    private int _lastPage = -1;
+    private int _generation; // Incremented by invalidate()
+    private int _prefetchPage = -1; // The page being prefetched, or -1
+
+    /**
+     * Creates a model with 4 pages of 32 rows and the text of 64 rows
+     *
+     * @param source
+     *            The source of the rows
+     */
+    public PagedListModel(final PagedListSource source) {
+        this(source, DEFAULT_PAGE_SIZE, DEFAULT_PAGE_COUNT, DEFAULT_TEXT_COUNT);
+    }
+
+    /**
+     * Creates a model
+     *
+     * @param source
+     *            The source of the rows
+     * @param pageSize
+     *            The number of rows loaded at a time
+     * @param pageCount
+     *            The number of pages kept in memory
+     * @param textCount
+     *            The number of rows whose text is kept in memory
+     */
+    public PagedListModel(final PagedListSource source, final int pageSize,
+            final int pageCount, final int textCount) {
+        if (source == null || pageSize < 1 || pageCount < 2) {
+            throw new IllegalArgumentException();
+        }
+
+        _source = source;
+        _pageSize = pageSize;
+        _pages = new LruCache(pageCount);
+        _text = new LruCache(textCount);
+    }
+
+    /**
+     * Retrieves the number of rows in the list
+     *
+     * @return The number of rows
+     */
+    public synchronized int size() {
+        if (_size < 0) {
+            _size = _source.size();
+        }
+        return _size;
+    }
+
+    /**
+     * Retrieves a row, loading its page if necessary
+     *
+     * @param index
+     *            The index of the row
+     * @return The row
+     * @throws ArrayIndexOutOfBoundsException
+     *             If there is no row at the index
+     */
+    public synchronized Object get(final int index) {
+        if (index < 0 || index >= size()) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+
+        final int page = index / _pageSize;
+        Object[] rows = (Object[]) _pages.get(page);
+        if (rows == null) {
+            rows = load(page);
+
+            // Prefetch the next page in the direction of travel
+            if (_lastPage >= 0 && page > _lastPage) {
+                prefetch(page + 1);
+            } else if (page < _lastPage) {
+                prefetch(page - 1);
+            }
+        }
+        _lastPage = page;
+
+        return rows[index - page * _pageSize];
+    }
+
+    /**
+     * Retrieves the text a row is displayed with
+     *
+     * @param index
+     *            The index of the row
+     * @return The text of the row, or null if the source couldn't format it
+     * @throws ArrayIndexOutOfBoundsException
+     *             If there is no row at the index
+     */
+    public synchronized String getText(final int index) {
+        String text = (String) _text.get(index);
+        if (text == null) {
+            text = _source.format(get(index));
+            if (text != null) {
+                _text.put(index, text);
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Discards the cached rows and text, so that they are reloaded from the
+     * source the next time they are needed
+     */
+    public synchronized void invalidate() {
+        _pages.clear();
+        _text.clear();
+        _size = -1;
+        _lastPage = -1;
+        _generation++;
+    }
+
+    /**
+     * Loads a page from the source and caches it
+     */
+    private Object[] load(final int page) {
+        final int start = page * _pageSize;
+        final Object[] rows = new Object[_pageSize];
+        _source.load(start, rows, Math.min(_pageSize, _size - start));
+        _pages.put(page, rows);
+        return rows;
+    }
+
+    /**
+     * Starts loading a page in the background unless it is cached, out of
+     * range or another page is already being loaded
+     */
+    private void prefetch(final int page) {
+        if (_prefetchPage >= 0 || page < 0 || page * _pageSize >= _size
+                || _pages.get(page) != null) {
+            return;
+        }
+
+        final Application application = Application.getApplication();
+        final int generation = _generation;
+        final int start = page * _pageSize;
+        final int count = Math.min(_pageSize, _size - start);
+        _prefetchPage = page;
+
+        new Thread() {
+            public void run() {
+                Object[] rows = new Object[_pageSize];
+                try {
+                    _source.load(start, rows, count);
+                } catch (final RuntimeException e) {
+                    // The page is loaded when it is needed instead
+                    rows = null;
+                }
+
+                final Object[] loaded = rows;
+                application.invokeLater(new Runnable() {
+                    public void run() {
+                        publish(page, loaded, generation);
+                    }
+                });
+            }
+        }.start();
+    }
+
+    /**
+     * Caches a prefetched page, unless it has been loaded in the meantime or
+     * the model has been invalidated since the prefetch started
+     */
+    private synchronized void publish(final int page, final Object[] rows,
+            final int generation) {
+        _prefetchPage = -1;
+        if (rows != null && generation == _generation
+                && _pages.get(page) == null) {
+            _pages.put(page, rows);
+        }
+    }
+}
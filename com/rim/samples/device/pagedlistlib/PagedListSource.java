@@ -0,0 +1,65 @@
+/*
+ * PagedListSource.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.pagedlistlib;
+
+/**
+ * Supplies the rows of a PagedListModel from wherever they are kept, usually
+ * the persistent store. Rows are only requested a page at a time, for the
+ * part of the list that is on screen or about to be. The pages that are about
+ * to be on screen are loaded on a background thread, so load() must be safe
+ * to call while the event thread is using the source.
+ */
+public interface PagedListSource {
+    /**
+     * Retrieves the number of rows in the list
+     *
+     * @return The number of rows
+     */
+    public int size();
+
+    /**
+     * Loads a run of rows
+     *
+     * @param start
+     *            The index of the first row to load
+     * @param rows
+     *            The array to load the rows into, starting at position zero
+     * @param count
+     *            The number of rows to load
+     */
+    public void load(int start, Object[] rows, int count);
+
+    /**
+     * Creates the text a row is displayed with
+     *
+     * @param row
+     *            A row loaded by load()
+     * @return The text to display, or null if the row can't be formatted
+     *         right now
+     */
+    public String format(Object row);
+}
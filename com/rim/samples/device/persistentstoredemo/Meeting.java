@@ -106,7 +106,7 @@ public final class Meeting implements Persistable {
      * @param value
      *            The plaintext string to be encoded and stored
      */
-    void setField(final int id, final String value) {
+    synchronized void setField(final int id, final String value) {
         final Object encoding = PersistentContent.encode(value);
         _fields.setElementAt(encoding, id);
     }
@@ -117,7 +117,7 @@ public final class Meeting implements Persistable {
      * @param attendee
      *            String to be added to the attendees vector
      */
-    void addAttendee(final String attendee) {
+    synchronized void addAttendee(final String attendee) {
         final Object encoding = PersistentContent.encode(attendee);
         _attendees.addElement(encoding);
     }
@@ -147,14 +147,33 @@ public final class Meeting implements Persistable {
      * Forces a re-encoding of the information stored in this Meeting object.
      * Callers of this method should obtain a ticket using
      * PersistentContent.getTicket().
+     * 
+     * @return True if any of the information was re-encoded, false if it was
+     *         all encoded according to the current settings already
      */
-    void reEncode() {
-        for (int i = 0; i < NUM_FIELDS; ++i) {
-            Object encoding = _fields.elementAt(i);
+    synchronized boolean reEncode() {
+        final boolean fieldsChanged = reEncode(_fields);
+        final boolean attendeesChanged = reEncode(_attendees);
+        return fieldsChanged || attendeesChanged;
+    }
+
+    /**
+     * Re-encodes the encodings in a vector that don't match the current
+     * settings
+     * 
+     * @param encodings
+     *            The vector of encodings
+     * @return True if any of the encodings were re-encoded
+     */
+    private static boolean reEncode(final Vector encodings) {
+        boolean changed = false;
+        for (int i = 0; i < encodings.size(); ++i) {
+            final Object encoding = encodings.elementAt(i);
             if (!PersistentContent.checkEncoding(encoding)) {
-                encoding = PersistentContent.reEncode(encoding);
-                _fields.setElementAt(encoding, i);
+                encodings.setElementAt(PersistentContent.reEncode(encoding), i);
+                changed = true;
             }
         }
+        return changed;
     }
 }
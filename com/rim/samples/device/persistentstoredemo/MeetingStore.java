@@ -0,0 +1,344 @@
+/*
+ * MeetingStore.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.persistentstoredemo;
+
+import java.util.Vector;
+
+import net.rim.device.api.system.PersistentContent;
+import net.rim.device.api.system.PersistentObject;
+import net.rim.device.api.system.PersistentStore;
+import net.rim.device.api.ui.UiApplication;
+
+/**
+ * The saved meetings. Rather than committing every meeting whenever one of
+ * them changes, the store keeps track of which meetings have changed since the
+ * last commit and commits just those, along with the list itself if meetings
+ * have been added or removed. Changes are committed in a single transaction
+ * shortly after they are made, so that a burst of changes is committed
+ * together.
+ * <p>
+ * When the device's content protection or compression settings change, the
+ * meetings are re-encoded by a background thread, a chunk at a time, pausing
+ * between chunks so that the UI stays responsive. How far the re-encoding has
+ * got is committed along with each chunk, so if the device locks or the
+ * application exits part way through, the re-encoding carries on from where
+ * it left off.
+ */
+final class MeetingStore {
+    // com.rim.samples.device.persistentstoredemo.MeetingStore.progress
+    // = 0xc2908f8534a309d3L
+    private static final long PROGRESS_ID = 0xc2908f8534a309d3L;
+
+    private static final int COMMIT_DELAY = 2000; // Milliseconds
+    private static final int MAX_CHANGED = 32; // Committed straight away
+    private static final int CHUNK_SIZE = 64; // Meetings re-encoded at a time
+    private static final int CHUNK_PAUSE = 20; // Milliseconds between chunks
+
+    // Indices into the progress array
+    private static final int GENERATION = 0;
+    private static final int POSITION = 1;
+    private static final int DONE = -1; // Position once re-encoding finishes
+
+    private final PersistentObject _store;
+    private final PersistentObject _progressStore;
+    private final Vector _meetings;
+    private final int[] _progress; // Mode generation, next meeting to re-encode
+    private final Vector _changed = new Vector(); // Meetings to commit
+    private boolean _listChanged;
+    private boolean _commitScheduled;
+    private Thread _reEncoder;
+
+    /**
+     * Commits the changes made since the last commit
+     */
+    private final Runnable _commit = new Runnable() {
+        public void run() {
+            commit();
+        }
+    };
+
+    /**
+     * Creates a new MeetingStore object, retrieving the saved meetings from
+     * the persistent store
+     *
+     * @param id
+     *            The ID of the PersistentObject the meetings are saved in
+     */
+    MeetingStore(final long id) {
+        _store = PersistentStore.getPersistentObject(id);
+        synchronized (_store) {
+            // If the PersistentObject is empty, initialize it
+            if (_store.getContents() == null) {
+                _store.setContents(new Vector());
+            }
+            _meetings = (Vector) _store.getContents();
+        }
+
+        _progressStore = PersistentStore.getPersistentObject(PROGRESS_ID);
+        synchronized (_progressStore) {
+            // Meetings saved before re-encoding progress was recorded may
+            // never have been re-encoded, so check them all.
+            if (_progressStore.getContents() == null) {
+                _progressStore.setContents(new int[] { 0, 0 });
+            }
+            _progress = (int[]) _progressStore.getContents();
+        }
+    }
+
+    /**
+     * Retrieves the number of meetings
+     *
+     * @return The number of meetings
+     */
+    int size() {
+        return _meetings.size();
+    }
+
+    /**
+     * Retrieves a meeting
+     *
+     * @param index
+     *            The position of the meeting
+     * @return The meeting
+     */
+    Meeting getMeeting(final int index) {
+        return (Meeting) _meetings.elementAt(index);
+    }
+
+    /**
+     * Adds a meeting to the end of the list
+     *
+     * @param meeting
+     *            The meeting to add
+     */
+    void addMeeting(final Meeting meeting) {
+        insertMeeting(_meetings.size(), meeting);
+    }
+
+    /**
+     * Inserts a meeting into the list
+     *
+     * @param index
+     *            The position to insert the meeting at
+     * @param meeting
+     *            The meeting to insert
+     */
+    void insertMeeting(final int index, final Meeting meeting) {
+        synchronized (_meetings) {
+            _meetings.insertElementAt(meeting, index);
+
+            // Keep the re-encoding at the meeting it had got up to
+            if (_progress[POSITION] != DONE && index < _progress[POSITION]) {
+                ++_progress[POSITION];
+            }
+            _listChanged = true;
+            if (!_changed.contains(meeting)) {
+                _changed.addElement(meeting);
+            }
+        }
+        scheduleCommit();
+    }
+
+    /**
+     * Replaces a meeting in the list, for example with the edited version of
+     * it. Only the meeting is committed. The list is committed as well only if
+     * the meeting is a different object from the one it replaces, since
+     * otherwise the list itself is unchanged.
+     *
+     * @param index
+     *            The position of the meeting to replace
+     * @param meeting
+     *            The meeting to put in its place
+     */
+    void replaceMeeting(final int index, final Meeting meeting) {
+        synchronized (_meetings) {
+            final Object old = _meetings.elementAt(index);
+            if (old != meeting) {
+                _changed.removeElement(old);
+                _meetings.setElementAt(meeting, index);
+                _listChanged = true;
+            }
+        }
+        meetingChanged(meeting);
+    }
+
+    /**
+     * Removes a meeting from the list
+     *
+     * @param index
+     *            The position of the meeting to remove
+     */
+    void removeMeeting(final int index) {
+        synchronized (_meetings) {
+            _changed.removeElement(_meetings.elementAt(index));
+            _meetings.removeElementAt(index);
+
+            // Keep the re-encoding at the meeting it had got up to
+            if (_progress[POSITION] != DONE && index < _progress[POSITION]) {
+                --_progress[POSITION];
+            }
+            _listChanged = true;
+        }
+        scheduleCommit();
+    }
+
+    /**
+     * Records that a meeting has changed, so that it is committed with the
+     * next batch of changes
+     *
+     * @param meeting
+     *            The meeting that has changed
+     */
+    void meetingChanged(final Meeting meeting) {
+        synchronized (_meetings) {
+            if (!_changed.contains(meeting)) {
+                _changed.addElement(meeting);
+            }
+        }
+        scheduleCommit();
+    }
+
+    /**
+     * Commits the changes made since the last commit to the persistent store
+     */
+    void commit() {
+        // Synchronizing on the persistent store's monitor object makes the
+        // commits below a single transaction.
+        synchronized (PersistentStore.getSynchObject()) {
+            synchronized (_meetings) {
+                _commitScheduled = false;
+                if (_listChanged) {
+                    PersistentObject.commit(_store);
+                    PersistentObject.commit(_progressStore);
+                    _listChanged = false;
+                }
+                for (int i = 0; i < _changed.size(); ++i) {
+                    PersistentObject.commit(_changed.elementAt(i));
+                }
+                _changed.removeAllElements();
+            }
+        }
+    }
+
+    /**
+     * Starts re-encoding the meetings in the background if the content
+     * protection or compression settings have changed since they were last
+     * re-encoded, or if an earlier re-encoding didn't finish. Does nothing if
+     * the meetings are already being re-encoded.
+     */
+    void reEncode() {
+        synchronized (_meetings) {
+            if (_reEncoder != null
+                    || _progress[GENERATION] == PersistentContent
+                            .getModeGeneration()
+                    && _progress[POSITION] == DONE) {
+                return;
+            }
+
+            _reEncoder = new Thread() {
+                public void run() {
+                    while (reEncodeChunk()) {
+                        try {
+                            // Give the UI a chance to run
+                            Thread.sleep(CHUNK_PAUSE);
+                        } catch (final InterruptedException e) {
+                            // Carry on with the next chunk
+                        }
+                    }
+                }
+            };
+            _reEncoder.setPriority(Thread.MIN_PRIORITY);
+            _reEncoder.start();
+        }
+    }
+
+    /**
+     * Re-encodes the next chunk of meetings and commits them, along with how
+     * far the re-encoding has got
+     *
+     * @return True if there are more meetings to re-encode, false if the
+     *         re-encoding is finished or the device is locked
+     */
+    private boolean reEncodeChunk() {
+        synchronized (PersistentStore.getSynchObject()) {
+            synchronized (_meetings) {
+                // Acquiring a reference to a ticket guarantees access to
+                // encrypted data even if the device locks during the
+                // re-encoding operation. If the device is locked already, the
+                // re-encoding carries on once it is unlocked.
+                final Object ticket = PersistentContent.getTicket();
+
+                // If the settings have changed again since the re-encoding
+                // started, start again from the beginning.
+                final int generation = PersistentContent.getModeGeneration();
+                if (_progress[GENERATION] != generation) {
+                    _progress[GENERATION] = generation;
+                    _progress[POSITION] = 0;
+                }
+
+                if (ticket == null || _progress[POSITION] == DONE) {
+                    _reEncoder = null;
+                    return false;
+                }
+
+                final int size = _meetings.size();
+                final int end = Math.min(_progress[POSITION] + CHUNK_SIZE, size);
+                for (int i = _progress[POSITION]; i < end; ++i) {
+                    final Meeting meeting = (Meeting) _meetings.elementAt(i);
+                    if (meeting.reEncode()) {
+                        PersistentObject.commit(meeting);
+                        _changed.removeElement(meeting);
+                    }
+                }
+
+                _progress[POSITION] = end < size ? end : DONE;
+                PersistentObject.commit(_progressStore);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Schedules a commit of the changes made since the last commit, or
+     * commits them straight away if there are a lot of them. The caller must
+     * not hold the lock on _meetings, which is always acquired after the
+     * persistent store's monitor object.
+     */
+    private void scheduleCommit() {
+        synchronized (_meetings) {
+            if (_changed.size() < MAX_CHANGED) {
+                if (!_commitScheduled) {
+                    UiApplication.getUiApplication().invokeLater(_commit,
+                            COMMIT_DELAY, false);
+                    _commitScheduled = true;
+                }
+                return;
+            }
+        }
+        commit();
+    }
+}
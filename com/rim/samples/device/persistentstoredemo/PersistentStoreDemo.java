@@ -62,8 +62,7 @@ import net.rim.device.api.ui.UiApplication;
  * key.
  */
 public final class PersistentStoreDemo extends UiApplication {
-    private final Vector _meetings;
-    private final PersistentObject _store;
+    private final MeetingStore _meetings;
     private final PersistentStoreDemoScreen _screen;
 
     // com.rim.samples.device.persistentstoredemo = 0x220d57d6848faeffL
@@ -90,11 +89,6 @@ public final class PersistentStoreDemo extends UiApplication {
      * Creates a new PersistentStoreDemo object
      */
     public PersistentStoreDemo() {
-        // The PersistentContentListener listens for changes to the device
-        // content protection and compression settings as well as persistent
-        // content state changes.
-        PersistentContent.addListener(new PersistentStoreListener());
-
         // Persist an object protected by a code signing key. Please see
         // instructions above.
         final PersistentObject controlledStore =
@@ -109,18 +103,18 @@ public final class PersistentStoreDemo extends UiApplication {
             PersistentObject.commit(controlledStore);
         }
 
-        // Retrieve the persistent object for this application
-        _store = PersistentStore.getPersistentObject(PERSISTENT_STORE_DEMO_ID);
+        // Retrieve the saved Meeting objects from the persistent store
+        _meetings = new MeetingStore(PERSISTENT_STORE_DEMO_ID);
 
-        synchronized (_store) {
-            // If the PersistentObject is empty, initialize it
-            if (_store.getContents() == null) {
-                _store.setContents(new Vector());
-            }
-        }
+        // The PersistentContentListener listens for changes to the device
+        // content protection and compression settings as well as persistent
+        // content state changes.
+        PersistentContent.addListener(new PersistentStoreListener(_meetings));
 
-        // Retrieve the saved Meeting objects from the persistent store
-        _meetings = (Vector) _store.getContents();
+        // Carry on with any re-encoding that didn't finish last time, or that
+        // was missed because the settings changed while the application
+        // wasn't running.
+        _meetings.reEncode();
 
         // Create the main screen for the application and push it onto the UI
         // stack for rendering.
@@ -135,36 +129,24 @@ public final class PersistentStoreDemo extends UiApplication {
      * @param meeting
      *            The meeting to be saved
      * @param index
-     *            The meeting's position in the _meetings Vector. A value of -1
+     *            The meeting's position in the list of meetings. A value of -1
      *            represents a new meeting.
      */
     public void saveMeeting(final Meeting meeting, final int index) {
         if (index >= 0) {
-            _screen.getModel().removeRowAt(index);
-            _screen.getModel().insertRowAt(index, meeting);
+            // Replacing the meeting in place commits just the meeting, not
+            // the whole list as removing and re-inserting it would.
+            _screen.replaceMeeting(index, meeting);
         } else {
             _screen.getModel().addRow(meeting);
         }
     }
 
     /**
-     * Returns collection of Meeting objects
-     * 
-     * @return A vector of Meeting objects
-     */
-    public Vector getMeetings() {
-        return _meetings;
-    }
-
-    /**
-     * Commits the updated vector of Meeting objects to the persistent store.
+     * Commits any changes to the meetings that haven't been committed yet to
+     * the persistent store.
      */
     public void persist() {
-        // Synchronize on the PersistentObject so that no other object can
-        // acquire the lock before we finish the commit operation.
-        synchronized (_store) {
-            _store.setContents(_meetings);
-            PersistentObject.commit(_store);
-        }
+        _meetings.commit();
     }
 }
@@ -33,6 +33,8 @@ import net.rim.device.api.command.CommandHandler;
 import net.rim.device.api.command.ReadOnlyCommandMetadata;
 import net.rim.device.api.system.Characters;
 import net.rim.device.api.system.Display;
+import net.rim.device.api.system.PersistentContent;
+import net.rim.device.api.system.PersistentContentListener;
 import net.rim.device.api.system.PersistentObject;
 import net.rim.device.api.system.PersistentStore;
 import net.rim.device.api.ui.Color;
@@ -49,6 +51,7 @@ import net.rim.device.api.ui.component.table.AbstractTableModel;
 import net.rim.device.api.ui.component.table.DataTemplate;
 import net.rim.device.api.ui.component.table.TableController;
 import net.rim.device.api.ui.component.table.TableModelAdapter;
+import net.rim.device.api.ui.component.table.TableModelChangeEvent;
 import net.rim.device.api.ui.component.table.TableView;
 import net.rim.device.api.ui.component.table.TemplateColumnProperties;
 import net.rim.device.api.ui.component.table.TemplateRowProperties;
@@ -56,22 +59,30 @@ import net.rim.device.api.ui.container.MainScreen;
 import net.rim.device.api.ui.decor.BackgroundFactory;
 import net.rim.device.api.util.StringProvider;
 
+import com.rim.samples.device.pagedlistlib.PagedListModel;
+import com.rim.samples.device.pagedlistlib.PagedListSource;
+
 /**
- * This screen displays a list of Meetings
+ * This screen displays a list of Meetings. The decoded names of the meetings
+ * on screen are cached so that repainting the table doesn't decode them again,
+ * and the cache is cleared whenever the device locks or unlocks so that
+ * plaintext doesn't outlive the device being unlocked.
  */
-public final class PersistentStoreDemoScreen extends MainScreen {
+public final class PersistentStoreDemoScreen extends MainScreen implements
+        PersistentContentListener {
     private PersistentStoreDemo _uiApp;
-    private Vector _meetings;
-    private AbstractTableModel _model;
+    private MeetingStore _meetings;
+    private PagedListModel _names;
+    private MeetingTableModelAdapter _model;
     private TableView _view;
 
     /**
      * Creates a new PersistentStoreDemoScreen object
      * 
      * @param meetings
-     *            A vector of persistable Meeting objects
+     *            The saved Meeting objects
      */
-    public PersistentStoreDemoScreen(final Vector meetings) {
+    public PersistentStoreDemoScreen(final MeetingStore meetings) {
         super(Manager.NO_VERTICAL_SCROLL);
 
         _uiApp = (PersistentStoreDemo) UiApplication.getUiApplication();
@@ -82,6 +93,7 @@ public final class PersistentStoreDemoScreen extends MainScreen {
                 | Field.USE_ALL_WIDTH));
 
         // Create an adapter to display meetings list in a table
+        _names = new PagedListModel(new MeetingNameSource());
         _model = new MeetingTableModelAdapter();
 
         // Create the view and controller
@@ -95,9 +107,7 @@ public final class PersistentStoreDemoScreen extends MainScreen {
                         Color.LIGHTBLUE, Color.BLUE, Color.BLUE));
         final DataTemplate dataTemplate = new DataTemplate(_view, 1, 1) {
             public Field[] getDataFields(final int modelRowIndex) {
-                final String text =
-                        ((Meeting) _model.getRow(modelRowIndex))
-                                .getField(Meeting.MEETING_NAME);
+                final String text = _names.getText(modelRowIndex);
                 final Field[] fields =
                         { new LabelField(text, Field.NON_FOCUSABLE) };
 
@@ -164,9 +174,7 @@ public final class PersistentStoreDemoScreen extends MainScreen {
                 // the
                 // vector, then update the list field to reflect the change.
                 final int i = _view.getRowNumberWithFocus();
-                final String meetingName =
-                        ((Meeting) _uiApp.getMeetings().elementAt(i))
-                                .getField(Meeting.MEETING_NAME);
+                final String meetingName = _names.getText(i);
                 final int result =
                         Dialog.ask(Dialog.DELETE, "Delete " + meetingName + "?");
                 if (result == Dialog.YES) {
@@ -214,6 +222,9 @@ public final class PersistentStoreDemoScreen extends MainScreen {
 
         addMenuItem(newMeetingItem);
         addMenuItem(retrieveItem);
+
+        // Drop the cached meeting names when the device locks
+        PersistentContent.addListener(this);
     }
 
     /**
@@ -225,6 +236,19 @@ public final class PersistentStoreDemoScreen extends MainScreen {
         return _model;
     }
 
+    /**
+     * Replaces a meeting in the list with its edited version and redraws its
+     * row
+     * 
+     * @param index
+     *            The position of the meeting
+     * @param meeting
+     *            The edited meeting
+     */
+    void replaceMeeting(final int index, final Meeting meeting) {
+        _model.swapRow(index, meeting);
+    }
+
     /**
      * Pushes a MeetingScreen to display the selected meeting
      * 
@@ -284,8 +308,59 @@ public final class PersistentStoreDemoScreen extends MainScreen {
         return super.invokeAction(action);
     }
 
+    /**
+     * Clears the cached meeting names whenever the device locks or unlocks
+     * 
+     * @see net.rim.device.api.system.PersistentContentListener#persistentContentStateChanged(int)
+     */
+    public void persistentContentStateChanged(final int state) {
+        _names.invalidate();
+    }
+
+    /**
+     * Re-encoding doesn't change the meeting names, so the cache is kept.
+     * PersistentStoreListener does the re-encoding.
+     * 
+     * @see net.rim.device.api.system.PersistentContentListener#persistentContentModeChanged(int)
+     */
+    public void persistentContentModeChanged(final int generation) {
+        // Ignored
+    }
+
     // Inner classes------------------------------------------------------------
 
+    /**
+     * Supplies the names of the meetings to the PagedListModel. The meetings
+     * are all in memory already; it is decoding their names that is worth
+     * caching.
+     */
+    private class MeetingNameSource implements PagedListSource {
+        /**
+         * @see com.rim.samples.device.pagedlistlib.PagedListSource#size()
+         */
+        public int size() {
+            return _meetings.size();
+        }
+
+        /**
+         * @see com.rim.samples.device.pagedlistlib.PagedListSource#load(int,
+         *      Object[], int)
+         */
+        public void load(final int start, final Object[] rows,
+                final int count) {
+            for (int i = 0; i < count; ++i) {
+                rows[i] = _meetings.getMeeting(start + i);
+            }
+        }
+
+        /**
+         * @see com.rim.samples.device.pagedlistlib.PagedListSource#format(Object)
+         */
+        public String format(final Object row) {
+            return ((Meeting) row).getField(Meeting.MEETING_NAME);
+        }
+    }
+
     /**
      * Adapter to display meeting data in table format
      */
@@ -308,7 +383,7 @@ public final class PersistentStoreDemoScreen extends MainScreen {
          * @see net.rim.device.api.ui.component.table.TableModelAdapter#doGetRow(int)
          */
         protected Object doGetRow(final int index) {
-            return _meetings.elementAt(index);
+            return _meetings.getMeeting(index);
         }
 
         /**
@@ -317,10 +392,11 @@ public final class PersistentStoreDemoScreen extends MainScreen {
          */
         protected boolean doInsertRowAt(final int index, final Object object) {
             if (_meetings.size() == 0) {
-                _meetings.addElement(object);
+                _meetings.addMeeting((Meeting) object);
             } else {
-                _meetings.insertElementAt(object, index);
+                _meetings.insertMeeting(index, (Meeting) object);
             }
+            _names.invalidate();
             return true;
         }
 
@@ -328,7 +404,8 @@ public final class PersistentStoreDemoScreen extends MainScreen {
          * @see net.rim.device.api.ui.component.table.TableModelAdapter#doAddRow(Object)
          */
         protected boolean doAddRow(final Object object) {
-            _meetings.addElement(object);
+            _meetings.addMeeting((Meeting) object);
+            _names.invalidate();
             return true;
         }
 
@@ -336,9 +413,25 @@ public final class PersistentStoreDemoScreen extends MainScreen {
          * @see net.rim.device.api.ui.component.table.TableModelAdapter#doRemoveRowAt(int)
          */
         protected boolean doRemoveRowAt(final int index) {
-            _meetings.removeElementAt(index);
+            _meetings.removeMeeting(index);
+            _names.invalidate();
             return true;
         }
+
+        /**
+         * Swaps one row in the model with a new row
+         * 
+         * @param index
+         *            Index of the row to replace
+         * @param row
+         *            The row to insert
+         */
+        void swapRow(final int index, final Object row) {
+            _meetings.replaceMeeting(index, (Meeting) row);
+            _names.invalidate();
+            notifyListeners(new TableModelChangeEvent(
+                    TableModelChangeEvent.ROW_UPDATED, this, index, -1));
+        }
     };
 
     /**
@@ -26,77 +26,52 @@
 
 package com.rim.samples.device.persistentstoredemo;
 
-import java.util.Vector;
-
-import net.rim.device.api.system.PersistentContent;
 import net.rim.device.api.system.PersistentContentListener;
-import net.rim.device.api.system.PersistentObject;
-import net.rim.device.api.system.PersistentStore;
 
 /**
  * Persistent content listener for the PersistentStoreDemo app. Listens for
  * changes to the device's Content Protection/Compression security settings and
- * re-encodes data accordingly. Changes to the device's state are ignored.
+ * re-encodes data accordingly. The re-encoding is done in the background by
+ * the MeetingStore, so the listener returns straight away.
  */
 public final class PersistentStoreListener implements PersistentContentListener {
+    private final MeetingStore _meetings;
+
+    /**
+     * Creates a new PersistentStoreListener object
+     * 
+     * @param meetings
+     *            The meetings to re-encode
+     */
+    PersistentStoreListener(final MeetingStore meetings) {
+        _meetings = meetings;
+    }
+
     /**
      * Called when the state of the device changes (unlocked/locking/locked
-     * insecure/locked secure). This app doesn't care about these state changes
-     * because data is always encoded inside the Meeting objects; thus, there is
-     * no need to encode or decode them during locking and unlocking.
+     * insecure/locked secure). Data is always encoded inside the Meeting
+     * objects, so there is no need to encode or decode them during locking and
+     * unlocking. A re-encoding that was interrupted because the device locked
+     * is carried on once it is unlocked, though.
      * 
      * @param state
      *            The device's new state.
      */
     public void persistentContentStateChanged(final int state) {
-        // Ignored
+        _meetings.reEncode();
     }
 
     /**
      * Called when the device's Content Protection/Compression security settings
-     * are changed. Re-encodes the data accordingly.
+     * are changed. Starts re-encoding the data accordingly. If the settings
+     * change again before the re-encoding finishes, it starts again from the
+     * beginning.
      * 
      * @param generation
      *            Used to determine if the user has changed the content
      *            protection settings since the listener was notified.
      */
     public void persistentContentModeChanged(final int generation) {
-        // Acquiring a reference to a ticket guarantees access to encrypted data
-        // even if the device locks during the re-encoding operation.
-        final Object ticket = PersistentContent.getTicket();
-
-        if (ticket != null) {
-            final PersistentObject store =
-                    PersistentStore
-                            .getPersistentObject(PersistentStoreDemo.PERSISTENT_STORE_DEMO_ID);
-
-            if (store != null) {
-                synchronized (store.getContents()) {
-                    final Vector meetings = (Vector) store.getContents();
-                    if (meetings == null) {
-                        // Contents empty; nothing to re-encode.
-                        return;
-                    }
-                    for (int i = 0; i < meetings.size(); ++i) {
-                        if (generation != PersistentContent.getModeGeneration()) {
-                            // Device's Content Protection/Compression security
-                            // settings have changed again since the listener
-                            // was
-                            // last notified. Abort this re-encoding because it
-                            // will have to be done again anyway according to
-                            // the
-                            // new Content Protection/Compression security
-                            // settings.
-                            break;
-                        }
-
-                        final Meeting meeting = (Meeting) meetings.elementAt(i);
-                        meeting.reEncode();
-                    }
-                    // Commit the updated data to the persistent store.
-                    PersistentObject.commit(store);
-                }
-            }
-        }
+        _meetings.reEncode();
     }
 }
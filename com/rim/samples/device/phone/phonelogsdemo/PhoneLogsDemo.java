@@ -68,6 +68,9 @@ import net.rim.device.api.ui.container.MainScreen;
 import net.rim.device.api.ui.decor.BackgroundFactory;
 import net.rim.device.api.util.StringProvider;
 
+import com.rim.samples.device.pagedlistlib.PagedListModel;
+import com.rim.samples.device.pagedlistlib.PagedListSource;
+
 /**
  * The main class for the PhoneLogs API demo app
  */
@@ -106,10 +109,60 @@ public final class PhoneLogsDemo extends UiApplication {
     // -----------------------------------------------------------------------
 
     /**
-     * Adapter class for displaying phone logs in table format
+     * Supplies the call logs of a folder to a PagedListModel
+     */
+    private class PhoneCallSource implements PagedListSource {
+        private final long _folder;
+
+        /**
+         * Create a new PhoneCallSource object
+         * 
+         * @param folder
+         *            The folder of logs to supply
+         */
+        PhoneCallSource(final long folder) {
+            _folder = folder;
+        }
+
+        /**
+         * @see com.rim.samples.device.pagedlistlib.PagedListSource#size()
+         */
+        public int size() {
+            return PhoneLogsDemo.this._phoneLogs.numberOfCalls(_folder);
+        }
+
+        /**
+         * @see com.rim.samples.device.pagedlistlib.PagedListSource#load(int,
+         *      Object[], int)
+         */
+        public void load(final int start, final Object[] rows,
+                final int count) {
+            for (int i = 0; i < count; ++i) {
+                rows[i] =
+                        PhoneLogsDemo.this._phoneLogs.callAt(start + i,
+                                _folder);
+            }
+        }
+
+        /**
+         * @see com.rim.samples.device.pagedlistlib.PagedListSource#format(Object)
+         */
+        public String format(final Object row) {
+            if (row instanceof PhoneCallLog) {
+                return ((PhoneCallLog) row).getParticipant().getNumber();
+            }
+            return "Conference call";
+        }
+    }
+
+    /**
+     * Adapter class for displaying phone logs in table format. Only the logs
+     * on or near the screen are read from the phone logs, and the text of the
+     * rows is cached, so scrolling through a long call history stays cheap.
      */
     private class PhoneCallTableModelAdapter extends TableModelAdapter {
         private final long _folder;
+        private final PagedListModel _rows;
 
         /**
          * Create a new PhoneCallTableModelAdapter object
@@ -119,6 +172,30 @@ public final class PhoneLogsDemo extends UiApplication {
          */
         PhoneCallTableModelAdapter(final long folder) {
             _folder = folder;
+            _rows = new PagedListModel(new PhoneCallSource(folder));
+        }
+
+        /**
+         * Retrieves the text a row is displayed with
+         * 
+         * @param index
+         *            Index of the row
+         * @return The phone number of the call, or "Conference call"
+         */
+        public String getText(final int index) {
+            return getRows().getText(index);
+        }
+
+        /**
+         * Retrieves the cached rows, discarding them first if calls have been
+         * added to or removed from the folder by another application
+         */
+        private PagedListModel getRows() {
+            if (_rows.size() != PhoneLogsDemo.this._phoneLogs
+                    .numberOfCalls(_folder)) {
+                _rows.invalidate();
+            }
+            return _rows;
         }
 
         /**
@@ -140,6 +217,7 @@ public final class PhoneLogsDemo extends UiApplication {
          */
         protected boolean doAddRow(final Object data) {
             PhoneLogsDemo.this._phoneLogs.addCall((CallLog) data);
+            _rows.invalidate();
             return true;
         }
 
@@ -147,7 +225,7 @@ public final class PhoneLogsDemo extends UiApplication {
          * @see net.rim.device.api.ui.component.table.TableModelAdapter#doGetRow(int)
          */
         protected Object doGetRow(final int index) {
-            return PhoneLogsDemo.this._phoneLogs.callAt(index, _folder);
+            return getRows().get(index);
         }
 
         /**
@@ -155,6 +233,7 @@ public final class PhoneLogsDemo extends UiApplication {
          */
         protected boolean doRemoveRowAt(final int index) {
             PhoneLogsDemo.this._phoneLogs.deleteCall(index, _folder);
+            _rows.invalidate();
             return true;
         }
 
@@ -169,6 +248,7 @@ public final class PhoneLogsDemo extends UiApplication {
         public void swapRow(final int index, final Object row) {
             PhoneLogsDemo.this._phoneLogs.swapCall((CallLog) row, index,
                     _folder);
+            _rows.invalidate();
             notifyListeners(new TableModelChangeEvent(
                     TableModelChangeEvent.ROW_UPDATED, this, index, -1));
         }
@@ -216,15 +296,7 @@ public final class PhoneLogsDemo extends UiApplication {
                             Color.LIGHTBLUE, Color.BLUE, Color.BLUE));
             final DataTemplate dataTemplate = new DataTemplate(_view, 1, 1) {
                 public Field[] getDataFields(final int modelRowIndex) {
-                    final CallLog log = (CallLog) _model.getRow(modelRowIndex);
-                    String text;
-                    if (log instanceof PhoneCallLog) {
-                        final PhoneCallLog phoneCallLog = (PhoneCallLog) log;
-                        text = phoneCallLog.getParticipant().getNumber();
-                    } else {
-                        text = "Conference call";
-                    }
-
+                    final String text = _model.getText(modelRowIndex);
                     final Field[] fields =
                             { new LabelField(text, Field.NON_FOCUSABLE) };
 
@@ -26,27 +26,20 @@
 
 package com.rim.samples.device.rmsdemo;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.EOFException;
+import java.io.IOException;
 
 /**
- * The CD class. The toByteArray() and fromByteArray() methods are required
- * because the RMS that serves as the backend to the CDdb class stores each
- * record as a byte array. The converted byte array is in tag-length format to
- * allow the scalability of this class while still allowing the CDdb to store
- * and read previous versions of the CD class.
+ * The CD class. The RMS that serves as the backend to the CDdb class stores
+ * each CD as a byte array, converted by CDCodec. The converted byte array is
+ * in tag-length format to allow the scalability of this class while still
+ * allowing the CDdb to store and read previous versions of the CD class. A CD
+ * object can be reused to hold one decoded record after another.
  */
 public final class CD {
     private String _artist;
     private String _title;
     private String _fullName;
 
-    private static final short ARTIST = 0;
-    private static final short TITLE = 1;
-
     /**
      * Constructs a new CD object, given byte array
      * 
@@ -56,7 +49,15 @@ public final class CD {
      *                IO error
      */
     public CD(final byte[] data) throws java.io.IOException {
-        fromByteArray(data);
+        if (!new CDCodec().decode(data, data.length, this)) {
+            throw new IOException("Malformed CD record");
+        }
+    }
+
+    /**
+     * Constructs a new CD object to decode records into
+     */
+    CD() {
     }
 
     /**
@@ -68,6 +69,18 @@ public final class CD {
      *            The title of the CD
      */
     CD(final String artist, final String title) {
+        set(artist, title);
+    }
+
+    /**
+     * Sets the artist and title of the CD
+     * 
+     * @param artist
+     *            The name of the CD artist
+     * @param title
+     *            The title of the CD
+     */
+    void set(final String artist, final String title) {
         _artist = artist;
         _title = title;
         _fullName = _artist + ": " + _title;
@@ -99,58 +112,4 @@ public final class CD {
     String getTitle() {
         return _title;
     }
-
-    /**
-     * Converts a CD to a byte array
-     * 
-     * @return Byte encoded version of the CD
-     * @exception java.io.IOException
-     *                Thrown if an I/O error occurs
-     */
-    byte[] toByteArray() throws java.io.IOException {
-        byte[] data;
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        final DataOutputStream dos = new DataOutputStream(baos);
-
-        dos.writeShort(ARTIST);
-        dos.writeUTF(_artist);
-        dos.writeShort(TITLE);
-        dos.writeUTF(_title);
-
-        data = baos.toByteArray();
-
-        return data;
-    }
-
-    /**
-     * Converts a byte array to a CD
-     * 
-     * @param array
-     *            CD encoded as a byte array
-     * @exception java.io.IOException
-     *                Thrown if an I/O exception error occurs
-     */
-    private void fromByteArray(final byte[] array) throws java.io.IOException {
-        final ByteArrayInputStream bais = new ByteArrayInputStream(array);
-        final DataInputStream dis = new DataInputStream(bais);
-
-        short tag;
-
-        try {
-            while (true) {
-                tag = dis.readShort();
-
-                if (tag == ARTIST) {
-                    _artist = dis.readUTF();
-                } else if (tag == TITLE) {
-                    _title = dis.readUTF();
-                } else {
-                    // Unrecognized tag, skip value
-                    dis.readUTF();
-                }
-            }
-        } catch (final EOFException e) {
-            _fullName = _artist + ": " + _title;
-        }
-    }
 }
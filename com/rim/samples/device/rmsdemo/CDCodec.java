@@ -0,0 +1,279 @@
+/*
+ * CDCodec.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+package com.rim.samples.device.rmsdemo;
+
+import java.io.UTFDataFormatException;
+
+/**
+ * Encodes and decodes CD records without streams. A record has the tag-length
+ * format the CD class has always used: for each field, a two byte tag followed
+ * by the field's text as written by DataOutputStream.writeUTF(), that is a two
+ * byte length and the text in modified UTF-8. Every length is checked against
+ * the end of the record as it is decoded, so a truncated or corrupt record is
+ * reported by the return value rather than by an exception.
+ * <p>
+ * The buffers are reused from one record to the next, so a codec must not be
+ * shared between threads.
+ */
+final class CDCodec {
+    static final short ARTIST = 0;
+    static final short TITLE = 1;
+
+    private byte[] _bytes = new byte[64];
+    private char[] _chars = new char[32];
+
+    /**
+     * Encodes a CD as a record
+     * 
+     * @param artist
+     *            The name of the artist of the CD
+     * @param title
+     *            The title of the CD
+     * @return The number of bytes at the start of getBuffer() holding the
+     *         record
+     * @throws UTFDataFormatException
+     *             Thrown if the artist or title is too long to encode
+     */
+    int encode(final String artist, final String title)
+            throws UTFDataFormatException {
+        final int length =
+                4 + getUTFLength(artist) + getUTFLength(title) + 4;
+        final byte[] bytes = getBuffer(length);
+        int pos = putShort(bytes, 0, ARTIST);
+        pos = putUTF(bytes, pos, artist);
+        pos = putShort(bytes, pos, TITLE);
+        putUTF(bytes, pos, title);
+        return length;
+    }
+
+    /**
+     * Decodes a record into a CD. Fields with unrecognized tags are skipped,
+     * and missing fields are set to null.
+     * 
+     * @param data
+     *            The record
+     * @param length
+     *            The number of bytes at the start of data holding the record
+     * @param cd
+     *            The CD to set the artist and title of
+     * @return True if the record was decoded, false if it is malformed
+     */
+    boolean decode(final byte[] data, final int length, final CD cd) {
+        String artist = null;
+        String title = null;
+
+        int pos = 0;
+        while (pos < length) {
+            if (length - pos < 4) {
+                return false;
+            }
+            final short tag = getShort(data, pos);
+            final int fieldLength = getShort(data, pos + 2) & 0xffff;
+            pos += 4;
+            if (length - pos < fieldLength) {
+                return false;
+            }
+
+            if (tag == ARTIST || tag == TITLE) {
+                final String text = getUTF(data, pos, fieldLength);
+                if (text == null) {
+                    return false;
+                }
+                if (tag == ARTIST) {
+                    artist = text;
+                } else {
+                    title = text;
+                }
+            }
+            pos += fieldLength;
+        }
+
+        cd.set(artist, title);
+        return true;
+    }
+
+    /**
+     * Retrieves the buffer records are encoded into, making sure it can hold a
+     * number of bytes. The buffer may be replaced by a larger one, discarding
+     * its contents.
+     * 
+     * @param capacity
+     *            The number of bytes the buffer must hold
+     * @return The buffer
+     */
+    byte[] getBuffer(final int capacity) {
+        if (_bytes.length < capacity) {
+            _bytes = new byte[Math.max(capacity, _bytes.length * 2)];
+        }
+        return _bytes;
+    }
+
+    /**
+     * Decodes modified UTF-8 text
+     * 
+     * @param data
+     *            The bytes holding the text
+     * @param offset
+     *            The position of the first byte of the text
+     * @param length
+     *            The number of bytes of text
+     * @return The text, or null if it isn't valid modified UTF-8
+     */
+    String getUTF(final byte[] data, final int offset, final int length) {
+        if (_chars.length < length) {
+            _chars = new char[Math.max(length, _chars.length * 2)];
+        }
+
+        final int end = offset + length;
+        int count = 0;
+        int pos = offset;
+        while (pos < end) {
+            final int b = data[pos++] & 0xff;
+            if (b < 0x80) {
+                _chars[count++] = (char) b;
+            } else if ((b & 0xe0) == 0xc0) {
+                if (pos >= end || (data[pos] & 0xc0) != 0x80) {
+                    return null;
+                }
+                _chars[count++] = (char) ((b & 0x1f) << 6 | data[pos++] & 0x3f);
+            } else if ((b & 0xf0) == 0xe0) {
+                if (end - pos < 2 || (data[pos] & 0xc0) != 0x80
+                        || (data[pos + 1] & 0xc0) != 0x80) {
+                    return null;
+                }
+                _chars[count++] =
+                        (char) ((b & 0x0f) << 12 | (data[pos] & 0x3f) << 6
+                                | data[pos + 1] & 0x3f);
+                pos += 2;
+            } else {
+                return null;
+            }
+        }
+
+        return new String(_chars, 0, count);
+    }
+
+    /**
+     * Retrieves the number of bytes text takes in modified UTF-8, not
+     * counting its length
+     * 
+     * @param text
+     *            The text
+     * @return The number of bytes
+     * @throws UTFDataFormatException
+     *             Thrown if the text takes more than 65535 bytes
+     */
+    static int getUTFLength(final String text) throws UTFDataFormatException {
+        int length = 0;
+        for (int i = text.length() - 1; i >= 0; --i) {
+            final char c = text.charAt(i);
+            if (c >= 0x0001 && c <= 0x007f) {
+                ++length;
+            } else if (c <= 0x07ff) {
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+
+        if (length > 0xffff) {
+            throw new UTFDataFormatException();
+        }
+        return length;
+    }
+
+    /**
+     * Writes text as DataOutputStream.writeUTF() does. The text must have been
+     * checked with getUTFLength().
+     * 
+     * @param data
+     *            The buffer to write to
+     * @param offset
+     *            The position to write the length of the text at
+     * @param text
+     *            The text
+     * @return The position after the text
+     */
+    static int putUTF(final byte[] data, final int offset, final String text) {
+        int pos = offset + 2;
+        for (int i = 0; i < text.length(); ++i) {
+            final char c = text.charAt(i);
+            if (c >= 0x0001 && c <= 0x007f) {
+                data[pos++] = (byte) c;
+            } else if (c <= 0x07ff) {
+                data[pos++] = (byte) (0xc0 | c >> 6);
+                data[pos++] = (byte) (0x80 | c & 0x3f);
+            } else {
+                data[pos++] = (byte) (0xe0 | c >> 12);
+                data[pos++] = (byte) (0x80 | c >> 6 & 0x3f);
+                data[pos++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+
+        putShort(data, offset, (short) (pos - offset - 2));
+        return pos;
+    }
+
+    /**
+     * Writes a big-endian short
+     * 
+     * @return The position after the short
+     */
+    static int putShort(final byte[] data, final int offset,
+            final short value) {
+        data[offset] = (byte) (value >> 8);
+        data[offset + 1] = (byte) value;
+        return offset + 2;
+    }
+
+    /**
+     * Reads a big-endian short
+     */
+    static short getShort(final byte[] data, final int offset) {
+        return (short) (data[offset] << 8 | data[offset + 1] & 0xff);
+    }
+
+    /**
+     * Writes a big-endian int
+     * 
+     * @return The position after the int
+     */
+    static int putInt(final byte[] data, final int offset, final int value) {
+        data[offset] = (byte) (value >> 24);
+        data[offset + 1] = (byte) (value >> 16);
+        data[offset + 2] = (byte) (value >> 8);
+        data[offset + 3] = (byte) value;
+        return offset + 4;
+    }
+
+    /**
+     * Reads a big-endian int
+     */
+    static int getInt(final byte[] data, final int offset) {
+        return data[offset] << 24 | (data[offset + 1] & 0xff) << 16
+                | (data[offset + 2] & 0xff) << 8 | data[offset + 3] & 0xff;
+    }
+}
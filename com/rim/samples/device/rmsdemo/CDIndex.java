@@ -0,0 +1,360 @@
+/*
+ * CDIndex.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+package com.rim.samples.device.rmsdemo;
+
+import java.io.UTFDataFormatException;
+
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreException;
+
+/**
+ * The CDs of a CDdb sorted by artist and then title, ignoring case. The index
+ * holds the record ID, artist and title of each CD, so that the collection can
+ * be listed in order, and searched by the start of an artist's name, without
+ * reading every CD record.
+ * <p>
+ * The index is saved as a single record in a record store of its own, together
+ * with the version of the CD record store it was made from. When the CDs have
+ * been changed since, for instance because the application stopped between
+ * writing a CD and saving the index, the saved index is not loaded and has to
+ * be rebuilt from the CD records.
+ */
+final class CDIndex {
+    private static final short FORMAT = 1;
+
+    private final RecordStore _store; // Null if the index can't be saved
+    private int[] _ids = new int[16];
+    private String[] _artists = new String[16];
+    private String[] _titles = new String[16];
+    private int _size;
+
+    /**
+     * Constructs a new, empty CDIndex object
+     * 
+     * @param store
+     *            The record store the index is saved in, or null if it isn't
+     *            to be saved
+     */
+    CDIndex(final RecordStore store) {
+        _store = store;
+    }
+
+    /**
+     * Loads the saved index if it was made from a given version of the CD
+     * record store
+     * 
+     * @param version
+     *            The version of the CD record store
+     * @param codec
+     *            The codec to read the index with
+     * @return True if the index was loaded, false if it has to be rebuilt
+     * @throws RecordStoreException
+     *             Thrown if the saved index could not be read
+     */
+    boolean load(final int version, final CDCodec codec)
+            throws RecordStoreException {
+        clear();
+        if (_store == null || _store.getNumRecords() == 0) {
+            return false;
+        }
+
+        final byte[] data = codec.getBuffer(_store.getRecordSize(1));
+        final int length = _store.getRecord(1, data, 0);
+        if (length < 10 || CDCodec.getShort(data, 0) != FORMAT
+                || CDCodec.getInt(data, 2) != version) {
+            return false;
+        }
+
+        final int count = CDCodec.getInt(data, 6);
+        int pos = 10;
+        for (int i = 0; i < count; ++i) {
+            if (length - pos < 6) {
+                clear();
+                return false;
+            }
+            final int id = CDCodec.getInt(data, pos);
+            final int artistLength = CDCodec.getShort(data, pos + 4) & 0xffff;
+            pos += 6;
+            if (length - pos < artistLength + 2) {
+                clear();
+                return false;
+            }
+            final String artist = codec.getUTF(data, pos, artistLength);
+            pos += artistLength;
+            final int titleLength = CDCodec.getShort(data, pos) & 0xffff;
+            pos += 2;
+            if (length - pos < titleLength || artist == null) {
+                clear();
+                return false;
+            }
+            final String title = codec.getUTF(data, pos, titleLength);
+            pos += titleLength;
+            if (title == null) {
+                clear();
+                return false;
+            }
+
+            // The saved index is already sorted
+            insert(_size, id, artist, title);
+        }
+
+        return true;
+    }
+
+    /**
+     * Saves the index, replacing any saved before
+     * 
+     * @param version
+     *            The version of the CD record store the index matches
+     * @param codec
+     *            The codec to write the index with
+     * @throws UTFDataFormatException
+     *             Thrown if an artist or title is too long to save
+     * @throws RecordStoreException
+     *             Thrown if the index could not be written
+     */
+    void save(final int version, final CDCodec codec)
+            throws UTFDataFormatException, RecordStoreException {
+        if (_store == null) {
+            return;
+        }
+
+        int length = 10;
+        for (int i = 0; i < _size; ++i) {
+            length +=
+                    8 + CDCodec.getUTFLength(_artists[i])
+                            + CDCodec.getUTFLength(_titles[i]);
+        }
+
+        final byte[] data = codec.getBuffer(length);
+        int pos = CDCodec.putShort(data, 0, FORMAT);
+        pos = CDCodec.putInt(data, pos, version);
+        pos = CDCodec.putInt(data, pos, _size);
+        for (int i = 0; i < _size; ++i) {
+            pos = CDCodec.putInt(data, pos, _ids[i]);
+            pos = CDCodec.putUTF(data, pos, _artists[i]);
+            pos = CDCodec.putUTF(data, pos, _titles[i]);
+        }
+
+        if (_store.getNumRecords() == 0) {
+            _store.addRecord(data, 0, length);
+        } else {
+            _store.setRecord(1, data, 0, length);
+        }
+    }
+
+    /**
+     * Adds a CD to the index in sorted order. A missing artist or title is
+     * indexed as empty.
+     * 
+     * @param id
+     *            The record ID of the CD
+     * @param artist
+     *            The name of the artist of the CD, or null
+     * @param title
+     *            The title of the CD, or null
+     */
+    void add(final int id, final String artist, final String title) {
+        final String indexArtist = artist == null ? "" : artist;
+        final String indexTitle = title == null ? "" : title;
+
+        // Find the first entry that sorts after the CD
+        int low = 0;
+        int high = _size;
+        while (low < high) {
+            final int middle = low + high >>> 1;
+            int order = compare(_artists[middle], indexArtist);
+            if (order == 0) {
+                order = compare(_titles[middle], indexTitle);
+            }
+            if (order <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        insert(low, id, indexArtist, indexTitle);
+    }
+
+    /**
+     * Removes a CD from the index
+     * 
+     * @param id
+     *            The record ID of the CD
+     */
+    void remove(final int id) {
+        for (int i = 0; i < _size; ++i) {
+            if (_ids[i] == id) {
+                --_size;
+                System.arraycopy(_ids, i + 1, _ids, i, _size - i);
+                System.arraycopy(_artists, i + 1, _artists, i, _size - i);
+                System.arraycopy(_titles, i + 1, _titles, i, _size - i);
+                _artists[_size] = null;
+                _titles[_size] = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes every CD from the index
+     */
+    void clear() {
+        for (int i = 0; i < _size; ++i) {
+            _artists[i] = null;
+            _titles[i] = null;
+        }
+        _size = 0;
+    }
+
+    /**
+     * Retrieves the number of CDs in the index
+     * 
+     * @return The number of CDs
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Retrieves the record ID of a CD
+     * 
+     * @param position
+     *            The position of the CD in the index
+     * @return The record ID of the CD
+     */
+    int getRecordId(final int position) {
+        checkPosition(position);
+        return _ids[position];
+    }
+
+    /**
+     * Retrieves the artist of a CD
+     * 
+     * @param position
+     *            The position of the CD in the index
+     * @return The name of the artist of the CD
+     */
+    String getArtist(final int position) {
+        checkPosition(position);
+        return _artists[position];
+    }
+
+    /**
+     * Retrieves the title of a CD
+     * 
+     * @param position
+     *            The position of the CD in the index
+     * @return The title of the CD
+     */
+    String getTitle(final int position) {
+        checkPosition(position);
+        return _titles[position];
+    }
+
+    /**
+     * Finds the first CD by an artist whose name starts with a prefix,
+     * ignoring case
+     * 
+     * @param prefix
+     *            The start of the artist's name
+     * @return The position of the CD in the index, or -1 if there is none
+     */
+    int find(final String prefix) {
+        // Find the first artist that doesn't sort before the prefix
+        int low = 0;
+        int high = _size;
+        while (low < high) {
+            final int middle = low + high >>> 1;
+            if (compare(_artists[middle], prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        if (low < _size
+                && _artists[low].regionMatches(true, 0, prefix, 0, prefix
+                        .length())) {
+            return low;
+        }
+        return -1;
+    }
+
+    /**
+     * Inserts a CD at a position, growing the arrays if they are full
+     */
+    private void insert(final int position, final int id, final String artist,
+            final String title) {
+        if (_size == _ids.length) {
+            final int capacity = _size * 2;
+            final int[] ids = new int[capacity];
+            final String[] artists = new String[capacity];
+            final String[] titles = new String[capacity];
+            System.arraycopy(_ids, 0, ids, 0, _size);
+            System.arraycopy(_artists, 0, artists, 0, _size);
+            System.arraycopy(_titles, 0, titles, 0, _size);
+            _ids = ids;
+            _artists = artists;
+            _titles = titles;
+        }
+
+        System.arraycopy(_ids, position, _ids, position + 1, _size - position);
+        System.arraycopy(_artists, position, _artists, position + 1, _size
+                - position);
+        System.arraycopy(_titles, position, _titles, position + 1, _size
+                - position);
+        _ids[position] = id;
+        _artists[position] = artist;
+        _titles[position] = title;
+        ++_size;
+    }
+
+    /**
+     * Checks that there is a CD at a position
+     */
+    private void checkPosition(final int position) {
+        if (position < 0 || position >= _size) {
+            throw new ArrayIndexOutOfBoundsException(position);
+        }
+    }
+
+    /**
+     * Compares two strings, ignoring case
+     */
+    private static int compare(final String a, final String b) {
+        final int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; ++i) {
+            final char ca = Character.toLowerCase(a.charAt(i));
+            final char cb = Character.toLowerCase(b.charAt(i));
+            if (ca != cb) {
+                return ca - cb;
+            }
+        }
+        return a.length() - b.length();
+    }
+}
@@ -26,18 +26,26 @@
 
 package com.rim.samples.device.rmsdemo;
 
+import java.io.IOException;
+
 import javax.microedition.rms.InvalidRecordIDException;
 import javax.microedition.rms.RecordEnumeration;
 import javax.microedition.rms.RecordStore;
 import javax.microedition.rms.RecordStoreException;
+import javax.microedition.rms.RecordStoreNotFoundException;
 import javax.microedition.rms.RecordStoreNotOpenException;
 
 /**
- * This class manages an RMS of Compact Disc titles
- * 
+ * This class manages an RMS of Compact Disc titles. The CDs are indexed by
+ * artist and title in a second RMS, whose name is that of the first followed
+ * by " index", so that they can be listed in order by position in the index.
  */
 public final class CDdb {
+    private static final String INDEX_SUFFIX = " index";
+
     RecordStore _rs;
+    private final CDIndex _index;
+    private final CDCodec _codec = new CDCodec();
 
     /**
      * Constructs a new CDdb, creator
@@ -54,6 +62,10 @@ public final class CDdb {
         _rs =
                 RecordStore.openRecordStore(name, true,
                         RecordStore.AUTHMODE_ANY, false);
+        _index =
+                new CDIndex(RecordStore.openRecordStore(name + INDEX_SUFFIX,
+                        true, RecordStore.AUTHMODE_ANY, false));
+        loadIndex(true);
     }
 
     /**
@@ -76,6 +88,18 @@ public final class CDdb {
         _rs =
                 RecordStore.openRecordStore(recordStoreName, vendorName,
                         suiteName);
+
+        // Another suite's index can be read but not saved
+        RecordStore indexStore;
+        try {
+            indexStore =
+                    RecordStore.openRecordStore(recordStoreName
+                            + INDEX_SUFFIX, vendorName, suiteName);
+        } catch (final RecordStoreNotFoundException e) {
+            indexStore = null;
+        }
+        _index = new CDIndex(indexStore);
+        loadIndex(false);
     }
 
     /**
@@ -97,10 +121,13 @@ public final class CDdb {
     public synchronized int add(final String artist, final String title)
             throws java.io.IOException, RecordStoreNotOpenException,
             RecordStoreException {
-        final CD cd = new CD(artist, title);
-        final byte[] data = cd.toByteArray();
+        final int length = _codec.encode(artist, title);
+        final int recordId =
+                _rs.addRecord(_codec.getBuffer(length), 0, length);
 
-        return _rs.addRecord(data, 0, data.length);
+        _index.add(recordId, artist, title);
+        _index.save(_rs.getVersion(), _codec);
+        return recordId;
     }
 
     /**
@@ -121,9 +148,12 @@ public final class CDdb {
     public synchronized void edit(final int index, final String artist,
             final String title) throws java.io.IOException,
             RecordStoreNotOpenException, RecordStoreException {
-        final CD cd = new CD(artist, title);
-        final byte[] data = cd.toByteArray();
-        _rs.setRecord(index, data, 0, data.length);
+        final int length = _codec.encode(artist, title);
+        _rs.setRecord(index, _codec.getBuffer(length), 0, length);
+
+        _index.remove(index);
+        _index.add(index, artist, title);
+        _index.save(_rs.getVersion(), _codec);
     }
 
     /**
@@ -144,9 +174,35 @@ public final class CDdb {
      */
     public CD getCD(final int recordID) throws RecordStoreNotOpenException,
             InvalidRecordIDException, RecordStoreException, java.io.IOException {
-        final byte[] data = _rs.getRecord(recordID);
+        final CD cd = new CD();
+        getCD(recordID, cd);
+        return cd;
+    }
 
-        return new CD(data);
+    /**
+     * Reads the CD of a given recordID with the RMS into an existing CD object
+     * 
+     * @param recordID
+     *            RecordID of CD to retrieve
+     * @param cd
+     *            The CD object to set the artist and title of
+     * @exception RecordStoreNotOpenException
+     *                Thrown if the record store is not open
+     * @exception InvalidRecordIDException
+     *                Thrown if the recordID is invalid
+     * @exception RecordStoreException
+     *                Thrown if there is a record store error
+     * @exception java.io.IOException
+     *                Thrown if the record is malformed
+     */
+    public synchronized void getCD(final int recordID, final CD cd)
+            throws RecordStoreNotOpenException, InvalidRecordIDException,
+            RecordStoreException, java.io.IOException {
+        final byte[] data = _codec.getBuffer(_rs.getRecordSize(recordID));
+        final int length = _rs.getRecord(recordID, data, 0);
+        if (!_codec.decode(data, length, cd)) {
+            throw new IOException("Malformed CD record " + recordID);
+        }
     }
 
     /**
@@ -165,6 +221,60 @@ public final class CDdb {
             throws RecordStoreNotOpenException, InvalidRecordIDException,
             RecordStoreException {
         _rs.deleteRecord(recordId);
+
+        _index.remove(recordId);
+        try {
+            _index.save(_rs.getVersion(), _codec);
+        } catch (final IOException e) {
+            // Every artist and title in the index was encoded when it was
+            // saved before, so they can't be too long now
+            throw new RecordStoreException(e.toString());
+        }
+    }
+
+    /**
+     * Retrieves the number of CDs
+     * 
+     * @return The number of CDs
+     */
+    public synchronized int size() {
+        return _index.size();
+    }
+
+    /**
+     * Retrieves the record ID of the CD at a position in artist and title
+     * order
+     * 
+     * @param position
+     *            The position of the CD, from 0 to size() - 1
+     * @return The record ID of the CD
+     */
+    public synchronized int getRecordId(final int position) {
+        return _index.getRecordId(position);
+    }
+
+    /**
+     * Retrieves the name of the CD at a position in artist and title order,
+     * without reading its record
+     * 
+     * @param position
+     *            The position of the CD, from 0 to size() - 1
+     * @return The CD name, as CD.toString() would return it
+     */
+    public synchronized String getName(final int position) {
+        return _index.getArtist(position) + ": " + _index.getTitle(position);
+    }
+
+    /**
+     * Finds the first CD, in artist and title order, by an artist whose name
+     * starts with a prefix, ignoring case
+     * 
+     * @param prefix
+     *            The start of the artist's name
+     * @return The position of the CD, or -1 if there is none
+     */
+    public synchronized int find(final String prefix) {
+        return _index.find(prefix);
     }
 
     /**
@@ -177,4 +287,32 @@ public final class CDdb {
     RecordEnumeration enumerate() throws RecordStoreNotOpenException {
         return _rs.enumerateRecords(null, null, true);
     }
+
+    /**
+     * Loads the saved index, or rebuilds it from the CD records if it doesn't
+     * match them
+     * 
+     * @param save
+     *            True if a rebuilt index should be saved
+     */
+    private void loadIndex(final boolean save) throws RecordStoreException,
+            java.io.IOException {
+        final int version = _rs.getVersion();
+        if (_index.load(version, _codec)) {
+            return;
+        }
+
+        final CD cd = new CD();
+        final RecordEnumeration e = _rs.enumerateRecords(null, null, false);
+        while (e.hasNextElement()) {
+            final int recordId = e.nextRecordId();
+            getCD(recordId, cd);
+            _index.add(recordId, cd.getArtist(), cd.getTitle());
+        }
+        e.destroy();
+
+        if (save) {
+            _index.save(version, _codec);
+        }
+    }
 }
@@ -26,8 +26,6 @@
 
 package com.rim.samples.device.rmsdemo;
 
-import java.io.IOException;
-
 import javax.microedition.lcdui.Alert;
 import javax.microedition.lcdui.AlertType;
 import javax.microedition.lcdui.Choice;
@@ -39,18 +37,15 @@ import javax.microedition.lcdui.Form;
 import javax.microedition.lcdui.List;
 import javax.microedition.lcdui.TextField;
 import javax.microedition.midlet.MIDlet;
-import javax.microedition.rms.RecordEnumeration;
-import javax.microedition.rms.RecordStoreException;
-import javax.microedition.rms.RecordStoreNotOpenException;
 
 /**
  * Sample to demonstrate the usage of a Record Management Store in a MIDlet. The
  * sample uses an RMS back end to store a collection of CDs. CD objects can be
- * added, deleted, and edited.
+ * added, deleted, and edited. The collection is listed in order of artist and
+ * title, and can be searched by the start of an artist's name.
  */
 public final class RMSDemo extends MIDlet implements CommandListener {
     private CDdb _db; // RMS reference
-    private RecordEnumeration _enum; // Enumeration for the RMS
 
     private Display _display;
 
@@ -64,12 +59,20 @@ public final class RMSDemo extends MIDlet implements CommandListener {
     private Command _addSave; // Save menu item
     private Command _addCancel; // Cancel menu item
 
+    private Form _findForm; // The Find Artist form
+    private TextField _findArtist; // Input text field for the artist to find
+
+    // Menu items for find artist form
+    private Command _findOK; // Find menu item
+    private Command _findCancel; // Cancel menu item
+
     private List _list; // The My CD Collection list
 
     // Menu items for list
     private Command _mainAdd; // Add CD menu item
     private Command _mainDelete; // Delete CD menu item
     private Command _mainEdit; // Edit CD menu item
+    private Command _mainFind; // Find Artist menu item
     private Command _mainExit; // Exit app menu item
 
     // Id of CD being edited. -1 if no CD is being edited.
@@ -80,17 +83,20 @@ public final class RMSDemo extends MIDlet implements CommandListener {
         try {
             // Initialize members
             _db = new CDdb("My Music");
-            _enum = _db.enumerate();
             _list = new List("My CD Collection", Choice.IMPLICIT);
 
             _mainAdd = new Command("Add CD", Command.ITEM, 1);
             _mainEdit = new Command("Edit CD", Command.ITEM, 2);
             _mainDelete = new Command("Delete CD", Command.ITEM, 3);
-            _mainExit = new Command("Close", Command.EXIT, 4);
+            _mainFind = new Command("Find Artist", Command.ITEM, 4);
+            _mainExit = new Command("Close", Command.EXIT, 5);
 
             _addSave = new Command("Save", Command.SCREEN, 1);
             _addCancel = new Command("Cancel", Command.BACK, 2);
 
+            _findOK = new Command("Find", Command.SCREEN, 1);
+            _findCancel = new Command("Cancel", Command.BACK, 2);
+
             refreshList();
 
             _list.addCommand(_mainAdd);
@@ -112,6 +118,15 @@ public final class RMSDemo extends MIDlet implements CommandListener {
 
             _addForm.setCommandListener(this);
 
+            _findForm = new Form("Find Artist");
+            _findArtist =
+                    new TextField("Artist starts with: ", null, 20,
+                            TextField.ANY);
+            _findForm.append(_findArtist);
+            _findForm.addCommand(_findOK);
+            _findForm.addCommand(_findCancel);
+            _findForm.setCommandListener(this);
+
             _display = Display.getDisplay(this);
 
         } catch (final Exception e) {
@@ -121,65 +136,30 @@ public final class RMSDemo extends MIDlet implements CommandListener {
 
     /**
      * Refreshes the 'My CD Collection' list
-     * 
-     * @throws RecordStoreNotOpenException
-     *             Thrown if the records holding the cd information is not open
-     * @throws RecordStoreException
-     *             Thrown if an error occurs when accessing the record store
-     * @throws IOException
-     *             Thrown if a read error occurs
      */
-    private void refreshList() throws RecordStoreNotOpenException,
-            RecordStoreException, java.io.IOException {
+    private void refreshList() {
         // Clear list
         _list.deleteAll();
 
-        _enum.rebuild();
-
-        int recordId;
-
-        // Loop through the RMS and add records to list
-        while (_enum.hasNextElement()) {
-            recordId = _enum.nextRecordId();
-            _list.append(_db.getCD(recordId).toString(), null);
+        // Add the CDs to the list in order, reading their names from the
+        // index rather than from their records
+        final int size = _db.size();
+        for (int i = 0; i < size; ++i) {
+            _list.append(_db.getName(i), null);
         }
 
-        // If there are CDs in the RMS, add edit and delete CD menu items
+        // If there are CDs in the RMS, add edit, delete and find menu items
         if (_list.size() > 0) {
             _list.addCommand(_mainEdit);
             _list.addCommand(_mainDelete);
+            _list.addCommand(_mainFind);
         } else {
             _list.removeCommand(_mainEdit);
             _list.removeCommand(_mainDelete);
+            _list.removeCommand(_mainFind);
         }
     }
 
-    /**
-     * Retrieves the RMS record id
-     * 
-     * @param index
-     *            The index of the record for which to to retrieve the record
-     *            ID.
-     * @return The RMS record id.
-     */
-    private int getRecordId(final int index)
-            throws RecordStoreNotOpenException, RecordStoreException {
-        _enum.rebuild();
-
-        int recordId = -1;
-        int count = 0;
-
-        while (_enum.hasNextElement()) {
-            recordId = _enum.nextRecordId();
-            if (count == index) {
-                return recordId;
-            }
-            count++;
-        }
-
-        return recordId;
-    }
-
     /**
      * Command listener implementation
      * 
@@ -201,7 +181,7 @@ public final class RMSDemo extends MIDlet implements CommandListener {
             } else if (c == _mainDelete) {
                 // Delete CD
                 try {
-                    final int i = getRecordId(_list.getSelectedIndex());
+                    final int i = _db.getRecordId(_list.getSelectedIndex());
                     _db.delete(i);
                     refreshList();
                 } catch (final Exception e) {
@@ -212,7 +192,8 @@ public final class RMSDemo extends MIDlet implements CommandListener {
                 // Edit CD
                 try {
                     _addForm.setTitle("Edit CD");
-                    _editCDRecordId = getRecordId(_list.getSelectedIndex());
+                    _editCDRecordId =
+                            _db.getRecordId(_list.getSelectedIndex());
                     final CD selectedCD = _db.getCD(_editCDRecordId);
 
                     _artistCD.setString(selectedCD.getArtist());
@@ -223,10 +204,30 @@ public final class RMSDemo extends MIDlet implements CommandListener {
                 } catch (final Exception e) {
                     errorDialog("Exception thrown!", e.toString(), _addForm);
                 }
+            } else if (c == _mainFind) {
+                // Find artist
+                _display.setCurrent(_findForm);
+                _display.setCurrentItem(_findArtist);
             } else if (c == _mainExit) {
                 notifyDestroyed();
             }
         }
+        // A find artist form command has been clicked
+        else if (d == _findForm) {
+            _display.setCurrent(_list);
+            if (c == _findOK) {
+                // Select the first CD by the artist
+                final String artist = _findArtist.getString();
+                final int position = _db.find(artist);
+                if (position >= 0) {
+                    _list.setSelectedIndex(position, true);
+                } else {
+                    _display.setCurrent(new Alert("Find Artist",
+                            "No artist starts with \"" + artist + "\"",
+                            null, AlertType.INFO), _list);
+                }
+            }
+        }
         // An add form command has been clicked
         else if (d == _addForm) {
             if (c == _addSave) {
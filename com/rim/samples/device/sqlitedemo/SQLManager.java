@@ -24,8 +24,14 @@
  * Environment Development Guide associated with this release.
  */
 
+
 package com.rim.samples.device.sqlitedemo;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.Hashtable;
 import java.util.Vector;
 
 import net.rim.device.api.database.Cursor;
@@ -34,13 +40,96 @@ import net.rim.device.api.database.Database;
 import net.rim.device.api.database.DatabaseException;
 import net.rim.device.api.database.Row;
 import net.rim.device.api.database.Statement;
+import net.rim.device.api.io.LineReader;
 import net.rim.device.api.util.IntHashtable;
 
 /**
- * A class to handle SQLite database logic
+ * A class to handle SQLite database logic. Statements are prepared once and
+ * kept for the life of the manager, so running the same SQL again only binds
+ * new parameters. Changes to many items at once are made in a single
+ * transaction rather than one implicit transaction per row.
+ * <p>
+ * The words of each item's name, location and phone number are kept in a
+ * separate table, ItemWords, indexed by word. It is updated along with the
+ * DirectoryItems table, so items can be searched for by the start of any of
+ * their words without scanning every item.
+ * <p>
+ * The schema is versioned with SQLite's user_version, and brought up to date
+ * by migrate() each time the database is opened.
  */
 public class SQLManager {
+    private static final String INSERT_CATEGORY =
+            "INSERT INTO Category VALUES(null, ?)";
+    private static final String INSERT_ITEM =
+            "INSERT INTO DirectoryItems VALUES(null, ?, ?, ?, ?)";
+    private static final String UPDATE_ITEM =
+            "UPDATE DirectoryItems SET item_name = ?, location = ?, phone = ? WHERE id = ?";
+    private static final String DELETE_CATEGORY_WORDS =
+            "DELETE FROM ItemWords WHERE item_id IN (SELECT id FROM DirectoryItems WHERE category_id = ?)";
+    private static final String DELETE_CATEGORY_ITEMS =
+            "DELETE FROM DirectoryItems WHERE category_id = ?";
+    private static final String DELETE_CATEGORY =
+            "DELETE FROM Category WHERE category_id = ?";
+    private static final String DELETE_ITEM =
+            "DELETE FROM DirectoryItems WHERE id = ?";
+    private static final String INSERT_WORD =
+            "INSERT INTO ItemWords VALUES(?, ?, ?)";
+    private static final String DELETE_WORDS =
+            "DELETE FROM ItemWords WHERE item_id = ?";
+    private static final String SELECT_CATEGORIES = "SELECT * FROM Category";
+    private static final String SELECT_ITEMS =
+            "SELECT * FROM DirectoryItems WHERE category_id = ? AND id > ? ORDER BY id LIMIT ?";
+    private static final String SELECT_ALL_ITEMS =
+            "SELECT id, item_name, location, phone FROM DirectoryItems";
+    private static final String SELECT_PROVISIONING =
+            "SELECT lines, complete FROM Provisioning";
+    private static final String UPDATE_PROVISIONING =
+            "UPDATE Provisioning SET lines = ?, complete = ?";
+
+    // Schema version 1: The directory
+    private static final String CREATE_CATEGORY_TABLE =
+            "CREATE TABLE IF NOT EXISTS Category(category_id INTEGER primary key, category_name TEXT)";
+    private static final String CREATE_ITEMS_TABLE =
+            "CREATE TABLE IF NOT EXISTS DirectoryItems(id INTEGER PRIMARY KEY, category_id INTEGER, item_name TEXT, location TEXT, phone TEXT, FOREIGN KEY (category_id) REFERENCES Category(category_id))";
+
+    // Schema version 2: Looking up items by category
+    private static final String CREATE_CATEGORY_INDEX =
+            "CREATE INDEX IF NOT EXISTS DirectoryItems_category_id ON DirectoryItems(category_id)";
+
+    // Schema version 3: Searching items by word
+    private static final String CREATE_WORDS_TABLE =
+            "CREATE TABLE IF NOT EXISTS ItemWords(word TEXT NOT NULL, item_id INTEGER NOT NULL, weight INTEGER NOT NULL)";
+    private static final String CREATE_WORDS_INDEX =
+            "CREATE INDEX IF NOT EXISTS ItemWords_word ON ItemWords(word, item_id, weight)";
+    private static final String CREATE_WORDS_ITEM_INDEX =
+            "CREATE INDEX IF NOT EXISTS ItemWords_item_id ON ItemWords(item_id)";
+    private static final String DELETE_ALL_WORDS = "DELETE FROM ItemWords";
+
+    // Schema version 4: Resuming provisioning. A database that already has
+    // categories was provisioned before the table existed.
+    private static final String CREATE_PROVISIONING_TABLE =
+            "CREATE TABLE IF NOT EXISTS Provisioning(lines INTEGER NOT NULL, complete INTEGER NOT NULL)";
+    private static final String INSERT_PROVISIONING =
+            "INSERT INTO Provisioning SELECT 0, EXISTS (SELECT * FROM Category) WHERE NOT EXISTS (SELECT * FROM Provisioning)";
+
+    private static final int SCHEMA_VERSION = 4;
+
+    // How much a word matching a search adds to an item's score, by the field
+    // the word is in
+    private static final int NAME_WEIGHT = 4;
+    private static final int LOCATION_WEIGHT = 2;
+    private static final int PHONE_WEIGHT = 1;
+
+    // The number of words of a search that are used, the rest being ignored
+    private static final int MAX_SEARCH_WORDS = 4;
+
+    // The number of rows importItems() and provision() insert in each
+    // transaction
+    private static final int IMPORT_BATCH_SIZE = 1000;
+
     private final Database _db;
+    private final Hashtable _statements = new Hashtable(); // SQL -> Statement
+    private final String[] _searchSql = new String[MAX_SEARCH_WORDS];
 
     /**
      * Constructs a new SQLManager object
@@ -52,6 +141,143 @@ public class SQLManager {
         _db = db;
     }
 
+    /**
+     * Brings the schema of the database up to date, running in turn each
+     * migration step newer than the database's version. Each step is run in
+     * one transaction along with the update of the version, and can be run
+     * again on a database it has already been applied to. This matters for
+     * databases created by earlier versions of this demo, which have version 0
+     * whatever tables and indexes they have.
+     */
+    void migrate() {
+        try {
+            int version = getSchemaVersion();
+            while (version < SCHEMA_VERSION) {
+                ++version;
+                _db.beginTransaction();
+                try {
+                    migrateTo(version);
+                    execute("PRAGMA user_version = " + version);
+                    _db.commitTransaction();
+                } catch (final DatabaseException dbe) {
+                    rollback();
+                    throw dbe;
+                } catch (final DataTypeException dte) {
+                    rollback();
+                    throw dte;
+                }
+            }
+        } catch (final DatabaseException dbe) {
+            SQLiteDemo.errorDialog(dbe.toString());
+        } catch (final DataTypeException dte) {
+            SQLiteDemo.errorDialog(dte.toString());
+        }
+    }
+
+    /**
+     * Fills a new database with a directory of categories and items read from
+     * a UTF-8 text stream with one item per line, its category, name,
+     * location and phone number separated by tabs. Categories are added as
+     * they are first named. The items are inserted a thousand to a
+     * transaction, and the number of lines read so far is saved with each
+     * transaction, so if provisioning is interrupted it carries on from the
+     * last transaction the next time it is run. Once the whole stream has been
+     * read, running it again does nothing.
+     * 
+     * @param in
+     *            The stream to read the directory from
+     * @return The number of items added
+     */
+    int provision(final InputStream in) {
+        final LineReader lineReader = new LineReader(in);
+        final String[] fields = new String[4];
+        final Hashtable categories = new Hashtable(); // Name -> Integer ID
+        int provisioned = 0;
+        int pending = 0;
+
+        try {
+            Statement statement = getStatement(SELECT_PROVISIONING);
+            Cursor cursor = statement.getCursor();
+            cursor.next();
+            final Row row = cursor.getRow();
+            int lines = row.getInteger(0);
+            final boolean complete = row.getInteger(1) != 0;
+            cursor.close();
+            if (complete) {
+                return 0;
+            }
+
+            // Skip the lines read before provisioning was interrupted
+            for (int i = 0; i < lines; ++i) {
+                lineReader.readLine();
+            }
+
+            // Find the categories added before provisioning was interrupted
+            statement = getStatement(SELECT_CATEGORIES);
+            cursor = statement.getCursor();
+            while (cursor.next()) {
+                final Row category = cursor.getRow();
+                categories.put(category.getString(1), new Integer(category
+                        .getInteger(0)));
+            }
+            cursor.close();
+
+            _db.beginTransaction();
+            try {
+                while (true) {
+                    final String line;
+                    try {
+                        line = new String(lineReader.readLine(), "UTF-8");
+                    } catch (final EOFException eof) {
+                        // We've reached the end of the stream
+                        break;
+                    }
+                    ++lines;
+                    if (line.trim().length() == 0) {
+                        continue;
+                    }
+
+                    splitFields(line, fields);
+                    Integer categoryID = (Integer) categories.get(fields[0]);
+                    if (categoryID == null) {
+                        statement = getStatement(INSERT_CATEGORY);
+                        statement.bind(1, fields[0]);
+                        statement.execute();
+                        categoryID = new Integer((int) _db.lastInsertedRowID());
+                        categories.put(fields[0], categoryID);
+                    }
+                    insertItem(fields[1], fields[2], fields[3], categoryID
+                            .intValue());
+
+                    if (++pending == IMPORT_BATCH_SIZE) {
+                        updateProvisioning(lines, false);
+                        _db.commitTransaction();
+                        provisioned += pending;
+                        pending = 0;
+                        _db.beginTransaction();
+                    }
+                }
+                updateProvisioning(lines, true);
+                _db.commitTransaction();
+                provisioned += pending;
+            } catch (final DatabaseException dbe) {
+                rollback();
+                throw dbe;
+            } catch (final IOException ioe) {
+                rollback();
+                throw ioe;
+            }
+        } catch (final DatabaseException dbe) {
+            SQLiteDemo.errorDialog(dbe.toString());
+        } catch (final DataTypeException dte) {
+            SQLiteDemo.errorDialog(dte.toString());
+        } catch (final IOException ioe) {
+            SQLiteDemo.errorDialog(ioe.toString());
+        }
+
+        return provisioned;
+    }
+
     /**
      * Adds a new category to the Category database table
      * 
@@ -63,32 +289,15 @@ public class SQLManager {
         Category category = null;
         try {
             // INSERT a row into the Category table for the new category
-            Statement statement =
-                    _db.createStatement("INSERT INTO Category VALUES(null, ?)");
-            statement.prepare();
+            final Statement statement = getStatement(INSERT_CATEGORY);
             statement.bind(1, name);
             statement.execute();
-            statement.close();
 
-            // Query the database for the auto-generated ID of the category just
-            // added
-            // and create a new Category object.
-            statement =
-                    _db.createStatement("SELECT category_id FROM Category WHERE category_name = ?");
-            statement.prepare();
-            statement.bind(1, name);
-            final Cursor cursor = statement.getCursor();
-            if (cursor.next()) {
-                final Row row = cursor.getRow();
-                final int id = row.getInteger(0);
-                category = new Category(id, name);
-            }
-            cursor.close();
-            statement.close();
+            // Create a new Category object with the auto-generated ID of the
+            // category just added
+            category = new Category((int) _db.lastInsertedRowID(), name);
         } catch (final DatabaseException dbe) {
             SQLiteDemo.errorDialog(dbe.toString());
-        } catch (final DataTypeException dte) {
-            SQLiteDemo.errorDialog(dte.toString());
         }
 
         return category;
@@ -115,19 +324,17 @@ public class SQLManager {
         long id = -1;
 
         try {
-            // Insert a new record in the DirectoryItems table
-            final Statement statement =
-                    _db.createStatement("INSERT INTO DirectoryItems VALUES(null, ?, ?, ?, ?)");
-            statement.prepare();
-            statement.bind(1, categoryID);
-            statement.bind(2, name);
-            statement.bind(3, location);
-            statement.bind(4, phone);
-            statement.execute();
-            statement.close();
-
-            // Retrieve the auto-generated ID of the item just added
-            id = _db.lastInsertedRowID();
+            // The item and its words are added together or not at all
+            _db.beginTransaction();
+            try {
+                final long newId =
+                        insertItem(name, location, phone, categoryID);
+                _db.commitTransaction();
+                id = newId;
+            } catch (final DatabaseException dbe) {
+                rollback();
+                throw dbe;
+            }
         } catch (final DatabaseException dbe) {
             SQLiteDemo.errorDialog(dbe.toString());
         }
@@ -135,6 +342,39 @@ public class SQLManager {
         return (int) id;
     }
 
+    /**
+     * Adds several items to the DirectoryItems table in a single transaction.
+     * Either all of the items are added or, if any of them can't be, none are.
+     * 
+     * @param items
+     *            The DirectoryItem objects to add. Each is given the id of its
+     *            new record.
+     * @return True if the items were added, otherwise false
+     */
+    boolean addItems(final Vector items) {
+        try {
+            _db.beginTransaction();
+            try {
+                for (int i = 0; i < items.size(); ++i) {
+                    final DirectoryItem item =
+                            (DirectoryItem) items.elementAt(i);
+                    item.setId((int) insertItem(item.getName(), item
+                            .getLocation(), item.getPhone(), item
+                            .getCategoryId()));
+                }
+                _db.commitTransaction();
+                return true;
+            } catch (final DatabaseException dbe) {
+                rollback();
+                throw dbe;
+            }
+        } catch (final DatabaseException dbe) {
+            SQLiteDemo.errorDialog(dbe.toString());
+        }
+
+        return false;
+    }
+
     /**
      * Updates an existing record in the DirectoryItems table
      * 
@@ -150,21 +390,115 @@ public class SQLManager {
     void updateItem(final int id, final String name, final String location,
             final String phone) {
         try {
-            // Update the record in the DirectoryItems table for the given id
-            final Statement statement =
-                    _db.createStatement("UPDATE DirectoryItems SET item_name = ?, location = ?, phone = ? WHERE id = ?");
-            statement.prepare();
-            statement.bind(1, name);
-            statement.bind(2, location);
-            statement.bind(3, phone);
-            statement.bind(4, id);
-            statement.execute();
-            statement.close();
+            // Update the record in the DirectoryItems table for the given id,
+            // and its words, in one transaction
+            _db.beginTransaction();
+            try {
+                executeUpdate(id, name, location, phone);
+                _db.commitTransaction();
+            } catch (final DatabaseException dbe) {
+                rollback();
+                throw dbe;
+            }
         } catch (final DatabaseException dbe) {
             SQLiteDemo.errorDialog(dbe.toString());
         }
     }
 
+    /**
+     * Updates the records of several items in the DirectoryItems table in a
+     * single transaction. Either all of the records are updated or, if any of
+     * them can't be, none are.
+     * 
+     * @param items
+     *            The DirectoryItem objects to update the records of
+     * @return True if the records were updated, otherwise false
+     */
+    boolean updateItems(final Vector items) {
+        try {
+            _db.beginTransaction();
+            try {
+                for (int i = 0; i < items.size(); ++i) {
+                    final DirectoryItem item =
+                            (DirectoryItem) items.elementAt(i);
+                    executeUpdate(item.getId(), item.getName(), item
+                            .getLocation(), item.getPhone());
+                }
+                _db.commitTransaction();
+                return true;
+            } catch (final DatabaseException dbe) {
+                rollback();
+                throw dbe;
+            }
+        } catch (final DatabaseException dbe) {
+            SQLiteDemo.errorDialog(dbe.toString());
+        }
+
+        return false;
+    }
+
+    /**
+     * Imports directory items into a category from a UTF-8 text stream with
+     * one item per line, its name, location and phone number separated by
+     * tabs. Missing fields are left empty and blank lines are skipped. The
+     * items are inserted a thousand to a transaction, so a failure part way
+     * through leaves the items of the transactions already committed.
+     * 
+     * @param in
+     *            The stream to read the items from
+     * @param categoryID
+     *            The category to which the items belong
+     * @return The number of items imported
+     */
+    int importItems(final InputStream in, final int categoryID) {
+        final LineReader lineReader = new LineReader(in);
+        final String[] fields = new String[3];
+        int imported = 0;
+        int pending = 0;
+
+        try {
+            _db.beginTransaction();
+            try {
+                while (true) {
+                    final String line;
+                    try {
+                        line = new String(lineReader.readLine(), "UTF-8");
+                    } catch (final EOFException eof) {
+                        // We've reached the end of the stream
+                        break;
+                    }
+                    if (line.length() == 0) {
+                        continue;
+                    }
+
+                    splitFields(line, fields);
+                    insertItem(fields[0], fields[1], fields[2], categoryID);
+
+                    if (++pending == IMPORT_BATCH_SIZE) {
+                        _db.commitTransaction();
+                        imported += pending;
+                        pending = 0;
+                        _db.beginTransaction();
+                    }
+                }
+                _db.commitTransaction();
+                imported += pending;
+            } catch (final DatabaseException dbe) {
+                rollback();
+                throw dbe;
+            } catch (final IOException ioe) {
+                rollback();
+                throw ioe;
+            }
+        } catch (final DatabaseException dbe) {
+            SQLiteDemo.errorDialog(dbe.toString());
+        } catch (final IOException ioe) {
+            SQLiteDemo.errorDialog(ioe.toString());
+        }
+
+        return imported;
+    }
+
     /**
      * Deletes a category from the Category table and all corresponding records
      * in the DirectoryItems table.
@@ -174,23 +508,27 @@ public class SQLManager {
      */
     void deleteCategory(final int id) {
         try {
-            // Delete all items in the DirectoryItems database
-            // table belonging to the highlighted category.
-            Statement statement =
-                    _db.createStatement("DELETE FROM DirectoryItems WHERE category_id = ?");
-            statement.prepare();
-            statement.bind(1, id);
-            statement.execute();
-            statement.close();
+            _db.beginTransaction();
+            try {
+                // Delete the words of the items belonging to the highlighted
+                // category, then the items themselves
+                Statement statement = getStatement(DELETE_CATEGORY_WORDS);
+                statement.bind(1, id);
+                statement.execute();
+                statement = getStatement(DELETE_CATEGORY_ITEMS);
+                statement.bind(1, id);
+                statement.execute();
 
-            // Delete the record in the Category database table
-            // corresponding to the highlighted category.
-            statement =
-                    _db.createStatement("DELETE FROM Category WHERE category_id = ?");
-            statement.prepare();
-            statement.bind(1, id);
-            statement.execute();
-            statement.close();
+                // Delete the record in the Category database table
+                // corresponding to the highlighted category.
+                statement = getStatement(DELETE_CATEGORY);
+                statement.bind(1, id);
+                statement.execute();
+                _db.commitTransaction();
+            } catch (final DatabaseException dbe) {
+                rollback();
+                throw dbe;
+            }
         } catch (final DatabaseException dbe) {
             SQLiteDemo.errorDialog(dbe.toString());
         }
@@ -204,13 +542,21 @@ public class SQLManager {
      */
     void deleteItem(final int id) {
         try {
-            // Delete the record in the DirectoryItems table for the given id
-            final Statement statement =
-                    _db.createStatement("DELETE FROM DirectoryItems WHERE id = ?");
-            statement.prepare();
-            statement.bind(1, id);
-            statement.execute();
-            statement.close();
+            _db.beginTransaction();
+            try {
+                // Delete the words of the item, then the record in the
+                // DirectoryItems table for the given id
+                Statement statement = getStatement(DELETE_WORDS);
+                statement.bind(1, id);
+                statement.execute();
+                statement = getStatement(DELETE_ITEM);
+                statement.bind(1, id);
+                statement.execute();
+                _db.commitTransaction();
+            } catch (final DatabaseException dbe) {
+                rollback();
+                throw dbe;
+            }
         } catch (final DatabaseException dbe) {
             SQLiteDemo.errorDialog(dbe.toString());
         }
@@ -227,9 +573,7 @@ public class SQLManager {
         final IntHashtable categories = new IntHashtable();
         try {
             // Read in all records from the Category table
-            final Statement statement =
-                    _db.createStatement("SELECT * FROM Category");
-            statement.prepare();
+            final Statement statement = getStatement(SELECT_CATEGORIES);
             final Cursor cursor = statement.getCursor();
 
             Row row;
@@ -246,7 +590,6 @@ public class SQLManager {
                 category = new Category(id, name);
                 categories.put(id, category);
             }
-            statement.close();
             cursor.close();
         } catch (final DatabaseException dbe) {
             SQLiteDemo.errorDialog(dbe.toString());
@@ -258,20 +601,30 @@ public class SQLManager {
     }
 
     /**
-     * Retrieves all records in the DirectoryItems database table and returns a
-     * vector of DirectoryItem objects.
+     * Retrieves a page of a category's records from the DirectoryItems
+     * database table, in order of id, and returns a vector of DirectoryItem
+     * objects. Pages are found through the index on category_id and the id of
+     * the last record of the previous page, so fetching a page takes the same
+     * time however far into the category it is.
      * 
-     * @return A vector of DirectoryItem objects, one for each record in the
-     *         DirectoryItem table
+     * @param categoryID
+     *            The category to which the directory items belong
+     * @param afterID
+     *            The id of the last record of the previous page, or -1 for
+     *            the first page
+     * @param limit
+     *            The maximum number of records to retrieve
+     * @return A vector of DirectoryItem objects, one for each record retrieved
      */
-    Vector getItems() {
+    Vector getItems(final int categoryID, final int afterID, final int limit) {
         final Vector directoryItems = new Vector();
 
         try {
-            // Read in all records from the DirectoryItems table
-            final Statement statement =
-                    _db.createStatement("SELECT * FROM DirectoryItems");
-            statement.prepare();
+            // Read in a page of records from the DirectoryItems table
+            final Statement statement = getStatement(SELECT_ITEMS);
+            statement.bind(1, categoryID);
+            statement.bind(2, afterID);
+            statement.bind(3, limit);
             final Cursor cursor = statement.getCursor();
 
             // Iterate through the the result set. For each row, add a
@@ -289,7 +642,6 @@ public class SQLManager {
                         new DirectoryItem(id, name, location, phone, categoryId);
                 directoryItems.addElement(item);
             }
-            statement.close();
             cursor.close();
         } catch (final DatabaseException dbe) {
             SQLiteDemo.errorDialog(dbe.toString());
@@ -301,13 +653,388 @@ public class SQLManager {
     }
 
     /**
-     * Closes the database
+     * Searches for the directory items with words starting with each of the
+     * words of a query, so that "main st" finds an item on Main Street. Only
+     * the first four words of the query are used. The items are ranked by how
+     * many of their words match and in which fields, a match in the name
+     * counting for more than one in the location or phone number and a whole
+     * word for more than the start of one. Items that rank equally are found
+     * in the order they were added.
+     * <p>
+     * The results are read from the database as they are stepped through, and
+     * must be closed before the next search.
+     * 
+     * @param query
+     *            The text to search for
+     * @param limit
+     *            The maximum number of items to find
+     * @return The matching items, best first, or null if the query has no
+     *         words or the search failed
+     */
+    SearchResults search(final String query, final int limit) {
+        final Vector words = new Vector();
+        splitWords(query, words);
+        if (words.isEmpty()) {
+            return null;
+        }
+
+        final int count = Math.min(words.size(), MAX_SEARCH_WORDS);
+        try {
+            final Statement statement = getStatement(getSearchSql(count));
+
+            // Each word is matched as the range of words starting with it
+            for (int i = 0; i < count; ++i) {
+                final String word = (String) words.elementAt(i);
+                statement.bind(2 * i + 1, word);
+                statement.bind(2 * i + 2, getPrefixEnd(word));
+            }
+            statement.bind(2 * count + 1, limit);
+
+            return new SearchResults(statement.getCursor());
+        } catch (final DatabaseException dbe) {
+            SQLiteDemo.errorDialog(dbe.toString());
+        }
+
+        return null;
+    }
+
+    /**
+     * Closes the cached statements and the database
      */
     void closeDB() {
         try {
+            final Enumeration statements = _statements.elements();
+            while (statements.hasMoreElements()) {
+                ((Statement) statements.nextElement()).close();
+            }
+            _statements.clear();
+
             _db.close();
         } catch (final DatabaseException dbe) {
             SQLiteDemo.errorDialog(dbe.toString());
         }
     }
+
+    /**
+     * Retrieves a prepared statement for some SQL, preparing it the first
+     * time the SQL is used. The statement is reset so that it is ready to be
+     * bound and run again.
+     * 
+     * @param sql
+     *            The SQL of the statement
+     * @return The prepared statement
+     * @throws DatabaseException
+     *             Thrown if the statement could not be prepared or reset
+     */
+    private Statement getStatement(final String sql) throws DatabaseException {
+        Statement statement = (Statement) _statements.get(sql);
+        if (statement == null) {
+            statement = _db.createStatement(sql);
+            statement.prepare();
+            _statements.put(sql, statement);
+        } else {
+            statement.reset();
+        }
+
+        return statement;
+    }
+
+    /**
+     * Prepares, runs and closes a statement that is only run once
+     */
+    private void execute(final String sql) throws DatabaseException {
+        final Statement statement = _db.createStatement(sql);
+        statement.prepare();
+        statement.execute();
+        statement.close();
+    }
+
+    /**
+     * Retrieves the schema version of the database
+     */
+    private int getSchemaVersion() throws DatabaseException,
+            DataTypeException {
+        final Statement statement = _db.createStatement("PRAGMA user_version");
+        statement.prepare();
+        final Cursor cursor = statement.getCursor();
+        cursor.next();
+        final int version = cursor.getRow().getInteger(0);
+        cursor.close();
+        statement.close();
+        return version;
+    }
+
+    /**
+     * Applies a migration step, bringing the schema from the previous version
+     * to the given one
+     */
+    private void migrateTo(final int version) throws DatabaseException,
+            DataTypeException {
+        switch (version) {
+        case 1:
+            execute(CREATE_CATEGORY_TABLE);
+            execute(CREATE_ITEMS_TABLE);
+            break;
+        case 2:
+            execute(CREATE_CATEGORY_INDEX);
+            break;
+        case 3:
+            // Index the words of any items the database already has
+            execute(CREATE_WORDS_TABLE);
+            execute(CREATE_WORDS_INDEX);
+            execute(CREATE_WORDS_ITEM_INDEX);
+            execute(DELETE_ALL_WORDS);
+            indexAllItems();
+            break;
+        case 4:
+            execute(CREATE_PROVISIONING_TABLE);
+            execute(INSERT_PROVISIONING);
+            break;
+        }
+    }
+
+    /**
+     * Saves how far provisioning has got
+     */
+    private void updateProvisioning(final int lines, final boolean complete)
+            throws DatabaseException {
+        final Statement statement = getStatement(UPDATE_PROVISIONING);
+        statement.bind(1, lines);
+        statement.bind(2, complete ? 1 : 0);
+        statement.execute();
+    }
+
+    /**
+     * Retrieves the SQL of a search for a number of words. Each word matches
+     * a range of the ItemWords index, and an item is only found if all of the
+     * words match one of its words.
+     */
+    private String getSearchSql(final int count) {
+        String sql = _searchSql[count - 1];
+        if (sql == null) {
+            final StringBuffer exact = new StringBuffer();
+            final StringBuffer where = new StringBuffer();
+            final StringBuffer having = new StringBuffer();
+            for (int i = 0; i < count; ++i) {
+                final String range =
+                        "w.word >= ?" + (2 * i + 1) + " AND w.word < ?"
+                                + (2 * i + 2);
+                if (i > 0) {
+                    exact.append(" OR ");
+                    where.append(" OR ");
+                    having.append(" AND ");
+                }
+                exact.append("w.word = ?").append(2 * i + 1);
+                where.append('(').append(range).append(')');
+                having.append("MAX(").append(range).append(')');
+            }
+
+            // The best items are chosen from the ItemWords index alone, and
+            // only they are read from the DirectoryItems table. A word matched
+            // exactly, rather than by its start, counts double.
+            sql =
+                    "SELECT d.id, d.category_id, d.item_name, d.location, d.phone, s.score"
+                            + " FROM (SELECT w.item_id AS id, SUM(w.weight * (1 + ("
+                            + exact + "))) AS score FROM ItemWords w WHERE "
+                            + where + " GROUP BY w.item_id HAVING " + having
+                            + " ORDER BY score DESC, w.item_id LIMIT ?"
+                            + (2 * count + 1) + ") s, DirectoryItems d"
+                            + " WHERE d.id = s.id ORDER BY s.score DESC, d.id";
+            _searchSql[count - 1] = sql;
+        }
+
+        return sql;
+    }
+
+    /**
+     * Inserts a record into the DirectoryItems table, and its words into the
+     * ItemWords table
+     * 
+     * @return The auto-generated ID of the record
+     */
+    private long insertItem(final String name, final String location,
+            final String phone, final int categoryID) throws DatabaseException {
+        final Statement statement = getStatement(INSERT_ITEM);
+        statement.bind(1, categoryID);
+        statement.bind(2, name);
+        statement.bind(3, location);
+        statement.bind(4, phone);
+        statement.execute();
+
+        final long id = _db.lastInsertedRowID();
+        indexItem(id, name, location, phone);
+        return id;
+    }
+
+    /**
+     * Updates a record in the DirectoryItems table, and replaces its words in
+     * the ItemWords table
+     */
+    private void executeUpdate(final int id, final String name,
+            final String location, final String phone)
+            throws DatabaseException {
+        Statement statement = getStatement(UPDATE_ITEM);
+        statement.bind(1, name);
+        statement.bind(2, location);
+        statement.bind(3, phone);
+        statement.bind(4, id);
+        statement.execute();
+
+        statement = getStatement(DELETE_WORDS);
+        statement.bind(1, id);
+        statement.execute();
+        indexItem(id, name, location, phone);
+    }
+
+    /**
+     * Inserts the words of every record in the DirectoryItems table into the
+     * ItemWords table
+     */
+    private void indexAllItems() throws DatabaseException, DataTypeException {
+        final Statement statement = _db.createStatement(SELECT_ALL_ITEMS);
+        statement.prepare();
+        final Cursor cursor = statement.getCursor();
+        while (cursor.next()) {
+            final Row row = cursor.getRow();
+            indexItem(row.getInteger(0), row.getString(1), row.getString(2),
+                    row.getString(3));
+        }
+        cursor.close();
+        statement.close();
+    }
+
+    /**
+     * Inserts the words of a directory item into the ItemWords table, each
+     * word once with the total weight of the fields it appears in. As well as
+     * its separate words, the phone number is indexed as one string of digits
+     * so that it can be found however it was punctuated.
+     */
+    private void indexItem(final long id, final String name,
+            final String location, final String phone)
+            throws DatabaseException {
+        final Hashtable weights = new Hashtable(); // Word -> Integer
+        final Vector words = new Vector();
+
+        splitWords(name, words);
+        addWeight(words, NAME_WEIGHT, weights);
+
+        words.removeAllElements();
+        splitWords(location, words);
+        addWeight(words, LOCATION_WEIGHT, weights);
+
+        words.removeAllElements();
+        splitWords(phone, words);
+        final String digits = getDigits(phone);
+        if (digits.length() > 0 && !words.contains(digits)) {
+            words.addElement(digits);
+        }
+        addWeight(words, PHONE_WEIGHT, weights);
+
+        final Statement statement = getStatement(INSERT_WORD);
+        final Enumeration keys = weights.keys();
+        while (keys.hasMoreElements()) {
+            final String word = (String) keys.nextElement();
+            statement.reset();
+            statement.bind(1, word);
+            statement.bind(2, id);
+            statement.bind(3, ((Integer) weights.get(word)).intValue());
+            statement.execute();
+        }
+    }
+
+    /**
+     * Rolls back the current transaction after a failure. A failure to roll
+     * back is ignored so that the original exception is reported.
+     */
+    private void rollback() {
+        try {
+            _db.rollbackTransaction();
+        } catch (final DatabaseException dbe) {
+            // The original exception is more useful to report
+        }
+    }
+
+    /**
+     * Splits a line of tab separated text into fields, leaving missing fields
+     * empty
+     */
+    private static void splitFields(final String line, final String[] fields) {
+        int start = 0;
+        for (int i = 0; i < fields.length; ++i) {
+            if (start > line.length()) {
+                fields[i] = "";
+                continue;
+            }
+
+            int end = line.indexOf('\t', start);
+            if (end < 0 || i == fields.length - 1) {
+                end = line.length();
+            }
+            fields[i] = line.substring(start, end).trim();
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Adds the distinct lower case words of some text to a vector. A word is
+     * a run of letters and digits.
+     */
+    private static void splitWords(final String text, final Vector words) {
+        if (text == null) {
+            return;
+        }
+
+        final StringBuffer word = new StringBuffer();
+        for (int i = 0; i <= text.length(); ++i) {
+            final char c =
+                    i < text.length() ? Character.toLowerCase(text.charAt(i))
+                            : ' ';
+            if (Character.isLowerCase(c) || Character.isDigit(c)) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                final String w = word.toString();
+                if (!words.contains(w)) {
+                    words.addElement(w);
+                }
+                word.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the digits of some text
+     */
+    private static String getDigits(final String text) {
+        final StringBuffer digits = new StringBuffer();
+        if (text != null) {
+            for (int i = 0; i < text.length(); ++i) {
+                if (Character.isDigit(text.charAt(i))) {
+                    digits.append(text.charAt(i));
+                }
+            }
+        }
+        return digits.toString();
+    }
+
+    /**
+     * Adds the weight of a field to the total weights of its words
+     */
+    private static void addWeight(final Vector words, final int weight,
+            final Hashtable weights) {
+        for (int i = 0; i < words.size(); ++i) {
+            final Object word = words.elementAt(i);
+            final Integer total = (Integer) weights.get(word);
+            final int sum = total == null ? weight : total.intValue() + weight;
+            weights.put(word, new Integer(sum));
+        }
+    }
+
+    /**
+     * Retrieves the first string that sorts after every string starting with
+     * a prefix, by incrementing the prefix's last character
+     */
+    private static String getPrefixEnd(final String prefix) {
+        final int last = prefix.length() - 1;
+        return prefix.substring(0, last) + (char) (prefix.charAt(last) + 1);
+    }
 }
@@ -26,13 +26,9 @@
 
 package com.rim.samples.device.sqlitedemo;
 
-import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.Enumeration;
 
-import javax.microedition.io.Connector;
-import javax.microedition.io.file.FileConnection;
 import javax.microedition.io.file.FileSystemRegistry;
 
 import net.rim.device.api.database.Database;
@@ -40,7 +36,6 @@ import net.rim.device.api.database.DatabaseException;
 import net.rim.device.api.database.DatabaseFactory;
 import net.rim.device.api.database.DatabaseOptions;
 import net.rim.device.api.database.DatabaseSecurityOptions;
-import net.rim.device.api.io.IOUtilities;
 import net.rim.device.api.io.URI;
 import net.rim.device.api.system.CodeModuleManager;
 import net.rim.device.api.system.CodeSigningKey;
@@ -49,10 +44,10 @@ import net.rim.device.api.ui.component.Dialog;
 
 /**
  * This sample application demonstrates the use of a SQLite database and the
- * 'net.rim.device.api.database package'. A pre-configured database is included
- * with the project and will be copied to the default root location (provided an
- * SDCard is available) if a database does not already exist at that location.
- * The default root for SQLite databases is
+ * 'net.rim.device.api.database package'. A directory of categories and items is
+ * included with the project and will be imported into a new database at the
+ * default root location (provided an SDCard is available) if a database does
+ * not already exist at that location. The default root for SQLite databases is
  * 'file:///SDCard/databases/*project-name*'. Certain BlackBerry Smartphone
  * devices are capable of creating databases in eMMC memory which is of a fixed
  * capacity. Storage location for SQLite databases should be based on the
@@ -70,8 +65,9 @@ import net.rim.device.api.ui.component.Dialog;
  * also be added or deleted. Deleting a category will result in all directory
  * items belonging to the category being deleted as well.
  * 
- * The database created by this application is encrypted and access is
- * controlled by a code signing key. You will need to use the BlackBerry Signing
+ * The database created by this application is encrypted from the start, so its
+ * pages are encrypted as they are written, and access is controlled by a code
+ * signing key. You will need to use the BlackBerry Signing
  * Authority Admin Tool to create a public/private key pair with the name "XYZ"
  * (See the BlackBerry Signing Authority Tool Administrator Guide for more
  * information). Replace the XYZ public key contained in this project with the
@@ -81,6 +77,7 @@ import net.rim.device.api.ui.component.Dialog;
  */
 public final class SQLiteDemo extends UiApplication {
     private static final String DB_NAME = "SQLiteDemoDirectory";
+    private static final String DIRECTORY_NAME = "SQLiteDemoDirectory.txt";
 
     /**
      * Entry point for this application
@@ -125,38 +122,28 @@ public final class SQLiteDemo extends UiApplication {
             // Create URI
             final URI uri = URI.create(dbLocation + DB_NAME);
 
-            // Open or create a plain text database. This will create the
-            // directory and file defined by the URI (if they do not already
-            // exist).
-            Database db = DatabaseFactory.openOrCreate(uri);
-
-            // Close the database in case it is blank and we need to write to
-            // the file
-            db.close();
-
-            // Open a connection to the database file
-            final FileConnection fileConnection =
-                    (FileConnection) Connector.open("file://" + dbLocation
-                            + DB_NAME);
-
-            // If the file is blank, copy the pre-defined database from this
-            // module to the SDCard.
-            if (fileConnection.exists() && fileConnection.fileSize() == 0) {
-                readAndWriteDatabaseFile(fileConnection);
-            }
-
             // Retrieve the code signing key for the XYZ key file
             final CodeSigningKey codeSigningKey =
                     CodeSigningKey.get(CodeModuleManager
                             .getModuleHandle("SQLiteDemo"), "XYZ");
-
-            try {
-                // Encrypt and protect the database. If the database is already
-                // encrypted, the method will exit gracefully.
-                DatabaseFactory.encrypt(uri, new DatabaseSecurityOptions(
-                        codeSigningKey));
-            } catch (final DatabaseException dbe) {
-                errorDialog("Encryption failed - " + dbe.toString());
+            final DatabaseSecurityOptions securityOptions =
+                    new DatabaseSecurityOptions(codeSigningKey);
+
+            if (DatabaseFactory.exists(uri)) {
+                try {
+                    // Earlier versions of this demo copied a plain text
+                    // database and encrypted it afterwards. If the database is
+                    // already encrypted, the method will exit gracefully.
+                    DatabaseFactory.encrypt(uri, securityOptions);
+                } catch (final DatabaseException dbe) {
+                    errorDialog("Encryption failed - " + dbe.toString());
+                }
+            } else {
+                // Create an encrypted and protected database. This will create
+                // the directory and file defined by the URI. Its pages are
+                // encrypted as they are written, so the file never has to be
+                // rewritten to encrypt it.
+                DatabaseFactory.create(uri, securityOptions).close();
             }
 
             // Create a new DatabaseOptions object forcing foreign key
@@ -165,51 +152,24 @@ public final class SQLiteDemo extends UiApplication {
             databaseOptions.set("foreign_key_constraints", "on");
 
             // Open the database
-            db = DatabaseFactory.open(uri, databaseOptions);
+            final Database db = DatabaseFactory.open(uri, databaseOptions);
+
+            // Bring the schema up to date, then import the directory included
+            // with this module. An import that was interrupted carries on
+            // where it stopped, and one that finished does nothing.
+            final SQLManager sqlManager = new SQLManager(db);
+            sqlManager.migrate();
+            final InputStream inputStream =
+                    getClass().getResourceAsStream("/" + DIRECTORY_NAME);
+            sqlManager.provision(inputStream);
+            inputStream.close();
 
             // Create a new main screen and push it onto the display stack
-            final SQLiteDemoScreen screen =
-                    new SQLiteDemoScreen(new SQLManager(db));
+            final SQLiteDemoScreen screen = new SQLiteDemoScreen(sqlManager);
             pushScreen(screen);
         }
     }
 
-    /**
-     * Copies the pre-defined database from this module to the location
-     * specified by the fileConnection argument.
-     * 
-     * @param fileConnection
-     *            File connection to the database location
-     */
-    public void readAndWriteDatabaseFile(final FileConnection fileConnection)
-            throws IOException {
-        OutputStream outputStream = null;
-        InputStream inputStream = null;
-
-        // Open an input stream to the pre-defined encrypted database bundled
-        // within this module.
-        inputStream = getClass().getResourceAsStream("/" + DB_NAME);
-
-        // Open an output stream to the newly created file
-        outputStream = fileConnection.openOutputStream();
-
-        // Read data from the input stream and write the data to the
-        // output stream.
-        final byte[] bytes = IOUtilities.streamToBytes(inputStream);
-        outputStream.write(bytes);
-
-        // Close the connections
-        if (fileConnection != null) {
-            fileConnection.close();
-        }
-        if (outputStream != null) {
-            outputStream.close();
-        }
-        if (inputStream != null) {
-            inputStream.close();
-        }
-    }
-
     /**
      * Presents a dialog to the user with a given message
      * 
@@ -49,13 +49,22 @@ import net.rim.device.api.util.IntHashtable;
 import net.rim.device.api.util.StringProvider;
 
 /**
- * The main screen for the SQLiteDemo sample application
+ * The main screen for the SQLiteDemo sample application. Only the categories
+ * are read when the screen opens. A category's directory items are read a page
+ * at a time once it is expanded, the next page being read when the end of the
+ * previous one is scrolled into view, and only the items of the few most
+ * recently used categories are kept.
  */
 public final class SQLiteDemoScreen extends MainScreen implements
         TreeFieldCallback {
+    private static final int PAGE_SIZE = 50; // Items read at a time
+    private static final int MAX_LOADED_CATEGORIES = 4;
+
     private final TreeField _treeField;
     private IntHashtable _categoriesHashtable;
-    private Vector _directoryItems;
+    private final Vector _directoryItems = new Vector(); // Loaded items
+    private final Vector _loadedCategories = new Vector(); // Least recently
+                                                           // used first
     private final SQLManager _sqlManager;
 
     /**
@@ -75,9 +84,9 @@ public final class SQLiteDemoScreen extends MainScreen implements
         _treeField.setDefaultExpanded(false);
         add(_treeField);
 
-        // Populate the tree field and vectors with categories and items
+        // Populate the tree field with categories. Their items are read when
+        // they are expanded.
         populateCategories();
-        populateItems();
     }
 
     /**
@@ -97,35 +106,162 @@ public final class SQLiteDemoScreen extends MainScreen implements
             category = (Category) _categoriesHashtable.get(key);
             categoryNode = _treeField.addChildNode(0, category);
             category.setNode(categoryNode);
+            addMoreItems(category);
         }
     }
 
     /**
-     * Obtains the DirectoryItems vector and adds a node for each item to the
-     * respective category node in the tree field.
+     * Adds a MoreItems node as the last child of a category node
+     * 
+     * @param category
+     *            The category whose items are still to be read
      */
-    private void populateItems() {
-        _directoryItems = _sqlManager.getItems();
+    private void addMoreItems(final Category category) {
+        final MoreItems more = new MoreItems(category);
+        int lastChild = _treeField.getFirstChild(category.getNode());
+        while (lastChild != -1
+                && _treeField.getNextSibling(lastChild) != -1) {
+            lastChild = _treeField.getNextSibling(lastChild);
+        }
 
-        DirectoryItem directoryItem;
-        Category category;
-        int categoryNode;
-        int itemNode;
+        if (lastChild == -1) {
+            more._node = _treeField.addChildNode(category.getNode(), more);
+        } else {
+            more._node = _treeField.addSiblingNode(lastChild, more);
+        }
+    }
+
+    /**
+     * Retrieves the MoreItems node of a category
+     * 
+     * @param categoryNode
+     *            The node of the category
+     * @return The MoreItems cookie, or null if all of the category's items
+     *         have been read
+     */
+    private MoreItems findMoreItems(final int categoryNode) {
+        int node = _treeField.getFirstChild(categoryNode);
+        while (node != -1) {
+            final Object cookie = _treeField.getCookie(node);
+            if (cookie instanceof MoreItems) {
+                return (MoreItems) cookie;
+            }
+            node = _treeField.getNextSibling(node);
+        }
+
+        return null;
+    }
+
+    /**
+     * Reads the next page of a category's items and adds a node for each of
+     * them in front of the MoreItems node. The MoreItems node is removed once
+     * the last page has been read.
+     * 
+     * @param more
+     *            The MoreItems cookie of the category
+     */
+    private void loadPage(final MoreItems more) {
+        final Category category = more._category;
+        final Vector page =
+                _sqlManager.getItems(category.getId(), more._lastId, PAGE_SIZE);
+
+        int previousNode = _treeField.getPreviousSibling(more._node);
+        for (int i = 0; i < page.size(); ++i) {
+            final DirectoryItem item = (DirectoryItem) page.elementAt(i);
+            final int itemNode;
+            if (previousNode == -1) {
+                itemNode =
+                        _treeField.addChildNode(category.getNode(), item
+                                .getName());
+            } else {
+                itemNode =
+                        _treeField.addSiblingNode(previousNode, item.getName());
+            }
+            item.setNode(itemNode);
+            _directoryItems.addElement(item);
+            more._lastId = item.getId();
+            previousNode = itemNode;
+        }
+
+        if (page.size() < PAGE_SIZE) {
+            _treeField.deleteSubtree(more._node);
+            more._node = -1;
+        } else {
+            more._loading = false;
+        }
+
+        touchCategory(category);
+    }
+
+    /**
+     * Marks a category as the most recently used one, discarding the items of
+     * the least recently used category if too many categories have items
+     * loaded. The category holding the focus is never discarded.
+     * 
+     * @param category
+     *            The category that was used
+     */
+    private void touchCategory(final Category category) {
+        _loadedCategories.removeElement(category);
+        _loadedCategories.addElement(category);
+
+        int focusCategoryNode = _treeField.getCurrentNode();
+        if (focusCategoryNode > 0) {
+            final Object cookie = _treeField.getCookie(focusCategoryNode);
+            if (!(cookie instanceof Category)) {
+                focusCategoryNode = _treeField.getParent(focusCategoryNode);
+            }
+        }
+
+        for (int i = 0; i < _loadedCategories.size()
+                && _loadedCategories.size() > MAX_LOADED_CATEGORIES; ++i) {
+            final Category oldest = (Category) _loadedCategories.elementAt(i);
+            if (oldest.getNode() != focusCategoryNode) {
+                _loadedCategories.removeElementAt(i);
+                unloadCategory(oldest);
+                --i;
+            }
+        }
+    }
+
+    /**
+     * Discards the loaded items of a category and collapses it. Its items are
+     * read again the next time it is expanded.
+     * 
+     * @param category
+     *            The category whose items should be discarded
+     */
+    private void unloadCategory(final Category category) {
+        final int categoryNode = category.getNode();
+        int node = _treeField.getFirstChild(categoryNode);
+        while (node != -1) {
+            final int next = _treeField.getNextSibling(node);
+            final Object cookie = _treeField.getCookie(node);
+            if (cookie instanceof MoreItems) {
+                ((MoreItems) cookie)._node = -1;
+            }
+            _treeField.deleteSubtree(node);
+            node = next;
+        }
 
-        // For each directory item, obtain the corresponding Category object
-        // from
-        // the hash table, then add a child node to the respective category node
-        // in the tree field.
+        removeItems(category.getId());
+        _treeField.setExpanded(categoryNode, false);
+        addMoreItems(category);
+    }
+
+    /**
+     * Removes a category's items from the DirectoryItems vector
+     * 
+     * @param categoryId
+     *            The ID of the category
+     */
+    private void removeItems(final int categoryId) {
         for (int i = _directoryItems.size() - 1; i >= 0; --i) {
-            directoryItem = (DirectoryItem) _directoryItems.elementAt(i);
-            category =
-                    (Category) _categoriesHashtable.get(directoryItem
-                            .getCategoryId());
-            categoryNode = category.getNode();
-            itemNode =
-                    _treeField.addChildNode(categoryNode, directoryItem
-                            .getName());
-            directoryItem.setNode(itemNode);
+            final DirectoryItem item =
+                    (DirectoryItem) _directoryItems.elementAt(i);
+            if (item.getCategoryId() == categoryId) {
+                _directoryItems.removeElementAt(i);
+            }
         }
     }
 
@@ -229,6 +365,26 @@ public final class SQLiteDemoScreen extends MainScreen implements
                 final String text = category.getName();
                 graphics.drawText(text, indent, y, DrawStyle.ELLIPSIS, width);
             }
+
+            if (cookie instanceof MoreItems) {
+                graphics.drawText("Loading...", indent, y, DrawStyle.ELLIPSIS,
+                        width);
+
+                // The node is on screen, so read the next page of items. The
+                // tree can't be changed while it is being painted.
+                final MoreItems more = (MoreItems) cookie;
+                if (!more._loading) {
+                    more._loading = true;
+                    UiApplication.getUiApplication().invokeLater(
+                            new Runnable() {
+                                public void run() {
+                                    if (more._node != -1) {
+                                        loadPage(more);
+                                    }
+                                }
+                            });
+                }
+            }
         }
     }
 
@@ -271,6 +427,10 @@ public final class SQLiteDemoScreen extends MainScreen implements
                 final MenuItem addCategory = new AddCategory();
                 addCategory.setOrdinal(0x10000); // Inserts separator
                 menu.add(addCategory);
+            } else if (cookie instanceof MoreItems) {
+                // Items are still being read, allow the addition of a new
+                // category
+                menu.add(new AddCategory());
             }
         } else {
             // Tree field is empty, start by allowing the addition of a new
@@ -278,6 +438,9 @@ public final class SQLiteDemoScreen extends MainScreen implements
             menu.add(new AddCategory());
         }
 
+        // Directory items can be searched for at any time
+        menu.add(new Search());
+
         super.makeMenu(menu, context);
     }
 
@@ -322,13 +485,18 @@ public final class SQLiteDemoScreen extends MainScreen implements
                     final DirectoryItem itemCopy = new DirectoryItem(item);
                     app.pushModalScreen(new ItemScreen(item, _sqlManager, true));
 
-                    if (!itemCopy.equals(item)) {
-                        // Item was saved
+                    // Once saved, the item only needs a node if all of the
+                    // category's items have been read; otherwise it will be
+                    // read with the last page.
+                    if (!itemCopy.equals(item)
+                            && findMoreItems(_categoryNode) == null) {
                         final int itemNode =
                                 _treeField.addChildNode(_categoryNode, item
                                         .getName());
                         item.setNode(itemNode);
                         _directoryItems.addElement(item);
+                        touchCategory((Category) _treeField
+                                .getCookie(_categoryNode));
                     }
                 }
             }));
@@ -489,6 +657,29 @@ public final class SQLiteDemoScreen extends MainScreen implements
         }
     }
 
+    /**
+     * A MenuItem class to search the directory items
+     */
+    private final class Search extends MenuItem {
+        /**
+         * Default constructor
+         */
+        private Search() {
+            super(new StringProvider("Search"), 0x230040, 0);
+            this.setCommand(new Command(new CommandHandler() {
+                /**
+                 * @see net.rim.device.api.command.CommandHandler#execute(ReadOnlyCommandMetadata,
+                 *      Object)
+                 */
+                public void execute(final ReadOnlyCommandMetadata metadata,
+                        final Object context) {
+                    UiApplication.getUiApplication().pushScreen(
+                            new SearchScreen(_sqlManager));
+                }
+            }));
+        }
+    }
+
     /**
      * A MenuItem class to delete a category from the application and from the
      * database
@@ -513,25 +704,23 @@ public final class SQLiteDemoScreen extends MainScreen implements
                  */
                 public void execute(final ReadOnlyCommandMetadata metadata,
                         final Object context) {
-                    // Remove category from the tree field
+                    // Remove category from the tree field, making sure any
+                    // pending read of its items is dropped
+                    final MoreItems more = findMoreItems(_category.getNode());
+                    if (more != null) {
+                        more._node = -1;
+                    }
                     _treeField.deleteSubtree(_category.getNode());
+                    _loadedCategories.removeElement(_category);
 
                     final int id = _category.getId();
 
                     // Delete the category from the database
                     _sqlManager.deleteCategory(id);
 
-                    DirectoryItem item;
-
-                    // Loop through the DirectoryItems vector and delete all
-                    // objects having a category ID corresponding to the
-                    // highlighted category.
-                    for (int j = _directoryItems.size() - 1; j >= 0; --j) {
-                        item = (DirectoryItem) _directoryItems.elementAt(j);
-                        if (item.getCategoryId() == id) {
-                            _directoryItems.removeElementAt(j);
-                        }
-                    }
+                    // Delete all loaded objects having a category ID
+                    // corresponding to the highlighted category.
+                    removeItems(id);
                 }
             }));
         }
@@ -543,4 +732,25 @@ public final class SQLiteDemoScreen extends MainScreen implements
             return "Delete " + _category.getName();
         }
     }
+
+    /**
+     * The cookie of the node that follows the loaded items of a category
+     * while more of its items remain to be read
+     */
+    private static final class MoreItems {
+        private final Category _category;
+        private int _node; // The node of this cookie, or -1 once removed
+        private int _lastId = -1; // The ID of the last item read
+        private boolean _loading; // Whether a read has been scheduled
+
+        /**
+         * Constructs a MoreItems object
+         * 
+         * @param category
+         *            The category whose items are still to be read
+         */
+        private MoreItems(final Category category) {
+            _category = category;
+        }
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ * SearchResults.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+package com.rim.samples.device.sqlitedemo;
+
+import net.rim.device.api.database.Cursor;
+import net.rim.device.api.database.DataTypeException;
+import net.rim.device.api.database.DatabaseException;
+import net.rim.device.api.database.Row;
+
+/**
+ * The directory items found by SQLManager.search(), best match first. Each
+ * item is read from the database when the results are moved on to it, so only
+ * as many items are read as are looked at.
+ */
+final class SearchResults {
+    private final Cursor _cursor;
+
+    /**
+     * Constructs a new SearchResults object
+     * 
+     * @param cursor
+     *            The cursor of the search query
+     */
+    SearchResults(final Cursor cursor) {
+        _cursor = cursor;
+    }
+
+    /**
+     * Moves on to the next item
+     * 
+     * @return True if there is another item, false if all have been read
+     * @throws DatabaseException
+     *             Thrown if the next item could not be read
+     */
+    boolean next() throws DatabaseException {
+        return _cursor.next();
+    }
+
+    /**
+     * Retrieves the current item
+     * 
+     * @return A DirectoryItem object for the current item
+     * @throws DatabaseException
+     *             Thrown if the item could not be read
+     * @throws DataTypeException
+     *             Thrown if the item's record holds the wrong types of data
+     */
+    DirectoryItem getItem() throws DatabaseException, DataTypeException {
+        final Row row = _cursor.getRow();
+        return new DirectoryItem(row.getInteger(0), row.getString(2), row
+                .getString(3), row.getString(4), row.getInteger(1));
+    }
+
+    /**
+     * Retrieves the score of the current item. The higher the score, the
+     * better the item matches the search.
+     * 
+     * @return The score of the current item
+     * @throws DatabaseException
+     *             Thrown if the item could not be read
+     * @throws DataTypeException
+     *             Thrown if the item's record holds the wrong types of data
+     */
+    int getScore() throws DatabaseException, DataTypeException {
+        return _cursor.getRow().getInteger(5);
+    }
+
+    /**
+     * Closes the results
+     * 
+     * @throws DatabaseException
+     *             Thrown if the cursor could not be closed
+     */
+    void close() throws DatabaseException {
+        _cursor.close();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * SearchScreen.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+package com.rim.samples.device.sqlitedemo;
+
+import java.util.Vector;
+
+import net.rim.device.api.database.DataTypeException;
+import net.rim.device.api.database.DatabaseException;
+import net.rim.device.api.ui.Field;
+import net.rim.device.api.ui.FieldChangeListener;
+import net.rim.device.api.ui.component.BasicEditField;
+import net.rim.device.api.ui.component.ObjectListField;
+import net.rim.device.api.ui.component.SeparatorField;
+import net.rim.device.api.ui.container.MainScreen;
+
+/**
+ * A MainScreen class that searches the directory items as the user types,
+ * showing the best matches for the words typed so far
+ */
+final class SearchScreen extends MainScreen implements FieldChangeListener {
+    private static final int MAX_RESULTS = 20;
+
+    private final SQLManager _sqlManager;
+    private final BasicEditField _searchField;
+    private final ObjectListField _resultsField;
+
+    /**
+     * Constructs a new SearchScreen object
+     * 
+     * @param sqlManager
+     *            A sqlManager instance used to perform database operations
+     */
+    SearchScreen(final SQLManager sqlManager) {
+        _sqlManager = sqlManager;
+
+        // Initialize UI components
+        setTitle("Search");
+        _searchField = new BasicEditField("Search: ", "");
+        _searchField.setChangeListener(this);
+        _resultsField = new ObjectListField();
+        add(_searchField);
+        add(new SeparatorField());
+        add(_resultsField);
+    }
+
+    /**
+     * @see FieldChangeListener#fieldChanged(Field, int)
+     */
+    public void fieldChanged(final Field field, final int context) {
+        if (field == _searchField) {
+            showResults(_searchField.getText());
+        }
+    }
+
+    /**
+     * Searches for the directory items matching a query and lists them
+     * 
+     * @param query
+     *            The text to search for
+     */
+    private void showResults(final String query) {
+        final Vector lines = new Vector();
+
+        final SearchResults results = _sqlManager.search(query, MAX_RESULTS);
+        if (results != null) {
+            try {
+                try {
+                    while (results.next()) {
+                        final DirectoryItem item = results.getItem();
+                        lines.addElement(item.getName() + " - "
+                                + item.getLocation() + " - "
+                                + item.getPhone());
+                    }
+                } finally {
+                    results.close();
+                }
+            } catch (final DatabaseException dbe) {
+                SQLiteDemo.errorDialog(dbe.toString());
+            } catch (final DataTypeException dte) {
+                SQLiteDemo.errorDialog(dte.toString());
+            }
+        }
+
+        final Object[] array = new Object[lines.size()];
+        lines.copyInto(array);
+        _resultsField.set(array);
+    }
+}
@@ -33,7 +33,6 @@ import net.rim.device.api.command.Command;
 import net.rim.device.api.command.CommandHandler;
 import net.rim.device.api.command.ReadOnlyCommandMetadata;
 import net.rim.device.api.i18n.Locale;
-import net.rim.device.api.synchronization.ConverterUtilities;
 import net.rim.device.api.synchronization.SyncCollection;
 import net.rim.device.api.synchronization.SyncConverter;
 import net.rim.device.api.synchronization.SyncManager;
@@ -62,6 +61,9 @@ import net.rim.device.api.ui.decor.BackgroundFactory;
 import net.rim.device.api.util.DataBuffer;
 import net.rim.device.api.util.StringProvider;
 
+import com.rim.samples.device.synclib.SyncFieldCodec;
+import com.rim.samples.device.synclib.SyncObjectList;
+
 /**
  * This application stores contact information in a PersistantObject which can
  * be synchronized with BlackBerry Desktop Manager using Backup and Restore.
@@ -78,6 +80,7 @@ public final class SyncDemo extends UiApplication implements SyncConverter,
     private ViewContactAction _viewContactAction;
     private ContactTableModelAdapter _model;
     private TableView _view;
+    private final SyncFieldCodec _codec = new SyncFieldCodec();
 
     // Statics
     // ------------------------------------------------------------------
@@ -89,6 +92,7 @@ public final class SyncDemo extends UiApplication implements SyncConverter,
 
     private static PersistentObject _persist;
     private static Vector _contacts;
+    private static SyncObjectList _uidIndex; // Looks up _contacts by UID
 
     /**
      * Entry point for application.
@@ -108,10 +112,13 @@ public final class SyncDemo extends UiApplication implements SyncConverter,
                 _persist.setContents(_contacts);
                 _persist.commit();
             }
+            _uidIndex = new SyncObjectList(_contacts);
 
             // Enable app for synchronization
             SyncManager.getInstance().enableSynchronization(new SyncDemo());
         } else {
+            _uidIndex = new SyncObjectList(_contacts);
+
             // Create a new instance of the application and make the currently
             // running thread the application's event dispatch thread.
             final SyncDemo app = new SyncDemo();
@@ -119,6 +126,18 @@ public final class SyncDemo extends UiApplication implements SyncConverter,
         }
     }
 
+    /**
+     * Loads the most recent contact list from the persistent store, indexing
+     * it again if it isn't the list that is already indexed
+     */
+    private static void loadContacts() {
+        _persist = PersistentStore.getPersistentObject(KEY);
+        _contacts = (Vector) _persist.getContents();
+        if (_uidIndex == null || _uidIndex.getVector() != _contacts) {
+            _uidIndex = new SyncObjectList(_contacts);
+        }
+    }
+
     // Inner classes -----------------------------------------------------------
     /**
      * Adapter for displaying ContactData objects in table format
@@ -143,7 +162,7 @@ public final class SyncDemo extends UiApplication implements SyncConverter,
          * @see net.rim.device.api.ui.component.table.TableModelAdapter#doAddRow(Object)
          */
         protected boolean doAddRow(final Object row) {
-            _contacts.addElement(row);
+            _uidIndex.add((SyncObject) row);
             return true;
         }
 
@@ -151,14 +170,15 @@ public final class SyncDemo extends UiApplication implements SyncConverter,
          * @see net.rim.device.api.ui.component.table.TableModelAdapter#doGetRow(int)
          */
         protected Object doGetRow(final int index) {
-            return _contacts.elementAt(index);
+            return _uidIndex.elementAt(index);
         }
 
         /**
          * @see net.rim.device.api.ui.component.table.TableModelAdapter#doRemoveRowAt(int)
          */
         protected boolean doRemoveRowAt(final int index) {
-            _contacts.removeElementAt(index);
+            // Keep the order of the rows on screen
+            _uidIndex.removeAt(index);
             return true;
         }
 
@@ -167,7 +187,7 @@ public final class SyncDemo extends UiApplication implements SyncConverter,
          *      Object)
          */
         protected boolean doInsertRowAt(final int index, final Object row) {
-            _contacts.insertElementAt(row, index);
+            _uidIndex.insert(index, (SyncObject) row);
             return true;
         }
 
@@ -278,7 +298,7 @@ public final class SyncDemo extends UiApplication implements SyncConverter,
                     final ContactData newContactData = screen.getContact();
 
                     if (newContactData != null) {
-                        if (_contacts.contains(oldContactData)) {
+                        if (_uidIndex.indexOf(oldContactData) >= 0) {
                             _model.replaceRowAt(_index, newContactData);
                             PersistentObject.commit(_contacts);
                         }
@@ -420,17 +440,17 @@ public final class SyncDemo extends UiApplication implements SyncConverter,
             final int version) {
         if (version == getSyncVersion()) {
             if (object instanceof ContactData) {
-                final String first = ((ContactData) object).getFirst();
-                final String last = ((ContactData) object).getLast();
-                final String email = ((ContactData) object).getEmail();
+                final ContactData contact = (ContactData) object;
 
                 // Write the contact information to the DataBuffer.
-                ConverterUtilities.writeString(buffer, FIELDTAG_FIRST_NAME,
-                        first);
-                ConverterUtilities
-                        .writeString(buffer, FIELDTAG_LAST_NAME, last);
-                ConverterUtilities.writeString(buffer, FIELDTAG_EMAIL_ADDRESS,
-                        email);
+                synchronized (_codec) {
+                    _codec.writeString(buffer, FIELDTAG_FIRST_NAME, contact
+                            .getFirst());
+                    _codec.writeString(buffer, FIELDTAG_LAST_NAME, contact
+                            .getLast());
+                    _codec.writeString(buffer, FIELDTAG_EMAIL_ADDRESS, contact
+                            .getEmail());
+                }
 
                 return true;
             }
@@ -448,20 +468,26 @@ public final class SyncDemo extends UiApplication implements SyncConverter,
 
         try {
             // Extract the contact information from the DataBuffer
-            while (data.available() > 0) {
-                if (ConverterUtilities.isType(data, FIELDTAG_FIRST_NAME)) {
-                    contact.setFirst(new String(ConverterUtilities
-                            .readByteArray(data)).trim());
-                }
-
-                if (ConverterUtilities.isType(data, FIELDTAG_LAST_NAME)) {
-                    contact.setLast(new String(ConverterUtilities
-                            .readByteArray(data)).trim());
-                }
-
-                if (ConverterUtilities.isType(data, FIELDTAG_EMAIL_ADDRESS)) {
-                    contact.setEmail(new String(ConverterUtilities
-                            .readByteArray(data)).trim());
+            synchronized (_codec) {
+                while (data.available() > 0) {
+                    switch (_codec.readTag(data)) {
+                    case FIELDTAG_FIRST_NAME:
+                        contact.setFirst(_codec.readString(data, version));
+                        break;
+
+                    case FIELDTAG_LAST_NAME:
+                        contact.setLast(_codec.readString(data, version));
+                        break;
+
+                    case FIELDTAG_EMAIL_ADDRESS:
+                        contact.setEmail(_codec.readString(data, version));
+                        break;
+
+                    default:
+                        // Other fields are not supported
+                        _codec.skipValue(data);
+                        break;
+                    }
                 }
             }
 
@@ -523,15 +549,9 @@ public final class SyncDemo extends UiApplication implements SyncConverter,
      * @see net.rim.device.api.synchronization.SyncCollection#getSyncObject(int)
      */
     public SyncObject getSyncObject(final int uid) {
-        for (int i = _contacts.size() - 1; i >= 0; --i) {
-            final SyncObject so = (SyncObject) _contacts.elementAt(i);
-
-            if (so.getUID() == uid) {
-                return so;
-            }
-        }
-
-        return null;
+        // The sync engine looks up every contact it restores, so a search of
+        // the list would make a restore take quadratic time
+        return _uidIndex.get(uid);
     }
 
     /**
@@ -559,8 +579,7 @@ public final class SyncDemo extends UiApplication implements SyncConverter,
      * @see net.rim.device.api.synchronization.SyncCollection#getSyncObjectCount()
      */
     public int getSyncObjectCount() {
-        _persist = PersistentStore.getPersistentObject(KEY);
-        _contacts = (Vector) _persist.getContents();
+        loadContacts();
 
         return _contacts.size();
     }
@@ -569,7 +588,7 @@ public final class SyncDemo extends UiApplication implements SyncConverter,
      * @see net.rim.device.api.synchronization.SyncCollection#getSyncVersion()
      */
     public int getSyncVersion() {
-        return 1;
+        return SyncFieldCodec.VERSION;
     }
 
     /**
@@ -597,8 +616,7 @@ public final class SyncDemo extends UiApplication implements SyncConverter,
      * @see net.rim.device.api.synchronization.SyncCollection#beginTransaction()
      */
     public void beginTransaction() {
-        _persist = PersistentStore.getPersistentObject(KEY);
-        _contacts = (Vector) _persist.getContents();
+        loadContacts();
     }
 
     /**
@@ -0,0 +1,273 @@
+/*
+ * SyncFieldCodec.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.synclib;
+
+import java.io.EOFException;
+
+import net.rim.device.api.util.DataBuffer;
+
+/**
+ * Reads and writes the fields of a sync record in the desktop sync format.
+ * Each field is a two byte length, a one byte tag and then the field's value;
+ * the length counts the bytes of the value, which for a string include a
+ * terminating zero byte.
+ * <p>
+ * From VERSION on, strings are encoded as UTF-8, so the length is the number
+ * of bytes the string encodes to rather than the number of characters in it.
+ * Records written by earlier versions, which encoded strings in the device's
+ * default encoding, can still be read. Strings are encoded through a scratch
+ * buffer kept by the codec and decoded straight out of the DataBuffer, so
+ * converting a record allocates nothing but the strings that are read.
+ * <p>
+ * A codec keeps the length of the field being read between readTag() and
+ * readString(), so it must not be shared between threads.
+ */
+public final class SyncFieldCodec {
+    /**
+     * The first version of the format that encodes strings as UTF-8
+     */
+    public static final int VERSION = 2;
+
+    private static final int MAX_LENGTH = 0xffff;
+    private static final char REPLACEMENT = '\ufffd';
+
+    private byte[] _bytes = new byte[64];
+    private char[] _chars = new char[64];
+    private int _length; // The length of the value of the current field
+
+    /**
+     * Writes a string field
+     *
+     * @param buffer
+     *            The buffer to write the field to
+     * @param tag
+     *            The field's tag
+     * @param value
+     *            The string to write. Null is written as an empty string.
+     * @throws IllegalArgumentException
+     *             If the string is too long to fit in a field
+     */
+    public void writeString(final DataBuffer buffer, final int tag,
+            final String value) {
+        final String text = value == null ? "" : value;
+        final int length = encode(text) + 1;
+        if (length > MAX_LENGTH) {
+            throw new IllegalArgumentException();
+        }
+        _bytes[length - 1] = 0;
+
+        buffer.writeShort(length);
+        buffer.writeByte(tag);
+        buffer.write(_bytes, 0, length);
+    }
+
+    /**
+     * Reads the header of the next field. The field's value must then be read
+     * with readString() or skipped with skipValue().
+     *
+     * @param buffer
+     *            The buffer to read the field from
+     * @return The field's tag
+     * @throws EOFException
+     *             If the buffer ends part way through the header
+     */
+    public int readTag(final DataBuffer buffer) throws EOFException {
+        _length = buffer.readUnsignedShort();
+        return buffer.readUnsignedByte();
+    }
+
+    /**
+     * Reads the value of the current field as a string
+     *
+     * @param buffer
+     *            The buffer to read the value from
+     * @param version
+     *            The version of the format the record was written in
+     * @return The string, without its terminating zero byte
+     * @throws EOFException
+     *             If the buffer ends part way through the value
+     */
+    public String readString(final DataBuffer buffer, final int version)
+            throws EOFException {
+        if (buffer.available() < _length) {
+            throw new EOFException();
+        }
+
+        final byte[] array = buffer.getArray();
+        final int start = buffer.getArrayPosition();
+        int end = start + _length;
+        while (end > start && array[end - 1] == 0) {
+            --end;
+        }
+
+        final String value;
+        if (version < VERSION) {
+            value = new String(array, start, end - start);
+        } else {
+            value = new String(_chars, 0, decode(array, start, end));
+        }
+        buffer.skipBytes(_length);
+        return value;
+    }
+
+    /**
+     * Skips the value of the current field
+     *
+     * @param buffer
+     *            The buffer to skip the value in
+     * @throws EOFException
+     *             If the buffer ends part way through the value
+     */
+    public void skipValue(final DataBuffer buffer) throws EOFException {
+        if (buffer.available() < _length) {
+            throw new EOFException();
+        }
+        buffer.skipBytes(_length);
+    }
+
+    /**
+     * Encodes a string as UTF-8 into the scratch byte buffer, leaving room
+     * for a terminating zero byte after it
+     *
+     * @return The number of bytes the string encodes to
+     */
+    private int encode(final String text) {
+        final int count = text.length();
+        if (_bytes.length < count * 3 + 1) {
+            _bytes = new byte[count * 3 + 1];
+        }
+
+        // Most fields are ASCII, which encodes a byte per character
+        final byte[] bytes = _bytes;
+        int i = 0;
+        while (i < count) {
+            final char c = text.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            bytes[i++] = (byte) c;
+        }
+
+        int length = i;
+        for (; i < count; ++i) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes[length++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[length++] = (byte) (0xc0 | c >> 6);
+                bytes[length++] = (byte) (0x80 | c & 0x3f);
+            } else if (c >= 0xd800 && c < 0xdc00 && i + 1 < count
+                    && text.charAt(i + 1) >= 0xdc00
+                    && text.charAt(i + 1) < 0xe000) {
+                // A surrogate pair encodes to four bytes
+                final int codePoint =
+                        0x10000 + ((c - 0xd800) << 10)
+                                + (text.charAt(++i) - 0xdc00);
+                bytes[length++] = (byte) (0xf0 | codePoint >> 18);
+                bytes[length++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                bytes[length++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                bytes[length++] = (byte) (0x80 | codePoint & 0x3f);
+            } else if (c >= 0xd800 && c < 0xe000) {
+                // An unpaired surrogate can't be encoded
+                bytes[length++] = (byte) '?';
+            } else {
+                bytes[length++] = (byte) (0xe0 | c >> 12);
+                bytes[length++] = (byte) (0x80 | c >> 6 & 0x3f);
+                bytes[length++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Decodes UTF-8 into the scratch char buffer. Malformed sequences are
+     * decoded as U+FFFD, a byte at a time.
+     *
+     * @return The number of characters decoded
+     */
+    private int decode(final byte[] bytes, final int start, final int end) {
+        if (_chars.length < end - start) {
+            _chars = new char[end - start];
+        }
+
+        final char[] chars = _chars;
+        int count = 0;
+        int i = start;
+        while (i < end) {
+            final int b = bytes[i] & 0xff;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+                ++i;
+                continue;
+            }
+
+            // Work out how long the sequence is and what its smallest value
+            // is, so that overlong encodings are rejected
+            final int extra;
+            final int min;
+            int codePoint;
+            if (b >= 0xc2 && b < 0xe0) {
+                extra = 1;
+                min = 0x80;
+                codePoint = b & 0x1f;
+            } else if (b >= 0xe0 && b < 0xf0) {
+                extra = 2;
+                min = 0x800;
+                codePoint = b & 0x0f;
+            } else if (b >= 0xf0 && b < 0xf5) {
+                extra = 3;
+                min = 0x10000;
+                codePoint = b & 0x07;
+            } else {
+                chars[count++] = REPLACEMENT;
+                ++i;
+                continue;
+            }
+
+            int j = 1;
+            while (j <= extra && i + j < end && (bytes[i + j] & 0xc0) == 0x80) {
+                codePoint = codePoint << 6 | bytes[i + j] & 0x3f;
+                ++j;
+            }
+            if (j <= extra || codePoint < min || codePoint > 0x10ffff
+                    || codePoint >= 0xd800 && codePoint < 0xe000) {
+                chars[count++] = REPLACEMENT;
+                ++i;
+                continue;
+            }
+
+            if (codePoint < 0x10000) {
+                chars[count++] = (char) codePoint;
+            } else {
+                chars[count++] = (char) (0xd800 + (codePoint - 0x10000 >> 10));
+                chars[count++] = (char) (0xdc00 + (codePoint & 0x3ff));
+            }
+            i += j;
+        }
+        return count;
+    }
+}
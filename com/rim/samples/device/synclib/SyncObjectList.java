@@ -0,0 +1,315 @@
+/*
+ * SyncObjectList.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.device.synclib;
+
+import java.util.Vector;
+
+import net.rim.device.api.synchronization.SyncObject;
+
+/**
+ * A list of SyncObjects that can be looked up by UID in constant time. The
+ * objects are kept in a Vector, usually the one saved in the persistent
+ * store, and a hash table of UIDs to positions in the vector is kept
+ * alongside it. The hash table isn't saved; it is built when the list is
+ * created, so restoring a collection of N objects takes O(N) time rather than
+ * the O(N^2) a search of the vector for each UID would take.
+ * <p>
+ * The hash table uses open addressing. Removing a UID leaves a tombstone in
+ * its place, so that the UIDs after it in the same probe sequence can still
+ * be found; tombstones are cleared out whenever the table is rebuilt.
+ * <p>
+ * remove() fills the gap left by an object with the last object in the list,
+ * so it doesn't have to shift the rest of the vector along. removeAt() keeps
+ * the order of the list, for when it is on screen.
+ */
+public final class SyncObjectList {
+    private static final byte EMPTY = 0;
+    private static final byte USED = 1;
+    private static final byte TOMBSTONE = 2;
+
+    private final Vector _objects;
+    private int[] _uids;
+    private int[] _positions;
+    private byte[] _states;
+    private int _filled; // Used entries and tombstones
+
+    /**
+     * Creates a new SyncObjectList object
+     *
+     * @param objects
+     *            The vector of SyncObjects to index. The vector should only be
+     *            changed through this list from now on.
+     */
+    public SyncObjectList(final Vector objects) {
+        _objects = objects;
+        rebuild();
+    }
+
+    /**
+     * Retrieves the vector the objects are kept in
+     *
+     * @return The vector
+     */
+    public Vector getVector() {
+        return _objects;
+    }
+
+    /**
+     * Retrieves the number of objects in the list
+     *
+     * @return The number of objects
+     */
+    public int size() {
+        return _objects.size();
+    }
+
+    /**
+     * Retrieves an object by position
+     *
+     * @param index
+     *            The position of the object
+     * @return The object
+     */
+    public SyncObject elementAt(final int index) {
+        return (SyncObject) _objects.elementAt(index);
+    }
+
+    /**
+     * Retrieves an object by UID
+     *
+     * @param uid
+     *            The UID of the object
+     * @return The object, or null if there is no object with the UID
+     */
+    public SyncObject get(final int uid) {
+        final int entry = find(uid);
+        return entry < 0 ? null : elementAt(_positions[entry]);
+    }
+
+    /**
+     * Finds the position of an object. The object is looked up by UID, and
+     * if the object with that UID isn't the one being looked for, the list is
+     * searched for an object equal to it.
+     *
+     * @param object
+     *            The object to find
+     * @return The position of the object, or -1 if it isn't in the list
+     */
+    public int indexOf(final SyncObject object) {
+        final int entry = find(object.getUID());
+        if (entry >= 0 && _objects.elementAt(_positions[entry]) == object) {
+            return _positions[entry];
+        }
+        return _objects.indexOf(object);
+    }
+
+    /**
+     * Adds an object to the end of the list
+     *
+     * @param object
+     *            The object to add
+     */
+    public void add(final SyncObject object) {
+        _objects.addElement(object);
+        put(object.getUID(), _objects.size() - 1);
+    }
+
+    /**
+     * Inserts an object into the list, moving the objects after it along
+     *
+     * @param index
+     *            The position to insert the object at
+     * @param object
+     *            The object to insert
+     */
+    public void insert(final int index, final SyncObject object) {
+        _objects.insertElementAt(object, index);
+        if (index < _objects.size() - 1) {
+            shift(index, 1);
+        }
+        put(object.getUID(), index);
+    }
+
+    /**
+     * Replaces the object at a position
+     *
+     * @param index
+     *            The position of the object to replace
+     * @param object
+     *            The new object
+     */
+    public void set(final int index, final SyncObject object) {
+        final SyncObject old = elementAt(index);
+        _objects.setElementAt(object, index);
+        if (old.getUID() != object.getUID()) {
+            unmap(old.getUID(), index);
+        }
+        put(object.getUID(), index);
+    }
+
+    /**
+     * Removes an object, moving the last object in the list into its place
+     *
+     * @param object
+     *            The object to remove
+     * @return True if the object was in the list
+     */
+    public boolean remove(final SyncObject object) {
+        final int index = indexOf(object);
+        if (index < 0) {
+            return false;
+        }
+
+        final int last = _objects.size() - 1;
+        final SyncObject moved = elementAt(last);
+        unmap(object.getUID(), index);
+        if (index != last) {
+            _objects.setElementAt(moved, index);
+            put(moved.getUID(), index);
+        }
+        _objects.removeElementAt(last);
+        return true;
+    }
+
+    /**
+     * Removes the object at a position, keeping the order of the rest of the
+     * list
+     *
+     * @param index
+     *            The position of the object to remove
+     */
+    public void removeAt(final int index) {
+        unmap(elementAt(index).getUID(), index);
+        _objects.removeElementAt(index);
+        if (index < _objects.size()) {
+            shift(index + 1, -1);
+        }
+    }
+
+    /**
+     * Moves the positions from a position on by one place
+     *
+     * @param from
+     *            The first position to move
+     * @param delta
+     *            1 to move them up, -1 to move them down
+     */
+    private void shift(final int from, final int delta) {
+        for (int i = 0; i < _states.length; ++i) {
+            if (_states[i] == USED && _positions[i] >= from) {
+                _positions[i] += delta;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the hash table from the vector, clearing out any tombstones
+     */
+    private void rebuild() {
+        final int size = _objects.size();
+        int capacity = 16;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+
+        _uids = new int[capacity];
+        _positions = new int[capacity];
+        _states = new byte[capacity];
+        _filled = 0;
+        for (int i = 0; i < size; ++i) {
+            put(elementAt(i).getUID(), i);
+        }
+    }
+
+    /**
+     * Finds the hash table entry for a UID
+     *
+     * @return The entry, or -1 if the UID isn't in the table
+     */
+    private int find(final int uid) {
+        final int mask = _states.length - 1;
+        for (int i = hash(uid) & mask;; i = i + 1 & mask) {
+            if (_states[i] == EMPTY) {
+                return -1;
+            }
+            if (_states[i] == USED && _uids[i] == uid) {
+                return i;
+            }
+        }
+    }
+
+    /**
+     * Maps a UID to a position, replacing any position it is already mapped
+     * to
+     */
+    private void put(final int uid, final int position) {
+        final int mask = _states.length - 1;
+        int free = -1;
+        int i = hash(uid) & mask;
+        for (; _states[i] != EMPTY; i = i + 1 & mask) {
+            if (_states[i] == USED && _uids[i] == uid) {
+                _positions[i] = position;
+                return;
+            }
+            if (_states[i] == TOMBSTONE && free < 0) {
+                free = i;
+            }
+        }
+
+        if (free < 0) {
+            // Keep at least half of the table empty so probes stay short
+            if ((_filled + 1) * 2 > _states.length) {
+                rebuild();
+                put(uid, position);
+                return;
+            }
+            free = i;
+            ++_filled;
+        }
+        _uids[free] = uid;
+        _positions[free] = position;
+        _states[free] = USED;
+    }
+
+    /**
+     * Removes the mapping of a UID, if it is mapped to a position
+     */
+    private void unmap(final int uid, final int position) {
+        final int entry = find(uid);
+        if (entry >= 0 && _positions[entry] == position) {
+            _states[entry] = TOMBSTONE;
+        }
+    }
+
+    /**
+     * Spreads the bits of a UID over the hash table
+     */
+    private static int hash(final int uid) {
+        final int h = uid * 0x9e3779b9;
+        return h ^ h >>> 16;
+    }
+}
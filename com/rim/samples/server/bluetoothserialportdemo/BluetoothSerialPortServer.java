@@ -28,7 +28,6 @@ package com.rim.samples.server.bluetoothserialportdemo ;
 
 import java.io.*;
 import java.util.*;
-import javax.comm.*;
 
 import javax.swing.*;
 import javax.swing.event.*;
@@ -45,32 +44,69 @@ public class BluetoothSerialPortServer extends JFrame
 {
 
     private static final String COM_PORT = "COM4"; 
+    private static final String TCP_PREFIX = "tcp:";
 
-    // These constants have to match the constants in the device code.
-    private static final int INSERT = 1;
-    private static final int REMOVE = 2;
-    private static final int CHANGE = 3;
-    private static final int JUST_OPEN = 4;
-    private static final int CONTENTS = 5;
-    private static final int NO_CONTENTS = 6;
+    // Edits are held for at most BATCH_WINDOW ms, or until BATCH_THRESHOLD
+    // characters are pending, before being sent to the device.
+    private static final long BATCH_WINDOW = 50;
+    private static final int BATCH_THRESHOLD = 512;
 
-    private SerialPort _serialPort;
-    private DataInputStream _din;
-    private DataOutputStream _dout;
+    private SerialLink _link;
+    private EditBatcher _batcher;
+    private final VersionedDocument _document = new VersionedDocument();
+
+    // True while the text area is being updated from the device, so that
+    // the change is not echoed back
+    private boolean _remoteUpdate;
 
     private JPanel _panel;
     private JTextArea _textArea;
 
 
+    /**
+     * Usage: BluetoothSerialPortServer [port]
+     * <p>where port is either the name of a serial port (default COM4),
+     * "tcp:&lt;port&gt;" to wait for a peer on a local TCP port, or
+     * "tcp:&lt;host&gt;:&lt;port&gt;" to connect to a peer over TCP.
+     */
     public static void main(String[] args) 
     {
-        new BluetoothSerialPortServer().setVisible(true);    
+        String port = args.length > 0 ? args[0] : COM_PORT;
+        SerialTransport transport = null;
+
+        System.out.println("Initializing serial connection...");
+        try
+        {
+            transport = openTransport(port);
+        }
+        catch (IOException e)
+        {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+
+        new BluetoothSerialPortServer(transport).setVisible(true);    
+    }
+
+    private static SerialTransport openTransport(String port) throws IOException
+    {
+        if (port.startsWith(TCP_PREFIX))
+        {
+            String address = port.substring(TCP_PREFIX.length());
+            int colon = address.lastIndexOf(':');
+            if (colon == -1)
+            {
+                return SocketTransport.listen(Integer.parseInt(address));
+            }
+            return SocketTransport.connect(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        }
+        return new CommPortTransport(port);
     }
 	
-    public BluetoothSerialPortServer() 
+    public BluetoothSerialPortServer(SerialTransport transport) 
     {
         initComponents();
-        initSerialConnection();
+        initSerialConnection(transport);
         pack();
         setLocation(100,100);
     }
@@ -79,55 +115,29 @@ public class BluetoothSerialPortServer extends JFrame
     {
         public void insertUpdate(DocumentEvent e) 
         {
+            if (_remoteUpdate)
+            {
+                return;
+            }
             int offset = e.getOffset();
             int changeLength = e.getLength();
             Document doc = (Document)e.getDocument();
             try 
             {
-                String chars = doc.getText(offset, changeLength);
-                
-                if (_dout == null) 
-                {
-                    throw new IllegalStateException("DataOutputStream is null");
-                } 
-                else 
-                {
-                    _dout.writeInt(INSERT);
-                    _dout.writeInt(offset);
-                    _dout.writeUTF(chars);
-                    _dout.flush();
-                }
+                _batcher.insert(offset, doc.getText(offset, changeLength));
             } 
             catch(BadLocationException ble) 
             {
             } 
-            catch(IOException ioe) 
-            {
-            }
         }
         
         public void removeUpdate(DocumentEvent e) 
         {
-            int offset = e.getOffset();
-            int changeLength = e.getLength();
-            try 
-            {
-                if (_dout == null) 
-                {
-                    throw new IllegalStateException("DataOutputStream is null");
-                } 
-                else 
-                {
-                    _dout.writeInt(REMOVE);
-                    _dout.writeInt(offset);
-                    _dout.writeInt(changeLength);
-                    _dout.flush();
-                }
-                
-            } 
-            catch(IOException ioe) 
+            if (_remoteUpdate)
             {
+                return;
             }
+            _batcher.remove(e.getOffset(), e.getLength());
         }
         
         public void changedUpdate(DocumentEvent e) 
@@ -166,130 +176,165 @@ public class BluetoothSerialPortServer extends JFrame
         setContentPane(_panel);
     }
 
-    public void initSerialConnection() 
+    public void initSerialConnection(SerialTransport transport) 
     {
-        boolean found = false;
-        Enumeration portList = CommPortIdentifier.getPortIdentifiers();
-
-        System.out.println("Initializing serial connection...");
+        try 
+        {
+            _link = new SerialLink(transport, new LinkListener());
+            _batcher = new EditBatcher(_link, _document, BATCH_WINDOW, BATCH_THRESHOLD, true);
+            _link.start();
+            _batcher.start();
 
-        if (!portList.hasMoreElements()) 
+            System.out.println("Establishing connection with device...");
+            _link.send(Frame.control(Frame.JUST_OPEN));
+        } 
+        catch (IOException e) 
         {
-            System.err.println("no elements");
+            System.err.println("IOException while poking device.");
             System.exit(1);
         }
+    }
 
-        while (portList.hasMoreElements()) 
+    /**
+     * Handles frames from the device. Runs on the SerialLink dispatch thread;
+     * the text area is only touched on the Swing event thread.
+     */
+    private class LinkListener implements SerialLink.Listener 
+    {
+        public void frameReceived(Frame frame) 
         {
-            CommPortIdentifier portId = (CommPortIdentifier) portList.nextElement();
-            if ((portId.getPortType() == CommPortIdentifier.PORT_SERIAL) && (portId.getName().equals(COM_PORT))) 
+            try 
             {
-                try 
+                if (frame.opcode == Frame.JUST_OPEN) 
                 {
-                    _serialPort = (SerialPort)portId.open("Serial Port Test", 2000);
-
-                    _din = new DataInputStream( new BufferedInputStream( _serialPort.getInputStream() ) );
-                    _dout = new DataOutputStream( new BufferedOutputStream( _serialPort.getOutputStream() ) );
-                    new InputThread().start();
-                    
-                    _serialPort.setSerialPortParams(9600, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+                    System.out.println("Connection established.");
+                    SwingUtilities.invokeAndWait(new Runnable() 
+                    {
+                        public void run() 
+                        {
+                            _textArea.setEditable(true);
+                        }
+                    });
 
-                    found = true;
-                    break;
-                    
+                    // Edits still waiting in the batcher are not part of the
+                    // snapshot; they follow it as the next sequence numbers.
+                    sendSnapshot();
                 } 
-                catch (PortInUseException e) 
+                else if (frame.opcode == Frame.NO_CONTENTS) 
                 {
-                	System.err.println( portId.getName() + ": port in use");
-                    System.exit(1);
+                    System.out.println("Connection established.");
+                    setRemoteText(null);
                 } 
-                catch (UnsupportedCommOperationException e) 
+                else if (frame.opcode == Frame.CONTENTS) 
                 {
-                	System.err.println("UnsupportedCommOperationException");
-                    System.exit(1);
+                    System.out.println("Connection established.");
+                    System.out.println("Reading initial contents from device.");
+                    setRemoteText(frame.text);
+
+                    // Adopt the device's text as a new version and tell the
+                    // device which version it now holds
+                    synchronized (_document) 
+                    {
+                        _document.reset(frame.text);
+                        sendSnapshot();
+                    }
                 } 
-                catch (IOException e) 
+                else if (frame.opcode == Frame.RESYNC) 
                 {
-                	System.err.println("IOException while poking device.");
-                    System.exit(1);
+                    resync(frame.seq);
+                } 
+                else 
+                {
+                    System.err.println("Unexpected frame from device: " + frame);
                 }
+            } 
+            catch (IOException e) 
+            {
+                System.err.println("Unable to reply to device: " + e);
+            } 
+            catch (Exception e) 
+            {
+                e.printStackTrace();
             }
         }
-        
-        if (!found) 
+
+        public void linkClosed(IOException cause) 
         {
-            System.err.println("Unable to find serial port " + COM_PORT);
-            System.exit(1);
+            System.out.println("Connection closed" + (cause == null ? "." : ": " + cause));
+            SwingUtilities.invokeLater(new Runnable() 
+            {
+                public void run() 
+                {
+                    _textArea.setEditable(false);
+                }
+            });
         }
     }
 
-    private class InputThread extends Thread 
+    private void sendSnapshot() throws IOException 
     {
-        public void run() 
+        synchronized (_document) 
         {
-            int type;
-            String value;
-            try 
+            Frame snapshot = _document.snapshot();
+            System.out.println("Sending version " + snapshot.seq + " (" + snapshot.length + " bytes) to device.");
+            _link.send(snapshot);
+        }
+    }
+
+    /**
+     * Sends the device the versions it is missing after seq, falling back to
+     * a snapshot if they are no longer logged
+     */
+    private void resync(int seq) throws IOException 
+    {
+        synchronized (_document) 
+        {
+            Vector frames = seq == Frame.NO_SEQ ? null : _document.framesAfter(seq);
+            if (frames == null) 
+            {
+                System.out.println("Device requested resync from version " + seq + ", sending snapshot.");
+                sendSnapshot();
+                return;
+            }
+
+            System.out.println("Device requested resync from version " + seq + ", resending " + frames.size() + " batches.");
+            for (int i = 0; i < frames.size(); ++i) 
+            {
+                _link.send((Frame)frames.elementAt(i));
+            }
+        }
+    }
+
+    /**
+     * Makes the text area editable, replacing its contents if text is not null
+     */
+    private void setRemoteText(final String text) 
+    {
+        SwingUtilities.invokeLater(new Runnable() 
+        {
+            public void run() 
             {
-                System.out.println("Establishing connection with device...");
-                _dout.writeInt(JUST_OPEN);
-                _dout.flush();
-                
-                for (;;) 
+                if (text != null) 
                 {
-                    type = _din.readInt();
-                    
-                    if (type == JUST_OPEN) 
+                    _remoteUpdate = true;
+                    try 
                     {
-                        System.out.println("Connection established.");
-                        _textArea.setEditable(true);
-                        value = _textArea.getText();
-                        
-                        if (value == null || value.equals("")) 
-                        {
-                            _dout.writeInt(NO_CONTENTS);
-                            _dout.flush();
-                        } 
-                        else 
-                        {
-                            System.out.println("Sending initial contents to device.");
-                            _dout.writeInt(CONTENTS);
-                            _dout.writeUTF(value);
-                            _dout.flush();
-                        }
+                        _textArea.setText(text);
                     } 
-                    else if (type == NO_CONTENTS) 
+                    finally 
                     {
-                        System.out.println("Connection established.");
-                        _textArea.setEditable(true);
-                    } 
-                    else if (type == CONTENTS) 
-                    {
-                        System.out.println("Connection established.");
-                        System.out.println("Reading initial contents from device.");
-                        value =  _din.readUTF();
-                        _textArea.setText(value);
-                        _textArea.setEditable(true);
-                    } 
-                    else 
-                    {
-                        throw new RuntimeException();
+                        _remoteUpdate = false;
                     }
                 }
-            } 
-            catch(IOException ioe) 
-            {
-                throw new RuntimeException();
+                _textArea.setEditable(true);
             }
-        }
+        });
     }
 
     private void closeSerialConnection() 
     {
         System.out.println("Closing connection.");
-        _serialPort.close();
-        _serialPort = null;
-        _din = null;
-        _dout = null;
+        _batcher.stop();
+        _link.close();
     }
 }
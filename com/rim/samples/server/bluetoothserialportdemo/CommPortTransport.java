@@ -0,0 +1,98 @@
+/*
+ * CommPortTransport.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.server.bluetoothserialportdemo;
+
+import java.io.*;
+import java.util.*;
+import javax.comm.*;
+
+/**
+ * SerialTransport backed by a javax.comm serial port, e.g. the incoming
+ * Bluetooth COM port created when the BlackBerry pairs with the PC.
+ */
+public class CommPortTransport implements SerialTransport
+{
+    private static final String APP_NAME = "Serial Port Test";
+    private static final int OPEN_TIMEOUT = 2000;
+    private static final int BAUD_RATE = 9600;
+
+    private SerialPort _serialPort;
+
+    /**
+     * Opens the named serial port
+     * @param portName The name of the port, e.g. "COM4"
+     * @throws IOException if the port does not exist, is in use or cannot be configured
+     */
+    public CommPortTransport(String portName) throws IOException
+    {
+        Enumeration portList = CommPortIdentifier.getPortIdentifiers();
+
+        while (portList.hasMoreElements())
+        {
+            CommPortIdentifier portId = (CommPortIdentifier) portList.nextElement();
+            if ((portId.getPortType() == CommPortIdentifier.PORT_SERIAL) && (portId.getName().equals(portName)))
+            {
+                try
+                {
+                    _serialPort = (SerialPort)portId.open(APP_NAME, OPEN_TIMEOUT);
+                    _serialPort.setSerialPortParams(BAUD_RATE, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+                    return;
+                }
+                catch (PortInUseException e)
+                {
+                    throw new IOException(portName + ": port in use");
+                }
+                catch (UnsupportedCommOperationException e)
+                {
+                    close();
+                    throw new IOException(portName + ": unsupported port parameters");
+                }
+            }
+        }
+
+        throw new IOException("Unable to find serial port " + portName);
+    }
+
+    public InputStream getInputStream() throws IOException
+    {
+        return _serialPort.getInputStream();
+    }
+
+    public OutputStream getOutputStream() throws IOException
+    {
+        return _serialPort.getOutputStream();
+    }
+
+    public void close()
+    {
+        if (_serialPort != null)
+        {
+            _serialPort.close();
+            _serialPort = null;
+        }
+    }
+}
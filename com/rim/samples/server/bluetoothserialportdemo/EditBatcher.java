@@ -0,0 +1,377 @@
+/*
+ * EditBatcher.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.server.bluetoothserialportdemo;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Collects document edits and sends them to the device as a single BATCH
+ * frame instead of one INSERT/REMOVE frame per DocumentEvent.
+ *
+ * <p>Adjacent edits are coalesced as they arrive: typing extends the pending
+ * insert, backspacing or deleting extends the pending remove, and deleting
+ * text that has not been sent yet simply trims the pending insert. Pending
+ * edits are flushed by a background thread once the time window has elapsed
+ * since the first unsent edit, or straight away once the pending text
+ * reaches the size threshold. Callers on the Swing thread therefore never
+ * wait for the link.
+ *
+ * <p>Each batch is committed to the VersionedDocument, which assigns the
+ * sequence number carried by the frame. The frame flags carry FLAG_COMPRESSED if the payload is zlib
+ * compressed. The uncompressed payload is an int edit count followed by, for each edit,
+ * either <code>byte INSERT, int offset, int byteLength, UTF-8 bytes</code> or
+ * <code>byte REMOVE, int offset, int length</code>.
+ */
+public class EditBatcher implements Runnable
+{
+    public static final int FLAG_COMPRESSED = 0x01;
+
+    // Payloads smaller than this are never worth compressing
+    private static final int MIN_COMPRESS_SIZE = 128;
+
+    private final SerialLink _link;
+    private final VersionedDocument _document;
+    private final long _window;
+    private final int _threshold;
+    private final boolean _compress;
+
+    private final Vector _pending = new Vector();    // Edit[]
+    private int _pendingChars;
+    private long _firstPendingTime;
+    private boolean _running;
+    private Thread _thread;
+
+    private final ByteArrayOutputStream _payload = new ByteArrayOutputStream();
+    private final DataOutputStream _payloadOut = new DataOutputStream(_payload);
+    private final ByteArrayOutputStream _compressed = new ByteArrayOutputStream();
+    private final Deflater _deflater = new Deflater(Deflater.BEST_SPEED);
+    private final byte[] _deflateBuffer = new byte[1024];
+
+    /**
+     * A pending edit, mutated in place as further adjacent edits arrive
+     */
+    private static final class Edit
+    {
+        final int type;
+        int offset;
+        int length;             // REMOVE only
+        StringBuffer text;      // INSERT only
+
+        Edit(int type, int offset)
+        {
+            this.type = type;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Creates a new EditBatcher
+     * @param link The link frames are sent over
+     * @param document The document edits are committed to before sending
+     * @param window Maximum time in milliseconds an edit is held before sending
+     * @param threshold Number of pending characters that forces an immediate send
+     * @param compress Whether to zlib compress payloads when that makes them smaller
+     */
+    public EditBatcher(SerialLink link, VersionedDocument document, long window, int threshold, boolean compress)
+    {
+        _link = link;
+        _document = document;
+        _window = window;
+        _threshold = threshold;
+        _compress = compress;
+    }
+
+    /**
+     * Starts the background flushing thread
+     */
+    public synchronized void start()
+    {
+        if (!_running)
+        {
+            _running = true;
+            _thread = new Thread(this, "EditBatcher");
+            _thread.setDaemon(true);
+            _thread.start();
+        }
+    }
+
+    /**
+     * Stops the flushing thread after sending any pending edits
+     */
+    public void stop()
+    {
+        Thread thread;
+        synchronized (this)
+        {
+            _running = false;
+            thread = _thread;
+            _thread = null;
+            notifyAll();
+        }
+        if (thread != null)
+        {
+            try
+            {
+                thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Records the insertion of text at the given offset
+     */
+    public synchronized void insert(int offset, String text)
+    {
+        Edit last = lastEdit();
+        if (last != null && last.type == Frame.INSERT && offset == last.offset + last.text.length())
+        {
+            last.text.append(text);
+        }
+        else
+        {
+            Edit edit = new Edit(Frame.INSERT, offset);
+            edit.text = new StringBuffer(text);
+            add(edit);
+        }
+        changed(text.length());
+    }
+
+    /**
+     * Records the removal of length characters starting at the given offset
+     */
+    public synchronized void remove(int offset, int length)
+    {
+        Edit last = lastEdit();
+        if (last != null && last.type == Frame.INSERT
+            && offset >= last.offset && offset + length <= last.offset + last.text.length())
+        {
+            // Removing text that has not been sent yet
+            last.text.delete(offset - last.offset, offset - last.offset + length);
+            if (last.text.length() == 0)
+            {
+                _pending.removeElementAt(_pending.size() - 1);
+            }
+        }
+        else if (last != null && last.type == Frame.REMOVE && offset + length == last.offset)
+        {
+            // Backspace
+            last.offset = offset;
+            last.length += length;
+        }
+        else if (last != null && last.type == Frame.REMOVE && offset == last.offset)
+        {
+            // Forward delete
+            last.length += length;
+        }
+        else
+        {
+            Edit edit = new Edit(Frame.REMOVE, offset);
+            edit.length = length;
+            add(edit);
+        }
+        changed(1);
+    }
+
+    /**
+     * Sends all pending edits now
+     * @throws IOException if the frame could not be written
+     */
+    public void flush() throws IOException
+    {
+        Edit[] edits;
+        synchronized (this)
+        {
+            if (_pending.isEmpty())
+            {
+                _pendingChars = 0;
+                return;
+            }
+            edits = new Edit[_pending.size()];
+            _pending.copyInto(edits);
+            _pending.removeAllElements();
+            _pendingChars = 0;
+        }
+
+        synchronized (_payload)
+        {
+            sendFrame(edits);
+        }
+    }
+
+    /**
+     * Flushing thread: waits for the first pending edit, then for the rest
+     * of the window or the size threshold, whichever comes first. Once
+     * stopped it keeps flushing until nothing is pending, so edits recorded
+     * while the last flush was writing are still sent.
+     */
+    public void run()
+    {
+        for (;;)
+        {
+            synchronized (this)
+            {
+                try
+                {
+                    while (_running && _pending.isEmpty())
+                    {
+                        wait();
+                    }
+                    long remaining;
+                    while (_running && _pendingChars < _threshold
+                           && (remaining = _firstPendingTime + _window - System.currentTimeMillis()) > 0)
+                    {
+                        wait(remaining);
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+            }
+
+            try
+            {
+                flush();
+            }
+            catch (IOException e)
+            {
+                System.err.println("Unable to send edits: " + e);
+            }
+
+            synchronized (this)
+            {
+                if (!_running && _pending.isEmpty())
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+    private Edit lastEdit()
+    {
+        return _pending.isEmpty() ? null : (Edit)_pending.lastElement();
+    }
+
+    private void add(Edit edit)
+    {
+        if (_pending.isEmpty())
+        {
+            _firstPendingTime = System.currentTimeMillis();
+            notifyAll();
+        }
+        _pending.addElement(edit);
+    }
+
+    private void changed(int chars)
+    {
+        _pendingChars += chars;
+        if (_pendingChars >= _threshold)
+        {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Encodes the edits and sends them as one frame. Called with the payload
+     * buffer locked, which guards all of the reusable encoding buffers.
+     */
+    private void sendFrame(Edit[] edits) throws IOException
+    {
+        _payload.reset();
+        _payloadOut.writeInt(edits.length);
+        for (int i = 0; i < edits.length; ++i)
+        {
+            Edit edit = edits[i];
+            _payloadOut.writeByte(edit.type);
+            _payloadOut.writeInt(edit.offset);
+            if (edit.type == Frame.INSERT)
+            {
+                byte[] bytes = edit.text.toString().getBytes("UTF-8");
+                _payloadOut.writeInt(bytes.length);
+                _payloadOut.write(bytes);
+            }
+            else
+            {
+                _payloadOut.writeInt(edit.length);
+            }
+        }
+        _payloadOut.flush();
+
+        ByteArrayOutputStream payload = _payload;
+        int flags = 0;
+        if (_compress && _payload.size() >= MIN_COMPRESS_SIZE)
+        {
+            deflate(_payload.toByteArray());
+            if (_compressed.size() < _payload.size())
+            {
+                payload = _compressed;
+                flags |= FLAG_COMPRESSED;
+            }
+        }
+
+        synchronized (_document)
+        {
+            for (int i = 0; i < edits.length; ++i)
+            {
+                Edit edit = edits[i];
+                if (edit.type == Frame.INSERT)
+                {
+                    _document.insert(edit.offset, edit.text.toString());
+                }
+                else
+                {
+                    _document.remove(edit.offset, edit.length);
+                }
+            }
+            _link.send(_document.commit(flags, payload.toByteArray()));
+            if (_document.isCheckpointDue())
+            {
+                _link.send(_document.checkpoint());
+            }
+        }
+    }
+
+    private void deflate(byte[] data)
+    {
+        _compressed.reset();
+        _deflater.reset();
+        _deflater.setInput(data);
+        _deflater.finish();
+        while (!_deflater.finished())
+        {
+            int count = _deflater.deflate(_deflateBuffer);
+            _compressed.write(_deflateBuffer, 0, count);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Frame.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.server.bluetoothserialportdemo;
+
+import java.io.*;
+
+/**
+ * A single protocol message exchanged with the BluetoothSerialPortDemo
+ * device application. Every frame starts with an int opcode followed by an
+ * opcode specific body:
+ * <pre>
+ *    INSERT       int offset, UTF text
+ *    REMOVE       int offset, int length
+ *    CHANGE       (no body)
+ *    JUST_OPEN    (no body)
+ *    CONTENTS     UTF text
+ *    NO_CONTENTS  (no body)
+ *    BATCH        int seq, int payload length, byte flags, payload (see EditBatcher)
+ *    SNAPSHOT     int seq, int checksum, int byte length, UTF-8 text
+ *    CHECKPOINT   int seq, int checksum
+ *    RESYNC       int seq
+ * </pre>
+ * BATCH, SNAPSHOT and CHECKPOINT are versioned by the sequence number of the
+ * VersionedDocument they were taken from; RESYNC is sent by the device to ask
+ * for everything after the given sequence number, or for a full SNAPSHOT if
+ * the sequence number is NO_SEQ.
+ */
+public final class Frame
+{
+    // These constants have to match the constants in the device code.
+    public static final int INSERT = 1;
+    public static final int REMOVE = 2;
+    public static final int CHANGE = 3;
+    public static final int JUST_OPEN = 4;
+    public static final int CONTENTS = 5;
+    public static final int NO_CONTENTS = 6;
+    public static final int BATCH = 7;
+    public static final int SNAPSHOT = 8;
+    public static final int CHECKPOINT = 9;
+    public static final int RESYNC = 10;
+
+    public static final int NO_SEQ = -1;
+
+    /**
+     * Largest BATCH or SNAPSHOT payload readFrom() accepts, so a corrupt
+     * length can't make it allocate an arbitrarily large array. A SNAPSHOT
+     * holds the whole document, so this is also the largest document, in
+     * UTF-8 bytes, that can be synced.
+     */
+    public static final int MAX_PAYLOAD = 16 * 1024 * 1024;
+
+    public final int opcode;
+    public final int offset;
+    public final int length;
+    public final int flags;
+    public final int seq;
+    public final int checksum;
+    public final String text;
+    public final byte[] payload;
+
+    private Frame(int opcode, int offset, int length, int flags, String text, byte[] payload)
+    {
+        this(opcode, offset, length, flags, NO_SEQ, 0, text, payload);
+    }
+
+    private Frame(int opcode, int offset, int length, int flags, int seq, int checksum, String text, byte[] payload)
+    {
+        this.opcode = opcode;
+        this.offset = offset;
+        this.length = length;
+        this.flags = flags;
+        this.seq = seq;
+        this.checksum = checksum;
+        this.text = text;
+        this.payload = payload;
+    }
+
+    public static Frame insert(int offset, String text)
+    {
+        return new Frame(INSERT, offset, text.length(), 0, text, null);
+    }
+
+    public static Frame remove(int offset, int length)
+    {
+        return new Frame(REMOVE, offset, length, 0, null, null);
+    }
+
+    public static Frame contents(String text)
+    {
+        return new Frame(CONTENTS, 0, text.length(), 0, text, null);
+    }
+
+    public static Frame batch(int seq, int flags, byte[] payload)
+    {
+        return new Frame(BATCH, 0, payload.length, flags, seq, 0, null, payload);
+    }
+
+    /**
+     * @param utf8 The whole document encoded as UTF-8
+     */
+    public static Frame snapshot(int seq, int checksum, byte[] utf8)
+    {
+        return new Frame(SNAPSHOT, 0, utf8.length, 0, seq, checksum, null, utf8);
+    }
+
+    public static Frame checkpoint(int seq, int checksum)
+    {
+        return new Frame(CHECKPOINT, 0, 0, 0, seq, checksum, null, null);
+    }
+
+    public static Frame resync(int seq)
+    {
+        return new Frame(RESYNC, 0, 0, 0, seq, 0, null, null);
+    }
+
+    /**
+     * Creates a frame with no body: CHANGE, JUST_OPEN or NO_CONTENTS
+     */
+    public static Frame control(int opcode)
+    {
+        if (opcode != CHANGE && opcode != JUST_OPEN && opcode != NO_CONTENTS)
+        {
+            throw new IllegalArgumentException("Opcode " + opcode + " has a body");
+        }
+        return new Frame(opcode, 0, 0, 0, null, null);
+    }
+
+    /**
+     * Encodes this frame
+     */
+    public void writeTo(DataOutputStream out) throws IOException
+    {
+        out.writeInt(opcode);
+        switch (opcode)
+        {
+            case INSERT:
+                out.writeInt(offset);
+                out.writeUTF(text);
+                break;
+            case REMOVE:
+                out.writeInt(offset);
+                out.writeInt(length);
+                break;
+            case CONTENTS:
+                out.writeUTF(text);
+                break;
+            case BATCH:
+                out.writeInt(seq);
+                out.writeInt(payload.length);
+                out.writeByte(flags);
+                out.write(payload);
+                break;
+            case SNAPSHOT:
+                out.writeInt(seq);
+                out.writeInt(checksum);
+                out.writeInt(payload.length);
+                out.write(payload);
+                break;
+            case CHECKPOINT:
+                out.writeInt(seq);
+                out.writeInt(checksum);
+                break;
+            case RESYNC:
+                out.writeInt(seq);
+                break;
+        }
+    }
+
+    /**
+     * Decodes the next frame
+     * @throws EOFException at the end of the stream
+     * @throws IOException if the stream does not contain a valid frame
+     */
+    public static Frame readFrom(DataInputStream in) throws IOException
+    {
+        int opcode = in.readInt();
+        switch (opcode)
+        {
+            case INSERT:
+            {
+                int offset = in.readInt();
+                return insert(offset, in.readUTF());
+            }
+            case REMOVE:
+            {
+                int offset = in.readInt();
+                return remove(offset, in.readInt());
+            }
+            case CHANGE:
+            case JUST_OPEN:
+            case NO_CONTENTS:
+                return control(opcode);
+            case CONTENTS:
+                return contents(in.readUTF());
+            case BATCH:
+            {
+                int seq = in.readInt();
+                byte[] payload = new byte[readLength(in)];
+                int flags = in.readByte();
+                in.readFully(payload);
+                return batch(seq, flags, payload);
+            }
+            case SNAPSHOT:
+            {
+                int seq = in.readInt();
+                int checksum = in.readInt();
+                byte[] utf8 = new byte[readLength(in)];
+                in.readFully(utf8);
+                return snapshot(seq, checksum, utf8);
+            }
+            case CHECKPOINT:
+            {
+                int seq = in.readInt();
+                return checkpoint(seq, in.readInt());
+            }
+            case RESYNC:
+                return resync(in.readInt());
+            default:
+                throw new IOException("Unknown opcode: " + opcode);
+        }
+    }
+
+    /**
+     * Reads a payload length, checking that it is between 0 and MAX_PAYLOAD
+     */
+    private static int readLength(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_PAYLOAD)
+        {
+            throw new IOException("Bad payload length: " + length);
+        }
+        return length;
+    }
+
+    public String toString()
+    {
+        return "Frame[opcode=" + opcode + ", seq=" + seq + ", offset=" + offset + ", length=" + length + "]";
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * LinkBenchmark.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.server.bluetoothserialportdemo;
+
+import java.io.*;
+import java.net.*;
+
+/**
+ * Measures SerialLink throughput and round trip latency without any serial
+ * hardware, by connecting two links back to back over an in-memory pair or
+ * a loopback TCP socket.
+ * <p>Usage:
+ * <pre>
+ *    java com.rim.samples.server.bluetoothserialportdemo.LinkBenchmark [memory|tcp] [frames] [text size]
+ * </pre>
+ */
+public class LinkBenchmark
+{
+    private static final int DEFAULT_FRAMES = 100000;
+    private static final int DEFAULT_TEXT_SIZE = 16;
+    private static final int PINGS = 1000;
+
+    /**
+     * Counts received frames and answers JUST_OPEN with NO_CONTENTS, so the
+     * same listener serves both the throughput and the latency runs.
+     */
+    private static class Peer implements SerialLink.Listener
+    {
+        SerialLink link;
+        private long _received;
+
+        public synchronized void frameReceived(Frame frame)
+        {
+            ++_received;
+            notifyAll();
+            if (frame.opcode == Frame.JUST_OPEN)
+            {
+                try
+                {
+                    link.send(Frame.control(Frame.NO_CONTENTS));
+                }
+                catch (IOException e)
+                {
+                    System.err.println(e);
+                }
+            }
+        }
+
+        public synchronized void linkClosed(IOException cause)
+        {
+            notifyAll();
+        }
+
+        synchronized void awaitReceived(long count) throws InterruptedException
+        {
+            while (_received < count)
+            {
+                wait();
+            }
+        }
+
+        synchronized long received()
+        {
+            return _received;
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        String backend = args.length > 0 ? args[0] : "memory";
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_FRAMES;
+        int textSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_TEXT_SIZE;
+
+        SerialTransport[] pair = backend.equals("tcp") ? createTcpPair() : createMemoryPair();
+
+        Peer sender = new Peer();
+        Peer receiver = new Peer();
+        sender.link = new SerialLink(pair[0], sender);
+        receiver.link = new SerialLink(pair[1], receiver);
+        sender.link.start();
+        receiver.link.start();
+
+        StringBuffer text = new StringBuffer(textSize);
+        for (int i = 0; i < textSize; ++i)
+        {
+            text.append((char)('a' + i % 26));
+        }
+        Frame insert = Frame.insert(0, text.toString());
+
+        // Throughput: stream INSERT frames one way
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < frames; ++i)
+        {
+            sender.link.send(insert);
+        }
+        receiver.awaitReceived(frames);
+        long elapsed = Math.max(System.currentTimeMillis() - start, 1);
+
+        long bytes = receiver.link.getBytesReceived();
+        System.out.println(backend + ": " + frames + " frames, " + bytes + " bytes in " + elapsed + " ms");
+        System.out.println("  " + (frames * 1000L / elapsed) + " frames/s, " + (bytes * 1000L / elapsed / 1024) + " KB/s");
+
+        // Latency: JUST_OPEN / NO_CONTENTS round trips
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        long total = 0;
+        for (int i = 0; i < PINGS; ++i)
+        {
+            long expected = sender.received() + 1;
+            long sent = System.nanoTime();
+            sender.link.send(Frame.control(Frame.JUST_OPEN));
+            sender.awaitReceived(expected);
+            long rtt = System.nanoTime() - sent;
+            min = Math.min(min, rtt);
+            max = Math.max(max, rtt);
+            total += rtt;
+        }
+        System.out.println("  round trip over " + PINGS + " pings: min " + (min / 1000) + " us, avg "
+                           + (total / PINGS / 1000) + " us, max " + (max / 1000) + " us");
+
+        sender.link.close();
+        receiver.link.close();
+    }
+
+    private static SerialTransport[] createMemoryPair()
+    {
+        return MemoryTransport.createPair();
+    }
+
+    private static SerialTransport[] createTcpPair() throws IOException
+    {
+        ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        try
+        {
+            SerialTransport client = SocketTransport.connect("127.0.0.1", serverSocket.getLocalPort());
+            SerialTransport server = new SocketTransport(serverSocket.accept());
+            return new SerialTransport[] { client, server };
+        }
+        finally
+        {
+            serverSocket.close();
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * LinkCheck.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.server.bluetoothserialportdemo;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Checks the link and batching behaviour that is hard to see by hand, such
+ * as what happens to edits still in flight when the server shuts down,
+ * without any serial hardware. Exits with status 1 if a check fails.
+ * <p>Usage:
+ * <pre>
+ *    java com.rim.samples.server.bluetoothserialportdemo.LinkCheck
+ * </pre>
+ */
+public class LinkCheck
+{
+    private static final long TIMEOUT = 10000;
+
+    private static int _failures;
+
+    /**
+     * Counts the frames it receives and applies the edits in BATCH frames to
+     * its own copy of the text, standing in for the device
+     */
+    private static class TextPeer implements SerialLink.Listener
+    {
+        private final StringBuffer _text = new StringBuffer();
+        private int _received;
+
+        public synchronized void frameReceived(Frame frame)
+        {
+            ++_received;
+            notifyAll();
+            if (frame.opcode != Frame.BATCH)
+            {
+                return;
+            }
+            try
+            {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame.payload));
+                for (int count = in.readInt(); count > 0; --count)
+                {
+                    int type = in.readByte();
+                    int offset = in.readInt();
+                    if (type == Frame.INSERT)
+                    {
+                        byte[] bytes = new byte[in.readInt()];
+                        in.readFully(bytes);
+                        _text.insert(offset, new String(bytes, "UTF-8"));
+                    }
+                    else
+                    {
+                        _text.delete(offset, offset + in.readInt());
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                System.err.println("Bad batch: " + e);
+            }
+            notifyAll();
+        }
+
+        public synchronized void linkClosed(IOException cause)
+        {
+            notifyAll();
+        }
+
+        /**
+         * Waits for the text to match, or for the timeout to elapse
+         * @return True if the text matched
+         */
+        synchronized boolean awaitText(String expected, long timeout) throws InterruptedException
+        {
+            long end = System.currentTimeMillis() + timeout;
+            long remaining;
+            while (!_text.toString().equals(expected)
+                   && (remaining = end - System.currentTimeMillis()) > 0)
+            {
+                wait(remaining);
+            }
+            return _text.toString().equals(expected);
+        }
+
+        /**
+         * Waits for a number of frames to arrive, or for the timeout to elapse
+         * @return True if they all arrived
+         */
+        synchronized boolean awaitFrames(int count, long timeout) throws InterruptedException
+        {
+            long end = System.currentTimeMillis() + timeout;
+            long remaining;
+            while (_received < count && (remaining = end - System.currentTimeMillis()) > 0)
+            {
+                wait(remaining);
+            }
+            return _received >= count;
+        }
+    }
+
+    /**
+     * Ignores everything it receives
+     */
+    private static class NullListener implements SerialLink.Listener
+    {
+        public void frameReceived(Frame frame)
+        {
+        }
+
+        public void linkClosed(IOException cause)
+        {
+        }
+    }
+
+    /**
+     * A transport that pauses before every write, like a slow serial port
+     */
+    private static class SlowTransport implements SerialTransport
+    {
+        private final SerialTransport _transport;
+        private final long _delay;
+
+        SlowTransport(SerialTransport transport, long delay)
+        {
+            _transport = transport;
+            _delay = delay;
+        }
+
+        public InputStream getInputStream() throws IOException
+        {
+            return _transport.getInputStream();
+        }
+
+        public OutputStream getOutputStream() throws IOException
+        {
+            return new FilterOutputStream(_transport.getOutputStream())
+            {
+                public void write(byte[] data, int offset, int length) throws IOException
+                {
+                    try
+                    {
+                        Thread.sleep(_delay);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        throw new InterruptedIOException();
+                    }
+                    out.write(data, offset, length);
+                }
+            };
+        }
+
+        public void close()
+        {
+            _transport.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        checkStopSendsPendingEdits();
+        checkCloseSendsQueuedFrames();
+        checkPayloadLimit();
+
+        if (_failures > 0)
+        {
+            System.out.println(_failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+    }
+
+    /**
+     * EditBatcher.stop() must still send the edits recorded while its last
+     * flush was waiting for a slow port
+     */
+    private static void checkStopSendsPendingEdits() throws Exception
+    {
+        MemoryTransport[] pair = MemoryTransport.createPair();
+        TextPeer peer = new TextPeer();
+        SerialLink receiver = new SerialLink(pair[1], peer);
+        // A tiny outbound buffer keeps the flush waiting on the slow port
+        SerialLink sender = new SerialLink(new SlowTransport(pair[0], 20), new NullListener(), 16, 16);
+        receiver.start();
+        sender.start();
+
+        EditBatcher batcher = new EditBatcher(sender, new VersionedDocument(), 10, Integer.MAX_VALUE, false);
+        batcher.start();
+
+        StringBuffer text = new StringBuffer();
+        for (int i = 0; i < 200; ++i)
+        {
+            text.append((char)('a' + i % 26));
+        }
+        batcher.insert(0, text.toString());
+
+        // Let the first flush start, then record more edits while it writes
+        Thread.sleep(100);
+        batcher.insert(text.length(), "0123");
+        text.append("0123");
+        batcher.remove(0, 10);
+        text.delete(0, 10);
+        batcher.stop();
+
+        check("EditBatcher.stop() sends edits made during the last flush",
+              peer.awaitText(text.toString(), TIMEOUT));
+
+        sender.close();
+        receiver.close();
+    }
+
+    /**
+     * SerialLink.close() must write the frames still queued in its outbound
+     * buffer before closing the port
+     */
+    private static void checkCloseSendsQueuedFrames() throws Exception
+    {
+        final int frames = 50;
+
+        MemoryTransport[] pair = MemoryTransport.createPair();
+        TextPeer peer = new TextPeer();
+        SerialLink receiver = new SerialLink(pair[1], peer);
+        SerialLink sender = new SerialLink(new SlowTransport(pair[0], 5), new NullListener(), 1024, 1024);
+        receiver.start();
+        sender.start();
+
+        for (int i = 0; i < frames; ++i)
+        {
+            sender.send(Frame.insert(i, "frame " + i));
+        }
+        sender.close();
+
+        check("SerialLink.close() sends queued frames", peer.awaitFrames(frames, TIMEOUT));
+
+        receiver.close();
+    }
+
+    /**
+     * A SNAPSHOT of exactly MAX_PAYLOAD bytes must be read back, and one
+     * byte more must be rejected as a corrupt frame
+     */
+    private static void checkPayloadLimit() throws Exception
+    {
+        byte[] utf8 = new byte[Frame.MAX_PAYLOAD];
+        Arrays.fill(utf8, (byte)'x');
+        Frame frame = readBack(Frame.snapshot(1, 0, utf8));
+        check("SNAPSHOT of MAX_PAYLOAD bytes is accepted", frame.payload.length == Frame.MAX_PAYLOAD);
+
+        utf8 = new byte[Frame.MAX_PAYLOAD + 1];
+        boolean rejected = false;
+        try
+        {
+            readBack(Frame.snapshot(1, 0, utf8));
+        }
+        catch (IOException e)
+        {
+            rejected = true;
+        }
+        check("SNAPSHOT over MAX_PAYLOAD bytes is rejected", rejected);
+    }
+
+    /**
+     * Encodes a frame and decodes it again
+     */
+    private static Frame readBack(Frame frame) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        frame.writeTo(new DataOutputStream(bytes));
+        return Frame.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    private static void check(String name, boolean passed)
+    {
+        System.out.println((passed ? "ok      " : "FAILED  ") + name);
+        if (!passed)
+        {
+            ++_failures;
+        }
+    }
+}
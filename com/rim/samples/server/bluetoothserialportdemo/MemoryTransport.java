@@ -0,0 +1,84 @@
+/*
+ * MemoryTransport.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.server.bluetoothserialportdemo;
+
+import java.io.*;
+
+/**
+ * In-process SerialTransport built from a pair of ring buffers. Used to drive
+ * the server from a simulated device in the same JVM and to measure the
+ * protocol without any port or socket overhead.
+ */
+public class MemoryTransport implements SerialTransport
+{
+    private static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private final RingBuffer _in;
+    private final RingBuffer _out;
+
+    private MemoryTransport(RingBuffer in, RingBuffer out)
+    {
+        _in = in;
+        _out = out;
+    }
+
+    /**
+     * Creates two transports connected back to back; bytes written to
+     * one can be read from the other.
+     */
+    public static MemoryTransport[] createPair()
+    {
+        return createPair(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates two connected transports whose direction buffers hold the given
+     * number of bytes
+     */
+    public static MemoryTransport[] createPair(int capacity)
+    {
+        RingBuffer a = new RingBuffer(capacity);
+        RingBuffer b = new RingBuffer(capacity);
+        return new MemoryTransport[] { new MemoryTransport(a, b), new MemoryTransport(b, a) };
+    }
+
+    public InputStream getInputStream()
+    {
+        return _in.getInputStream();
+    }
+
+    public OutputStream getOutputStream()
+    {
+        return _out.getOutputStream();
+    }
+
+    public void close()
+    {
+        _in.close();
+        _out.close();
+    }
+}
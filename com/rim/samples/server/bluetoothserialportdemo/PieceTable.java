@@ -0,0 +1,312 @@
+/*
+ * PieceTable.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.server.bluetoothserialportdemo;
+
+import java.io.*;
+
+/**
+ * Text buffer that supports cheap inserts and removes in large documents.
+ *
+ * <p>All text ever inserted is appended to a single buffer and never moved;
+ * the document is described by an ordered list of pieces, each a (start,
+ * length) range of that buffer. An edit only splits or trims the pieces it
+ * touches, so its cost depends on the number of pieces, not the size of the
+ * document. The piece containing the last edit is remembered, which makes
+ * typing and other localized edits effectively constant time.
+ *
+ * <p>Removed text stays in the buffer until compact() is called.
+ */
+public class PieceTable
+{
+    private static final int INITIAL_PIECES = 16;
+
+    private final StringBuffer _buffer = new StringBuffer();
+    private int[] _starts = new int[INITIAL_PIECES];
+    private int[] _lengths = new int[INITIAL_PIECES];
+    private int _pieces;
+    private int _length;
+
+    // Piece index and document offset of the most recently edited piece
+    private int _cachedPiece;
+    private int _cachedOffset;
+
+    /**
+     * Creates an empty PieceTable
+     */
+    public PieceTable()
+    {
+    }
+
+    /**
+     * Creates a PieceTable holding the given text
+     */
+    public PieceTable(String text)
+    {
+        setText(text);
+    }
+
+    /**
+     * @return The number of characters in the document
+     */
+    public int length()
+    {
+        return _length;
+    }
+
+    /**
+     * Replaces the whole document
+     */
+    public void setText(String text)
+    {
+        _buffer.setLength(0);
+        _buffer.append(text);
+        _pieces = 0;
+        _length = text.length();
+        _cachedPiece = 0;
+        _cachedOffset = 0;
+        if (_length > 0)
+        {
+            addPiece(0, 0, _length);
+        }
+    }
+
+    /**
+     * Inserts text at the given offset
+     * @throws IndexOutOfBoundsException if offset is outside the document
+     */
+    public void insert(int offset, String text)
+    {
+        if (offset < 0 || offset > _length)
+        {
+            throw new IndexOutOfBoundsException("Insert at " + offset + " in document of length " + _length);
+        }
+        if (text.length() == 0)
+        {
+            return;
+        }
+
+        int start = _buffer.length();
+        _buffer.append(text);
+
+        int piece = findPiece(offset);
+        int pieceOffset = _cachedOffset;
+
+        if (piece > 0 && offset == pieceOffset && _starts[piece - 1] + _lengths[piece - 1] == start)
+        {
+            // Typing at the end of the previous insert: extend that piece
+            _lengths[piece - 1] += text.length();
+            _cachedPiece = piece - 1;
+            _cachedOffset = pieceOffset - _lengths[piece - 1] + text.length();
+        }
+        else if (piece == _pieces || offset == pieceOffset)
+        {
+            addPiece(piece, start, text.length());
+            _cachedPiece = piece;
+            _cachedOffset = offset;
+        }
+        else
+        {
+            // Split the piece around the new text
+            int split = offset - pieceOffset;
+            addPiece(piece + 1, _starts[piece] + split, _lengths[piece] - split);
+            _lengths[piece] = split;
+            addPiece(piece + 1, start, text.length());
+            _cachedPiece = piece + 1;
+            _cachedOffset = offset;
+        }
+        _length += text.length();
+    }
+
+    /**
+     * Removes count characters starting at the given offset
+     * @throws IndexOutOfBoundsException if the range is outside the document
+     */
+    public void remove(int offset, int count)
+    {
+        if (offset < 0 || count < 0 || offset + count > _length)
+        {
+            throw new IndexOutOfBoundsException("Remove " + count + " at " + offset + " in document of length " + _length);
+        }
+
+        int piece = findPiece(offset);
+        int pieceOffset = _cachedOffset;
+        int remaining = count;
+
+        if (offset > pieceOffset)
+        {
+            int split = offset - pieceOffset;
+            if (split + remaining < _lengths[piece])
+            {
+                // Removal lies entirely inside one piece: split it
+                addPiece(piece + 1, _starts[piece] + split + remaining, _lengths[piece] - split - remaining);
+                _lengths[piece] = split;
+                _length -= count;
+                return;
+            }
+            remaining -= _lengths[piece] - split;
+            _lengths[piece] = split;
+            pieceOffset += split;
+            ++piece;
+        }
+
+        // Drop whole pieces, then trim the front of the last one
+        int first = piece;
+        while (piece < _pieces && remaining >= _lengths[piece])
+        {
+            remaining -= _lengths[piece];
+            ++piece;
+        }
+        if (remaining > 0)
+        {
+            _starts[piece] += remaining;
+            _lengths[piece] -= remaining;
+        }
+        removePieces(first, piece - first);
+
+        _cachedPiece = first;
+        _cachedOffset = pieceOffset;
+        _length -= count;
+    }
+
+    /**
+     * @return The whole document as a String
+     */
+    public String getText()
+    {
+        StringBuffer text = new StringBuffer(_length);
+        for (int i = 0; i < _pieces; ++i)
+        {
+            text.append(_buffer, _starts[i], _starts[i] + _lengths[i]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Writes the document to a character stream without building a String
+     */
+    public void writeTo(Writer out) throws IOException
+    {
+        char[] chunk = new char[4096];
+        for (int i = 0; i < _pieces; ++i)
+        {
+            int start = _starts[i];
+            int end = start + _lengths[i];
+            while (start < end)
+            {
+                int count = Math.min(chunk.length, end - start);
+                _buffer.getChars(start, start + count, chunk, 0);
+                out.write(chunk, 0, count);
+                start += count;
+            }
+        }
+    }
+
+    /**
+     * Computes the checksum of the document, as defined by
+     * VersionedDocument.checksum()
+     */
+    public int checksum()
+    {
+        int adler = VersionedDocument.ADLER_INIT;
+        for (int i = 0; i < _pieces; ++i)
+        {
+            int end = _starts[i] + _lengths[i];
+            for (int j = _starts[i]; j < end; ++j)
+            {
+                adler = VersionedDocument.updateChecksum(adler, _buffer.charAt(j));
+            }
+        }
+        return adler;
+    }
+
+    /**
+     * @return The number of buffered characters no longer part of the document
+     */
+    public int getGarbage()
+    {
+        return _buffer.length() - _length;
+    }
+
+    /**
+     * Discards removed text by rewriting the document as a single piece
+     */
+    public void compact()
+    {
+        setText(getText());
+    }
+
+    /**
+     * Finds the piece containing offset, or _pieces if offset is the end of
+     * the document, and leaves its document offset in _cachedOffset.
+     */
+    private int findPiece(int offset)
+    {
+        int piece = 0;
+        int pieceOffset = 0;
+        if (_cachedPiece < _pieces && _cachedOffset <= offset)
+        {
+            // Scan forward from the last edit
+            piece = _cachedPiece;
+            pieceOffset = _cachedOffset;
+        }
+
+        while (piece < _pieces && pieceOffset + _lengths[piece] <= offset)
+        {
+            pieceOffset += _lengths[piece];
+            ++piece;
+        }
+
+        _cachedPiece = piece;
+        _cachedOffset = pieceOffset;
+        return piece;
+    }
+
+    private void addPiece(int index, int start, int length)
+    {
+        if (_pieces == _starts.length)
+        {
+            int[] starts = new int[_pieces * 2];
+            int[] lengths = new int[_pieces * 2];
+            System.arraycopy(_starts, 0, starts, 0, _pieces);
+            System.arraycopy(_lengths, 0, lengths, 0, _pieces);
+            _starts = starts;
+            _lengths = lengths;
+        }
+        System.arraycopy(_starts, index, _starts, index + 1, _pieces - index);
+        System.arraycopy(_lengths, index, _lengths, index + 1, _pieces - index);
+        _starts[index] = start;
+        _lengths[index] = length;
+        ++_pieces;
+    }
+
+    private void removePieces(int index, int count)
+    {
+        System.arraycopy(_starts, index + count, _starts, index, _pieces - index - count);
+        System.arraycopy(_lengths, index + count, _lengths, index, _pieces - index - count);
+        _pieces -= count;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * RingBuffer.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.server.bluetoothserialportdemo;
+
+import java.io.*;
+
+/**
+ * Fixed capacity circular byte buffer shared between one producer thread
+ * and one consumer thread. Reads block while the buffer is empty and writes
+ * block while it is full; after close() readers drain what is left and then
+ * see end of stream, and writers fail.
+ */
+public class RingBuffer
+{
+    private final byte[] _buffer;
+    private int _head;      // Next byte to read
+    private int _count;     // Bytes currently buffered
+    private boolean _closed;
+
+    /**
+     * Creates a new RingBuffer
+     * @param capacity The maximum number of bytes buffered at any time
+     */
+    public RingBuffer(int capacity)
+    {
+        _buffer = new byte[capacity];
+    }
+
+    /**
+     * @return The number of bytes that can be read without blocking
+     */
+    public synchronized int available()
+    {
+        return _count;
+    }
+
+    /**
+     * @return The number of bytes that can be written without blocking
+     */
+    public synchronized int remaining()
+    {
+        return _buffer.length - _count;
+    }
+
+    /**
+     * Writes all of the given bytes, blocking while the buffer is full
+     * @throws IOException if the buffer is closed
+     */
+    public synchronized void write(byte[] data, int offset, int length) throws IOException
+    {
+        while (length > 0)
+        {
+            while (_count == _buffer.length && !_closed)
+            {
+                awaitChange();
+            }
+            if (_closed)
+            {
+                throw new EOFException("Ring buffer closed");
+            }
+
+            int tail = (_head + _count) % _buffer.length;
+            int chunk = Math.min(length, Math.min(_buffer.length - _count, _buffer.length - tail));
+            System.arraycopy(data, offset, _buffer, tail, chunk);
+            _count += chunk;
+            offset += chunk;
+            length -= chunk;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Reads up to length bytes, blocking until at least one is available
+     * @return The number of bytes read, or -1 if the buffer is closed and empty
+     */
+    public synchronized int read(byte[] data, int offset, int length)
+    {
+        if (length == 0)
+        {
+            return 0;
+        }
+        while (_count == 0 && !_closed)
+        {
+            awaitChange();
+        }
+        if (_count == 0)
+        {
+            return -1;
+        }
+
+        int read = 0;
+        while (read < length && _count > 0)
+        {
+            int chunk = Math.min(length - read, Math.min(_count, _buffer.length - _head));
+            System.arraycopy(_buffer, _head, data, offset + read, chunk);
+            _head = (_head + chunk) % _buffer.length;
+            _count -= chunk;
+            read += chunk;
+        }
+        notifyAll();
+        return read;
+    }
+
+    /**
+     * Marks the end of the stream and wakes up any waiting threads
+     */
+    public synchronized void close()
+    {
+        _closed = true;
+        notifyAll();
+    }
+
+    /**
+     * @return An InputStream view that reads from this buffer
+     */
+    public InputStream getInputStream()
+    {
+        return new InputStream()
+        {
+            private final byte[] _single = new byte[1];
+
+            public int read()
+            {
+                return RingBuffer.this.read(_single, 0, 1) == -1 ? -1 : _single[0] & 0xff;
+            }
+
+            public int read(byte[] data, int offset, int length)
+            {
+                return RingBuffer.this.read(data, offset, length);
+            }
+
+            public int available()
+            {
+                return RingBuffer.this.available();
+            }
+
+            public void close()
+            {
+                RingBuffer.this.close();
+            }
+        };
+    }
+
+    /**
+     * @return An OutputStream view that writes to this buffer
+     */
+    public OutputStream getOutputStream()
+    {
+        return new OutputStream()
+        {
+            private final byte[] _single = new byte[1];
+
+            public void write(int b) throws IOException
+            {
+                _single[0] = (byte)b;
+                RingBuffer.this.write(_single, 0, 1);
+            }
+
+            public void write(byte[] data, int offset, int length) throws IOException
+            {
+                RingBuffer.this.write(data, offset, length);
+            }
+
+            public void close()
+            {
+                RingBuffer.this.close();
+            }
+        };
+    }
+
+    /**
+     * Waits for the other end to change the buffer. An interrupted thread
+     * closes the buffer so that neither end can be left blocked forever.
+     */
+    private void awaitChange()
+    {
+        try
+        {
+            wait();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            _closed = true;
+        }
+    }
+}
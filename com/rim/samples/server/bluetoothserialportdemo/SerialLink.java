@@ -0,0 +1,312 @@
+/*
+ * SerialLink.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.server.bluetoothserialportdemo;
+
+import java.io.*;
+
+/**
+ * Frame level connection to the device over any SerialTransport.
+ *
+ * <p>All port I/O happens on the link's own threads:
+ * <ul>
+ * <li>the writer thread drains the outbound ring buffer to the port,
+ * flushing whenever the buffer runs dry so that frames queued close
+ * together leave in one write;
+ * <li>the reader thread copies bytes from the port into the inbound ring
+ * buffer as soon as they arrive, so a slow listener never causes the
+ * port to overrun;
+ * <li>the dispatch thread decodes frames from the inbound ring buffer and
+ * hands them to the Listener.
+ * </ul>
+ * send() only encodes the frame into the outbound ring buffer. It blocks
+ * only if that buffer is full, i.e. when the port is far behind, so it must
+ * not be called on the Swing event thread.
+ */
+public class SerialLink
+{
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final int IO_CHUNK = 4096;
+
+    // How long close() waits for queued frames to reach the port
+    private static final long CLOSE_TIMEOUT = 5000;
+
+    /**
+     * Receives frames and link state changes. Called on the dispatch thread.
+     */
+    public interface Listener
+    {
+        public void frameReceived(Frame frame);
+
+        /**
+         * Called once when the link stops
+         * @param cause The error that stopped the link, or null if it was closed normally
+         */
+        public void linkClosed(IOException cause);
+    }
+
+    private final SerialTransport _transport;
+    private final Listener _listener;
+    private final RingBuffer _inRing;
+    private final RingBuffer _outRing;
+    private final FrameBuffer _frameBuffer = new FrameBuffer();
+    private final DataOutputStream _frameOut = new DataOutputStream(_frameBuffer);
+
+    private volatile boolean _closed;
+    private volatile Thread _writer;
+    private volatile long _bytesSent;
+    private volatile long _bytesReceived;
+    private volatile long _framesSent;
+    private volatile long _framesReceived;
+
+    /**
+     * ByteArrayOutputStream that can copy its contents into a ring buffer
+     * without an intermediate array
+     */
+    private static final class FrameBuffer extends ByteArrayOutputStream
+    {
+        void drainTo(RingBuffer ring) throws IOException
+        {
+            ring.write(buf, 0, count);
+            reset();
+        }
+    }
+
+    /**
+     * Creates a SerialLink with default sized buffers
+     */
+    public SerialLink(SerialTransport transport, Listener listener)
+    {
+        this(transport, listener, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a SerialLink
+     * @param transport The port to communicate over
+     * @param listener Receives incoming frames
+     * @param inCapacity Size in bytes of the inbound ring buffer
+     * @param outCapacity Size in bytes of the outbound ring buffer
+     */
+    public SerialLink(SerialTransport transport, Listener listener, int inCapacity, int outCapacity)
+    {
+        _transport = transport;
+        _listener = listener;
+        _inRing = new RingBuffer(inCapacity);
+        _outRing = new RingBuffer(outCapacity);
+    }
+
+    /**
+     * Starts the reader, writer and dispatch threads
+     * @throws IOException if the transport streams cannot be opened
+     */
+    public void start() throws IOException
+    {
+        final InputStream portIn = _transport.getInputStream();
+        final OutputStream portOut = _transport.getOutputStream();
+
+        _writer = startThread("SerialLink-writer", new Runnable()
+        {
+            public void run()
+            {
+                pumpOut(portOut);
+            }
+        });
+        startThread("SerialLink-reader", new Runnable()
+        {
+            public void run()
+            {
+                pumpIn(portIn);
+            }
+        });
+        startThread("SerialLink-dispatch", new Runnable()
+        {
+            public void run()
+            {
+                dispatch();
+            }
+        });
+    }
+
+    /**
+     * Queues a frame for sending
+     * @throws IOException if the link has been closed
+     */
+    public void send(Frame frame) throws IOException
+    {
+        synchronized (_frameBuffer)
+        {
+            frame.writeTo(_frameOut);
+            _frameBuffer.drainTo(_outRing);
+            ++_framesSent;
+        }
+    }
+
+    /**
+     * Closes the link and the underlying transport. Frames already queued by
+     * send() are written to the port first, unless that takes longer than
+     * CLOSE_TIMEOUT.
+     */
+    public void close()
+    {
+        _closed = true;
+        _outRing.close();
+
+        // The writer drains the closed ring and then exits
+        Thread writer = _writer;
+        if (writer != null && writer != Thread.currentThread())
+        {
+            try
+            {
+                writer.join(CLOSE_TIMEOUT);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        _inRing.close();
+        _transport.close();
+    }
+
+    public long getBytesSent()
+    {
+        return _bytesSent;
+    }
+
+    public long getBytesReceived()
+    {
+        return _bytesReceived;
+    }
+
+    public long getFramesSent()
+    {
+        return _framesSent;
+    }
+
+    public long getFramesReceived()
+    {
+        return _framesReceived;
+    }
+
+    /**
+     * @return The number of bytes queued but not yet written to the port
+     */
+    public int getPendingBytes()
+    {
+        return _outRing.available();
+    }
+
+    private Thread startThread(String name, Runnable task)
+    {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private void pumpOut(OutputStream portOut)
+    {
+        byte[] chunk = new byte[IO_CHUNK];
+        try
+        {
+            int count;
+            while ((count = _outRing.read(chunk, 0, chunk.length)) != -1)
+            {
+                portOut.write(chunk, 0, count);
+                _bytesSent += count;
+                if (_outRing.available() == 0)
+                {
+                    portOut.flush();
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            if (!_closed)
+            {
+                System.err.println("Serial write failed: " + e);
+                _inRing.close();
+            }
+        }
+    }
+
+    private void pumpIn(InputStream portIn)
+    {
+        byte[] chunk = new byte[IO_CHUNK];
+        try
+        {
+            int count;
+            while ((count = portIn.read(chunk, 0, chunk.length)) != -1)
+            {
+                _inRing.write(chunk, 0, count);
+                _bytesReceived += count;
+            }
+        }
+        catch (IOException e)
+        {
+            if (!_closed)
+            {
+                System.err.println("Serial read failed: " + e);
+            }
+        }
+        _inRing.close();
+    }
+
+    private void dispatch()
+    {
+        DataInputStream in = new DataInputStream(_inRing.getInputStream());
+        IOException cause = null;
+        try
+        {
+            for (;;)
+            {
+                Frame frame = Frame.readFrom(in);
+                ++_framesReceived;
+                _listener.frameReceived(frame);
+            }
+        }
+        catch (EOFException e)
+        {
+            // Peer or local side closed the link
+        }
+        catch (IOException e)
+        {
+            cause = e;
+        }
+        catch (RuntimeException e)
+        {
+            // A listener failure must still close the link and report it
+            e.printStackTrace();
+            cause = new IOException("Frame dispatch failed: " + e);
+            cause.initCause(e);
+        }
+
+        close();
+        _listener.linkClosed(cause);
+    }
+}
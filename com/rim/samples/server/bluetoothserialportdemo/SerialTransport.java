@@ -0,0 +1,53 @@
+/*
+ * SerialTransport.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.server.bluetoothserialportdemo;
+
+import java.io.*;
+
+/**
+ * A bidirectional byte stream connecting the server to the device. The
+ * BluetoothSerialPortServer only talks to this interface, so the javax.comm
+ * serial port can be replaced by a loopback socket or an in-process pipe
+ * when no Bluetooth hardware is available.
+ */
+public interface SerialTransport
+{
+    /**
+     * @return The stream of bytes arriving from the peer
+     */
+    public InputStream getInputStream() throws IOException;
+
+    /**
+     * @return The stream of bytes sent to the peer
+     */
+    public OutputStream getOutputStream() throws IOException;
+
+    /**
+     * Releases the underlying port or socket
+     */
+    public void close();
+}
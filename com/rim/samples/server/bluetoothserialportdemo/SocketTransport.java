@@ -0,0 +1,93 @@
+/*
+ * SocketTransport.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.server.bluetoothserialportdemo;
+
+import java.io.*;
+import java.net.*;
+
+/**
+ * SerialTransport over a TCP socket. Used to run the demo, or a test peer,
+ * over loopback instead of a Bluetooth serial port.
+ */
+public class SocketTransport implements SerialTransport
+{
+    private final Socket _socket;
+
+    /**
+     * Wraps an already connected socket
+     */
+    public SocketTransport(Socket socket) throws IOException
+    {
+        _socket = socket;
+        _socket.setTcpNoDelay(true);
+    }
+
+    /**
+     * Connects to a peer that is listening on the given address
+     */
+    public static SocketTransport connect(String host, int port) throws IOException
+    {
+        return new SocketTransport(new Socket(host, port));
+    }
+
+    /**
+     * Waits for a single peer to connect on the given port
+     */
+    public static SocketTransport listen(int port) throws IOException
+    {
+        ServerSocket serverSocket = new ServerSocket(port);
+        try
+        {
+            return new SocketTransport(serverSocket.accept());
+        }
+        finally
+        {
+            serverSocket.close();
+        }
+    }
+
+    public InputStream getInputStream() throws IOException
+    {
+        return _socket.getInputStream();
+    }
+
+    public OutputStream getOutputStream() throws IOException
+    {
+        return _socket.getOutputStream();
+    }
+
+    public void close()
+    {
+        try
+        {
+            _socket.close();
+        }
+        catch (IOException e)
+        {
+        }
+    }
+}
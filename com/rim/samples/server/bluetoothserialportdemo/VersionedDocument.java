@@ -0,0 +1,216 @@
+/*
+ * VersionedDocument.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.server.bluetoothserialportdemo;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The server's authoritative copy of the shared document, versioned so the
+ * device can recover from lost frames without retransmitting the whole text.
+ *
+ * <p>Every batch of edits committed to the document gets the next sequence
+ * number, and the BATCH frame carrying it is kept in a bounded log. A device
+ * that notices a gap in sequence numbers sends RESYNC with the last sequence
+ * number it applied and receives only the logged frames after it; if those
+ * have already been dropped from the log it receives a SNAPSHOT instead.
+ * Every CHECKPOINT_INTERVAL commits a CHECKPOINT carrying the checksum of
+ * the document is sent as well, so that a device whose copy has silently
+ * diverged can ask for a full SNAPSHOT.
+ *
+ * <p>Callers must hold the lock on this object across a commit and the send
+ * of the resulting frame, so that frames reach the link in sequence order.
+ */
+public class VersionedDocument
+{
+    public static final int CHECKPOINT_INTERVAL = 32;
+
+    static final int ADLER_INIT = 1;
+    private static final int ADLER_MOD = 65521;
+
+    // Upper bound on the payload bytes kept in the delta log
+    private static final int MAX_LOG_BYTES = 256 * 1024;
+
+    private final PieceTable _text = new PieceTable();
+    private final Vector _log = new Vector();   // Frame[], oldest first
+    private int _logBytes;
+    private int _seq;
+
+    /**
+     * @return The sequence number of the latest commit
+     */
+    public synchronized int getSeq()
+    {
+        return _seq;
+    }
+
+    /**
+     * @return The number of characters in the document
+     */
+    public synchronized int length()
+    {
+        return _text.length();
+    }
+
+    /**
+     * Applies an insert that is part of the next commit
+     */
+    public synchronized void insert(int offset, String text)
+    {
+        _text.insert(offset, text);
+    }
+
+    /**
+     * Applies a remove that is part of the next commit
+     */
+    public synchronized void remove(int offset, int length)
+    {
+        _text.remove(offset, length);
+    }
+
+    /**
+     * Completes a commit of the edits applied since the previous one
+     * @param flags The BATCH frame flags
+     * @param payload The encoded edits
+     * @return The BATCH frame to send
+     */
+    public synchronized Frame commit(int flags, byte[] payload)
+    {
+        Frame frame = Frame.batch(++_seq, flags, payload);
+        _log.addElement(frame);
+        _logBytes += payload.length;
+        while (_logBytes > MAX_LOG_BYTES && _log.size() > 1)
+        {
+            Frame oldest = (Frame)_log.firstElement();
+            _log.removeElementAt(0);
+            _logBytes -= oldest.payload.length;
+        }
+        return frame;
+    }
+
+    /**
+     * @return True if a CHECKPOINT should follow the latest commit
+     */
+    public synchronized boolean isCheckpointDue()
+    {
+        return _seq % CHECKPOINT_INTERVAL == 0;
+    }
+
+    /**
+     * @return A CHECKPOINT frame for the current version
+     */
+    public synchronized Frame checkpoint()
+    {
+        if (_text.getGarbage() > _text.length())
+        {
+            _text.compact();
+        }
+        return Frame.checkpoint(_seq, _text.checksum());
+    }
+
+    /**
+     * @return A SNAPSHOT frame holding the whole current version
+     * @throws IOException if the document is larger than Frame.MAX_PAYLOAD,
+     * which the peer would reject
+     */
+    public synchronized Frame snapshot() throws IOException
+    {
+        ByteArrayOutputStream utf8 = new ByteArrayOutputStream(_text.length());
+        Writer writer = new OutputStreamWriter(utf8, "UTF-8");
+        _text.writeTo(writer);
+        writer.flush();
+        if (utf8.size() > Frame.MAX_PAYLOAD)
+        {
+            throw new IOException("Document too large for a snapshot: " + utf8.size() + " bytes");
+        }
+        return Frame.snapshot(_seq, _text.checksum(), utf8.toByteArray());
+    }
+
+    /**
+     * Replaces the whole document, e.g. with the initial contents received
+     * from the device. Logged frames no longer apply, so the log is cleared.
+     */
+    public synchronized void reset(String text)
+    {
+        _text.setText(text);
+        ++_seq;
+        _log.removeAllElements();
+        _logBytes = 0;
+    }
+
+    /**
+     * Finds the frames a peer needs to catch up from the given version
+     * @param seq The last sequence number the peer applied
+     * @return The logged BATCH frames after seq, oldest first, or null if the
+     * peer needs a SNAPSHOT instead
+     */
+    public synchronized Vector framesAfter(int seq)
+    {
+        Vector frames = new Vector();
+        if (seq == _seq)
+        {
+            return frames;
+        }
+        if (seq > _seq || seq < 0 || _log.isEmpty() || ((Frame)_log.firstElement()).seq > seq + 1)
+        {
+            return null;
+        }
+
+        // Logged sequence numbers are contiguous
+        int first = seq + 1 - ((Frame)_log.firstElement()).seq;
+        for (int i = first; i < _log.size(); ++i)
+        {
+            frames.addElement(_log.elementAt(i));
+        }
+        return frames;
+    }
+
+    /**
+     * Computes the document checksum of a String: Adler-32 over the UTF-16
+     * big-endian encoding of the text. The device computes the same value.
+     */
+    public static int checksum(String text)
+    {
+        int adler = ADLER_INIT;
+        for (int i = 0; i < text.length(); ++i)
+        {
+            adler = updateChecksum(adler, text.charAt(i));
+        }
+        return adler;
+    }
+
+    static int updateChecksum(int adler, char c)
+    {
+        int a = adler & 0xffff;
+        int b = adler >>> 16;
+        a = (a + (c >>> 8)) % ADLER_MOD;
+        b = (b + a) % ADLER_MOD;
+        a = (a + (c & 0xff)) % ADLER_MOD;
+        b = (b + a) % ADLER_MOD;
+        return (b << 16) | a;
+    }
+}
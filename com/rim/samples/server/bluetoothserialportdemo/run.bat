@@ -2,9 +2,9 @@
 REM Build and run script for the BluetoothSerialPortServer.
 
 del *.class
-javac -classpath .;comm.jar BluetoothSerialPortServer.java
+javac -classpath .;comm.jar *.java
 pushd ..\..\..\..\..
-	java -cp .;com\rim\samples\server\bluetoothserialportdemo\comm.jar com.rim.samples.server.bluetoothserialportdemo.BluetoothSerialPortServer
+	java -cp .;com\rim\samples\server\bluetoothserialportdemo\comm.jar com.rim.samples.server.bluetoothserialportdemo.BluetoothSerialPortServer %1
 popd
 
 
@@ -37,7 +37,15 @@ import java.net.InetSocketAddress;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.rim.samples.server.runtime.ActiveWork;
+import com.rim.samples.server.runtime.ServerComponent;
+import com.rim.samples.server.runtime.ServerContext;
+import com.rim.samples.server.runtime.ServerRuntime;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
@@ -46,22 +54,48 @@ import com.sun.net.httpserver.HttpServer;
 /**
  * A class to echo the body of an HTTP request back as the HTTP response. The URL
  * to access the HTTPServer is "http://[YOUR_IP]:8105/JSON".
+ * <p>
+ * The port and response delay are read from the echo.port and echo.delay
+ * properties, and requests are served concurrently on the server's executor in
+ * the hosting com.rim.samples.server.runtime.ServerRuntime. Responses wait out
+ * the delay on the runtime's timer rather than on a worker thread.
  */
-public final class EchoServer
+public final class EchoServer implements ServerComponent
 {
 
     public final static int RESPONSE_DELAY = 1; 
-    public static int reqCounter = 1;  
+    private static final int PORT = 8105; // Default server port 
     private static DateFormat df = new SimpleDateFormat("HH:mm:ss MM/dd/yy");
-    private static int port = 8105; // Server port 
+
+    private final AtomicInteger reqCounter = new AtomicInteger(1);  
+    private final ActiveWork activeWork = new ActiveWork();
+    private ServerContext context;
+    private HttpServer server;
+    private int responseDelay = RESPONSE_DELAY;
 
     /**
      * Entry point
+     * @param args Optional properties file
      */
-    public static void main(String[] args) throws IOException
+    public static void main(String[] args) throws InterruptedException
+    {
+        ServerRuntime.launch(new EchoServer(), args).await();
+    }
+
+
+    public String getName()
+    {
+        return "echo";
+    }
+
+
+    public void start(final ServerContext context) throws IOException
     {
         final InetSocketAddress addr;
-        final HttpServer server;
+        final int port = context.getInt("port", PORT);
+
+        this.context = context;
+        responseDelay = context.getInt("delay", RESPONSE_DELAY);
 
         String address = InetAddress.getLocalHost().getHostAddress();
 
@@ -69,24 +103,135 @@ public final class EchoServer
 
         server = HttpServer.create(addr, 10);
 
-        server.createContext("/ATOM", new GenericHandler("public_timeline.atom"));
-        server.createContext("/RSS", new GenericHandler("public_timeline.rss"));
-        server.createContext("/SOAP", new GenericHandler("simple_soap.xml"));
-        server.createContext("/JSON", new GenericHandler("public_timeline.json"));
-        server.createContext("/XML", new GenericHandler("public_timeline.xml"));
+        server.createContext("/ATOM", new GenericHandler(this, "public_timeline.atom"));
+        server.createContext("/RSS", new GenericHandler(this, "public_timeline.rss"));
+        server.createContext("/SOAP", new GenericHandler(this, "simple_soap.xml"));
+        server.createContext("/JSON", new GenericHandler(this, "public_timeline.json"));
+        server.createContext("/XML", new GenericHandler(this, "public_timeline.xml"));
 
-        server.createContext("/TEXT", new TEXTHandler());
-        server.createContext("/TEXT2", new TEXTHandler());
+        server.createContext("/TEXT", new TEXTHandler(this));
+        server.createContext("/TEXT2", new TEXTHandler(this));
 
+        // Serve requests on the server's pool; the default executor handles
+        // one request at a time
+        server.setExecutor(new Executor()
+        {
+            public void execute(Runnable exchange)
+            {
+                if(!activeWork.execute(context, "request", exchange))
+                {
+                    throw new RejectedExecutionException("Server is busy or stopping");
+                }
+            }
+        });
         server.start();
 
-        System.out.println("Server started on IP: " + address + ":" + port + " at " + df.format(new Date()));
+        System.out.println("Server started on IP: " + address + ":" + port + " at " + timestamp());
         String serverUri = "http://" + address + ":" + port;
 
         String statusInfo = String.format("\n%s\n%s\n%s\n%s\n%s\n%s\n%s\n%s", "Listening for requests:", serverUri + "/ATOM", serverUri
                         + "/RSS", serverUri + "/SOAP", serverUri + "/JSON", serverUri + "/XML", serverUri + "/TEXT", serverUri + "/TEXT2");
         System.out.println(statusInfo);
-        System.out.println("Responses will be sent with a delay of " + RESPONSE_DELAY + " sec");
+        System.out.println("Responses will be sent with a delay of " + responseDelay + " sec");
+    }
+
+
+    public void stop()
+    {
+        // Refuse new exchanges now, but only close the server, and with it
+        // the connections of the exchanges in flight, once they have finished
+        // and their delayed responses have been sent
+        activeWork.close(new Runnable()
+        {
+            public void run()
+            {
+                server.stop(0);
+            }
+        });
+    }
+
+
+    /**
+     * Counts an incoming request
+     * @return The request's id
+     */
+    int nextRequest()
+    {
+        context.counter("requests").increment();
+        return reqCounter.getAndIncrement();
+    }
+
+
+    /**
+     * Sends a response once the configured response delay has passed. The
+     * exchange stays in flight until then, but no thread waits for it. If
+     * the runtime is stopping the response is sent straight away.
+     * @param exchange The exchange to respond to
+     * @param response The response body
+     */
+    void respond(final HttpExchange exchange, final String response) throws IOException
+    {
+        final Runnable send = new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    sendResponse(exchange, response);
+                }
+                catch(IOException e)
+                {
+                    context.counter("errors").increment();
+                    System.out.println("Unable to send response: " + e);
+                }
+                finally
+                {
+                    activeWork.exit();
+                }
+            }
+        };
+
+        if(activeWork.enter())
+        {
+            if(context.schedule("response", send, responseDelay, TimeUnit.SECONDS))
+            {
+                System.out.println("\tWaiting " + responseDelay + " sec ...");
+                return;
+            }
+            activeWork.exit();
+        }
+        sendResponse(exchange, response);
+    }
+
+
+    /**
+     * Writes a response and completes the exchange
+     */
+    private static void sendResponse(HttpExchange t, String response) throws IOException
+    {
+        t.sendResponseHeaders(HTTP_OK, response.length());
+
+        OutputStream os = t.getResponseBody();
+
+        os.write(response.getBytes());
+
+        os.close();
+        t.close();
+        System.out.println("<< response [length = " + response.length() + ", time: " + timestamp() + "]");
+        System.out.flush();
+    }
+
+
+    /**
+     * @return The current time formatted for the request log
+     */
+    static String timestamp()
+    {
+        // DateFormat is not thread safe and requests are now served concurrently
+        synchronized(df)
+        {
+            return df.format(new Date());
+        }
     }
 
 
@@ -142,21 +287,21 @@ class GenericHandler implements HttpHandler
 {
 
     private String path = "com\\rim\\samples\\server\\communicationapidemo\\";
+    private EchoServer _server;
     private String _fileName;
-    private DateFormat df = new SimpleDateFormat("HH:mm:ss MM/dd/yy");
 
 
-    public GenericHandler(String fileName)
+    public GenericHandler(EchoServer server, String fileName)
     {
+        _server = server;
         _fileName = fileName;
     }
 
 
     public void handle(HttpExchange t) throws IOException
     {
-        final OutputStream os;
         String response;
-        System.out.println("\n>> incoming request [id: " + EchoServer.reqCounter++ + ", time: " + df.format(new Date()) + "]");
+        System.out.println("\n>> incoming request [id: " + _server.nextRequest() + ", time: " + EchoServer.timestamp() + "]");
 
         byte[] fileArray = EchoServer.getBytesFromFile(new File(path + _fileName));
         response = "";
@@ -168,44 +313,29 @@ class GenericHandler implements HttpHandler
             }
         }
 
-        try
-        {
-            System.out.print("\tWaiting " + EchoServer.RESPONSE_DELAY + " sec ...");
-            Thread.sleep(EchoServer.RESPONSE_DELAY * 1000);
-            System.out.println("DONE");
-        }
-        catch(InterruptedException e)
-        {
-            e.printStackTrace();
-        }
-
-        t.sendResponseHeaders(HTTP_OK, response.length());
-
-        os = t.getResponseBody();
-
-        os.write(response.getBytes());
-
-        os.close();
-        t.close();
-        System.out.println("<< response [length = " + response.length() + ", time: " + df.format(new Date()) + "]");
-        System.out.flush();
+        _server.respond(t, response);
     }
 }
 
 
 class TEXTHandler implements HttpHandler
 {
-    private DateFormat df = new SimpleDateFormat("HH:mm:ss MM/dd/yy");
+    private EchoServer _server;
+
+
+    public TEXTHandler(EchoServer server)
+    {
+        _server = server;
+    }
 
 
     public void handle(HttpExchange t) throws IOException
     {
         final InputStream is;
-        final OutputStream os;
         StringBuilder buf;
         int b;
         final String request, response;
-        System.out.println("\n>> incoming request [id: " + EchoServer.reqCounter++ + ", time: " + df.format(new Date()) + "]");
+        System.out.println("\n>> incoming request [id: " + _server.nextRequest() + ", time: " + EchoServer.timestamp() + "]");
         buf = new StringBuilder();        
 
         is = t.getRequestBody();
@@ -225,27 +355,6 @@ class TEXTHandler implements HttpHandler
          * but building the String first allows us to know the exact length so
          * we can send a response with a known size.
          */
-        try
-        {
-            System.out.print("\tWaiting " + EchoServer.RESPONSE_DELAY + " sec ...");
-            Thread.sleep(EchoServer.RESPONSE_DELAY * 1000);
-            System.out.println("DONE");
-        }
-        catch(InterruptedException e)
-        {
-            e.printStackTrace();
-        }
-
-        t.sendResponseHeaders(HTTP_OK, response.length());
-
-        os = t.getResponseBody();
-
-        os.write(response.getBytes());        
-
-        os.close();
-        t.close();
-        
-        System.out.println("<< response [length = " + response.length() + ", time: " + df.format(new Date()) + "]");
-        System.out.flush();
+        _server.respond(t, response);
     }
 }
@@ -2,7 +2,7 @@
 REM Build and run script for the HTTP Echo Server
 
 del *.class
-javac EchoServer.java
+javac -sourcepath ..\..\..\..\.. EchoServer.java
 pushd ..\..\..\..\..
     java -cp . com.rim.samples.server.communicationapidemo.EchoServer
 popd
\ No newline at end of file
@@ -30,54 +30,90 @@ import java.net.*;
 import java.io.*;
 import java.util.*;
 
+import com.rim.samples.server.runtime.*;
+
 /**
  * <p>The main server class
  * <p>To run this simple program, invoke the following from the command line:
- *  java  com.rim.samples.server.gspdemo.GPSServer
+ *  java  com.rim.samples.server.gspdemo.GPSServer [config.properties]
+ * <p>The server can also be hosted alongside the other sample servers by
+ * com.rim.samples.server.runtime.ServerRuntime. It listens on the port given
+ * by the gps.port property (default 5555).
  */
-public class GPSServer 
+public class GPSServer implements ServerComponent, Runnable
 {
     private static final int PORT = 5555;    
-    private static Store _store;
+    private Store _store;
+    private ServerContext _context;
+    private ServerSocket _serverSocket;
 
-    public static void main(String[] args)
+    public static void main(String[] args) throws InterruptedException
     {
-    	_store = new Store();
-    	GPSServer app = new GPSServer();
+    	ServerRuntime.launch(new GPSServer(), args).await();
     }
 
-    public GPSServer() 
+    public String getName()
+    {
+        return "gps";
+    }
+
+    public void start(ServerContext context) throws IOException
     {    
-    	ServerSocket serverSocket = null;
+        int port = context.getInt("port", PORT);
     	try {
-            serverSocket = new ServerSocket(PORT);
-            System.out.println("GPSServer.started");
+            _serverSocket = new ServerSocket(port);
     	} catch (IOException e) {
-            System.err.println(e + "- port:" + PORT);
-            System.exit(-1);
+            throw new IOException(e + "- port:" + port);
     	}
-    
+        System.out.println("GPSServer.started");
+        _store = new Store();
+        _context = context;
+        context.startLoop("accept", this);
+    }
+
+    public void stop()
+    {
+        try {
+            _serverSocket.close();
+        } catch (IOException e) {
+        }
+    }
+
+    /**
+     * Accept loop, runs until the server socket is closed
+     */
+    public void run()
+    {
     	for(;;)
     	{
             Socket clientSocket = null;
             try {
             	System.out.println("GPSServer.WaitingForClient");
-            	clientSocket = serverSocket.accept(); //blocking call - waits for a connection
+            	clientSocket = _serverSocket.accept(); //blocking call - waits for a connection
             	System.out.println("GPSServer.ClientConnecting" + ":" + clientSocket.getInetAddress().getHostAddress());
             } catch (IOException e) {
-            	System.err.println(e);
-            	System.exit(-1);
+                if (!_serverSocket.isClosed()) {
+                    System.err.println(e);
+                }
+                return;
+            }
+            _context.counter("connections").increment();
+
+            //hand this socket to the server's executor - this way new socket connections can be served immediately
+            if (!_context.execute("connection", new Worker(clientSocket, _store))) {
+                try {
+                    clientSocket.close();
+                } catch (IOException e) {
+                }
             }
-            //spin off a new thread to handle this socket - this way new socket connections can be served immediately
-            (new Worker(clientSocket, _store)).start();
     	}
     }
 
     /**
-     * <p>Worker is just a simple thread that handles each inbound socket connection
+     * <p>Worker handles a single inbound socket connection on the server's executor
      * so that further socket connections can be accepted while another socket is handled!
      */
-    /*package*/ class Worker extends Thread
+    /*package*/ class Worker implements Runnable
     {
         private Socket _clientSocket;
         private static final String RECEIVED = "Received";
@@ -137,7 +173,9 @@ public class GPSServer
                         speed = Float.parseFloat(st1.nextToken());
                         time = Long.parseLong(st1.nextToken());
                         Point p = new Point(time,latitude, longitude, altitude, distance, speed);
-                        store._map.put(new Long(time), p);
+                        synchronized (store) {
+                            store._map.put(new Long(time), p);
+                        }
                         v.addElement(point);
                     }
                 } catch(NoSuchElementException e) {
@@ -152,8 +190,12 @@ public class GPSServer
                 printWriter.close();
                 
                 _clientSocket.close();
-                GPSServer._store.save(v);  
-                SpeedAltitudePlot.createCombinedChart(store._map.values());
+                // Workers run concurrently; the store and the chart are shared
+                synchronized (store) {
+                    store.save(v);  
+                    SpeedAltitudePlot.createCombinedChart(store._map.values());
+                }
+                _context.counter("points").add(v.size());
                 System.out.println(_clientSocket.getPort() + " Done");
             } catch(IOException ie) {
                 System.out.println("Exception:"+ie);
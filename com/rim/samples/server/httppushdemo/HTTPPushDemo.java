@@ -49,13 +49,9 @@ public class HTTPPushDemo extends javax.swing.JFrame {
 
     //constants -----------------------------------------------------------------
     private static final String RESOURCE_PATH = "com/rim/samples/server/httppushdemo/resources";
-    private static final String DEVICE_PIN = "2100000A";
-    private static final String DEVICE_PORT = "100";
-    private static final int MDS_PORT = 8080;
+    private static final int NOTIFY_PORT = 7778;
 
-    private String requestTemplate;
-    private String notifyURL="http://localhost:7778";
-    private Random random= new Random();
+    private final PushClient _client = new PushClient();
     private Thread notificationThread;
 
     //statics -------------------------------------------------------------------
@@ -74,26 +70,6 @@ public class HTTPPushDemo extends javax.swing.JFrame {
         notificationThread= new NotificationThread();
     }
 
-    private URL getPushURL(String DevicePin)
-    {
-        /**
-         * The format of the URL is:
-         * http://<host>:<port>/push?DESTINATION=<device pin>&PORT=<device_port>&REQUESTURI=<post uri>
-         */
-        URL _pushURL = null;
-        try {
-            if ((DevicePin == null) || (DevicePin.length() == 0))
-            {
-                DevicePin = DEVICE_PIN;
-            }
-            _pushURL = new URL("http", "localhost", MDS_PORT, "/push?DESTINATION="+ DevicePin +"&PORT="+DEVICE_PORT+"&REQUESTURI=localhost");
-            
-        } catch (MalformedURLException e) {
-            System.err.println(e.toString());
-        }
-        return _pushURL;
-    }
-
     /** 
      * This method is called from within the constructor to
      * initialize the form.
@@ -103,7 +79,7 @@ public class HTTPPushDemo extends javax.swing.JFrame {
     private void initComponents() {//GEN-BEGIN:initComponents
         _panel = new javax.swing.JPanel();        
         _textArea= new javax.swing.JTextArea();
-        _pinField = new javax.swing.JTextField(DEVICE_PIN);
+        _pinField = new javax.swing.JTextField(PushClient.DEFAULT_DEVICE_PIN);
         _label = new javax.swing.JTextArea();
         _notification=new javax.swing.JTextArea();
         _rimButton= new javax.swing.JRadioButton("rim", true);
@@ -175,80 +151,39 @@ public class HTTPPushDemo extends javax.swing.JFrame {
     private void sendButtonMouseClicked(java.awt.event.MouseEvent evt) 
     {//GEN-FIRST:event_sendButtonMouseClicked
 
-        String text =_textArea.getText();
+        final String text =_textArea.getText();
+        final String pin = _pinField.getText();
+        final boolean pap = _papButton.isSelected();
 
-        if(_rimButton.isSelected()) postData(text);
-        else if(_papButton.isSelected()) papPush(text);
+        setupNotifyThread();
+
+        // The push is performed off the event dispatch thread so that the UI
+        // stays responsive while MDS is contacted
+        new Thread() {
+            public void run() {
+                send(pin, text, pap);
+            }
+        }.start();
 
     }//GEN-LAST:event_sendButtonMouseClicked
 
    /**
-    * <p>posts the specified data to the device
-    * <p>The URL is hardcoded for the purposes of this demo, and takes the form:
-    * http://&lt;host&gt;:&lt;port&gt;/push?DESTINATION=&ltdevice pin&gt;&PORT=&lt;device_port&gt;&REQUESTURI=&lt;post uri&gt;
-    * param data the data to post
-    *
+    * <p>Pushes the specified data to the device using the selected push type
+    * @param pin the device PIN
+    * @param data the data to push
+    * @param pap true for a PAP push, false for a RIM push
     */
-    private void postData(String data)
+    private void send(String pin, String data, boolean pap)
     {
-
-        String pushId="pushID:"+random.nextInt();
-
-        setupNotifyThread();
-        
         try {
-            URL url = getPushURL(_pinField.getText());
-            System.out.println(_resources.getString("HTTPPushDemo.status.sendingToString") + url.toString());
-
-            //open the connection using the static member...
-            HttpURLConnection conn =(HttpURLConnection)url.openConnection();
-            conn.setDoInput(true);//For receiving the confirmation
-            conn.setDoOutput(true);//For sending the data
-            conn.setRequestMethod("POST");//Post the data to the proxy
-            conn.setRequestProperty("X-RIM-PUSH-ID", pushId);
-            conn.setRequestProperty("X-RIM-Push-NotifyURL", notifyURL);
-
-            // To enable application level push reliability, uncomment the following line                  
-            //conn.setRequestProperty("X-RIM-Push-Reliability-Mode","APPLICATION");
-
-            //Write the data
-            OutputStream out = conn.getOutputStream();
-            out.write(data.getBytes());
-            out.close();
-            InputStream ins =conn.getInputStream();
-            int contentLength =conn.getContentLength();
-            System.out.println( _resources.getString("HTTPPushDemo.status.contentLengthDescription")+ contentLength);
-            if (contentLength > 0)
-            {
-                byte[] someArray = new byte [contentLength];
-                DataInputStream dins = new DataInputStream(ins);
-                dins.readFully(someArray);
-                System.out.println(new String(someArray));
-            }
-
-            conn.disconnect();
-
+            System.out.println(_resources.getString("HTTPPushDemo.status.sendingToString") + (pap ? "PAP" : "RIM") + " " + pin);
+            int httpCode = _client.push(pin, data.getBytes("UTF-8"), pap, new byte[PushClient.BUFFER_SIZE]);
+            System.out.println(_resources.getString("HTTPPushDemo.status.responseCode") + httpCode);
         } catch (IOException e) {
             System.err.println(e);
         }
     }
 
-
-
-    private void readPapTemplate()
-    {
-
-        try {
-            String papFilename =  "com/rim/samples/server/httppushdemo/pap_push.txt";
-                InputStream ins = new BufferedInputStream(new FileInputStream(papFilename));            
-            ByteArrayOutputStream bouts = new ByteArrayOutputStream();
-            copyStreams(ins, bouts);
-            this.requestTemplate = new String(bouts.toByteArray());
-        } catch (Exception exception) {
-            exception.printStackTrace();
-        }
-    }
-    
     private void setupNotifyThread()
     {
         if( !notificationThread.isAlive() )
@@ -258,84 +193,6 @@ public class HTTPPushDemo extends javax.swing.JFrame {
         }
     }   
 
-
-    private void papPush(String data)
-    {
-        String pushId="pushID:"+random.nextInt();
-        
-        setupNotifyThread();
-        
-        readPapTemplate();
-        try {
-            String mdsHost = "localhost";
-            URL mdsUrl = new URL("http", mdsHost, MDS_PORT, "/pap");
-            System.out.println(" sending PAP request to " + mdsUrl.toString() + "; pushId = " + pushId);
-
-            HttpURLConnection mdsConn = (HttpURLConnection)mdsUrl.openConnection();
-
-            String boundary = "";
-            boundary = "asdlfkjiurwghasf";
-            mdsConn.setRequestProperty("Content-Type", "multipart/related; type=\"application/xml\"; boundary=" + boundary);
-            mdsConn.setRequestProperty("X-Wap-Application-Id", "/");
-            mdsConn.setRequestProperty("X-Rim-Push-Dest-Port","100");
-            mdsConn.setRequestMethod("POST");
-
-            mdsConn.setAllowUserInteraction(false);
-            mdsConn.setDoInput(true);
-            mdsConn.setDoOutput(true);
-
-            String output = requestTemplate.replaceAll("\\$\\(pushid\\)", pushId);
-            output = output.replaceAll("\\$\\(boundary\\)", boundary);
-            output = output.replaceAll("\\$\\(notifyURL\\)", "" + notifyURL);
-            output = output.replaceAll("\\$\\(pin\\)", "" + _pinField.getText());
-
-            String   deliveryMethod = "application-level";
-
-            output = output.replaceAll("\\$\\(deliveryMethod\\)", deliveryMethod);
-
-
-            output = output.replaceAll("\\$\\(headers\\)", "Content-Type: text/plain");
-            output = output.replaceAll("\\$\\(content\\)", data);
-
-            output = output.replaceAll("\r\n", "EOL");
-            output = output.replaceAll("\n", "EOL");
-            output = output.replaceAll("EOL", "\r\n");
-
-
-            System.out.println(output);
-            OutputStream outs = mdsConn.getOutputStream();
-            copyStreams(new ByteArrayInputStream(output.getBytes()), outs);
-
-            mdsConn.connect();
-
-            ByteArrayOutputStream response = new ByteArrayOutputStream();
-            copyStreams(mdsConn.getInputStream(), response);
-
-            int httpCode = mdsConn.getResponseCode();
-
-            if (httpCode != HttpURLConnection.HTTP_ACCEPTED) {
-                throw new Exception("MDS returned HTTP status: " + httpCode);
-            }
-
-        } catch (Exception exception) {
-            System.out.println(" encountered error on submission: " + exception.toString());
-        }
-    }
-
-    public void copyStreams(InputStream ins, OutputStream outs) throws IOException
-    {           
-            byte [] buffer = new byte[1024];
-            int bytesRead;
-
-            for(;;)
-            {
-                bytesRead = ins.read(buffer);
-                System.out.println(buffer);
-                if (bytesRead <= 0) break; 
-                outs.write(buffer, 0, bytesRead);
-            }
-    }
-
     /** Exit the Application */
     private void exitForm(java.awt.event.WindowEvent evt) {//GEN-FIRST:event_exitForm
         System.exit (0);
@@ -366,10 +223,10 @@ public class HTTPPushDemo extends javax.swing.JFrame {
         public void run() 
         {
             try {
-                System.out.println("Waiting for notification on port " + 7778 + "...");
+                System.out.println("Waiting for notification on port " + NOTIFY_PORT + "...");
                 while (true)
                 {
-                    ServerSocket serverSocket = new ServerSocket(7778);
+                    ServerSocket serverSocket = new ServerSocket(NOTIFY_PORT);
                     serverSocket.setSoTimeout(120000);
                     try {
                         Socket clientSocket = serverSocket.accept();
@@ -0,0 +1,307 @@
+/*
+ * PushCli.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.server.httppushdemo;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * <p>Command line front end to PushClient for driving pushes from batch jobs.
+ * <p>Recipients are read one per line from a file, or from standard input when
+ * the file name is "-".  Blank lines and lines starting with '#' are ignored.
+ * Each line holds a device PIN optionally followed by the name of a file whose
+ * contents are pushed to that PIN instead of the default payload:
+ * <pre>
+ *    2100000A
+ *    2100000B  alert.txt
+ * </pre>
+ * <p>Usage:
+ * <pre>
+ *    java com.rim.samples.server.httppushdemo.PushCli [options] -recipients &lt;file|-&gt;
+ *        -payload &lt;file|-&gt;   default payload pushed to each recipient
+ *        -pap                 use PAP push instead of RIM push
+ *        -threads &lt;n&gt;         number of concurrent pushes (default 4)
+ *        -host &lt;host&gt;         MDS host (default localhost)
+ *        -port &lt;port&gt;         MDS port (default 8080)
+ *        -deviceport &lt;port&gt;   device listen port (default 100)
+ *        -notify &lt;url&gt;        notification URL (default http://localhost:7778)
+ *        -verbose             print a line for every successful push
+ * </pre>
+ * Exits with status 0 if every push was accepted, 1 if any push failed and
+ * 2 for usage errors.
+ */
+public class PushCli
+{
+    private static final String STDIN = "-";
+    private static final int DEFAULT_THREADS = 4;
+
+    private final PushClient _client;
+    private final boolean _pap;
+    private final boolean _verbose;
+    private final Vector _jobs;  // Recipient[]
+    private int _nextJob;
+    private int _succeeded;
+    private int _failed;
+
+    /**
+     * A single push to perform
+     */
+    private static final class Recipient
+    {
+        final String pin;
+        final byte[] payload;
+
+        Recipient(String pin, byte[] payload)
+        {
+            this.pin = pin;
+            this.payload = payload;
+        }
+    }
+
+    private PushCli(PushClient client, boolean pap, boolean verbose, Vector jobs)
+    {
+        _client = client;
+        _pap = pap;
+        _verbose = verbose;
+        _jobs = jobs;
+    }
+
+    public static void main(String[] args)
+    {
+        String recipients = null;
+        String payload = null;
+        boolean pap = false;
+        boolean verbose = false;
+        int threads = DEFAULT_THREADS;
+        String host = PushClient.DEFAULT_MDS_HOST;
+        int port = PushClient.DEFAULT_MDS_PORT;
+        String devicePort = PushClient.DEFAULT_DEVICE_PORT;
+        String notifyURL = PushClient.DEFAULT_NOTIFY_URL;
+
+        try
+        {
+            for(int i = 0; i < args.length; ++i)
+            {
+                String arg = args[i];
+                if(arg.equals("-recipients"))       recipients = args[++i];
+                else if(arg.equals("-payload"))     payload = args[++i];
+                else if(arg.equals("-pap"))         pap = true;
+                else if(arg.equals("-verbose"))     verbose = true;
+                else if(arg.equals("-threads"))     threads = Integer.parseInt(args[++i]);
+                else if(arg.equals("-host"))        host = args[++i];
+                else if(arg.equals("-port"))        port = Integer.parseInt(args[++i]);
+                else if(arg.equals("-deviceport"))  devicePort = args[++i];
+                else if(arg.equals("-notify"))      notifyURL = args[++i];
+                else throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+            if(recipients == null)
+            {
+                throw new IllegalArgumentException("-recipients is required");
+            }
+            if(STDIN.equals(recipients) && STDIN.equals(payload))
+            {
+                throw new IllegalArgumentException("Recipients and payload cannot both be read from standard input");
+            }
+            if(threads < 1)
+            {
+                throw new IllegalArgumentException("-threads must be at least 1");
+            }
+        }
+        catch(RuntimeException e)
+        {
+            // Covers missing option values and malformed numbers as well
+            System.err.println("Usage error: " + e.getMessage());
+            System.exit(2);
+        }
+
+        try
+        {
+            byte[] buffer = new byte[PushClient.BUFFER_SIZE];
+            byte[] defaultPayload = payload == null ? null : readPayload(payload, buffer);
+            Vector jobs = readRecipients(recipients, defaultPayload, buffer);
+
+            PushCli cli = new PushCli(new PushClient(host, port, devicePort, notifyURL), pap, verbose, jobs);
+            long start = System.currentTimeMillis();
+            cli.run(threads);
+            long elapsed = System.currentTimeMillis() - start;
+
+            System.out.println("Pushed " + cli._succeeded + " of " + jobs.size() + " in " + elapsed + " ms, " + cli._failed + " failed");
+            System.exit(cli._failed == 0 ? 0 : 1);
+        }
+        catch(IOException e)
+        {
+            System.err.println(e.toString());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Reads the recipient list, resolving per-recipient payload files.  Each
+     * distinct payload file is read only once.
+     */
+    private static Vector readRecipients(String name, byte[] defaultPayload, byte[] buffer) throws IOException
+    {
+        Hashtable payloads = new Hashtable();
+        Vector jobs = new Vector();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(open(name)));
+        try
+        {
+            String line;
+            while((line = reader.readLine()) != null)
+            {
+                line = line.trim();
+                if(line.length() == 0 || line.charAt(0) == '#')
+                {
+                    continue;
+                }
+
+                StringTokenizer tokens = new StringTokenizer(line);
+                String pin = tokens.nextToken();
+                byte[] data = defaultPayload;
+                if(tokens.hasMoreTokens())
+                {
+                    String file = tokens.nextToken();
+                    data = (byte[])payloads.get(file);
+                    if(data == null)
+                    {
+                        data = readPayload(file, buffer);
+                        payloads.put(file, data);
+                    }
+                }
+                if(data == null)
+                {
+                    throw new IOException("No payload for recipient " + pin + " and no -payload given");
+                }
+                jobs.addElement(new Recipient(pin, data));
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return jobs;
+    }
+
+    private static byte[] readPayload(String name, byte[] buffer) throws IOException
+    {
+        return PushClient.readFully(open(name), buffer);
+    }
+
+    private static InputStream open(String name) throws IOException
+    {
+        if(STDIN.equals(name))
+        {
+            return System.in;
+        }
+        return new BufferedInputStream(new FileInputStream(name));
+    }
+
+    /**
+     * Pushes every job using the given number of worker threads and waits
+     * for them all to finish.
+     */
+    private void run(int threads)
+    {
+        Thread[] workers = new Thread[Math.min(threads, Math.max(_jobs.size(), 1))];
+        for(int i = 0; i < workers.length; ++i)
+        {
+            workers[i] = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    work();
+                }
+            }, "push-" + i);
+            workers[i].start();
+        }
+
+        for(int i = 0; i < workers.length; ++i)
+        {
+            try
+            {
+                workers[i].join();
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private synchronized Recipient nextJob()
+    {
+        if(_nextJob == _jobs.size())
+        {
+            return null;
+        }
+        return (Recipient)_jobs.elementAt(_nextJob++);
+    }
+
+    private synchronized void recordResult(boolean success)
+    {
+        if(success)
+        {
+            ++_succeeded;
+        }
+        else
+        {
+            ++_failed;
+        }
+    }
+
+    /**
+     * Worker loop: each worker owns one buffer which is reused for every push
+     */
+    private void work()
+    {
+        byte[] buffer = new byte[PushClient.BUFFER_SIZE];
+        Recipient job;
+        while((job = nextJob()) != null)
+        {
+            try
+            {
+                int httpCode = _client.push(job.pin, job.payload, _pap, buffer);
+                boolean accepted = httpCode >= 200 && httpCode < 300;
+                recordResult(accepted);
+                if(!accepted)
+                {
+                    System.err.println(job.pin + ": MDS returned HTTP status " + httpCode);
+                }
+                else if(_verbose)
+                {
+                    System.out.println(job.pin + ": " + httpCode);
+                }
+            }
+            catch(IOException e)
+            {
+                recordResult(false);
+                System.err.println(job.pin + ": " + e.toString());
+            }
+        }
+    }
+}
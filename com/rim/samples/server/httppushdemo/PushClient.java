@@ -0,0 +1,298 @@
+/*
+ * PushClient.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.server.httppushdemo;
+
+import java.io.*;
+import java.net.*;
+import java.util.Random;
+
+/**
+ * <p>Headless push client used by both the HTTPPushDemo user interface and
+ * the PushCli batch front end.  It has no dependency on Swing and is safe to
+ * share between threads; callers supply their own scratch buffer so that a
+ * worker thread can reuse a single buffer for every push it performs.
+ *
+ * <p>Two push formats are supported:
+ * <ul>
+ * <li>RIM push - the data is posted as the request body to
+ * http://&lt;host&gt;:&lt;port&gt;/push?DESTINATION=&lt;device pin&gt;&amp;PORT=&lt;device_port&gt;&amp;REQUESTURI=&lt;post uri&gt;
+ * <li>PAP push - the data is wrapped in the pap_push.txt multipart template and
+ * posted to http://&lt;host&gt;:&lt;port&gt;/pap
+ * </ul>
+ */
+public class PushClient
+{
+    //constants -----------------------------------------------------------------
+    public static final String DEFAULT_MDS_HOST = "localhost";
+    public static final int DEFAULT_MDS_PORT = 8080;
+    public static final String DEFAULT_DEVICE_PIN = "2100000A";
+    public static final String DEFAULT_DEVICE_PORT = "100";
+    public static final String DEFAULT_NOTIFY_URL = "http://localhost:7778";
+    public static final int BUFFER_SIZE = 1024;
+
+    private static final String PAP_TEMPLATE_PATH = "com/rim/samples/server/httppushdemo/pap_push.txt";
+    private static final String BOUNDARY = "asdlfkjiurwghasf";
+    private static final String DELIVERY_METHOD = "application-level";
+    private static final String CRLF = "\r\n";
+
+    private final String _mdsHost;
+    private final int _mdsPort;
+    private final String _devicePort;
+    private final String _notifyURL;
+    private final Random _random = new Random();
+
+    // Template with line endings already normalized, loaded on first PAP push
+    private String _papTemplate;
+
+    //constructors --------------------------------------------------------------
+    /** Creates a PushClient that talks to the default local MDS instance */
+    public PushClient()
+    {
+        this(DEFAULT_MDS_HOST, DEFAULT_MDS_PORT, DEFAULT_DEVICE_PORT, DEFAULT_NOTIFY_URL);
+    }
+
+    /**
+     * Creates a PushClient
+     * @param mdsHost Host name of the MDS server
+     * @param mdsPort Port of the MDS web server
+     * @param devicePort The device port the client application listens on
+     * @param notifyURL The URL MDS should deliver result notifications to
+     */
+    public PushClient(String mdsHost, int mdsPort, String devicePort, String notifyURL)
+    {
+        _mdsHost = mdsHost;
+        _mdsPort = mdsPort;
+        _devicePort = devicePort;
+        _notifyURL = notifyURL;
+    }
+
+    /**
+     * Pushes data to a device
+     * @param pin The device PIN, or null/empty for the default PIN
+     * @param data The data to push
+     * @param pap True to use a PAP push, false to use a RIM push
+     * @param buffer Scratch buffer owned by the calling thread
+     * @return The HTTP status code returned by MDS
+     * @throws IOException if the push could not be delivered to MDS
+     */
+    public int push(String pin, byte[] data, boolean pap, byte[] buffer) throws IOException
+    {
+        if(pap)
+        {
+            return papPush(pin, new String(data, "UTF-8"), buffer);
+        }
+        return rimPush(pin, data, buffer);
+    }
+
+    /**
+     * Posts the specified data to the device using a RIM push
+     * @param pin The device PIN, or null/empty for the default PIN
+     * @param data The data to post
+     * @param buffer Scratch buffer owned by the calling thread
+     * @return The HTTP status code returned by MDS
+     * @throws IOException if the push could not be delivered to MDS
+     */
+    public int rimPush(String pin, byte[] data, byte[] buffer) throws IOException
+    {
+        URL url = new URL("http", _mdsHost, _mdsPort, "/push?DESTINATION=" + checkPin(pin) + "&PORT=" + _devicePort + "&REQUESTURI=localhost");
+
+        HttpURLConnection conn = (HttpURLConnection)url.openConnection();
+        conn.setDoInput(true);//For receiving the confirmation
+        conn.setDoOutput(true);//For sending the data
+        conn.setRequestMethod("POST");//Post the data to the proxy
+        conn.setFixedLengthStreamingMode(data.length);
+        conn.setRequestProperty("X-RIM-PUSH-ID", nextPushId());
+        conn.setRequestProperty("X-RIM-Push-NotifyURL", _notifyURL);
+
+        // To enable application level push reliability, uncomment the following line
+        //conn.setRequestProperty("X-RIM-Push-Reliability-Mode","APPLICATION");
+
+        return send(conn, data, buffer);
+    }
+
+    /**
+     * Pushes the specified text to the device using a PAP push
+     * @param pin The device PIN, or null/empty for the default PIN
+     * @param data The text to push
+     * @param buffer Scratch buffer owned by the calling thread
+     * @return The HTTP status code returned by MDS
+     * @throws IOException if the push could not be delivered to MDS
+     */
+    public int papPush(String pin, String data, byte[] buffer) throws IOException
+    {
+        String output = getPapTemplate();
+        output = replace(output, "$(pushid)", nextPushId());
+        output = replace(output, "$(boundary)", BOUNDARY);
+        output = replace(output, "$(notifyURL)", _notifyURL);
+        output = replace(output, "$(pin)", checkPin(pin));
+        output = replace(output, "$(deliveryMethod)", DELIVERY_METHOD);
+        output = replace(output, "$(headers)", "Content-Type: text/plain");
+        output = replace(output, "$(content)", normalizeLineEndings(data));
+        byte[] body = output.getBytes("UTF-8");
+
+        URL mdsUrl = new URL("http", _mdsHost, _mdsPort, "/pap");
+        HttpURLConnection mdsConn = (HttpURLConnection)mdsUrl.openConnection();
+        mdsConn.setRequestProperty("Content-Type", "multipart/related; type=\"application/xml\"; boundary=" + BOUNDARY);
+        mdsConn.setRequestProperty("X-Wap-Application-Id", "/");
+        mdsConn.setRequestProperty("X-Rim-Push-Dest-Port", _devicePort);
+        mdsConn.setRequestMethod("POST");
+        mdsConn.setAllowUserInteraction(false);
+        mdsConn.setDoInput(true);
+        mdsConn.setDoOutput(true);
+        mdsConn.setFixedLengthStreamingMode(body.length);
+
+        return send(mdsConn, body, buffer);
+    }
+
+    /**
+     * Copies the contents of one stream to another
+     * @param ins The stream to read from
+     * @param outs The stream to write to
+     * @param buffer Scratch buffer to copy through
+     * @throws IOException if either stream fails
+     */
+    public static void copyStreams(InputStream ins, OutputStream outs, byte[] buffer) throws IOException
+    {
+        int bytesRead;
+        while((bytesRead = ins.read(buffer)) > 0)
+        {
+            outs.write(buffer, 0, bytesRead);
+        }
+    }
+
+    /**
+     * Reads a stream to its end
+     * @param ins The stream to read from, closed on return
+     * @param buffer Scratch buffer to copy through
+     * @return The contents of the stream
+     * @throws IOException if the stream cannot be read
+     */
+    public static byte[] readFully(InputStream ins, byte[] buffer) throws IOException
+    {
+        try
+        {
+            ByteArrayOutputStream bouts = new ByteArrayOutputStream();
+            copyStreams(ins, bouts, buffer);
+            return bouts.toByteArray();
+        }
+        finally
+        {
+            ins.close();
+        }
+    }
+
+    /**
+     * Writes the request body and drains the response so the underlying
+     * connection can be kept alive and reused for the next push.
+     */
+    private static int send(HttpURLConnection conn, byte[] body, byte[] buffer) throws IOException
+    {
+        OutputStream outs = conn.getOutputStream();
+        try
+        {
+            outs.write(body);
+        }
+        finally
+        {
+            outs.close();
+        }
+
+        int httpCode = conn.getResponseCode();
+        InputStream ins = httpCode < HttpURLConnection.HTTP_BAD_REQUEST ? conn.getInputStream() : conn.getErrorStream();
+        if(ins != null)
+        {
+            try
+            {
+                while(ins.read(buffer) > 0)
+                {
+                    // Discard the response body
+                }
+            }
+            finally
+            {
+                ins.close();
+            }
+        }
+        return httpCode;
+    }
+
+    private synchronized String getPapTemplate() throws IOException
+    {
+        if(_papTemplate == null)
+        {
+            InputStream ins = new BufferedInputStream(new FileInputStream(PAP_TEMPLATE_PATH));
+            _papTemplate = normalizeLineEndings(new String(readFully(ins, new byte[BUFFER_SIZE]), "UTF-8"));
+        }
+        return _papTemplate;
+    }
+
+    private String nextPushId()
+    {
+        return "pushID:" + _random.nextInt();
+    }
+
+    private static String checkPin(String pin)
+    {
+        if((pin == null) || (pin.length() == 0))
+        {
+            return DEFAULT_DEVICE_PIN;
+        }
+        return pin;
+    }
+
+    /**
+     * Converts all line endings to CRLF as required by the multipart format
+     */
+    private static String normalizeLineEndings(String text)
+    {
+        return replace(replace(text, CRLF, "\n"), "\n", CRLF);
+    }
+
+    /**
+     * Literal (non-regex) replacement of every occurrence of a token, so that
+     * pushed content containing '$' or '\' is sent unchanged.
+     */
+    private static String replace(String text, String token, String value)
+    {
+        int index = text.indexOf(token);
+        if(index == -1)
+        {
+            return text;
+        }
+
+        StringBuffer result = new StringBuffer(text.length() + value.length());
+        int start = 0;
+        while(index != -1)
+        {
+            result.append(text, start, index).append(value);
+            start = index + token.length();
+            index = text.indexOf(token, start);
+        }
+        result.append(text, start, text.length());
+        return result.toString();
+    }
+}
@@ -2,7 +2,7 @@
 REM Build and run script for the HTTPPush Server side
 
 del *.class
-javac HTTPPushDemo.java
+javac HTTPPushDemo.java PushClient.java PushCli.java
 pushd ..\..\..\..\..
 	java -cp . com.rim.samples.server.httppushdemo.HTTPPushDemo
 popd
\ No newline at end of file
@@ -0,0 +1,141 @@
+/*
+ * ActiveWork.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.server.runtime;
+
+/**
+ * Tracks the units of work a component has in flight, so that it can stop
+ * taking new work straight away but hold on to the sockets that work needs,
+ * such as the socket a reply is sent from, until the last unit finishes.
+ */
+public final class ActiveWork
+{
+    private int _active;
+    private boolean _closed;
+    private Runnable _onIdle;
+
+    /**
+     * Starts a unit of work. Every successful call must be matched by a call
+     * to exit(), normally in a finally block.
+     * @return False if close() has been called and the work should be dropped
+     */
+    public synchronized boolean enter()
+    {
+        if (_closed)
+        {
+            return false;
+        }
+        ++_active;
+        return true;
+    }
+
+    /**
+     * Finishes a unit of work, running the close action if it was the last
+     * one after close() was called
+     */
+    public void exit()
+    {
+        Runnable onIdle = null;
+        synchronized (this)
+        {
+            if (--_active == 0 && _closed)
+            {
+                onIdle = _onIdle;
+                _onIdle = null;
+            }
+        }
+        if (onIdle != null)
+        {
+            onIdle.run();
+        }
+    }
+
+    /**
+     * Stops new work being started. The close action runs straight away if
+     * no work is in flight, or otherwise when the last unit of work exits.
+     * @param onIdle Releases whatever the work in flight was using
+     */
+    public void close(Runnable onIdle)
+    {
+        synchronized (this)
+        {
+            if (_closed)
+            {
+                return;
+            }
+            _closed = true;
+            if (_active > 0)
+            {
+                _onIdle = onIdle;
+                return;
+            }
+        }
+        onIdle.run();
+    }
+
+    /**
+     * Runs a unit of work on the component's executor, tracking it until it
+     * completes
+     * @param context The component's context
+     * @param name The timer to record the work under, as for ServerContext.execute()
+     * @param work The work to run
+     * @return False if the work was dropped because close() has been called
+     * or the component's executor rejected it
+     */
+    public boolean execute(ServerContext context, String name, final Runnable work)
+    {
+        if (!enter())
+        {
+            return false;
+        }
+        boolean submitted = false;
+        try
+        {
+            submitted = context.execute(name, new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        work.run();
+                    }
+                    finally
+                    {
+                        exit();
+                    }
+                }
+            });
+            return submitted;
+        }
+        finally
+        {
+            if (!submitted)
+            {
+                exit();
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * MetricsRegistry.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.server.runtime;
+
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Named counters and timers shared by every server in a ServerRuntime.
+ * Names are dotted, starting with the component name, e.g.
+ * "socket.connections" or "echo.request".
+ */
+public final class MetricsRegistry
+{
+    /**
+     * A monotonically increasing count
+     */
+    public static final class Counter
+    {
+        private final AtomicLong _count = new AtomicLong();
+
+        public void increment()
+        {
+            _count.incrementAndGet();
+        }
+
+        public void add(long delta)
+        {
+            _count.addAndGet(delta);
+        }
+
+        public long get()
+        {
+            return _count.get();
+        }
+
+        public String toString()
+        {
+            return Long.toString(get());
+        }
+    }
+
+    /**
+     * Count, total and maximum of a set of durations
+     */
+    public static final class Timer
+    {
+        private final AtomicLong _count = new AtomicLong();
+        private final AtomicLong _totalNanos = new AtomicLong();
+        private final AtomicLong _maxNanos = new AtomicLong();
+
+        public void record(long nanos)
+        {
+            _count.incrementAndGet();
+            _totalNanos.addAndGet(nanos);
+            long max;
+            while (nanos > (max = _maxNanos.get()) && !_maxNanos.compareAndSet(max, nanos))
+            {
+            }
+        }
+
+        public long getCount()
+        {
+            return _count.get();
+        }
+
+        public long getTotalNanos()
+        {
+            return _totalNanos.get();
+        }
+
+        public long getMaxNanos()
+        {
+            return _maxNanos.get();
+        }
+
+        public String toString()
+        {
+            long count = getCount();
+            long avg = count == 0 ? 0 : getTotalNanos() / count;
+            return "count=" + count + " avg=" + (avg / 1000) + "us max=" + (getMaxNanos() / 1000) + "us";
+        }
+    }
+
+    private final ConcurrentHashMap<String, Counter> _counters = new ConcurrentHashMap<String, Counter>();
+    private final ConcurrentHashMap<String, Timer> _timers = new ConcurrentHashMap<String, Timer>();
+
+    /**
+     * @return The counter with the given name, created on first use
+     */
+    public Counter counter(String name)
+    {
+        Counter counter = _counters.get(name);
+        if (counter == null)
+        {
+            Counter created = new Counter();
+            counter = _counters.putIfAbsent(name, created);
+            if (counter == null)
+            {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * @return The timer with the given name, created on first use
+     */
+    public Timer timer(String name)
+    {
+        Timer timer = _timers.get(name);
+        if (timer == null)
+        {
+            Timer created = new Timer();
+            timer = _timers.putIfAbsent(name, created);
+            if (timer == null)
+            {
+                timer = created;
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * @return Every metric by name, in name order
+     */
+    public Map<String, Object> snapshot()
+    {
+        TreeMap<String, Object> snapshot = new TreeMap<String, Object>();
+        snapshot.putAll(_counters);
+        snapshot.putAll(_timers);
+        return snapshot;
+    }
+
+    /**
+     * Prints every metric, one per line
+     */
+    public void dump(PrintStream out)
+    {
+        Iterator<Map.Entry<String, Object>> entries = snapshot().entrySet().iterator();
+        while (entries.hasNext())
+        {
+            Map.Entry<String, Object> entry = entries.next();
+            out.println("  " + entry.getKey() + ": " + entry.getValue());
+        }
+    }
+}
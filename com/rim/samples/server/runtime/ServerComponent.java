@@ -0,0 +1,58 @@
+/*
+ * ServerComponent.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.server.runtime;
+
+import java.io.IOException;
+
+/**
+ * A sample server that can be hosted by a ServerRuntime. Implementations
+ * bind their sockets in start() and hand each unit of work (a connection,
+ * a datagram, a request) to ServerContext.execute(), so that the runtime can
+ * drain in-flight work when it shuts down.
+ */
+public interface ServerComponent
+{
+    /**
+     * @return Short name of the server, used as the prefix of its
+     * configuration properties and metrics, e.g. "socket"
+     */
+    public String getName();
+
+    /**
+     * Binds the server's sockets and starts accepting work. Must not block.
+     * @param context Configuration, executor and metrics for this server
+     * @throws IOException if the server cannot be started, e.g. its port is in use
+     */
+    public void start(ServerContext context) throws IOException;
+
+    /**
+     * Stops accepting new work. Work already handed to the executor is
+     * allowed to complete, so sockets it still needs should be released
+     * once it has, for example with ActiveWork.close().
+     */
+    public void stop();
+}
@@ -0,0 +1,204 @@
+/*
+ * ServerContext.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.server.runtime;
+
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The view of a ServerRuntime given to a single ServerComponent.
+ * Configuration lookups are scoped to the component: getInt("port", 44444)
+ * on the "socket" component reads the property "socket.port".
+ */
+public final class ServerContext
+{
+    private final String _name;
+    private final Properties _config;
+    private final ExecutorService _executor;
+    private final ScheduledExecutorService _timer;
+    private final MetricsRegistry _metrics;
+    private final ServerRuntime _runtime;
+
+    ServerContext(String name, Properties config, ExecutorService executor, ScheduledExecutorService timer,
+                  MetricsRegistry metrics, ServerRuntime runtime)
+    {
+        _name = name;
+        _config = config;
+        _executor = executor;
+        _timer = timer;
+        _metrics = metrics;
+        _runtime = runtime;
+    }
+
+    /**
+     * @return The component's configured value for key, or defaultValue if unset
+     */
+    public String getString(String key, String defaultValue)
+    {
+        return _config.getProperty(_name + "." + key, defaultValue);
+    }
+
+    /**
+     * @return The component's configured value for key, or defaultValue if unset
+     * @throws IllegalArgumentException if the value is not an integer
+     */
+    public int getInt(String key, int defaultValue)
+    {
+        String value = getString(key, null);
+        if (value == null)
+        {
+            return defaultValue;
+        }
+        try
+        {
+            return Integer.decode(value.trim()).intValue();
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException(_name + "." + key + " is not an integer: " + value);
+        }
+    }
+
+    /**
+     * @return The component's executor; prefer execute(), which tracks in-flight work
+     */
+    public ExecutorService getExecutor()
+    {
+        return _executor;
+    }
+
+    /**
+     * Runs a unit of work on the component's executor. The work is counted as
+     * in flight until it completes, and its duration is recorded under the
+     * timer "&lt;component&gt;.&lt;name&gt;".
+     * @return False if the work was rejected, because the runtime is shutting
+     * down or the component's threads are all busy and its queue is full
+     */
+    public boolean execute(final String name, final Runnable work)
+    {
+        final MetricsRegistry.Timer timer = _metrics.timer(_name + "." + name);
+        try
+        {
+            _executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    long start = System.nanoTime();
+                    try
+                    {
+                        work.run();
+                    }
+                    catch (RuntimeException e)
+                    {
+                        _metrics.counter(_name + ".errors").increment();
+                        System.err.println(_name + ": " + e);
+                    }
+                    finally
+                    {
+                        timer.record(System.nanoTime() - start);
+                    }
+                }
+            });
+            return true;
+        }
+        catch (RejectedExecutionException e)
+        {
+            _metrics.counter(_name + ".rejected").increment();
+            return false;
+        }
+    }
+
+    /**
+     * Runs a unit of work on the component's executor once a delay has
+     * passed, without occupying a thread while it waits. The runtime waits
+     * for scheduled work when it shuts down. If the component's executor is
+     * busy when the delay expires the work runs on the timer thread instead,
+     * so once scheduled it is never dropped.
+     * @return False if the work was rejected because the runtime is shutting down
+     */
+    public boolean schedule(final String name, final Runnable work, long delay, TimeUnit unit)
+    {
+        try
+        {
+            _timer.schedule(new Runnable()
+            {
+                public void run()
+                {
+                    if (!execute(name, work))
+                    {
+                        work.run();
+                    }
+                }
+            }, delay, unit);
+            return true;
+        }
+        catch (RejectedExecutionException e)
+        {
+            _metrics.counter(_name + ".rejected").increment();
+            return false;
+        }
+    }
+
+    /**
+     * Starts a long running loop, such as a socket accept loop, on its own
+     * daemon thread so that it does not occupy the component's executor.
+     */
+    public Thread startLoop(String name, Runnable loop)
+    {
+        Thread thread = new Thread(loop, _name + "-" + name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * @return The registry shared by every component in the runtime
+     */
+    public MetricsRegistry getMetrics()
+    {
+        return _metrics;
+    }
+
+    /**
+     * @return A counter named "&lt;component&gt;.&lt;name&gt;"
+     */
+    public MetricsRegistry.Counter counter(String name)
+    {
+        return _metrics.counter(_name + "." + name);
+    }
+
+    /**
+     * @return True once the runtime has begun shutting down
+     */
+    public boolean isStopping()
+    {
+        return _runtime.isStopping();
+    }
+}
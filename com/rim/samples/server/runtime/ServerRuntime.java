@@ -0,0 +1,494 @@
+/*
+ * ServerRuntime.java
+ *
+ * Copyright  1998-2011 Research In Motion Limited
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Note: For the sake of simplicity, this sample application may not leverage
+ * resource bundles and resource strings.  However, it is STRONGLY recommended
+ * that application developers make use of the localization features available
+ * within the BlackBerry development platform to ensure a seamless application
+ * experience across a variety of languages and geographies.  For more information
+ * on localizing your application, please refer to the BlackBerry Java Development
+ * Environment Development Guide associated with this release.
+ */
+
+package com.rim.samples.server.runtime;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.StringTokenizer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Hosts one or more sample servers in a single JVM with a common
+ * lifecycle, configuration and metrics registry. Each server gets its own
+ * bounded worker pool, so a server whose work blocks or piles up can only
+ * exhaust its own threads and queue, not those of the other servers. Work
+ * that must wait before it runs, such as a delayed response, waits on a
+ * single timer thread shared by every server rather than on a pool thread.
+ *
+ * <p>The runtime can be embedded, e.g. in a test or load generator:
+ * <pre>
+ *    ServerRuntime runtime = new ServerRuntime(config);
+ *    runtime.add(new SimpleSocketServer());
+ *    runtime.add(new UdpServer());
+ *    runtime.start();
+ *    ...
+ *    runtime.stop();
+ * </pre>
+ * or run from the command line, where it starts every server named in the
+ * runtime.servers property:
+ * <pre>
+ *    java com.rim.samples.server.runtime.ServerRuntime [config.properties]
+ * </pre>
+ *
+ * <p>Runtime properties (system properties override the file):
+ * <ul>
+ * <li>runtime.servers - comma separated component names to start
+ * (default gps,socket,udp,sms,echo)
+ * <li>&lt;name&gt;.class - class implementing each named component
+ * <li>runtime.threads - worker threads in each server's pool (default 16)
+ * <li>runtime.queueSize - work each server's pool can queue before it
+ * rejects more (default 256)
+ * <li>&lt;name&gt;.threads, &lt;name&gt;.queueSize - override the two above
+ * for one server
+ * <li>runtime.drainTimeout - milliseconds to wait for in-flight work on stop (default 5000)
+ * <li>runtime.metricsInterval - seconds between metrics dumps, 0 for none (default 0)
+ * </ul>
+ * Each component reads its own settings, e.g. socket.port, as documented
+ * by the component.
+ */
+public final class ServerRuntime
+{
+    public static final String DEFAULT_CONFIG = "com/rim/samples/server/runtime/runtime.properties";
+
+    private static final String DEFAULT_SERVERS = "gps,socket,udp,sms,echo";
+    private static final String[][] BUILT_IN_SERVERS =
+    {
+        { "gps", "com.rim.samples.server.gpsdemo.GPSServer" },
+        { "socket", "com.rim.samples.server.socketdemo.SimpleSocketServer" },
+        { "udp", "com.rim.samples.server.udpdemo.UdpServer" },
+        { "sms", "com.rim.samples.server.smsdemo.SMSServer" },
+        { "echo", "com.rim.samples.server.communicationapidemo.EchoServer" },
+    };
+    private static final int DEFAULT_THREADS = 16;
+    private static final int DEFAULT_QUEUE_SIZE = 256;
+    private static final int DEFAULT_DRAIN_TIMEOUT = 5000;
+
+    private final Properties _config;
+    private final List<ServerComponent> _components = new ArrayList<ServerComponent>();
+    private final List<ServerComponent> _started = new ArrayList<ServerComponent>();
+    private final MetricsRegistry _metrics = new MetricsRegistry();
+    private final CountDownLatch _stopped = new CountDownLatch(1);
+    private final List<ThreadPoolExecutor> _executors = new ArrayList<ThreadPoolExecutor>();
+    private final ScheduledThreadPoolExecutor _timer = new ScheduledThreadPoolExecutor(1, new WorkerFactory("runtime-timer-"));
+    private boolean _running;
+    private volatile boolean _stopping;
+
+    /**
+     * Creates a runtime
+     * @param config Runtime and component configuration
+     */
+    public ServerRuntime(Properties config)
+    {
+        _config = config;
+    }
+
+    /**
+     * Adds a component to be started by start()
+     */
+    public synchronized void add(ServerComponent component)
+    {
+        if (_running)
+        {
+            throw new IllegalStateException("Runtime already started");
+        }
+        _components.add(component);
+    }
+
+    /**
+     * Creates each component's executor and starts every component. If any
+     * component fails to start, those already started are stopped again.
+     * @throws IOException if a component could not be started
+     */
+    public synchronized void start() throws IOException
+    {
+        if (_running)
+        {
+            throw new IllegalStateException("Runtime already started");
+        }
+        _running = true;
+
+        for (ServerComponent component : _components)
+        {
+            ThreadPoolExecutor executor = createExecutor(component.getName());
+            _executors.add(executor);
+            ServerContext context = new ServerContext(component.getName(), _config, executor, _timer, _metrics, this);
+            try
+            {
+                component.start(context);
+            }
+            catch (IOException e)
+            {
+                stop();
+                throw new IOException(component.getName() + ": " + e.getMessage());
+            }
+            catch (RuntimeException e)
+            {
+                stop();
+                throw e;
+            }
+            _started.add(component);
+            System.out.println("Started " + component.getName());
+        }
+
+        int interval = getInt("runtime.metricsInterval", 0);
+        if (interval > 0)
+        {
+            startMetricsDump(interval);
+        }
+    }
+
+    /**
+     * Stops the runtime, waiting up to runtime.drainTimeout milliseconds
+     * for in-flight work to finish
+     */
+    public void stop()
+    {
+        stop(getInt("runtime.drainTimeout", DEFAULT_DRAIN_TIMEOUT));
+    }
+
+    /**
+     * Stops every component so that no new work is accepted, then waits for
+     * in-flight work to finish, including scheduled work whose delay has yet
+     * to expire. Work still waiting or running after the timeout is dropped
+     * or interrupted.
+     * @param drainTimeout Milliseconds to wait for in-flight work
+     */
+    public void stop(long drainTimeout)
+    {
+        synchronized (this)
+        {
+            if (_stopping)
+            {
+                return;
+            }
+            _stopping = true;
+        }
+
+        for (int i = _started.size() - 1; i >= 0; --i)
+        {
+            ServerComponent component = _started.get(i);
+            try
+            {
+                component.stop();
+            }
+            catch (RuntimeException e)
+            {
+                System.err.println(component.getName() + ": " + e);
+            }
+        }
+
+        // Scheduled work is handed to the components' executors when its
+        // delay expires, so drain the timer before the executors
+        _timer.shutdown();
+        long deadline = System.currentTimeMillis() + drainTimeout;
+        try
+        {
+            if (!_timer.awaitTermination(drainTimeout, TimeUnit.MILLISECONDS))
+            {
+                int abandoned = _timer.shutdownNow().size();
+                System.err.println("Drain timeout expired; dropping " + abandoned + " scheduled tasks");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            _timer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        for (ThreadPoolExecutor executor : _executors)
+        {
+            executor.shutdown();
+        }
+        try
+        {
+            for (ThreadPoolExecutor executor : _executors)
+            {
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                if (!executor.awaitTermination(remaining, TimeUnit.MILLISECONDS))
+                {
+                    int abandoned = executor.shutdownNow().size() + executor.getActiveCount();
+                    System.err.println("Drain timeout expired; interrupting " + abandoned + " unfinished tasks");
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            for (ThreadPoolExecutor executor : _executors)
+            {
+                executor.shutdownNow();
+            }
+            Thread.currentThread().interrupt();
+        }
+        _stopped.countDown();
+    }
+
+    /**
+     * Waits until the runtime has been stopped
+     */
+    public void await() throws InterruptedException
+    {
+        _stopped.await();
+    }
+
+    /**
+     * Waits until the runtime has been stopped or the timeout expires
+     * @return True if the runtime stopped
+     */
+    public boolean await(long timeout) throws InterruptedException
+    {
+        return _stopped.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return True once stop() has been called
+     */
+    public boolean isStopping()
+    {
+        return _stopping;
+    }
+
+    /**
+     * @return The registry shared by every component
+     */
+    public MetricsRegistry getMetrics()
+    {
+        return _metrics;
+    }
+
+    /**
+     * @return The number of tasks scheduled, queued or running on the
+     * components' executors
+     */
+    public synchronized int getInFlight()
+    {
+        int inFlight = _timer.getQueue().size();
+        for (ThreadPoolExecutor executor : _executors)
+        {
+            inFlight += executor.getQueue().size() + executor.getActiveCount();
+        }
+        return inFlight;
+    }
+
+    /**
+     * Loads configuration from a properties file, if it exists, overlaid
+     * with the system properties
+     * @param path The file to load, or null for DEFAULT_CONFIG
+     */
+    public static Properties loadConfig(String path) throws IOException
+    {
+        Properties config = new Properties();
+        File file = new File(path == null ? DEFAULT_CONFIG : path);
+        if (file.exists())
+        {
+            InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try
+            {
+                config.load(in);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        else if (path != null)
+        {
+            throw new FileNotFoundException(path);
+        }
+        config.putAll(System.getProperties());
+        return config;
+    }
+
+    /**
+     * Runs a single component standalone, as each sample server's main()
+     * does. Stops cleanly on Ctrl-C and exits if the component cannot start.
+     * The runtime's threads are daemons, so the caller must keep the JVM
+     * alive, normally by calling await() on the returned runtime.
+     * @param component The server to run
+     * @param args Command line arguments; the first, if present, names a
+     * properties file
+     * @return The started runtime
+     */
+    public static ServerRuntime launch(ServerComponent component, String[] args)
+    {
+        ServerRuntime runtime = null;
+        try
+        {
+            runtime = new ServerRuntime(loadConfig(args.length > 0 ? args[0] : null));
+            runtime.add(component);
+            runtime.start();
+        }
+        catch (IOException e)
+        {
+            System.err.println(e.getMessage());
+            System.exit(-1);
+        }
+        runtime.addShutdownHook();
+        return runtime;
+    }
+
+    /**
+     * Starts every server named in runtime.servers in this process
+     * @param args Optional properties file
+     */
+    public static void main(String[] args) throws Exception
+    {
+        Properties config = loadConfig(args.length > 0 ? args[0] : null);
+        ServerRuntime runtime = new ServerRuntime(config);
+
+        StringTokenizer names = new StringTokenizer(config.getProperty("runtime.servers", DEFAULT_SERVERS), ", ");
+        while (names.hasMoreTokens())
+        {
+            String name = names.nextToken();
+            String className = config.getProperty(name + ".class", builtInClass(name));
+            if (className == null)
+            {
+                System.err.println("No class configured for server " + name);
+                System.exit(-1);
+            }
+            try
+            {
+                runtime.add((ServerComponent)Class.forName(className).getDeclaredConstructor().newInstance());
+            }
+            catch (ReflectiveOperationException e)
+            {
+                System.err.println("Unable to create server " + name + ": " + e);
+                System.exit(-1);
+            }
+        }
+
+        try
+        {
+            runtime.start();
+        }
+        catch (IOException e)
+        {
+            System.err.println(e.getMessage());
+            System.exit(-1);
+        }
+        runtime.addShutdownHook();
+        runtime.await();
+    }
+
+    private static String builtInClass(String name)
+    {
+        for (int i = 0; i < BUILT_IN_SERVERS.length; ++i)
+        {
+            if (BUILT_IN_SERVERS[i][0].equals(name))
+            {
+                return BUILT_IN_SERVERS[i][1];
+            }
+        }
+        return null;
+    }
+
+    private void addShutdownHook()
+    {
+        Runtime.getRuntime().addShutdownHook(new Thread("runtime-shutdown")
+        {
+            public void run()
+            {
+                ServerRuntime.this.stop();
+                System.out.println("Metrics:");
+                _metrics.dump(System.out);
+            }
+        });
+    }
+
+    private void startMetricsDump(final int interval)
+    {
+        Thread dumper = new Thread("runtime-metrics")
+        {
+            public void run()
+            {
+                try
+                {
+                    while (!await(interval * 1000L))
+                    {
+                        System.out.println("Metrics:");
+                        _metrics.dump(System.out);
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                }
+            }
+        };
+        dumper.setDaemon(true);
+        dumper.start();
+    }
+
+    /**
+     * Creates a component's executor. When its threads are all busy and its
+     * queue is full, further work is rejected, which ServerContext.execute()
+     * reports to the component.
+     */
+    private ThreadPoolExecutor createExecutor(String name)
+    {
+        int threads = getInt(name + ".threads", getInt("runtime.threads", DEFAULT_THREADS));
+        int queueSize = getInt(name + ".queueSize", getInt("runtime.queueSize", DEFAULT_QUEUE_SIZE));
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                                             new ArrayBlockingQueue<Runnable>(queueSize),
+                                                             new WorkerFactory(name + "-worker-"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private int getInt(String key, int defaultValue)
+    {
+        String value = _config.getProperty(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    /**
+     * Names the runtime's daemon threads so they are recognizable in dumps
+     */
+    private static final class WorkerFactory implements ThreadFactory
+    {
+        private final String _prefix;
+        private final AtomicInteger _count = new AtomicInteger();
+
+        WorkerFactory(String prefix)
+        {
+            _prefix = prefix;
+        }
+
+        public Thread newThread(Runnable task)
+        {
+            Thread thread = new Thread(task, _prefix + _count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
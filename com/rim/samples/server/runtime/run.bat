@@ -0,0 +1,9 @@
+@echo off
+REM Build and run all of the sample servers in one ServerRuntime
+REM Usage: run.bat [config.properties]
+
+set home=%cd%
+pushd ..\..\..\..\..
+	javac -classpath "%classpath%;%home%\..\gpsdemo\jcommon-0.9.6.jar;%home%\..\gpsdemo\jfreechart-0.9.21.jar" com\rim\samples\server\runtime\*.java com\rim\samples\server\gpsdemo\*.java com\rim\samples\server\socketdemo\*.java com\rim\samples\server\udpdemo\*.java com\rim\samples\server\smsdemo\*.java com\rim\samples\server\communicationapidemo\*.java
+	java -cp "%classpath%;%home%\..\gpsdemo\jcommon-0.9.6.jar;%home%\..\gpsdemo\jfreechart-0.9.21.jar;." com.rim.samples.server.runtime.ServerRuntime %1
+popd
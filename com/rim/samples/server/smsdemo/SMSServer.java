@@ -29,14 +29,18 @@ import java.net.*;
 import java.util.*;
 import java.io.*;
 
+import com.rim.samples.server.runtime.*;
+
 /**
  * A simple SMS loopback server that will return to the source any
  * messages sent to it. For port bound messages, the source and destination
  * port must be the same. On the device, listen on the same port used for
  * sending a message and this server will send the received message back
  * on that port.
+ * <p>The server listens on the port given by the sms.port property (default
+ * 0x5345) and can be hosted by com.rim.samples.server.runtime.ServerRuntime.
  */
-public final class SMSServer implements Runnable
+public final class SMSServer implements ServerComponent, Runnable
 {
     // Constants ---------------------------------------------------------------
     private static final String RESOURCES = "com/rim/samples/server/smsdemo/resources";
@@ -61,8 +65,11 @@ public final class SMSServer implements Runnable
     private static final String RAW = "Raw";
 
     // Members
-    private volatile boolean _stop = false;
+    private ServerContext _context;
     private DatagramSocket _socket;
+    private final ActiveWork _work = new ActiveWork();
+    private final LinkedList<DatagramPacket> _queue = new LinkedList<DatagramPacket>();
+    private boolean _draining;
     private String[] _charmap = {"A", "B", "C", "D", "E", "F"};
     
     // Statics -----------------------------------------------------------------
@@ -70,17 +77,28 @@ public final class SMSServer implements Runnable
 
     /**
      * Entry point
-     * @param Command line args (not used)
+     * @param Command line args: an optional properties file
      */
     public static void main(String[] args)
     {    	
-    	new SMSServer();
+	ServerRuntime runtime = ServerRuntime.launch(new SMSServer(), args);
+
+	try
+	{
+	    while ( 'x' != System.in.read() )
+	    {}
+	}
+	catch (IOException e)
+	{
+	    System.err.println(e);
+	}
+	
+	runtime.stop();
     }
 
     // Constructor
-    SMSServer()
+    public SMSServer()
     {
-	run();
     }
 
     /**
@@ -148,60 +166,156 @@ public final class SMSServer implements Runnable
     }
     
     /**
-     * Runs a thread that listens for incoming messages
+     * @see ServerComponent#getName()
      */
-    public void run()
+    public String getName()
+    {
+	return "sms";
+    }
+
+    /**
+     * Binds the SMS port and starts a thread that listens for incoming messages
+     * @see ServerComponent#start(ServerContext)
+     */
+    public void start(ServerContext context) throws IOException
     {
 	System.out.println(INTRODUCTION);
 	System.out.println(_resources.getString(USAGE));
-	
-	Thread t = new Thread() {
+
+	int port = context.getInt("port", SMSPORT);
+	_socket = new DatagramSocket(port);
+	System.out.println("Listening on port:"+port);
+	_context = context;
+	context.startLoop("receive", this);
+    }
+
+    /**
+     * @see ServerComponent#stop()
+     */
+    public void stop()
+    {
+	// Queued messages are still echoed from the socket, so close it
+	// once the last of them has been sent
+	_work.close(new Runnable()
+	{
 	    public void run()
 	    {
-		try
-		{
-		    _socket = new DatagramSocket(SMSPORT );
-		    System.out.println("Listening on port:"+SMSPORT);
-		
-		    byte[] data = new byte[MAX_SMSPACKET_SIZE];
-	
-		    while (!_stop)
-		    {
-			DatagramPacket p = new DatagramPacket(data, data.length);
-			_socket.receive(p);
-			receivedSms(p);
-			returnSms(p);
-			Arrays.fill(data, (byte)0);
-		    }		
-		}
-		catch (IOException e)
-		{
-		    System.err.println(e);
-		    return;
-		}
+		_socket.close();
 	    }
-	};
-	t.start();
+	});
+    }
 
+    /**
+     * Receive loop, runs until the socket is closed. Each message is queued
+     * and echoed on the server's executor, one at a time so that messages
+     * are still echoed in arrival order.
+     */
+    public void run()
+    {
 	try
 	{
-	    while ( 'x' != System.in.read() )
-	    {}
+	    while (true)
+	    {
+		// Each message gets its own buffer, as it outlives this loop
+		byte[] data = new byte[MAX_SMSPACKET_SIZE];
+		DatagramPacket p = new DatagramPacket(data, data.length);
+		_socket.receive(p);
+		_context.counter("messages").increment();
+		enqueue(p);
+	    }		
 	}
 	catch (IOException e)
 	{
-	    System.err.println(e);
+	    if (!_socket.isClosed())
+	    {
+		System.err.println(e);
+	    }
 	}
-	
-	_stop = true;
-	_socket.close();
-	try
+    }
+
+    /**
+     * Queues a message to be echoed, starting a drain of the queue on the
+     * executor if one isn't already running
+     * @param p A received Datagram containing an SMS message
+     */
+    private void enqueue(DatagramPacket p)
+    {
+	synchronized (_queue)
 	{
-	    t.join();
+	    // Each queued message is tracked, so the socket outlives it
+	    if (!_work.enter())
+	    {
+		System.out.println("Server is stopping, message dropped");
+		return;
+	    }
+	    _queue.addLast(p);
+	    if (_draining)
+	    {
+		return;
+	    }
+	    _draining = true;
 	}
-	catch (InterruptedException e)
+
+	if (!_context.execute("drain", new Runnable()
 	{
-	    System.err.println(e);
+	    public void run()
+	    {
+		drain();
+	    }
+	}))
+	{
+	    // The executor is busy or shutting down, so nothing will drain
+	    // the queue
+	    int dropped;
+	    synchronized (_queue)
+	    {
+		dropped = _queue.size();
+		_queue.clear();
+		_draining = false;
+	    }
+	    for (int i = 0; i < dropped; ++i)
+	    {
+		_work.exit();
+	    }
+	}
+    }
+
+    /**
+     * Echoes queued messages in arrival order until the queue is empty
+     */
+    private void drain()
+    {
+	while (true)
+	{
+	    DatagramPacket p;
+	    synchronized (_queue)
+	    {
+		if (_queue.isEmpty())
+		{
+		    _draining = false;
+		    return;
+		}
+		p = _queue.removeFirst();
+	    }
+
+	    try
+	    {
+		receivedSms(p);
+		returnSms(p);
+	    }
+	    catch (IOException e)
+	    {
+		System.err.println(e);
+	    }
+	    catch (RuntimeException e)
+	    {
+		// A malformed message mustn't strand the rest of the queue
+		System.err.println(e);
+	    }
+	    finally
+	    {
+		_work.exit();
+	    }
 	}
     }
 
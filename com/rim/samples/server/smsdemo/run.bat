@@ -1,6 +1,6 @@
 @echo off
 REM Build and run the smsdemo server
-javac SMSServer.java
+javac -sourcepath ..\..\..\..\.. SMSServer.java
 pushd ..\..\..\..\..\
 	java -cp . com.rim.samples.server.smsdemo.SMSServer %1
 popd
\ No newline at end of file
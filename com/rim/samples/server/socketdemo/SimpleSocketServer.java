@@ -30,11 +30,14 @@ import java.io.*;
 import java.util.*;
 import java.lang.*;
 
+import com.rim.samples.server.runtime.*;
+
 /**
- * <p>Worker is just a simple thread that handles each inbound socket connection.
- * so that further socket connections can be accepted while another socket is handled!
+ * <p>Worker handles a single inbound socket connection on the server's
+ * executor, so that further socket connections can be accepted while
+ * another socket is handled!
  */
-class Worker extends Thread
+class Worker implements Runnable
 {
     private Socket _clientSocket;
 
@@ -151,13 +154,16 @@ class Worker extends Thread
  * <p>The main server class
  * <p>To run this simple program, invoke the following from the command line:
  * <pre>
- *    javac SimpleSocketServer.java
+ *    javac -sourcepath ..\..\..\..\.. SimpleSocketServer.java
  *    pushd ..\..\..\..\..
- *     java com.rim.samples.server.socketdemo.SimpleSocketServer
+ *     java com.rim.samples.server.socketdemo.SimpleSocketServer [config.properties]
  *    popd
  * </pre>
+ * <p>The server can also be hosted alongside the other sample servers by
+ * com.rim.samples.server.runtime.ServerRuntime. It listens on the port given
+ * by the socket.port property (default 44444).
  */
-public class SimpleSocketServer implements Runnable {
+public class SimpleSocketServer implements ServerComponent, Runnable {
 
     //constants ---------------------------------------------------------------
     private static final int PORT = 44444;
@@ -165,35 +171,67 @@ public class SimpleSocketServer implements Runnable {
     private static final String RESOURCE_PATH = "com/rim/samples/server/socketdemo/resources";
     private static ResourceBundle _resources = java.util.ResourceBundle.getBundle(RESOURCE_PATH);
 
-    public static void main(String[] args)
+    private ServerContext _context;
+    private ServerSocket _serverSocket;
+
+    public static void main(String[] args) throws InterruptedException
     {
-        new SimpleSocketServer().run();
+        ServerRuntime.launch(new SimpleSocketServer(), args).await();
     }
 
-    public void run() {
+    public String getName()
+    {
+        return "socket";
+    }
+
+    public void start(ServerContext context) throws IOException
+    {
+        int port = context.getInt("port", PORT);
+        try {
+            _serverSocket = new ServerSocket(port);
+        } catch (IOException e) {
+            throw new IOException(e + "- port:" + port);
+        }
+        System.out.println(_resources.getString("SimpleSocketServer.Started"));
+        _context = context;
+        context.startLoop("accept", this);
+    }
 
-        ServerSocket serverSocket = null;
+    public void stop()
+    {
         try {
-            serverSocket = new ServerSocket(PORT);
-	    System.out.println(_resources.getString("SimpleSocketServer.Started"));
+            _serverSocket.close();
         } catch (IOException e) {
-            System.err.println(e + "- port:" + PORT);
-            System.exit(-1);
         }
+    }
+
+    /**
+     * Accept loop, runs until the server socket is closed
+     */
+    public void run() {
 
         for(;;)
         {
             Socket clientSocket = null;
             try {
                 System.out.println(_resources.getString("SimpleSocketServer.WaitingForClient"));
-                clientSocket = serverSocket.accept(); //blocking call - waits for a connection
+                clientSocket = _serverSocket.accept(); //blocking call - waits for a connection
                 System.out.println(_resources.getString("SimpleSocketServer.ClientConnecting") + ":" + clientSocket.getInetAddress().getHostAddress());
             } catch (IOException e) {
-                System.err.println(e);
-                System.exit(-1);
+                if (!_serverSocket.isClosed()) {
+                    System.err.println(e);
+                }
+                return;
+            }
+            _context.counter("connections").increment();
+
+            //hand this socket to the server's executor - this way new socket connections can be served immediately
+            if (!_context.execute("connection", new Worker(clientSocket))) {
+                try {
+                    clientSocket.close();
+                } catch (IOException e) {
+                }
             }
-            //spin off a new thread to handle this socket - this way new socket connections can be served immediately
-            (new Worker(clientSocket)).start();
         }
     }
 
@@ -2,7 +2,7 @@
 REM Build and run script for the Socket Server side
 
 del *.class
-javac SimpleSocketServer.java
+javac -sourcepath ..\..\..\..\.. SimpleSocketServer.java
 pushd ..\..\..\..\..
 	java -cp . com.rim.samples.server.socketdemo.SimpleSocketServer
 popd
\ No newline at end of file
@@ -30,62 +30,141 @@ import java.io.*;
 import java.net.*;
 import java.util.Date;
 
+import com.rim.samples.server.runtime.*;
+
 /**
- * This class represents the server in a client/server configuration
+ * This class represents the server in a client/server configuration.
+ * It listens on the port given by the udp.port property (default 2010)
+ * and can be hosted by com.rim.samples.server.runtime.ServerRuntime.
  */
-public class UdpServer implements Runnable
+public class UdpServer implements ServerComponent, Runnable
 {
     final static int BROADCAST_PORT = 2010;
 
+    private ServerContext _context;
+    private DatagramSocket _sock;
+    private final ActiveWork _work = new ActiveWork();
+
     /**
      * Entry point for application.
+     * @param args Optional properties file
      */
-    public static void main(String args[])
+    public static void main(String args[]) throws InterruptedException
     {
-        new UdpServer().run();
+        ServerRuntime.launch(new UdpServer(), args).await();
     }
 
 
-    public void run()
+    public String getName()
     {
+        return "udp";
+    }
+
 
+    public void start(ServerContext context) throws IOException
+    {
         System.out.println("               -----------------UDP Demo Server-----------------" + "\n\n");
 
+        // Create a socket bound to the configured port; it is reused for every packet
+        _sock = new DatagramSocket(context.getInt("port", BROADCAST_PORT));
+        _context = context;
+        context.startLoop("receive", this);
+    }
+
+
+    public void stop()
+    {
+        // Packets already handed to the executor still need the socket to
+        // send their acknowledgments from, so close it once they are done
+        _work.close(new Runnable()
+        {
+            public void run()
+            {
+                _sock.close();
+            }
+        });
+    }
+
+
+    public void run()
+    {
+        // Create a packet to contain incoming data
+        byte[] buf = new byte[256];
+        DatagramPacket packet = new DatagramPacket(buf, buf.length);
+
         while(true)
         {
             try
             {
-                // Create a new socket connection bound to the defined port
-                DatagramSocket sock = new DatagramSocket(BROADCAST_PORT);
+                System.out.println("Waiting for data on local port: " + _sock.getLocalPort());
+
+                // Wait for incoming data (receive() is a blocking method)     
+                packet.setLength(buf.length);
+                _sock.receive(packet);
+                _context.counter("packets").increment();
+
+                // Hand a copy of the packet to the executor so the buffer can
+                // be reused; packets arriving while the server is busy or
+                // stopping are dropped
+                String data = new String(packet.getData(), 0, packet.getLength());
+                if(!_work.execute(_context, "packet", new Reply(data, packet.getAddress(), packet.getPort())))
+                {
+                    System.out.println("Server is busy or stopping, packet dropped");
+                }
+            }
+            catch(IOException ioe)
+            {
+                if(_sock.isClosed())
+                {
+                    return;
+                }
+                _context.counter("errors").increment();
+                System.out.println("Error: IOException - " + ioe.toString());
+            }
+        }
+    }
 
-                System.out.println("Waiting for data on local port: " + sock.getLocalPort());
 
-                // Create a packet to contain incoming data
-                byte[] buf = new byte[256];
-                DatagramPacket packet = new DatagramPacket(buf, buf.length);
+    /**
+     * Displays a received packet and sends back an acknowledgment
+     */
+    private class Reply implements Runnable
+    {
+        private String _data;
+        private InetAddress _remoteAddress;
+        private int _remotePort;
 
-                // Wait for incoming data (receive() is a blocking method)     
-                sock.receive(packet);
+        Reply(String data, InetAddress remoteAddress, int remotePort)
+        {
+            _data = data;
+            _remoteAddress = remoteAddress;
+            _remotePort = remotePort;
+        }
 
-                // Retrieve data from packet and display
-                String data = new String(packet.getData());
-                int endIndex = data.indexOf(0);
+
+        public void run()
+        {
+            // Display the data
+            String data = _data;
+            int endIndex = data.indexOf(0);
+            if(endIndex != -1)
+            {
                 data = data.substring(0, endIndex);
-                int remotePort = packet.getPort();
-                System.out.println("Received data from remote port " + remotePort + ":\n" + data);
+            }
+            System.out.println("Received data from remote port " + _remotePort + ":\n" + data);
 
-                // Determine origin of packet and display information
-                InetAddress remoteAddress = packet.getAddress();
-                System.out.println("Sent from address: " + remoteAddress.getHostAddress());
+            // Display the origin of the packet
+            System.out.println("Sent from address: " + _remoteAddress.getHostAddress());
 
+            try
+            {
                 // Send back an acknowledgment
                 String ack = "RECEIVED " + new Date().toString();
-                sock.send(new DatagramPacket(ack.getBytes(), ack.length(), remoteAddress, remotePort));
-
-                sock.close();
+                _sock.send(new DatagramPacket(ack.getBytes(), ack.length(), _remoteAddress, _remotePort));
             }
             catch(IOException ioe)
             {
+                _context.counter("errors").increment();
                 System.out.println("Error: IOException - " + ioe.toString());
             }
         }